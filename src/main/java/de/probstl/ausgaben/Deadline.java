@@ -0,0 +1,48 @@
+package de.probstl.ausgaben;
+
+import java.time.Duration;
+
+/**
+ * The point in time the current request must be answered by. It is set per
+ * thread when a request arrives and limits the waiting for Firestore, so a
+ * stuck call does not hold a request thread forever.
+ */
+public final class Deadline {
+
+	/** The deadline of the current thread from {@link System#nanoTime()} */
+	private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Utility class
+	 */
+	private Deadline() {
+		// static methods only
+	}
+
+	/**
+	 * Set the deadline of the current thread
+	 *
+	 * @param budget The time from now on
+	 */
+	public static void set(Duration budget) {
+		CURRENT.set(Long.valueOf(System.nanoTime() + budget.toNanos()));
+	}
+
+	/**
+	 * Remove the deadline of the current thread
+	 */
+	public static void clear() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @param fallback The time left if no deadline is set, e.g. in background
+	 *                 jobs
+	 * @return The time left until the deadline in nanoseconds, negative if it
+	 *         has passed
+	 */
+	public static long remainingNanos(Duration fallback) {
+		Long deadline = CURRENT.get();
+		return deadline == null ? fallback.toNanos() : deadline.longValue() - System.nanoTime();
+	}
+}
@@ -0,0 +1,64 @@
+package de.probstl.ausgaben;
+
+import java.time.Duration;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Sets the {@link Deadline} of a request when it arrives. A client may ask for
+ * a shorter deadline with the header <code>X-Request-Timeout</code> in
+ * milliseconds, e.g. a phone that gives up after a few seconds anyway.
+ */
+@Component
+public class DeadlineInterceptor implements AsyncHandlerInterceptor {
+
+	/** Header with the timeout of the client in milliseconds */
+	static final String HEADER_TIMEOUT = "X-Request-Timeout";
+
+	/** The time a request may take at most */
+	@Value("${expenses.request.deadline:PT10S}")
+	private Duration m_Budget;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+		if (request.getDispatcherType() != DispatcherType.ASYNC) {
+			Deadline.set(getBudget(request.getHeader(HEADER_TIMEOUT)));
+		}
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) throws Exception {
+		Deadline.clear(); // the thread goes back to the pool
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+		Deadline.clear();
+	}
+
+	/**
+	 * @param timeout The timeout of the client, may be <code>null</code>
+	 * @return The budget of the request
+	 */
+	Duration getBudget(String timeout) {
+		if (timeout == null) {
+			return m_Budget;
+		}
+		try {
+			Duration requested = Duration.ofMillis(Long.parseLong(timeout.trim()));
+			return requested.isNegative() || requested.compareTo(m_Budget) > 0 ? m_Budget : requested;
+		} catch (NumberFormatException e) {
+			return m_Budget;
+		}
+	}
+}
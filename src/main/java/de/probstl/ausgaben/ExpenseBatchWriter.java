@@ -0,0 +1,297 @@
+package de.probstl.ausgaben;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.data.BulkItemResult;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Creates many new expenses through a Firestore {@link BulkWriter}. Expenses
+ * are handed over one by one while the request is still being read, at most a
+ * fixed number of writes are in flight at the same time. The outcome of every
+ * item is reported by {@link #finish()} in the order the items were added.
+ * <p>
+ * For a user whose expenses are exported the entry of the {@link ExportOutbox}
+ * is written by the same bulk writer. The bulk writer does not commit both
+ * documents atomically, so {@link #finish()} writes the entries of stored
+ * expenses again and removes the entries of expenses that were not stored.
+ */
+public final class ExpenseBatchWriter {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ExpenseBatchWriter.class);
+
+	/**
+	 * A write that was handed to the bulk writer
+	 */
+	private static final class Pending {
+
+		/** The expense with the id of the new document */
+		private final Expense m_Expense;
+
+		/** The result of the write */
+		private final ApiFuture<WriteResult> m_Future;
+
+		/** The result of the write of the outbox entry or <code>null</code> */
+		private final ApiFuture<WriteResult> m_OutboxFuture;
+
+		/**
+		 * Constructor
+		 *
+		 * @param expense      The expense with the id of the new document
+		 * @param future       The result of the write
+		 * @param outboxFuture The result of the write of the outbox entry or
+		 *                     <code>null</code>
+		 */
+		Pending(Expense expense, ApiFuture<WriteResult> future, ApiFuture<WriteResult> outboxFuture) {
+			m_Expense = expense;
+			m_Future = future;
+			m_OutboxFuture = outboxFuture;
+		}
+	}
+
+	/** The collection of the new expenses */
+	private final @Nonnull String m_Collection;
+
+	/** Reference to the collection */
+	private final CollectionReference m_CollectionRef;
+
+	/** The writer sending the writes in batches */
+	private final BulkWriter m_Writer;
+
+	/** Record the expenses for the export to AWS */
+	private final boolean m_Export;
+
+	/** Publisher for the created expenses */
+	private final ApplicationEventPublisher m_EventPublisher;
+
+	/** Counts the written documents */
+	private final DocumentAccounting m_Accounting;
+
+	/** One permit for every write in flight */
+	private final Semaphore m_Permits;
+
+	/** {@link BulkItemResult} of a rejected item or {@link Pending} write */
+	private final List<Object> m_Items = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param collection     The collection of the new expenses
+	 * @param collectionRef  Reference to the collection
+	 * @param writer         The writer sending the writes in batches
+	 * @param export         Record the expenses for the export to AWS
+	 * @param eventPublisher Publisher for the created expenses
+	 * @param accounting     Counts the written documents
+	 * @param maxInFlight    Maximum number of writes in flight
+	 */
+	ExpenseBatchWriter(@Nonnull String collection, CollectionReference collectionRef, BulkWriter writer,
+			boolean export, ApplicationEventPublisher eventPublisher, DocumentAccounting accounting,
+			int maxInFlight) {
+		m_Collection = collection;
+		m_CollectionRef = collectionRef;
+		m_Writer = writer;
+		m_Export = export;
+		m_EventPublisher = eventPublisher;
+		m_Accounting = accounting;
+		m_Permits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Queue the creation of a validated expense. Blocks while the maximum number
+	 * of writes is in flight. If no write is free the queued writes are sent
+	 * first, the bulk writer would otherwise wait for a full batch.
+	 *
+	 * @param expense The expense with parsed amount
+	 */
+	public void add(Expense expense) {
+		try {
+			if (!m_Permits.tryAcquire()) {
+				m_Writer.flush();
+				m_Permits.acquire();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reject(BulkItemResult.Status.FAILED, "interrupted");
+			return;
+		}
+
+		final DocumentReference docRef = m_CollectionRef.document();
+		final Expense created = expense.withId(docRef.getId());
+		created.setTimestamp(expense.getTimestamp() == null ? new Date() : expense.getTimestamp());
+
+		final Map<String, Object> data = FirestoreService.toDocument(created);
+		final ApiFuture<WriteResult> future;
+		final ApiFuture<WriteResult> outboxFuture;
+		try {
+			future = m_Writer.create(docRef, data);
+			outboxFuture = m_Export ? m_Writer.create(outboxRef(docRef.getId()), ExportOutbox.toEntry(m_Collection, data))
+					: null;
+		} catch (RuntimeException e) {
+			m_Permits.release();
+			reject(BulkItemResult.Status.FAILED, e.getMessage());
+			return;
+		}
+
+		final ApiFuture<?> done = outboxFuture == null ? future
+				: ApiFutures.successfulAsList(Arrays.asList(future, outboxFuture));
+		done.addListener(m_Permits::release, MoreExecutors.directExecutor());
+		m_Items.add(new Pending(created, future, outboxFuture));
+	}
+
+	/**
+	 * @param id The id of the expense
+	 * @return Reference to the outbox entry of the expense
+	 */
+	private DocumentReference outboxRef(String id) {
+		return m_CollectionRef.getFirestore().collection(ExportOutbox.COLLECTION).document(id);
+	}
+
+	/**
+	 * Record an item that is not written
+	 *
+	 * @param status  The reason category
+	 * @param message The reason
+	 */
+	public void reject(BulkItemResult.Status status, String message) {
+		m_Items.add(new BulkItemResult(null, status, message));
+	}
+
+	/**
+	 * Wait for all writes and return the outcome of every item
+	 *
+	 * @return The outcome by item in the order the items were added
+	 */
+	public List<BulkItemResult> finish() {
+		try {
+			m_Writer.close();
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupt while waiting for the bulk writer");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Error while closing the bulk writer", e.getCause());
+		}
+
+		int written = 0;
+		int exported = 0;
+		final List<Expense> missingEntries = new ArrayList<>();
+		final List<String> orphanedEntries = new ArrayList<>();
+		final List<BulkItemResult> toReturn = new ArrayList<>(m_Items.size());
+		for (Object item : m_Items) {
+			if (item instanceof BulkItemResult) {
+				toReturn.add((BulkItemResult) item);
+				continue;
+			}
+
+			final Pending pending = (Pending) item;
+			final String id = pending.m_Expense.getId();
+			final boolean outboxWritten = succeeded(pending.m_OutboxFuture);
+			if (outboxWritten) {
+				exported++;
+			}
+			if (!pending.m_Future.isDone()) {
+				toReturn.add(new BulkItemResult(id, BulkItemResult.Status.FAILED, "not written"));
+				continue;
+			}
+
+			try {
+				pending.m_Future.get();
+				written++;
+				if (pending.m_OutboxFuture != null && !outboxWritten) {
+					missingEntries.add(pending.m_Expense);
+				}
+				toReturn.add(new BulkItemResult(id, BulkItemResult.Status.OK, null));
+				m_EventPublisher.publishEvent(new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, m_Collection,
+						id, pending.m_Expense));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				toReturn.add(new BulkItemResult(id, BulkItemResult.Status.FAILED, "interrupted"));
+			} catch (ExecutionException e) {
+				toReturn.add(new BulkItemResult(id, BulkItemResult.Status.FAILED, e.getCause().getMessage()));
+				if (outboxWritten) {
+					orphanedEntries.add(id);
+				}
+			}
+		}
+
+		// only successful writes are billed
+		m_Accounting.written(m_Collection, written);
+		if (m_Export) {
+			m_Accounting.written(ExportOutbox.COLLECTION, exported);
+			repairOutbox(missingEntries, orphanedEntries);
+		}
+		return toReturn;
+	}
+
+	/**
+	 * @param future The result of a write or <code>null</code>
+	 * @return <code>true</code> if the write succeeded
+	 */
+	private static boolean succeeded(ApiFuture<WriteResult> future) {
+		if (future == null || !future.isDone()) {
+			return false;
+		}
+		try {
+			future.get();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Make the outbox match the stored expenses: write the missing entries of
+	 * stored expenses and remove the entries of expenses that were not stored.
+	 *
+	 * @param missingEntries  The stored expenses without an outbox entry
+	 * @param orphanedEntries The ids of the outbox entries without expense
+	 */
+	private void repairOutbox(List<Expense> missingEntries, List<String> orphanedEntries) {
+		if (missingEntries.isEmpty() && orphanedEntries.isEmpty()) {
+			return;
+		}
+
+		final WriteBatch batch = m_CollectionRef.getFirestore().batch();
+		missingEntries.forEach(x -> batch.set(outboxRef(x.getId()),
+				ExportOutbox.toEntry(m_Collection, FirestoreService.toDocument(x))));
+		orphanedEntries.forEach(x -> batch.delete(outboxRef(x)));
+		try {
+			batch.commit().get();
+			m_Accounting.written(ExportOutbox.COLLECTION, missingEntries.size());
+			return;
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupt while repairing the outbox");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Error while repairing the outbox", e.getCause());
+		}
+		LOG.error("Outbox of collection {} not repaired, not exported: {}, exported without expense: {}",
+				m_Collection, missingEntries.stream().map(Expense::getId).collect(Collectors.toList()), orphanedEntries);
+	}
+}
@@ -0,0 +1,122 @@
+package de.probstl.ausgaben;
+
+import javax.annotation.Nonnull;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Event published by the {@link FirestoreService} after an expense was
+ * successfully created, updated or deleted
+ */
+public class ExpenseChangedEvent {
+
+	/**
+	 * The kind of modification
+	 */
+	public enum Type {
+		/** A new expense was stored */
+		CREATED,
+		/** An existing expense was modified */
+		UPDATED,
+		/** An expense was removed */
+		DELETED
+	}
+
+	/** The kind of modification */
+	private final @Nonnull Type m_Type;
+
+	/** The collection the expense belongs to */
+	private final @Nonnull String m_Collection;
+
+	/** The id of the document */
+	private final @Nonnull String m_Id;
+
+	/** The written expense or <code>null</code> if it was deleted */
+	private final Expense m_Expense;
+
+	/** The write left the budget stored in the document untouched */
+	private final boolean m_BudgetUntouched;
+
+	/**
+	 * Constructor
+	 *
+	 * @param type       The kind of modification
+	 * @param collection The collection the expense belongs to
+	 * @param id         The id of the document
+	 * @param expense    The written expense or <code>null</code> on delete
+	 */
+	public ExpenseChangedEvent(@Nonnull Type type, @Nonnull String collection, @Nonnull String id, Expense expense) {
+		this(type, collection, id, expense, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param type            The kind of modification
+	 * @param collection      The collection the expense belongs to
+	 * @param id              The id of the document
+	 * @param expense         The written expense or <code>null</code> on delete
+	 * @param budgetUntouched The write left the budget stored in the document
+	 *                        untouched, e.g. because the edit page does not
+	 *                        submit it
+	 */
+	public ExpenseChangedEvent(@Nonnull Type type, @Nonnull String collection, @Nonnull String id, Expense expense,
+			boolean budgetUntouched) {
+		m_Type = type;
+		m_Collection = collection;
+		m_Id = id;
+		m_Expense = expense;
+		m_BudgetUntouched = budgetUntouched;
+	}
+
+	/**
+	 * @return the kind of modification
+	 */
+	public @Nonnull Type getType() {
+		return m_Type;
+	}
+
+	/**
+	 * @return the collection the expense belongs to
+	 */
+	public @Nonnull String getCollection() {
+		return m_Collection;
+	}
+
+	/**
+	 * @return the id of the document
+	 */
+	public @Nonnull String getId() {
+		return m_Id;
+	}
+
+	/**
+	 * @return the written expense or <code>null</code> if it was deleted
+	 */
+	public Expense getExpense() {
+		return m_Expense;
+	}
+
+	/**
+	 * Return the expense as it is stored after the write
+	 *
+	 * @param previous The expense before the write or <code>null</code> if it is
+	 *                 unknown
+	 * @return the written expense with the fields the write left untouched taken
+	 *         from the previous expense or <code>null</code> if it was deleted
+	 */
+	public Expense getExpense(Expense previous) {
+		if (m_Expense == null || !m_BudgetUntouched || previous == null || previous.getBudget() == null) {
+			return m_Expense;
+		}
+
+		final Expense toReturn = m_Expense.withId(m_Id);
+		toReturn.setBudget(previous.getBudget());
+		return toReturn;
+	}
+
+	@Override
+	public String toString() {
+		return m_Type + " " + m_Collection + "/" + m_Id;
+	}
+}
@@ -0,0 +1,131 @@
+package de.probstl.ausgaben;
+
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.aws.ExportDispatcher;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * The checks and responses of <code>/rest/create</code>, shared by
+ * {@link ExpensesCreateResource} and {@link ReactiveExpensesCreateResource} so
+ * both variants answer the same.
+ */
+@Component
+public class ExpenseCreation {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ExpenseCreation.class);
+
+	/**
+	 * The outcome of checking a new expense
+	 */
+	public static final class Checked {
+
+		/** The response if the expense is not written */
+		private final ResponseEntity<String> m_Rejection;
+
+		/** The collection of the user */
+		private final String m_Collection;
+
+		/** Record the expense for the export to AWS */
+		private final boolean m_Export;
+
+		/**
+		 * Constructor
+		 *
+		 * @param rejection  The response if the expense is not written
+		 * @param collection The collection of the user
+		 * @param export     Record the expense for the export to AWS
+		 */
+		Checked(ResponseEntity<String> rejection, String collection, boolean export) {
+			m_Rejection = rejection;
+			m_Collection = collection;
+			m_Export = export;
+		}
+
+		/**
+		 * @return the response if the expense is not written, <code>null</code> if
+		 *         it is valid
+		 */
+		public ResponseEntity<String> getRejection() {
+			return m_Rejection;
+		}
+
+		/**
+		 * @return the collection of the user
+		 */
+		public String getCollection() {
+			return m_Collection;
+		}
+
+		/**
+		 * @return <code>true</code> if the expense is recorded for the export
+		 */
+		public boolean isExport() {
+			return m_Export;
+		}
+	}
+
+	/** The service for reading and writing data to firestore */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** Decides which expenses are exported to AWS */
+	@Autowired
+	private ExportDispatcher m_ExportDispatcher;
+
+	/** Checks the constraints and parses the amount */
+	@Autowired
+	private ExpenseValidator m_ExpenseValidator;
+
+	/**
+	 * Check a new expense of the user and parse its amount
+	 *
+	 * @param expense        The submitted expense
+	 * @param requestLocale  The locale of the client to parse the amount
+	 * @param authentication The logged in user
+	 * @return The collection to write to or the response if the expense is not
+	 *         written
+	 */
+	public Checked check(Expense expense, Locale requestLocale, Authentication authentication) {
+		String collection = m_FirestoreService.extractCollection(authentication);
+		if (collection == null) {
+			return new Checked(new ResponseEntity<>(HttpStatus.FORBIDDEN), null, false);
+		}
+
+		String error = m_ExpenseValidator.checkConstraints(expense);
+		if (error != null) {
+			LOG.warn("Invalid expense of user {}: {}", authentication.getName(), error);
+			return new Checked(new ResponseEntity<>(HttpStatus.BAD_REQUEST), collection, false);
+		}
+
+		error = m_ExpenseValidator.parseAmount(expense, requestLocale);
+		if (error != null) {
+			LOG.error(error);
+			return new Checked(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR), collection, false);
+		}
+
+		LOG.info("New expense with description '{}' in shop '{}' with amount '{}' payed with {} in locale {}.",
+				expense.getMessage(), expense.getShop(), expense.getAmountDouble(), expense.getPayment(),
+				requestLocale);
+
+		// the export to AWS is recorded with the expense and sent in the background
+		return new Checked(null, collection, m_ExportDispatcher.isExported(authentication.getName()));
+	}
+
+	/**
+	 * @param success <code>true</code> if the expense was written
+	 * @return The response after the write
+	 */
+	public ResponseEntity<String> written(boolean success) {
+		return new ResponseEntity<>(success ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+}
@@ -0,0 +1,196 @@
+package de.probstl.ausgaben;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * In-memory indexes over all expenses, one for each collection. The index of a
+ * collection is built with one full read on first use and kept current by the
+ * {@link ExpenseChangedEvent}s of the {@link FirestoreService}. Events arriving
+ * while the full read is running are buffered and applied before the index is
+ * used, the read may or may not contain their writes.
+ *
+ * @param <I> The type of the index
+ */
+public final class ExpenseIndexes<I extends ExpenseIndexes.Index> {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ExpenseIndexes.class);
+
+	/**
+	 * An index over the expenses of a collection, safe for concurrent use
+	 */
+	public interface Index {
+
+		/**
+		 * @param id The id of the expense
+		 * @return The indexed expense or <code>null</code>
+		 */
+		Expense get(@Nonnull String id);
+
+		/**
+		 * Add or replace an expense
+		 *
+		 * @param expense The expense
+		 */
+		void put(@Nonnull Expense expense);
+
+		/**
+		 * Remove an expense
+		 *
+		 * @param id The id of the expense
+		 */
+		void remove(@Nonnull String id);
+	}
+
+	/**
+	 * The index of one collection and its state
+	 *
+	 * @param <I> The type of the index
+	 */
+	private static final class Holder<I> {
+
+		/** The index or <code>null</code> if it is not built */
+		private I m_Index;
+
+		/** The running build or <code>null</code> */
+		private CompletableFuture<I> m_Build;
+
+		/** The events arriving while the build is running */
+		private final List<ExpenseChangedEvent> m_Pending = new ArrayList<>();
+	}
+
+	/** Name of the indexes for the log */
+	private final String m_Name;
+
+	/** Reads all expenses of a collection, <code>null</code> on error */
+	private final Function<String, Collection<Expense>> m_Loader;
+
+	/** Creates an index from the expenses of a collection */
+	private final Function<Collection<Expense>, I> m_Factory;
+
+	/** The index of each collection */
+	private final Map<String, Holder<I>> m_Holders = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param name    Name of the indexes for the log
+	 * @param loader  Reads all expenses of a collection, <code>null</code> on
+	 *                error
+	 * @param factory Creates an index from the expenses of a collection
+	 */
+	public ExpenseIndexes(String name, Function<String, Collection<Expense>> loader,
+			Function<Collection<Expense>, I> factory) {
+		m_Name = name;
+		m_Loader = loader;
+		m_Factory = factory;
+	}
+
+	/**
+	 * Return the index of the collection and build it if necessary. Callers
+	 * arriving while the index is built wait for the same build.
+	 *
+	 * @param collection The collection
+	 * @return The index or <code>null</code> if the collection could not be read
+	 */
+	public I get(@Nonnull String collection) {
+		final Holder<I> holder = m_Holders.computeIfAbsent(collection, x -> new Holder<>());
+		final CompletableFuture<I> build;
+		final boolean building;
+		synchronized (holder) {
+			if (holder.m_Index != null) {
+				return holder.m_Index;
+			}
+			building = holder.m_Build == null;
+			if (building) {
+				holder.m_Build = new CompletableFuture<>();
+			}
+			build = holder.m_Build;
+		}
+
+		if (building) {
+			build(collection, holder);
+		}
+		return build.join();
+	}
+
+	/**
+	 * Read the expenses, create the index and apply the events that arrived in
+	 * the meantime. The full read runs without holding the lock of the holder.
+	 *
+	 * @param collection The collection
+	 * @param holder     The holder of the collection
+	 */
+	private void build(String collection, Holder<I> holder) {
+		I index = null;
+		try {
+			final Collection<Expense> expenses = m_Loader.apply(collection);
+			if (expenses != null) {
+				index = m_Factory.apply(expenses);
+				LOG.info("{} for collection {} built with {} expenses", m_Name, collection,
+						Integer.valueOf(expenses.size()));
+			}
+		} finally {
+			final CompletableFuture<I> build;
+			synchronized (holder) {
+				if (index != null) {
+					for (ExpenseChangedEvent event : holder.m_Pending) {
+						apply(index, event);
+					}
+					holder.m_Index = index;
+				}
+				holder.m_Pending.clear();
+				build = holder.m_Build;
+				holder.m_Build = null;
+			}
+			build.complete(index);
+		}
+	}
+
+	/**
+	 * Keep the index of the collection current
+	 *
+	 * @param event The modification of an expense
+	 */
+	public void onExpenseChanged(ExpenseChangedEvent event) {
+		final Holder<I> holder = m_Holders.get(event.getCollection());
+		if (holder == null) {
+			return; // built with the current data on first use
+		}
+
+		synchronized (holder) {
+			if (holder.m_Index != null) {
+				apply(holder.m_Index, event);
+			} else if (holder.m_Build != null) {
+				holder.m_Pending.add(event);
+			}
+		}
+	}
+
+	/**
+	 * Apply the modification to the index
+	 *
+	 * @param index The index
+	 * @param event The modification of an expense
+	 */
+	private static void apply(Index index, ExpenseChangedEvent event) {
+		if (event.getType() == ExpenseChangedEvent.Type.DELETED || event.getExpense() == null) {
+			index.remove(event.getId());
+		} else {
+			index.put(event.getExpense(index.get(event.getId())));
+		}
+	}
+}
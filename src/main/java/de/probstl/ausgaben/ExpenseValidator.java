@@ -0,0 +1,78 @@
+package de.probstl.ausgaben;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Checks an expense submitted by a client and parses its amount. Used where
+ * expenses are not validated by the request binding, e.g. for every item of a
+ * batch.
+ */
+@Component
+public class ExpenseValidator {
+
+	/** Validator for the constraints of the expense */
+	@Autowired
+	private Validator m_Validator;
+
+	/**
+	 * Validate the expense and set the parsed amount
+	 *
+	 * @param expense The submitted expense
+	 * @param locale  The locale of the client to parse the amount
+	 * @return The reason why the expense is invalid or <code>null</code> if it is
+	 *         valid
+	 */
+	public String validate(Expense expense, Locale locale) {
+		final String violations = checkConstraints(expense);
+		if (violations != null) {
+			return violations;
+		}
+
+		return parseAmount(expense, locale);
+	}
+
+	/**
+	 * Check the constraints of the expense like <code>@Valid</code> does for a
+	 * bound request body
+	 *
+	 * @param expense The submitted expense
+	 * @return The violated constraints or <code>null</code> if there are none
+	 */
+	public String checkConstraints(Expense expense) {
+		final Set<ConstraintViolation<Expense>> violations = m_Validator.validate(expense);
+		if (violations.isEmpty()) {
+			return null;
+		}
+		return violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * Parse the amount text of the expense with the locale of the client
+	 *
+	 * @param expense The submitted expense
+	 * @param locale  The locale of the client
+	 * @return The reason why the amount is invalid or <code>null</code> if it was
+	 *         parsed
+	 */
+	public String parseAmount(Expense expense, Locale locale) {
+		NumberFormat format = NumberFormat.getNumberInstance(locale);
+		try {
+			expense.setAmountDouble(Double.valueOf(format.parse(expense.getAmount()).doubleValue()));
+			return null;
+		} catch (ParseException e) {
+			return String.format("No valid number: %s", expense.getAmount());
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package de.probstl.ausgaben;
+
+import java.util.Locale;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Creates single expenses sent by the clients. The request thread waits for
+ * the write, see {@link ReactiveExpensesCreateResource} for the non-blocking
+ * variant of profile <i>reactive</i>.
+ */
+@RestController
+@RequestMapping("/rest")
+@Profile("!reactive")
+public class ExpensesCreateResource {
+
+	/** The service for reading and writing data to firestore */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** Checks the expense and creates the responses */
+	@Autowired
+	private ExpenseCreation m_ExpenseCreation;
+
+	@PostMapping(path = "/create")
+	public ResponseEntity<String> createAusgabe(@Valid @RequestBody Expense expense, Locale requestLocale,
+			Authentication authentication) {
+
+		ExpenseCreation.Checked checked = m_ExpenseCreation.check(expense, requestLocale, authentication);
+		if (checked.getRejection() != null) {
+			return checked.getRejection();
+		}
+
+		return m_ExpenseCreation.written(m_FirestoreService.createExpense(expense, requestLocale,
+				checked.getCollection(), checked.isExport()));
+	}
+}
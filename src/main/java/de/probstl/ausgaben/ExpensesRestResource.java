@@ -1,11 +1,11 @@
 package de.probstl.ausgaben;
 
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.io.IOException;
+import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
+import java.util.stream.Collectors;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,12 +14,29 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.probstl.ausgaben.auth.TokenService;
+import de.probstl.ausgaben.aws.ExportDispatcher;
+import de.probstl.ausgaben.data.BulkEditRequest;
+import de.probstl.ausgaben.data.BulkItemResult;
+import de.probstl.ausgaben.data.BulkResult;
 import de.probstl.ausgaben.data.Expense;
+import de.probstl.ausgaben.data.TokenResponse;
+import de.probstl.ausgaben.query.FacetQuery;
+import de.probstl.ausgaben.query.FacetResult;
+import de.probstl.ausgaben.query.FacetService;
 
 @RestController
 @RequestMapping("/rest")
@@ -28,50 +45,194 @@ public class ExpensesRestResource {
 	/** Logger */
 	private static final Logger LOG = LoggerFactory.getLogger(ExpensesRestResource.class);
 
+	/** Maximum number of expenses changed with one bulk request */
+	private static final int MAX_BULK_SIZE = 1000;
+
 	/** The service for reading and writing data to firestore */
 	@Autowired
 	private FirestoreService m_FirestoreService;
 
-	@PostMapping(path = "/create")
-	public ResponseEntity<String> createAusgabe(@Valid @RequestBody Expense expense, Locale requestLocale,
-			Authentication authentication) {
+	/** Decides which expenses are exported to AWS */
+	@Autowired
+	private ExportDispatcher m_ExportDispatcher;
+
+	/** Validates the items of a batch */
+	@Autowired
+	private ExpenseValidator m_ExpenseValidator;
+
+	/** Reads the items of a batch */
+	@Autowired
+	private ObjectMapper m_ObjectMapper;
+
+	/** Issues the bearer tokens */
+	@Autowired
+	private TokenService m_TokenService;
 
-		Optional<? extends GrantedAuthority> authority = authentication.getAuthorities().stream().findFirst();
-		if (!authority.isPresent()) {
-			LOG.warn("No authority for user {} found. Showing empty data!", authentication.getName());
+	/** The service for structured queries over all expenses */
+	@Autowired
+	private FacetService m_FacetService;
+
+	/**
+	 * Filter the expenses of the user by the given criteria, e.g.
+	 * <code>/rest/query?payment=card&amp;minAmount=50&amp;shop=EDEKA&amp;tag=urlaub&amp;from=2023-01&amp;to=2023-12</code>
+	 * 
+	 * @param query          The criteria taken from the request parameters
+	 * @param authentication The logged in user
+	 * @return Count, sum and the matching expenses
+	 */
+	@GetMapping(path = "/query")
+	public ResponseEntity<FacetResult> queryExpenses(FacetQuery query, Authentication authentication) {
+
+		String collection = m_FirestoreService.extractCollection(authentication);
+		if (collection == null) {
 			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
 		}
 
-		String collection = authority.get().getAuthority();
-		if(collection == null) {
+		try {
+			return new ResponseEntity<>(m_FacetService.query(query, collection), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Invalid query {}: {}", query, e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	/**
+	 * Exchange the password for a bearer token. Following REST calls send
+	 * <code>Authorization: Bearer &lt;token&gt;</code> and skip the password check.
+	 * 
+	 * @param authentication The user logged in with the password
+	 * @return The token and its validity
+	 */
+	@PostMapping(path = "/token")
+	public ResponseEntity<TokenResponse> createToken(Authentication authentication) {
+
+		List<String> authorities = authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority)
+				.collect(Collectors.toList());
+		String token = m_TokenService.issue(authentication.getName(), authorities);
+		LOG.info("Token issued for user {}", authentication.getName());
+		return new ResponseEntity<>(new TokenResponse(token, m_TokenService.getTtl().getSeconds()), HttpStatus.OK);
+	}
+
+	/**
+	 * Apply the same changes to a selection of expenses, e.g.
+	 * <code>{"ids": ["a", "b"], "budget": "urlaub"}</code>. Budget, city and
+	 * payment can be changed, fields that are missing are kept.
+	 * 
+	 * @param request        The selected expenses and the changes
+	 * @param authentication The logged in user
+	 * @return The outcome of every expense. The status is 207 if some expenses
+	 *         could not be updated.
+	 */
+	@PostMapping(path = "/bulk")
+	public ResponseEntity<BulkResult> bulkEdit(@RequestBody BulkEditRequest request, Authentication authentication) {
+
+		String collection = m_FirestoreService.extractCollection(authentication);
+		if (collection == null) {
 			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
 		}
 
-		LOG.info("Using collection {} for user {}", collection, authentication.getName());
+		if (request.getIds() == null || request.getIds().isEmpty() || request.getIds().size() > MAX_BULK_SIZE) {
+			LOG.warn("Bulk edit with invalid number of ids rejected");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 
-		NumberFormat format = NumberFormat.getNumberInstance(requestLocale);
-		try {
-			double betrag = format.parse(expense.getAmount()).doubleValue();
-			expense.setAmountDouble(Double.valueOf(betrag));
-		} catch (ParseException e1) {
-			LOG.error(String.format("No valid number: %s", expense.getAmount()), e1);
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		if (request.getIds().stream().anyMatch(x -> !StringUtils.hasText(x))) {
+			LOG.warn("Bulk edit with empty id rejected");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
 
-		LOG.info("New expense with description '{}' in shop '{}' with amount '{}' payed with {} in locale {}.",
-				expense.getMessage(), expense.getShop(), expense.getAmountDouble(), expense.getPayment(),
-				requestLocale);
+		if (!StringUtils.hasText(request.getBudget()) && !StringUtils.hasText(request.getCity())
+				&& !StringUtils.hasText(request.getPayment())) {
+			LOG.warn("Bulk edit without changes rejected");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		if (StringUtils.hasText(request.getPayment()) && !Expense.DEFAULT_PAYMENT.equals(request.getPayment())
+				&& !"card".equals(request.getPayment())) {
+			LOG.warn("Bulk edit with unknown payment {} rejected", request.getPayment());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		BulkResult result = m_FirestoreService.updateExpenses(request, collection);
+		return new ResponseEntity<>(result, result.getFailed() > 0 ? HttpStatus.MULTI_STATUS : HttpStatus.OK);
+	}
+
+	/**
+	 * Create many expenses with one request, e.g. when a client replays the
+	 * expenses recorded while offline. The body is either a JSON array or
+	 * newline delimited JSON objects and is read while the expenses are written.
+	 * 
+	 * @param request        The request with the expenses in the body
+	 * @param requestLocale  The locale of the client to parse the amounts
+	 * @param authentication The logged in user
+	 * @return The outcome of every expense in the order of the body. The status
+	 *         is 207 if some expenses could not be created.
+	 */
+	@PostMapping(path = "/batch")
+	public ResponseEntity<BulkResult> createBatch(HttpServletRequest request, Locale requestLocale,
+			Authentication authentication) {
+
+		String collection = m_FirestoreService.extractCollection(authentication);
+		if (collection == null) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+
+		final ExpenseBatchWriter writer = m_FirestoreService.openBatchWriter(collection,
+				m_ExportDispatcher.isExported(authentication.getName()));
+		try (JsonParser parser = m_ObjectMapper.getFactory().createParser(request.getInputStream())) {
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_ARRAY) {
+				token = parser.nextToken();
+			}
+
+			int count = 0;
+			while (token != null && token != JsonToken.END_ARRAY) {
+				if (count++ == MAX_BULK_SIZE) {
+					writer.reject(BulkItemResult.Status.INVALID, "more than " + MAX_BULK_SIZE + " expenses");
+					break;
+				}
+				addBatchItem(writer, parser.readValueAsTree(), requestLocale);
+				token = parser.nextToken();
+			}
+		} catch (IOException e) {
+			LOG.warn("Batch of user {} could not be read: {}", authentication.getName(), e.getMessage());
+			writer.reject(BulkItemResult.Status.INVALID, "request could not be read: " + e.getMessage());
+		}
+
+		BulkResult result = BulkResult.of(writer.finish());
+		LOG.info("Batch of user {} with {} expenses: {} created, {} failed", authentication.getName(),
+				Integer.valueOf(result.getItems().size()), Integer.valueOf(result.getSucceeded()),
+				Integer.valueOf(result.getFailed()));
+		return new ResponseEntity<>(result, result.getFailed() > 0 ? HttpStatus.MULTI_STATUS : HttpStatus.OK);
+	}
+
+	/**
+	 * Validate one item of a batch and hand it to the writer
+	 * 
+	 * @param writer The writer of the batch
+	 * @param node   The item read from the body
+	 * @param locale The locale of the client to parse the amount
+	 */
+	private void addBatchItem(ExpenseBatchWriter writer, TreeNode node, Locale locale) {
+		final Expense expense;
+		try {
+			expense = m_ObjectMapper.treeToValue(node, Expense.class);
+		} catch (JsonProcessingException e) {
+			writer.reject(BulkItemResult.Status.INVALID, e.getOriginalMessage());
+			return;
+		}
 
-		if (!m_FirestoreService.createExpense(expense, requestLocale, collection)) {
-			return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+		if (expense == null) {
+			writer.reject(BulkItemResult.Status.INVALID, "no expense");
+			return;
 		}
 
-		if (!"flo".equals(authentication.getName())) {
-			return new ResponseEntity<>(HttpStatus.OK);
+		String error = m_ExpenseValidator.validate(expense, locale);
+		if (error != null) {
+			writer.reject(BulkItemResult.Status.INVALID, error);
+			return;
 		}
 
-		// AWS Export removed with version 1.2.3!
-		
-		return new ResponseEntity<>(HttpStatus.OK);
+		writer.add(expense);
 	}
 }
@@ -2,6 +2,8 @@ package de.probstl.ausgaben;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
@@ -21,7 +23,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.NavigableMap;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -40,18 +41,27 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import de.probstl.ausgaben.budget.Budget;
 import de.probstl.ausgaben.budget.BudgetService;
+import de.probstl.ausgaben.cache.MonthPrefetcher;
+import de.probstl.ausgaben.cache.ReportCache;
+import de.probstl.ausgaben.dashboard.DashboardService;
+import de.probstl.ausgaben.dashboard.DashboardSummary;
 import de.probstl.ausgaben.data.EditForm;
 import de.probstl.ausgaben.data.Expense;
 import de.probstl.ausgaben.data.ExpensesRequest;
 import de.probstl.ausgaben.data.HomeForm;
+import de.probstl.ausgaben.jfr.ReportAggregationEvent;
 import de.probstl.ausgaben.mail.BudgetInfo;
 import de.probstl.ausgaben.mail.CityInfo;
 import de.probstl.ausgaben.mail.MailInfo;
+import de.probstl.ausgaben.search.ExpenseSearchService;
+import de.probstl.ausgaben.timing.Stage;
+import de.probstl.ausgaben.timing.StageTimings;
 
 /**
  * Controller for web-access
@@ -72,6 +82,9 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 	/** Pattern for displaying month in navigation */
 	private static final String MONTH_PATTERN_TEXT = "MMMM yy";
 
+	/** Maximum number of expenses shown as search result */
+	private static final int SEARCH_LIMIT = 200;
+
 	@Override
 	public void addViewControllers(ViewControllerRegistry registry) {
 		registry.addViewController("/").setViewName("redirect:/home");
@@ -82,6 +95,22 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 	@Autowired
 	private BudgetService m_BudgetService;
 
+	/** The cached figures of the landing page */
+	@Autowired
+	private DashboardService m_DashboardService;
+
+	/** The full text search over all expenses */
+	@Autowired
+	private ExpenseSearchService m_SearchService;
+
+	/** The cached expenses of recently shown intervals */
+	@Autowired
+	private ReportCache m_ReportCache;
+
+	/** Loads the neighbouring months of a shown month in advance */
+	@Autowired
+	private MonthPrefetcher m_MonthPrefetcher;
+
 	/**
 	 * Takes the input from the landing page and load the selected data
 	 * 
@@ -101,7 +130,7 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 
 		if (req.getParameter("doSearch") != null && StringUtils.hasText(homeForm.getSearchText())) {
 			LOG.info("search string {}", homeForm.getSearchText());
-			return "redirect:/home";
+			return "redirect:/search?q=" + URLEncoder.encode(homeForm.getSearchText(), StandardCharsets.UTF_8);
 		}
 
 		String selectedMonth = homeForm.getSelectedMonth();
@@ -165,37 +194,17 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 		HomeForm homeForm = new HomeForm();
 		homeForm.setSelectedMonth(LocalDate.now().format(valuePattern));
 
-		List<Double> weeksList = new ArrayList<>();
-		double currentMonth = 0.0;
-		double lastMonth = 0.0;
-		double percentOfLastMonth = 0.0;
-		double currentWeek = 0.0;
-
 		String collection = m_FirestoreService.extractCollection(auth);
-		if (collection != null) {
-			lastMonth = m_FirestoreService.findAmount(ExpensesRequest.forLastMonth(), collection);
-
-			final NavigableMap<Integer, Double> monthWeeks = m_FirestoreService
-					.findByWeek(ExpensesRequest.forCurrentMonth(), collection);
-			currentMonth = monthWeeks.values().stream().mapToDouble(Double::doubleValue).sum();
-			percentOfLastMonth = (currentMonth > 0 && lastMonth > 0) ? (currentMonth / lastMonth) * 100.0 : 0.0;
-
-			final double m = currentMonth;
-			if (!monthWeeks.isEmpty()) {
-				currentWeek = monthWeeks.lastEntry().getValue().doubleValue();
-				weeksList = monthWeeks.values().stream()
-						.mapToDouble(x -> (x.doubleValue() > 0 && m > 0) ? (x.doubleValue() / m) * 100.0 : 0.0).boxed()
-						.collect(Collectors.toList());
-			}
-		}
+		final DashboardSummary summary = collection != null ? m_DashboardService.getSummary(collection)
+				: DashboardSummary.empty();
 
 		model.addAttribute("monthSelection", monthList);
 		model.addAttribute("homeForm", homeForm);
-		model.addAttribute("amountLastMonth", Double.valueOf(lastMonth));
-		model.addAttribute("amountCurrentMonth", Double.valueOf(currentMonth));
-		model.addAttribute("amountCurrentWeek", Double.valueOf(currentWeek));
-		model.addAttribute("percentOfLastMonth", Double.valueOf(percentOfLastMonth));
-		model.addAttribute("weeksList", weeksList);
+		model.addAttribute("amountLastMonth", Double.valueOf(summary.getLastMonth()));
+		model.addAttribute("amountCurrentMonth", Double.valueOf(summary.getCurrentMonth()));
+		model.addAttribute("amountCurrentWeek", Double.valueOf(summary.getCurrentWeek()));
+		model.addAttribute("percentOfLastMonth", Double.valueOf(summary.getPercentOfLastMonth()));
+		model.addAttribute("weeksList", summary.getWeeksList());
 
 		return "home";
 	}
@@ -215,9 +224,40 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 			Model model, Authentication auth, Locale requestLocale) {
 		final ExpensesRequest request = ExpensesRequest.forMonth(month, year);
 		loadData(request, model, auth, requestLocale);
+
+		String collection = m_FirestoreService.extractCollection(auth);
+		if (collection != null) {
+			m_MonthPrefetcher.prefetchAround(request, collection, auth.getName());
+		}
 		return "email";
 	}
 
+	/**
+	 * Shows the expenses matching the search text over all years
+	 * 
+	 * @param text  The entered search text
+	 * @param model Model for web view
+	 * @param auth  Auth for choosing the collection
+	 * @return Template to show
+	 */
+	@GetMapping("/search")
+	public String showSearch(@RequestParam(name = "q", required = false) String text, Model model,
+			Authentication auth) {
+
+		List<Expense> expenses = Collections.emptyList();
+
+		String collection = m_FirestoreService.extractCollection(auth);
+		if (collection != null && StringUtils.hasText(text)) {
+			expenses = m_SearchService.search(text, collection, SEARCH_LIMIT);
+		}
+
+		model.addAttribute("searchText", text);
+		model.addAttribute("expenses", expenses);
+		model.addAttribute("sum", Double.valueOf(expenses.stream().mapToDouble(Expense::getAmountDouble).sum()));
+		model.addAttribute("currency", "€");
+		return "search";
+	}
+
 	/**
 	 * Edit the expense with the given id and forward to the edit page
 	 * 
@@ -413,6 +453,7 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 			cityMapping = Collections.emptyMap();
 		}
 
+		long begin = StageTimings.begin();
 		final Map<Budget, Set<Expense>> budgetExpenses = m_BudgetService.createFromCities(auth, cityMapping.values());
 		final Map<Budget, Double> budgetSum = budgetExpenses.entrySet().stream().collect(Collectors
 				.toMap(x -> x.getKey(), y -> y.getValue().stream().mapToDouble(Expense::getAmountDouble).sum()));
@@ -427,9 +468,12 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 		final List<BudgetInfo> budgetInfo = budgetSum.entrySet().stream().filter(x -> x.getValue().doubleValue() > 0)
 				.map(x -> new BudgetInfo(x.getKey(), x.getValue())).sorted().collect(Collectors.toList());
 		model.addAttribute("budgets", budgetInfo);
+		StageTimings.end(Stage.BUDGET, begin);
 
+		begin = StageTimings.begin();
 		final MailInfo mailInfo = new MailInfo(request.getBeginDate(), request.getEndDate());
 		cityMapping.values().stream().forEach(x -> mailInfo.addCityInfo(x));
+		StageTimings.end(Stage.AGGREGATION, begin);
 
 		model.addAttribute("beginDate", request.getBeginDate());
 		model.addAttribute("endDate", request.getEndDate());
@@ -477,8 +521,11 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 
 		final Map<String, CityInfo> cityMapping = new HashMap<>();
 
-		Collection<Expense> expenses = m_FirestoreService.findBetween(request, collection);
+		Collection<Expense> expenses = m_ReportCache.get(request, collection);
 
+		final long begin = StageTimings.begin();
+		final ReportAggregationEvent event = new ReportAggregationEvent();
+		event.begin();
 		for (Expense expense : expenses) {
 			String city = expense.getCity();
 
@@ -492,6 +539,13 @@ public class ExpensesWebResource implements WebMvcConfigurer {
 
 			cityInfo.addExpense(expense);
 		}
+		StageTimings.end(Stage.AGGREGATION, begin);
+		if (event.shouldCommit()) {
+			event.collection = collection;
+			event.expenses = expenses.size();
+			event.cities = cityMapping.size();
+			event.commit();
+		}
 		return cityMapping;
 	}
 }
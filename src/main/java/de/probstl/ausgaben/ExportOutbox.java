@@ -0,0 +1,245 @@
+package de.probstl.ausgaben;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Expenses waiting for the export to AWS (transactional outbox). An entry is
+ * written in the same batch as the expense itself, so an expense is exported
+ * if and only if it was stored. Expenses of a batch request are written by a
+ * bulk writer without this guarantee, see {@link ExpenseBatchWriter} for how
+ * the outbox is repaired afterwards. The entries are sent and removed by the
+ * export dispatcher, entries that failed too often are moved to a dead letter
+ * collection.
+ */
+@Component
+public class ExportOutbox {
+
+	/** The collection of the waiting entries */
+	public static final String COLLECTION = "outbox";
+
+	/** The collection of the entries that could not be exported */
+	public static final String DEAD_LETTER_COLLECTION = "outbox-dead";
+
+	/** Field with the collection of the expense */
+	private static final String FIELD_COLLECTION = "collection";
+
+	/** Field with the number of failed attempts */
+	private static final String FIELD_ATTEMPTS = "attempts";
+
+	/** Field with the earliest time of the next attempt */
+	private static final String FIELD_NEXT_ATTEMPT = "nextAttemptAt";
+
+	/** Field with the timestamp of the expense */
+	private static final String FIELD_TIMESTAMP = "timestamp";
+
+	/** Field with the reason of the last failure */
+	private static final String FIELD_LAST_ERROR = "lastError";
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ExportOutbox.class);
+
+	/**
+	 * An expense waiting for the export
+	 */
+	public static final class Entry {
+
+		/** The collection of the expense */
+		private final String m_Collection;
+
+		/** The expense, its id is the id of the entry */
+		private final Expense m_Expense;
+
+		/** Number of failed attempts */
+		private final int m_Attempts;
+
+		/**
+		 * Constructor
+		 *
+		 * @param collection The collection of the expense
+		 * @param expense    The expense
+		 * @param attempts   Number of failed attempts
+		 */
+		public Entry(String collection, Expense expense, int attempts) {
+			m_Collection = collection;
+			m_Expense = expense;
+			m_Attempts = attempts;
+		}
+
+		/**
+		 * @return the collection of the expense
+		 */
+		public String getCollection() {
+			return m_Collection;
+		}
+
+		/**
+		 * @return the expense, its id is the id of the entry
+		 */
+		public Expense getExpense() {
+			return m_Expense;
+		}
+
+		/**
+		 * @return the number of failed attempts
+		 */
+		public int getAttempts() {
+			return m_Attempts;
+		}
+	}
+
+	/** The service holding the connection */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/**
+	 * Create the fields of a new entry
+	 *
+	 * @param collection The collection of the expense
+	 * @param document   The fields of the expense document
+	 * @return The fields of the entry
+	 */
+	static Map<String, Object> toEntry(@Nonnull String collection, Map<String, Object> document) {
+		Map<String, Object> entry = new HashMap<>(document);
+		entry.put(FIELD_COLLECTION, collection);
+		entry.put(FIELD_ATTEMPTS, Integer.valueOf(0));
+		entry.put(FIELD_NEXT_ATTEMPT, new Date());
+		return entry;
+	}
+
+	/**
+	 * Find the entries whose next attempt is due, oldest first
+	 *
+	 * @param limit Maximum number of entries
+	 * @return The entries, empty if there was an error
+	 */
+	public List<Entry> findDue(int limit) {
+		final List<DocumentSnapshot> documents;
+		try {
+			documents = new ArrayList<>(getFirestore().collection(COLLECTION)
+					.whereLessThanOrEqualTo(FIELD_NEXT_ATTEMPT, new Date()).orderBy(FIELD_NEXT_ATTEMPT).limit(limit)
+					.get().get().getDocuments());
+		} catch (InterruptedException e) {
+			LOG.warn("waiting for result interrupted!");
+			Thread.currentThread().interrupt();
+			return Collections.emptyList();
+		} catch (ExecutionException e) {
+			LOG.error("could not retrieve outbox from firestore!", e.getCause());
+			return Collections.emptyList();
+		}
+
+		final List<Entry> toReturn = new ArrayList<>(documents.size());
+		for (DocumentSnapshot document : documents) {
+			// the stored timestamp is exported, not the one converted for display
+			Expense expense = m_FirestoreService.createFromDocument(document);
+			expense.setTimestamp(document.getDate(FIELD_TIMESTAMP));
+
+			Long attempts = document.getLong(FIELD_ATTEMPTS);
+			toReturn.add(new Entry(document.getString(FIELD_COLLECTION), expense,
+					attempts == null ? 0 : attempts.intValue()));
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Remove the exported entries
+	 *
+	 * @param entries The exported entries
+	 * @return <code>false</code> if the entries could not be removed
+	 */
+	public boolean delivered(Collection<Entry> entries) {
+		final WriteBatch batch = getFirestore().batch();
+		entries.forEach(x -> batch.delete(getFirestore().collection(COLLECTION).document(x.getExpense().getId())));
+		return commit(batch, "removing exported entries");
+	}
+
+	/**
+	 * Schedule another attempt for the entries
+	 *
+	 * @param entries     The entries that could not be exported
+	 * @param nextAttempt Earliest time of the next attempt by entry
+	 * @param error       The reason of the failure
+	 * @return <code>false</code> if the next attempt could not be recorded
+	 */
+	public boolean retry(Collection<Entry> entries, Function<Entry, Date> nextAttempt, String error) {
+		final WriteBatch batch = getFirestore().batch();
+		for (Entry entry : entries) {
+			Map<String, Object> fields = new HashMap<>();
+			fields.put(FIELD_ATTEMPTS, Integer.valueOf(entry.getAttempts() + 1));
+			fields.put(FIELD_NEXT_ATTEMPT, nextAttempt.apply(entry));
+			fields.put(FIELD_LAST_ERROR, error);
+			batch.update(getFirestore().collection(COLLECTION).document(entry.getExpense().getId()), fields);
+		}
+		return commit(batch, "scheduling retries");
+	}
+
+	/**
+	 * Move the entries to the dead letter collection
+	 *
+	 * @param entries The entries that will not be tried again
+	 * @param error   The reason of the last failure
+	 * @return <code>false</code> if the entries could not be moved
+	 */
+	public boolean deadLetter(Collection<Entry> entries, String error) {
+		final WriteBatch batch = getFirestore().batch();
+		for (Entry entry : entries) {
+			final String id = entry.getExpense().getId();
+			Map<String, Object> fields = toEntry(entry.getCollection(),
+					FirestoreService.toDocument(entry.getExpense()));
+			fields.put(FIELD_ATTEMPTS, Integer.valueOf(entry.getAttempts() + 1));
+			fields.put(FIELD_LAST_ERROR, error);
+			batch.set(getFirestore().collection(DEAD_LETTER_COLLECTION).document(id), fields);
+			batch.delete(getFirestore().collection(COLLECTION).document(id));
+			LOG.warn("Export of expense {} in collection {} given up: {}", id, entry.getCollection(), error);
+		}
+		return commit(batch, "moving entries to dead letters");
+	}
+
+	/**
+	 * Commit the batch and log a failure. A failed update is repeated with the
+	 * next dispatch because the entries are still due.
+	 *
+	 * @param batch  The batch
+	 * @param action Description for the log
+	 * @return <code>true</code> if the batch was committed
+	 */
+	private boolean commit(WriteBatch batch, String action) {
+		try {
+			batch.commit().get();
+			return true;
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupt while {}", action);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Error while " + action, e.getCause());
+		}
+		return false;
+	}
+
+	/**
+	 * @return the connection
+	 */
+	private Firestore getFirestore() {
+		return m_FirestoreService.getFirestoreService();
+	}
+}
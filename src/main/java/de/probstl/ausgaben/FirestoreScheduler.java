@@ -0,0 +1,319 @@
+package de.probstl.ausgaben;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits the Firestore calls in flight and decides which waiting call is next.
+ * Interactive calls overtake waiting batch calls. A batch call that waited
+ * longer than the aging limit is served before the interactive ones, so batch
+ * work is slowed down but never starved.
+ * <p>
+ * The priority is taken from the calling thread, see
+ * {@link #runWith(Priority, Runnable)}. Threads without a priority are
+ * interactive. A waiting batch call may be raised to interactive, e.g. when a
+ * user waits for its shared result.
+ */
+public final class FirestoreScheduler {
+
+	/**
+	 * Priority of a Firestore call
+	 */
+	public enum Priority {
+
+		/** A user waits for the result */
+		INTERACTIVE,
+
+		/** Exports, refreshes and prefetches */
+		BATCH
+	}
+
+	/** The priority of the calls of the current thread */
+	private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * A call waiting for its turn
+	 */
+	private final class Waiter {
+
+		/** Signalled when the call may start */
+		private final Condition m_Turn = m_Lock.newCondition();
+
+		/** Time of the arrival from {@link System#nanoTime()} */
+		private final long m_Arrival = System.nanoTime();
+
+		/** The current priority of the call */
+		private final Supplier<Priority> m_Priority;
+
+		/** Set when the call may start */
+		private boolean m_Granted;
+
+		/**
+		 * Constructor
+		 *
+		 * @param priority The current priority of the call
+		 */
+		Waiter(Supplier<Priority> priority) {
+			m_Priority = priority;
+		}
+	}
+
+	/** Guards the counters and the queues */
+	private final ReentrantLock m_Lock = new ReentrantLock();
+
+	/** Waiting interactive calls */
+	private final Deque<Waiter> m_Interactive = new ArrayDeque<>();
+
+	/** Waiting batch calls */
+	private final Deque<Waiter> m_Batch = new ArrayDeque<>();
+
+	/** Maximum number of calls in flight */
+	private final int m_MaxInFlight;
+
+	/** Time after that a waiting batch call is served first */
+	private final long m_AgingNanos;
+
+	/** Number of calls in flight */
+	private int m_InFlight;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxInFlight Maximum number of calls in flight
+	 * @param agingMillis Time after that a waiting batch call is served first
+	 */
+	FirestoreScheduler(int maxInFlight, long agingMillis) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("at least one call must be allowed");
+		}
+		m_MaxInFlight = maxInFlight;
+		m_AgingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+	}
+
+	/**
+	 * @return The priority of the calls of the current thread
+	 */
+	public static Priority current() {
+		Priority priority = CURRENT.get();
+		return priority == null ? Priority.INTERACTIVE : priority;
+	}
+
+	/**
+	 * Set the priority of the calls of the current thread until
+	 * {@link #clear()}. Used where the end of the work is not in the same
+	 * method, e.g. by interceptors.
+	 *
+	 * @param priority The priority
+	 */
+	public static void set(Priority priority) {
+		CURRENT.set(priority);
+	}
+
+	/**
+	 * Remove the priority of the current thread
+	 */
+	public static void clear() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Run the task with the given priority of its Firestore calls
+	 *
+	 * @param priority The priority
+	 * @param task     The task
+	 */
+	public static void runWith(Priority priority, Runnable task) {
+		callWith(priority, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Call the supplier with the given priority of its Firestore calls
+	 *
+	 * @param <T>      The type of the result
+	 * @param priority The priority
+	 * @param supplier The supplier
+	 * @return The result of the supplier
+	 */
+	public static <T> T callWith(Priority priority, Supplier<T> supplier) {
+		final Priority previous = CURRENT.get();
+		CURRENT.set(priority);
+		try {
+			return supplier.get();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Wait for the turn of a call with the priority of the current thread. Every
+	 * successful call must be followed by {@link #release()}.
+	 *
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	void acquire() throws InterruptedException {
+		acquire(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Start a call at once if the limit is not reached and nobody is waiting.
+	 * Every successful call must be followed by {@link #release()}.
+	 *
+	 * @return <code>true</code> if the call may start
+	 */
+	boolean tryAcquire() {
+		m_Lock.lock();
+		try {
+			if (m_InFlight < m_MaxInFlight && m_Interactive.isEmpty() && m_Batch.isEmpty()) {
+				m_InFlight++;
+				return true;
+			}
+			return false;
+		} finally {
+			m_Lock.unlock();
+		}
+	}
+
+	/**
+	 * Wait for the turn of a call with the priority of the current thread. Every
+	 * successful call must be followed by {@link #release()}.
+	 *
+	 * @param timeoutNanos Maximum wait in nanoseconds
+	 * @return <code>false</code> if the call did not get its turn in time
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	boolean acquire(long timeoutNanos) throws InterruptedException {
+		final Priority priority = current();
+		return acquire(timeoutNanos, () -> priority);
+	}
+
+	/**
+	 * Wait for the turn of a call whose priority may rise while it waits. Every
+	 * successful call must be followed by {@link #release()}.
+	 *
+	 * @param timeoutNanos Maximum wait in nanoseconds
+	 * @param priority     The current priority of the call
+	 * @return <code>false</code> if the call did not get its turn in time
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	boolean acquire(long timeoutNanos, Supplier<Priority> priority) throws InterruptedException {
+		final Deque<Waiter> queue = priority.get() == Priority.BATCH ? m_Batch : m_Interactive;
+
+		m_Lock.lock();
+		try {
+			if (m_InFlight < m_MaxInFlight && m_Interactive.isEmpty() && m_Batch.isEmpty()) {
+				m_InFlight++;
+				return true;
+			}
+
+			final Waiter waiter = new Waiter(priority);
+			queue.addLast(waiter);
+			try {
+				long remaining = timeoutNanos;
+				while (!waiter.m_Granted) {
+					if (remaining <= 0) {
+						queue.remove(waiter);
+						return false;
+					}
+					remaining = waiter.m_Turn.awaitNanos(remaining);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				if (waiter.m_Granted) {
+					releaseLocked(); // granted while interrupted, pass the turn on
+				} else {
+					queue.remove(waiter);
+				}
+				throw e;
+			}
+		} finally {
+			m_Lock.unlock();
+		}
+	}
+
+	/**
+	 * End a call and start the next waiting one
+	 */
+	void release() {
+		m_Lock.lock();
+		try {
+			releaseLocked();
+		} finally {
+			m_Lock.unlock();
+		}
+	}
+
+	/**
+	 * End a call, the lock must be held
+	 */
+	private void releaseLocked() {
+		m_InFlight--;
+		while (m_InFlight < m_MaxInFlight) {
+			final Waiter next = next();
+			if (next == null) {
+				return;
+			}
+			next.m_Granted = true;
+			m_InFlight++;
+			next.m_Turn.signal();
+		}
+	}
+
+	/**
+	 * @return The next waiting call or <code>null</code> if none is waiting
+	 */
+	private Waiter next() {
+		final Waiter oldestBatch = m_Batch.peekFirst();
+		if (oldestBatch != null && System.nanoTime() - oldestBatch.m_Arrival >= m_AgingNanos) {
+			return m_Batch.pollFirst();
+		}
+
+		// a raised batch call is served in the order of its arrival among the interactive ones
+		final Waiter interactive = m_Interactive.peekFirst();
+		for (Waiter raised : m_Batch) {
+			if (interactive != null && raised.m_Arrival - interactive.m_Arrival >= 0) {
+				break;
+			}
+			if (raised.m_Priority.get() == Priority.INTERACTIVE) {
+				m_Batch.remove(raised);
+				return raised;
+			}
+		}
+		return interactive != null ? m_Interactive.pollFirst() : m_Batch.pollFirst();
+	}
+
+	/**
+	 * @return the number of calls in flight
+	 */
+	int getInFlight() {
+		m_Lock.lock();
+		try {
+			return m_InFlight;
+		} finally {
+			m_Lock.unlock();
+		}
+	}
+
+	/**
+	 * @param priority The priority
+	 * @return the number of waiting calls with the priority
+	 */
+	int getWaiting(Priority priority) {
+		m_Lock.lock();
+		try {
+			return priority == Priority.BATCH ? m_Batch.size() : m_Interactive.size();
+		} finally {
+			m_Lock.unlock();
+		}
+	}
+}
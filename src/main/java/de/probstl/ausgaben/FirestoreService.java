@@ -10,35 +10,72 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
 import com.google.cloud.firestore.WriteResult;
-
+import com.google.common.util.concurrent.MoreExecutors;
+
+import de.probstl.ausgaben.OperationMetrics.Operation;
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.cache.ExpenseCache;
+import de.probstl.ausgaben.data.BulkEditRequest;
+import de.probstl.ausgaben.data.BulkItemResult;
+import de.probstl.ausgaben.data.BulkResult;
 import de.probstl.ausgaben.data.Expense;
 import de.probstl.ausgaben.data.ExpensesRequest;
+import de.probstl.ausgaben.timing.Stage;
+import de.probstl.ausgaben.timing.StageTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 
 /**
  * Service that caches the connection to the Google service
@@ -67,12 +104,394 @@ public class FirestoreService {
 	/** Constant for the field budget */
 	private static final String FIELD_BUDGET = "budget";
 
+	/** Maximum number of writes in one batch allowed by Firestore */
+	private static final int MAX_BATCH_SIZE = 500;
+
+	/**
+	 * Snapshot of a query with the stamp of the expense cache taken before the
+	 * query was issued
+	 */
+	private static final class StampedSnapshot {
+
+		/** The snapshot or <code>null</code> if there was an error */
+		private final QuerySnapshot m_Snapshot;
+
+		/** The stamp of the collection */
+		private final long m_Stamp;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param snapshot The snapshot or <code>null</code>
+		 * @param stamp    The stamp of the collection
+		 */
+		StampedSnapshot(QuerySnapshot snapshot, long stamp) {
+			m_Snapshot = snapshot;
+			m_Stamp = stamp;
+		}
+	}
+
 	/** The reference holds the connection */
 	private final AtomicReference<Firestore> m_Ref = new AtomicReference<>();
 
 	/** Logger for this class */
 	private static final Logger LOG = LoggerFactory.getLogger(FirestoreService.class);
 
+	/** Publisher for notifying indexes and caches about modified expenses */
+	@Autowired
+	private ApplicationEventPublisher m_EventPublisher;
+
+	/** Registry for the query metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** Expenses read by range queries for opening them without another read */
+	@Autowired
+	private ExpenseCache m_ExpenseCache;
+
+	/** Receives the slow calls */
+	@Autowired
+	private SlowQueryLog m_SlowQueryLog;
+
+	/** Counts the billed documents and limits the reads of a user */
+	@Autowired
+	private DocumentAccounting m_Accounting;
+
+	/** Maximum number of writes in flight when creating many expenses */
+	@Value("${expenses.batch.max-in-flight:50}")
+	private int m_MaxBatchInFlight;
+
+	/** Window in milliseconds for collecting concurrent writes into one batch */
+	@Value("${expenses.write.window-ms:5}")
+	private long m_WriteWindowMillis;
+
+	/** Maximum number of concurrent writes committed in one batch */
+	@Value("${expenses.write.max-batch-size:100}")
+	private int m_MaxWriteBatchSize;
+
+	/** Maximum number of reads and writes in flight */
+	@Value("${expenses.firestore.max-in-flight:32}")
+	private int m_MaxInFlight;
+
+	/** Time after that a waiting batch call is served before interactive ones */
+	@Value("${expenses.firestore.batch-aging:PT2S}")
+	private Duration m_BatchAging;
+
+	/** Time a call may take outside of a request, e.g. in background jobs */
+	@Value("${expenses.firestore.timeout:PT30S}")
+	private Duration m_Timeout;
+
+	/** Issue a second read when the first one is slower than usual */
+	@Value("${expenses.firestore.hedge.enabled:true}")
+	private boolean m_HedgeEnabled;
+
+	/** The latency percentile after that the second read is issued */
+	@Value("${expenses.firestore.hedge.percentile:0.95}")
+	private double m_HedgePercentile;
+
+	/** Commits concurrent single writes together */
+	private WriteCoalescer<Consumer<WriteBatch>> m_WriteCoalescer;
+
+	/** Lets interactive calls overtake batch calls */
+	private FirestoreScheduler m_Scheduler;
+
+	/** Shares the result of identical queries running at the same time */
+	private SingleFlight<QueryKey, StampedSnapshot> m_SingleFlight;
+
+	/** Latency, documents and bytes per operation and collection */
+	private OperationMetrics m_Metrics;
+
+	/** Recent latencies of reading a single expense */
+	private LatencyEstimator m_GetLatency;
+
+	/**
+	 * Recent latencies of range queries by the class of their span, see
+	 * {@link #spanClass(QueryKey)}. A year takes longer than a day and would
+	 * otherwise hedge every short range.
+	 */
+	private final Map<Integer, LatencyEstimator> m_RangeLatency = new ConcurrentHashMap<>();
+
+	/** Calls given up because of the deadline */
+	private Counter m_DeadlineExceeded;
+
+	/** Second reads issued for slow reads */
+	private Counter m_HedgeIssued;
+
+	/** Reads skipped because the user used up the daily read budget */
+	private Counter m_BudgetRejected;
+
+	/**
+	 * Create the metrics and the write coalescer
+	 */
+	@PostConstruct
+	public void init() {
+		m_SingleFlight = new SingleFlight<>(m_MeterRegistry.counter("firestore.query.executed"),
+				m_MeterRegistry.counter("firestore.query.coalesced"));
+		m_MeterRegistry.gauge("firestore.query.inflight", m_SingleFlight, SingleFlight::size);
+		m_Metrics = new OperationMetrics(m_MeterRegistry, m_SlowQueryLog);
+
+		m_Scheduler = new FirestoreScheduler(m_MaxInFlight, m_BatchAging.toMillis());
+		m_MeterRegistry.gauge("firestore.scheduler.inflight", m_Scheduler, FirestoreScheduler::getInFlight);
+		for (FirestoreScheduler.Priority priority : FirestoreScheduler.Priority.values()) {
+			m_MeterRegistry.gauge("firestore.scheduler.waiting",
+					Tags.of("priority", priority.name().toLowerCase(Locale.ROOT)), m_Scheduler,
+					x -> x.getWaiting(priority));
+		}
+
+		m_GetLatency = new LatencyEstimator(256, m_HedgePercentile);
+		m_DeadlineExceeded = m_MeterRegistry.counter("firestore.deadline.exceeded");
+		m_HedgeIssued = m_MeterRegistry.counter("firestore.hedge.issued");
+		m_BudgetRejected = m_MeterRegistry.counter("firestore.read.budget.rejected");
+
+		m_WriteCoalescer = new WriteCoalescer<>(writes -> {
+			final WriteBatch batch = getFirestoreService().batch();
+			writes.forEach(x -> x.accept(batch));
+			return toCompletable(batch.commit()).thenApply(x -> null);
+		}, m_WriteWindowMillis, m_MaxWriteBatchSize, m_MeterRegistry.summary("firestore.write.batch.size"));
+	}
+
+	/**
+	 * Commit the writes waiting for their batch
+	 */
+	@PreDestroy
+	public void shutdown() {
+		m_WriteCoalescer.shutdown();
+	}
+
+	/**
+	 * Adapt a Firestore future
+	 * 
+	 * @param <T>    The type of the result
+	 * @param future The Firestore future
+	 * @return Future completed with the result of the Firestore future
+	 */
+	static <T> CompletableFuture<T> toCompletable(ApiFuture<T> future) {
+		final CompletableFuture<T> toReturn = new CompletableFuture<>();
+		ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+			@Override
+			public void onSuccess(T result) {
+				toReturn.complete(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				toReturn.completeExceptionally(t);
+			}
+		}, MoreExecutors.directExecutor());
+		return toReturn;
+	}
+
+	/**
+	 * Complete with the first successful result of two futures
+	 * 
+	 * @param <T> The type of the result
+	 * @param a   The first future
+	 * @param b   The second future
+	 * @return Future completed with the first result, completed exceptionally
+	 *         only if both futures failed
+	 */
+	static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> a, CompletableFuture<T> b) {
+		final CompletableFuture<T> toReturn = new CompletableFuture<>();
+		final AtomicInteger failed = new AtomicInteger();
+		final BiConsumer<T, Throwable> complete = (result, error) -> {
+			if (error == null) {
+				toReturn.complete(result);
+			} else if (failed.incrementAndGet() == 2) {
+				toReturn.completeExceptionally(error);
+			}
+		};
+		a.whenComplete(complete);
+		b.whenComplete(complete);
+		return toReturn;
+	}
+
+	/**
+	 * Issue a call when the scheduler allows it and wait for the result until the
+	 * deadline of the request
+	 * 
+	 * @param <T>  The type of the result
+	 * @param call Issues the call
+	 * @return The result
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @throws ExecutionException   if the call failed or the deadline passed
+	 */
+	private <T> T scheduled(Supplier<ApiFuture<T>> call) throws InterruptedException, ExecutionException {
+		return scheduled(call, null);
+	}
+
+	/**
+	 * Issue a call when the scheduler allows it and wait for the result until the
+	 * deadline of the request. An idempotent read is issued a second time when
+	 * the first one is slower than the latency percentile, the slower one is
+	 * cancelled.
+	 * 
+	 * @param <T>     The type of the result
+	 * @param call    Issues the call, must be idempotent if hedged
+	 * @param latency Recent latencies of the call, <code>null</code> for no
+	 *                second call
+	 * @return The result
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @throws ExecutionException   if the call failed or the deadline passed
+	 */
+	private <T> T scheduled(Supplier<ApiFuture<T>> call, LatencyEstimator latency)
+			throws InterruptedException, ExecutionException {
+		final long deadline = System.nanoTime() + Deadline.remainingNanos(m_Timeout);
+		final FirestoreScheduler.Priority priority = FirestoreScheduler.current();
+		return scheduled(call, latency, () -> deadline, () -> priority);
+	}
+
+	/**
+	 * Issue a call like {@link #scheduled(Supplier, LatencyEstimator)} with a
+	 * deadline and a priority that may rise while waiting, e.g. by callers
+	 * sharing the result. Only interactive calls are hedged, batch calls rather
+	 * wait than take a second slot.
+	 * 
+	 * @param <T>      The type of the result
+	 * @param call     Issues the call, must be idempotent if hedged
+	 * @param latency  Recent latencies of the call, <code>null</code> for no
+	 *                 second call
+	 * @param deadline The current deadline from {@link System#nanoTime()}
+	 * @param priority The current priority of the call
+	 * @return The result
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @throws ExecutionException   if the call failed or the deadline passed
+	 */
+	private <T> T scheduled(Supplier<ApiFuture<T>> call, LatencyEstimator latency, LongSupplier deadline,
+			Supplier<FirestoreScheduler.Priority> priority) throws InterruptedException, ExecutionException {
+		while (!m_Scheduler.acquire(deadline.getAsLong() - System.nanoTime(), priority)) {
+			if (deadline.getAsLong() - System.nanoTime() <= 0) {
+				m_DeadlineExceeded.increment();
+				throw new ExecutionException(new TimeoutException("no turn for the call before the deadline"));
+			}
+		}
+
+		try {
+			final long start = System.nanoTime();
+			final ApiFuture<T> first = call.get();
+			final boolean interactive = priority.get() == FirestoreScheduler.Priority.INTERACTIVE;
+			final long hedgeAfter = latency != null && m_HedgeEnabled && interactive ? latency.estimate() : -1;
+
+			final T result = hedgeAfter < 0 || start + hedgeAfter - deadline.getAsLong() >= 0
+					? await(first, deadline)
+					: hedged(call, first, hedgeAfter, deadline);
+
+			// a lower bound for the first call if the second one was faster
+			if (latency != null) {
+				latency.record(System.nanoTime() - start);
+			}
+			return result;
+		} finally {
+			m_Scheduler.release();
+		}
+	}
+
+	/**
+	 * Wait for the first call and issue a second one if the first is slow. The
+	 * second call needs a free slot of the scheduler, so hedging never pushes
+	 * other calls back.
+	 * 
+	 * @param <T>        The type of the result
+	 * @param call       Issues the call
+	 * @param first      The first call
+	 * @param hedgeAfter Nanoseconds after that the second call is issued
+	 * @param deadline   The current deadline from {@link System#nanoTime()}
+	 * @return The first successful result
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @throws ExecutionException   if the calls failed or the deadline passed
+	 */
+	private <T> T hedged(Supplier<ApiFuture<T>> call, ApiFuture<T> first, long hedgeAfter, LongSupplier deadline)
+			throws InterruptedException, ExecutionException {
+		try {
+			return first.get(hedgeAfter, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// slower than usual, try a second time
+		}
+
+		if (!m_Scheduler.tryAcquire()) {
+			return await(first, deadline);
+		}
+
+		m_HedgeIssued.increment();
+		ApiFuture<T> second = null;
+		try {
+			second = call.get();
+			return await(firstSuccessful(toCompletable(first), toCompletable(second)), deadline);
+		} finally {
+			first.cancel(true);
+			if (second != null) {
+				second.cancel(true);
+			}
+			m_Scheduler.release();
+		}
+	}
+
+	/**
+	 * Wait for the result of a call until the deadline, the call is cancelled if
+	 * the deadline passes. The deadline is read again when it is reached, it may
+	 * have been extended meanwhile.
+	 * 
+	 * @param <T>      The type of the result
+	 * @param future   The call
+	 * @param deadline The current deadline from {@link System#nanoTime()}
+	 * @return The result
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 * @throws ExecutionException   if the call failed or the deadline passed
+	 */
+	private <T> T await(Future<T> future, LongSupplier deadline) throws InterruptedException, ExecutionException {
+		while (true) {
+			try {
+				return future.get(deadline.getAsLong() - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				if (deadline.getAsLong() - System.nanoTime() <= 0) {
+					future.cancel(true);
+					m_DeadlineExceeded.increment();
+					throw new ExecutionException("deadline of the call exceeded", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Classify a range query by the length of its span. The class grows by one
+	 * for each doubling of the days, so a month and a year are estimated apart.
+	 * 
+	 * @param key The normalized description of the query
+	 * @return The class of the span, 64 for a full scan
+	 */
+	static int spanClass(QueryKey key) {
+		if (key.getBegin() == null || key.getEnd() == null) {
+			return Long.SIZE;
+		}
+		final long days = TimeUnit.MILLISECONDS.toDays(key.getEnd().getTime() - key.getBegin().getTime());
+		return Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, days));
+	}
+
+	/**
+	 * @param key The normalized description of a range query
+	 * @return Recent latencies of range queries with a similar span
+	 */
+	LatencyEstimator getRangeLatency(QueryKey key) {
+		return m_RangeLatency.computeIfAbsent(Integer.valueOf(spanClass(key)),
+				x -> new LatencyEstimator(256, m_HedgePercentile));
+	}
+
+	/**
+	 * Check the daily read budget of the user of the current request
+	 * 
+	 * @param collection The collection to be read
+	 * @param what       Description of the skipped read for the log
+	 * @return <code>true</code> if the read must be skipped, the caller degrades
+	 *         to cached data or no data
+	 */
+	private boolean isBudgetExhausted(String collection, Object what) {
+		if (!m_Accounting.isBudgetExhausted()) {
+			return false;
+		}
+		m_BudgetRejected.increment();
+		LOG.warn("Daily read budget used up, {} in collection {} is not read", what, collection);
+		return true;
+	}
+
 	/**
 	 * Returns a existing or cached connection to the service
 	 * 
@@ -96,14 +515,16 @@ public class FirestoreService {
 	}
 
 	/**
-	 * Extract the used collection from the authentication
+	 * Extract the used collection from the authentication. Roles like the one of
+	 * the administrators are no collections.
 	 * 
 	 * @param auth The authenticated user
 	 * @return The name of the collection or <code>null</code> if there is no role
 	 *         associated
 	 */
 	public String extractCollection(Authentication auth) {
-		Optional<? extends GrantedAuthority> authority = auth.getAuthorities().stream().findFirst();
+		Optional<? extends GrantedAuthority> authority = auth.getAuthorities().stream()
+				.filter(x -> !x.getAuthority().startsWith(WebSecurityConfiguration.ROLE_PREFIX)).findFirst();
 		if (authority.isPresent()) {
 			String collection = authority.get().getAuthority();
 			LOG.info("Using collection {} for user {}", collection, auth.getName());
@@ -142,17 +563,24 @@ public class FirestoreService {
 		fields.put(FIELD_TIMESTAMP, expense.getTimestamp());
 
 		DocumentReference docRef = getFirestoreService().collection(collection).document(expense.getId());
-		ApiFuture<WriteResult> result = docRef.update(fields);
 
+		final long start = System.nanoTime();
 		try {
-			WriteResult writeResult = result.get();
+			WriteResult writeResult = scheduled(() -> docRef.update(fields));
+			m_Accounting.written(collection, 1);
 			LOG.info("Document {} created at {}", docRef.getId(), writeResult.getUpdateTime());
+			m_EventPublisher.publishEvent(new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, collection,
+					expense.getId(), expense, !fields.containsKey(FIELD_BUDGET)));
 			return true;
 		} catch (InterruptedException e) {
 			LOG.warn("Interrupt while updating expense {}", expense.getId());
 			Thread.currentThread().interrupt();
 		} catch (ExecutionException e) {
 			LOG.error("Error while updating expense", e.getCause());
+		} finally {
+			m_Metrics.record(Operation.UPDATE, collection, null, System.nanoTime() - start, 1, -1);
+			// also drop the expense if the result is unknown
+			m_ExpenseCache.invalidate(collection, expense.getId());
 		}
 
 		return false;
@@ -164,11 +592,90 @@ public class FirestoreService {
 	 * @param expense    The expense that must be saved
 	 * @param locale     The locale of the client to parse the amount
 	 * @param collection The collection in which the expense must be saved
+	 * @param export     Record the expense for the export to AWS
 	 * @return Returns <code>true</code> if the creation was successful otherwise
 	 *         <code>false</code>
 	 */
-	public boolean createExpense(Expense expense, Locale locale, @Nonnull String collection) {
+	public boolean createExpense(Expense expense, Locale locale, @Nonnull String collection, boolean export) {
+		try {
+			createExpenseAsync(expense, collection, export).get(Deadline.remainingNanos(m_Timeout),
+					TimeUnit.NANOSECONDS);
+			return true;
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupt while creating new expense");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("Error while creating expense", e.getCause());
+		} catch (TimeoutException e) {
+			m_DeadlineExceeded.increment();
+			LOG.warn("Creating expense not confirmed before the deadline, the write may still succeed");
+		}
 
+		return false;
+	}
+
+	/**
+	 * Create a new document without waiting for it. Writes arriving at the same
+	 * time are committed together in one batch. An expense for the export is
+	 * written to the {@link ExportOutbox} in the same batch.
+	 * 
+	 * @param expense    The expense with parsed amount that must be saved
+	 * @param collection The collection in which the expense must be saved
+	 * @param export     Record the expense for the export to AWS
+	 * @return The created expense with the id of the new document, completed
+	 *         exceptionally if the write failed
+	 */
+	public CompletableFuture<Expense> createExpenseAsync(Expense expense, @Nonnull String collection,
+			boolean export) {
+
+		DocumentReference docRef = getFirestoreService().collection(collection).document();
+		final Expense created = expense.withId(docRef.getId());
+		created.setTimestamp(expense.getTimestamp() == null ? new Date() : expense.getTimestamp());
+
+		final Map<String, Object> data = toDocument(created);
+		final DocumentReference outboxRef = export
+				? getFirestoreService().collection(ExportOutbox.COLLECTION).document(docRef.getId())
+				: null;
+
+		final DocumentAccounting.RequestUsage usage = m_Accounting.current();
+		final long start = System.nanoTime();
+		return m_WriteCoalescer.submit(batch -> {
+			batch.set(docRef, data);
+			if (outboxRef != null) {
+				batch.set(outboxRef, ExportOutbox.toEntry(collection, data));
+			}
+		}).whenComplete((x, e) -> m_Metrics.record(Operation.CREATE, collection, null, System.nanoTime() - start,
+				outboxRef == null ? 1 : 2, -1)).thenApply(x -> {
+			m_Accounting.written(usage, collection, 1);
+			if (outboxRef != null) {
+				m_Accounting.written(usage, ExportOutbox.COLLECTION, 1);
+			}
+			LOG.info("Document {} created", docRef.getId());
+			m_EventPublisher.publishEvent(
+					new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, collection, docRef.getId(), created));
+			return created;
+		});
+	}
+
+	/**
+	 * Open a writer for creating many expenses with bounded concurrency
+	 * 
+	 * @param collection The collection in which the expenses must be saved
+	 * @param export     Record the expenses for the export to AWS
+	 * @return The writer, {@link ExpenseBatchWriter#finish()} must be called
+	 */
+	public ExpenseBatchWriter openBatchWriter(@Nonnull String collection, boolean export) {
+		return new ExpenseBatchWriter(collection, getFirestoreService().collection(collection),
+				getFirestoreService().bulkWriter(), export, m_EventPublisher, m_Accounting, m_MaxBatchInFlight);
+	}
+
+	/**
+	 * Create the fields of a new document
+	 * 
+	 * @param expense The expense with parsed amount and timestamp
+	 * @return The fields of the document
+	 */
+	static Map<String, Object> toDocument(Expense expense) {
 		Map<String, Object> data = new HashMap<>();
 		data.put(FIELD_MESSAGE, expense.getMessage());
 		data.put(FIELD_SHOP, expense.getShop());
@@ -180,27 +687,8 @@ public class FirestoreService {
 			data.put(FIELD_BUDGET, expense.getBudget()); // new field with version 1.2.0
 		}
 
-		if (expense.getTimestamp() == null) {
-			data.put(FIELD_TIMESTAMP, new Date());
-		} else {
-			data.put(FIELD_TIMESTAMP, expense.getTimestamp());
-		}
-
-		DocumentReference docRef = getFirestoreService().collection(collection).document();
-		ApiFuture<WriteResult> result = docRef.set(data);
-
-		try {
-			WriteResult writeResult = result.get();
-			LOG.info("Document {} created at {}", docRef.getId(), writeResult.getUpdateTime());
-			return true;
-		} catch (InterruptedException e) {
-			LOG.warn("Interrupt while creating new expense");
-			Thread.currentThread().interrupt();
-		} catch (ExecutionException e) {
-			LOG.error("Error while creating expense", e.getCause());
-		}
-
-		return false;
+		data.put(FIELD_TIMESTAMP, expense.getTimestamp());
+		return data;
 	}
 
 	/**
@@ -211,17 +699,30 @@ public class FirestoreService {
 	 * @return An expense or null if the id was not found
 	 */
 	public Expense getExpense(@Nonnull String id, @Nonnull String collection) {
+		final Expense cached = m_ExpenseCache.get(collection, id);
+		if (cached != null) {
+			LOG.info("Expense with id {} in collection {} found in cache", id, collection);
+			return cached;
+		}
+
 		final Instant start = Instant.now();
 		Duration queryTime = null;
 
+		if (isBudgetExhausted(collection, "expense " + id)) {
+			return null;
+		}
+
 		LOG.info("Find expense with id {} in collection {}", id, collection);
 
 		DocumentSnapshot result = null;
+		final AtomicInteger issued = new AtomicInteger();
+		final long begin = StageTimings.begin();
 		try {
-			ApiFuture<DocumentSnapshot> future = getFirestoreService().collection(collection).document(id).get();
-
 			try {
-				result = future.get();
+				result = scheduled(() -> {
+					issued.incrementAndGet();
+					return getFirestoreService().collection(collection).document(id).get();
+				}, m_GetLatency);
 			} catch (InterruptedException e) {
 				LOG.warn("waiting for result interrupted!");
 				Thread.currentThread().interrupt();
@@ -230,9 +731,18 @@ public class FirestoreService {
 			}
 		} finally {
 			queryTime = Duration.between(start, Instant.now());
+			StageTimings.end(Stage.QUERY, begin);
 		}
 
-		if (result == null || !result.exists()) {
+		if (result != null) {
+			// a missing document and a hedged second read are also billed
+			m_Accounting.read(collection, issued.get());
+		}
+		final boolean found = result != null && result.exists();
+		m_Metrics.record(Operation.GET, collection, null, queryTime.toNanos(), found ? 1 : 0,
+				found ? OperationMetrics.estimateSize(result.getData()) : -1);
+
+		if (!found) {
 			LOG.warn("Expense with id {} not found!", id);
 			return null;
 		}
@@ -243,6 +753,206 @@ public class FirestoreService {
 		return createFromDocument(result);
 	}
 
+	/**
+	 * Load the expenses with the given ids with one read. Cached expenses are not
+	 * read again.
+	 * 
+	 * @param ids        The ids of the expenses
+	 * @param collection The collection from which the expenses are loaded
+	 * @return The found expenses by id, ids that were not found are missing. Is
+	 *         <code>null</code> if there was an error. If the daily read budget
+	 *         is used up only the cached expenses are returned.
+	 */
+	public Map<String, Expense> getExpenses(Collection<String> ids, @Nonnull String collection) {
+		return getExpenses(ids, collection, new ArrayList<>());
+	}
+
+	/**
+	 * Load the expenses with the given ids with one read. Cached expenses are not
+	 * read again.
+	 * 
+	 * @param ids        The ids of the expenses
+	 * @param collection The collection from which the expenses are loaded
+	 * @param unread     Receives the ids that were not read because the daily
+	 *                   read budget is used up
+	 * @return The found expenses by id, ids that were not found or not read are
+	 *         missing. Is <code>null</code> if there was an error.
+	 */
+	private Map<String, Expense> getExpenses(Collection<String> ids, @Nonnull String collection,
+			Collection<String> unread) {
+		final Map<String, Expense> toReturn = new LinkedHashMap<>();
+		final List<DocumentReference> toRead = new ArrayList<>();
+
+		for (String id : new LinkedHashSet<>(ids)) {
+			final Expense cached = m_ExpenseCache.get(collection, id);
+			if (cached != null) {
+				toReturn.put(id, cached);
+			} else {
+				toRead.add(getFirestoreService().collection(collection).document(id));
+			}
+		}
+
+		LOG.info("Find {} expenses in collection {}, {} found in cache", Integer.valueOf(ids.size()), collection,
+				Integer.valueOf(toReturn.size()));
+		if (toRead.isEmpty()) {
+			return toReturn;
+		}
+		if (isBudgetExhausted(collection, Integer.valueOf(toRead.size()) + " expenses")) {
+			toRead.forEach(x -> unread.add(x.getId()));
+			return toReturn;
+		}
+
+		final Instant start = Instant.now();
+		final List<DocumentSnapshot> documents;
+		try {
+			documents = scheduled(() -> getFirestoreService().getAll(toRead.toArray(new DocumentReference[0])));
+		} catch (InterruptedException e) {
+			LOG.warn("waiting for result interrupted!");
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOG.error("could not retrieve result from firestore!", e.getCause());
+			return null;
+		}
+
+		final Duration queryTime = Duration.between(start, Instant.now());
+		m_Accounting.read(collection, toRead.size());
+		int found = 0;
+		long bytes = 0;
+		for (DocumentSnapshot document : documents) {
+			if (document.exists()) {
+				found++;
+				bytes += OperationMetrics.estimateSize(document.getData());
+				toReturn.put(document.getId(), createFromDocument(document));
+			}
+		}
+		m_Metrics.record(Operation.GET, collection, null, queryTime.toNanos(), found, bytes);
+
+		LOG.info("{} documents loaded in {} ms", Integer.valueOf(toRead.size()), Long.valueOf(queryTime.toMillis()));
+		return toReturn;
+	}
+
+	/**
+	 * Apply the changes of the request to all selected expenses. The expenses are
+	 * written in batches, a failed batch does not affect the other ones. A batch
+	 * fails as a whole, e.g. if one of its expenses was deleted meanwhile, so the
+	 * expenses of a failed batch are written again one by one.
+	 * 
+	 * @param request    The selected expenses and the changes
+	 * @param collection The collection of the expenses
+	 * @return The outcome of every selected expense
+	 * @throws IllegalArgumentException if an id is <code>null</code>
+	 */
+	public BulkResult updateExpenses(BulkEditRequest request, @Nonnull String collection) {
+		if (request.getIds().contains(null)) {
+			throw new IllegalArgumentException("ids of a bulk edit must not be null");
+		}
+
+		final Map<String, Object> fields = new HashMap<>();
+		if (StringUtils.hasText(request.getBudget())) {
+			fields.put(FIELD_BUDGET, request.getBudget());
+		}
+		if (StringUtils.hasText(request.getCity())) {
+			fields.put(FIELD_CITY, request.getCity());
+		}
+		if (StringUtils.hasText(request.getPayment())) {
+			fields.put(FIELD_PAYMENT, request.getPayment());
+		}
+
+		final List<String> ids = new ArrayList<>(new LinkedHashSet<>(request.getIds()));
+		final Map<String, BulkItemResult> results = new LinkedHashMap<>();
+		final Set<String> unread = new HashSet<>();
+		final Map<String, Expense> existing = getExpenses(ids, collection, unread);
+
+		final List<Expense> toWrite = new ArrayList<>();
+		for (String id : ids) {
+			if (existing == null) {
+				results.put(id, new BulkItemResult(id, BulkItemResult.Status.FAILED, "expenses could not be read"));
+			} else if (unread.contains(id)) {
+				results.put(id, new BulkItemResult(id, BulkItemResult.Status.FAILED, "daily read budget used up"));
+			} else if (!existing.containsKey(id)) {
+				results.put(id, new BulkItemResult(id, BulkItemResult.Status.NOT_FOUND, null));
+			} else {
+				toWrite.add(existing.get(id));
+			}
+		}
+
+		for (int i = 0; i < toWrite.size(); i += MAX_BATCH_SIZE) {
+			final List<Expense> chunk = toWrite.subList(i, Math.min(i + MAX_BATCH_SIZE, toWrite.size()));
+			final Map<String, String> errors = new HashMap<>();
+			final String error = commitUpdates(chunk, fields, collection);
+			if (error != null) {
+				for (Expense expense : chunk) {
+					// after an interrupt or the deadline the others fail without trying
+					final boolean stopped = Thread.currentThread().isInterrupted()
+							|| Deadline.remainingNanos(m_Timeout) <= 0;
+					final String itemError = stopped ? error
+							: commitUpdates(Collections.singletonList(expense), fields, collection);
+					if (itemError != null) {
+						errors.put(expense.getId(), itemError);
+					}
+				}
+			}
+
+			for (Expense expense : chunk) {
+				final String id = expense.getId();
+				if (errors.containsKey(id)) {
+					results.put(id, new BulkItemResult(id, BulkItemResult.Status.FAILED, errors.get(id)));
+					continue;
+				}
+
+				results.put(id, new BulkItemResult(id, BulkItemResult.Status.OK, null));
+				final Expense updated = expense.withId(id);
+				if (fields.containsKey(FIELD_BUDGET)) {
+					updated.setBudget(request.getBudget());
+				}
+				if (fields.containsKey(FIELD_CITY)) {
+					updated.setCity(request.getCity());
+				}
+				if (fields.containsKey(FIELD_PAYMENT)) {
+					updated.setPayment(request.getPayment());
+				}
+				m_EventPublisher.publishEvent(
+						new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, collection, id, updated));
+			}
+		}
+
+		final BulkResult result = BulkResult.of(ids.stream().map(results::get).collect(Collectors.toList()));
+		LOG.info("Bulk update of {} expenses in collection {}: {} updated, {} failed", Integer.valueOf(ids.size()),
+				collection, Integer.valueOf(result.getSucceeded()), Integer.valueOf(result.getFailed()));
+		return result;
+	}
+
+	/**
+	 * Update the expenses in one batch
+	 * 
+	 * @param expenses   The expenses, at most {@link #MAX_BATCH_SIZE}
+	 * @param fields     The changed fields
+	 * @param collection The collection of the expenses
+	 * @return The reason of the failure or <code>null</code> if all were updated
+	 */
+	private String commitUpdates(List<Expense> expenses, Map<String, Object> fields, @Nonnull String collection) {
+		final WriteBatch batch = getFirestoreService().batch();
+		expenses.forEach(x -> batch.update(getFirestoreService().collection(collection).document(x.getId()), fields));
+
+		final long start = System.nanoTime();
+		try {
+			scheduled(batch::commit);
+			m_Accounting.written(collection, expenses.size());
+			return null;
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupt while updating {} expenses", Integer.valueOf(expenses.size()));
+			Thread.currentThread().interrupt();
+			return "interrupted";
+		} catch (ExecutionException e) {
+			LOG.error("Error while updating {} expenses", Integer.valueOf(expenses.size()), e.getCause());
+			return e.getCause().getMessage();
+		} finally {
+			m_Metrics.record(Operation.UPDATE, collection, null, System.nanoTime() - start, expenses.size(), -1);
+			expenses.forEach(x -> m_ExpenseCache.invalidate(collection, x.getId()));
+		}
+	}
+
 	/**
 	 * Create a expense object from the firestore data
 	 * 
@@ -283,36 +993,19 @@ public class FirestoreService {
 	 * @return Amount of expenses in the interval
 	 */
 	public double findAmount(ExpensesRequest request, @Nonnull String collection) {
-		final Instant start = Instant.now();
-		Duration queryTime = null;
-
 		LOG.info("Find amounts for {} in collection {}", request, collection);
 
-		QuerySnapshot queryResult = null;
-		try {
-			ApiFuture<QuerySnapshot> future = getFirestoreService().collection(collection).select(FIELD_AMOUNT)
-					.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, request.getBeginDate())
-					.whereLessThanOrEqualTo(FIELD_TIMESTAMP, request.getEndDate()).orderBy(FIELD_TIMESTAMP).get();
-
-			try {
-				queryResult = future.get();
-			} catch (InterruptedException e) {
-				LOG.warn("waiting for result interrupted!");
-				Thread.currentThread().interrupt();
-			} catch (ExecutionException e) {
-				LOG.error("could not retrieve result from firestore!", e.getCause());
-			}
-		} finally {
-			queryTime = Duration.between(start, Instant.now());
-		}
+		final Query query = getFirestoreService().collection(collection).select(FIELD_AMOUNT)
+				.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, request.getBeginDate())
+				.whereLessThanOrEqualTo(FIELD_TIMESTAMP, request.getEndDate()).orderBy(FIELD_TIMESTAMP);
+		final QuerySnapshot queryResult = executeQuery(
+				new QueryKey(collection, request.getBeginDate(), request.getEndDate(), FIELD_AMOUNT), query,
+				Operation.AMOUNT);
 
 		if (queryResult == null || queryResult.isEmpty()) {
 			return Double.valueOf(0);
 		}
 
-		LOG.info("Query executed in {} ms. Snapshot timestamp: {}", Long.valueOf(queryTime.toMillis()),
-				queryResult.getReadTime());
-
 		BigDecimal sum = new BigDecimal(0);
 		for (DocumentSnapshot document : queryResult.getDocuments()) {
 			Double amountValue = document.getDouble(FIELD_AMOUNT);
@@ -332,38 +1025,82 @@ public class FirestoreService {
 	 * @return Map of the week as key and the expense amount within the week
 	 */
 	public NavigableMap<Integer, Double> findByWeek(ExpensesRequest request, @Nonnull String collection) {
-		final Instant start = Instant.now();
-		Duration queryTime = null;
+		final List<NavigableMap<Integer, Double>> result = findByWeeks(Collections.singletonList(request),
+				collection);
+		if (result == null) {
+			return Collections.emptyNavigableMap();
+		}
+		return result.get(0);
+	}
 
-		LOG.info("Find expenses in week from {} in collection {}", request, collection);
+	/**
+	 * Find the amounts by week for several intervals at once. Adjacent or
+	 * overlapping intervals are read with a single query selecting amount and
+	 * timestamp, the documents are split into the requested intervals afterwards.
+	 * 
+	 * @param requests   The time intervals
+	 * @param collection The collection
+	 * @return For each request the map of the week as key and the expense amount
+	 *         within the week in the same order as the requests or
+	 *         <code>null</code> if a query failed
+	 */
+	public List<NavigableMap<Integer, Double>> findByWeeks(List<ExpensesRequest> requests,
+			@Nonnull String collection) {
 
-		QuerySnapshot queryResult = null;
-		try {
-			ApiFuture<QuerySnapshot> future = getFirestoreService().collection(collection)
-					.select(FIELD_AMOUNT, FIELD_TIMESTAMP)
-					.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, request.getBeginDate())
-					.whereLessThanOrEqualTo(FIELD_TIMESTAMP, request.getEndDate()).orderBy(FIELD_TIMESTAMP).get();
+		final List<NavigableMap<Integer, Double>> toReturn = new ArrayList<>(
+				Collections.nCopies(requests.size(), null));
 
-			try {
-				queryResult = future.get();
-			} catch (InterruptedException e) {
-				LOG.warn("waiting for result interrupted!");
-				Thread.currentThread().interrupt();
-			} catch (ExecutionException e) {
-				LOG.error("could not retrieve result from firestore!", e.getCause());
+		for (QueryPlanner.Group group : QueryPlanner.plan(requests)) {
+			LOG.info("Find expenses in weeks of {} intervals from {} to {} in collection {}",
+					Integer.valueOf(group.getMembers().size()), group.getBegin(), group.getEnd(), collection);
+
+			final Query query = getFirestoreService().collection(collection).select(FIELD_AMOUNT, FIELD_TIMESTAMP)
+					.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, group.getBegin())
+					.whereLessThanOrEqualTo(FIELD_TIMESTAMP, group.getEnd()).orderBy(FIELD_TIMESTAMP);
+			final QuerySnapshot queryResult = executeQuery(
+					new QueryKey(collection, group.getBegin(), group.getEnd(), FIELD_AMOUNT, FIELD_TIMESTAMP), query,
+					Operation.WEEK);
+
+			if (queryResult == null) {
+				return null;
+			}
+
+			for (Integer position : group.getMembers()) {
+				final ExpensesRequest request = requests.get(position.intValue());
+				toReturn.set(position.intValue(), splitByWeek(request, queryResult.getDocuments()));
 			}
-		} finally {
-			queryTime = Duration.between(start, Instant.now());
 		}
 
-		if (queryResult == null || queryResult.isEmpty()) {
-			return Collections.emptyNavigableMap();
+		return toReturn;
+	}
+
+	/**
+	 * Sum the documents within the interval of the request by week
+	 * 
+	 * @param request   The time interval
+	 * @param documents Documents of a query covering at least the interval
+	 * @return Map of the week as key and the expense amount within the week
+	 */
+	private NavigableMap<Integer, Double> splitByWeek(ExpensesRequest request,
+			List<QueryDocumentSnapshot> documents) {
+
+		final List<QueryDocumentSnapshot> inInterval = new ArrayList<>();
+		for (QueryDocumentSnapshot document : documents) {
+			final Timestamp timestamp = document.getTimestamp(FIELD_TIMESTAMP);
+			if (timestamp == null) {
+				continue;
+			}
+			final Date date = timestamp.toDate();
+			if (!date.before(request.getBeginDate()) && !date.after(request.getEndDate())) {
+				inInterval.add(document);
+			}
 		}
 
-		LOG.info("Query executed in {} ms. Snapshot timestamp: {}", Long.valueOf(queryTime.toMillis()),
-				queryResult.getReadTime());
+		if (inInterval.isEmpty()) {
+			return Collections.emptyNavigableMap();
+		}
 
-		final NavigableMap<Integer, Double> toReturn = processResults(queryResult.getDocuments());
+		final NavigableMap<Integer, Double> toReturn = processResults(inInterval);
 
 		// Fill weeks without found expenses
 		ZonedDateTime currentDateTime = request.getBeginDate().toInstant().atZone(TimezoneUtil.getSystem());
@@ -435,10 +1172,8 @@ public class FirestoreService {
 
 		WriteResult result = null;
 		try {
-			ApiFuture<WriteResult> future = getFirestoreService().collection(collection).document(id).delete();
-
 			try {
-				result = future.get();
+				result = scheduled(() -> getFirestoreService().collection(collection).document(id).delete());
 			} catch (InterruptedException e) {
 				LOG.warn("waiting for result interrupted!");
 				Thread.currentThread().interrupt();
@@ -448,7 +1183,13 @@ public class FirestoreService {
 		} finally {
 			queryTime = Duration.between(start, Instant.now());
 		}
+		m_Metrics.record(Operation.DELETE, collection, null, queryTime.toNanos(), 1, -1);
+		if (result != null) {
+			m_Accounting.written(collection, 1);
+		}
 
+		// the document may be gone even if the result is unknown
+		m_ExpenseCache.invalidate(collection, id);
 		if (result == null) {
 			return false;
 		}
@@ -456,6 +1197,7 @@ public class FirestoreService {
 		LOG.info("Delete query executed in {} ms. Update time: {}", Long.valueOf(queryTime.toMillis()),
 				result.getUpdateTime());
 
+		m_EventPublisher.publishEvent(new ExpenseChangedEvent(ExpenseChangedEvent.Type.DELETED, collection, id, null));
 		return true;
 	}
 
@@ -470,40 +1212,154 @@ public class FirestoreService {
 	public Collection<Expense> findBetween(ExpensesRequest request, @Nonnull String collection) {
 		LOG.info("Find expenses from {} in collection {}", request, collection);
 
-		final Instant start = Instant.now();
-		Duration queryTime = null;
-
-		QuerySnapshot queryResult = null;
-		try {
-			ApiFuture<QuerySnapshot> future = getFirestoreService().collection(collection)
-					.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, request.getBeginDate())
-					.whereLessThanOrEqualTo(FIELD_TIMESTAMP, request.getEndDate()).orderBy(FIELD_TIMESTAMP).get();
-
-			try {
-				queryResult = future.get();
-			} catch (InterruptedException e) {
-				LOG.warn("waiting for result interrupted!");
-				Thread.currentThread().interrupt();
-			} catch (ExecutionException e) {
-				LOG.error("could not retrieve result from firestore!", e.getCause());
-			}
-		} finally {
-			queryTime = Duration.between(start, Instant.now());
-		}
+		final Query query = getFirestoreService().collection(collection)
+				.whereGreaterThanOrEqualTo(FIELD_TIMESTAMP, request.getBeginDate())
+				.whereLessThanOrEqualTo(FIELD_TIMESTAMP, request.getEndDate()).orderBy(FIELD_TIMESTAMP);
+		final StampedSnapshot shared = executeStamped(
+				new QueryKey(collection, request.getBeginDate(), request.getEndDate()), query, Operation.RANGE);
 
+		final QuerySnapshot queryResult = shared == null ? null : shared.m_Snapshot;
 		if (queryResult == null || queryResult.isEmpty()) {
 			return Collections.emptyList();
 		}
 
-		LOG.info("Query executed in {} ms. Snapshot timestamp: {}", Long.valueOf(queryTime.toMillis()),
-				queryResult.getReadTime());
-
+		final long begin = StageTimings.begin();
 		final Collection<Expense> toReturn = new ArrayList<>();
 
 		for (DocumentSnapshot document : queryResult.getDocuments()) {
 			toReturn.add(createFromDocument(document));
 		}
+		StageTimings.end(Stage.MAPPING, begin);
 
+		// the stamp of the executed query, the snapshot may be shared with earlier callers
+		m_ExpenseCache.putAll(collection, toReturn, shared.m_Stamp);
 		return toReturn;
 	}
+
+	/**
+	 * Load all expenses of a collection. This is a full scan and only meant for
+	 * building in-memory indexes once.
+	 * 
+	 * @param collection Name of the collection
+	 * @return Collection of expenses or <code>null</code> if the collection could
+	 *         not be read
+	 */
+	public Collection<Expense> findAll(@Nonnull String collection) {
+		LOG.info("Load all expenses in collection {}", collection);
+
+		final QuerySnapshot queryResult = executeQuery(new QueryKey(collection, null, null),
+				getFirestoreService().collection(collection), Operation.SCAN);
+
+		if (queryResult == null) {
+			return null;
+		}
+
+		final Collection<Expense> toReturn = new ArrayList<>();
+		for (DocumentSnapshot document : queryResult.getDocuments()) {
+			if (document.getDate(FIELD_TIMESTAMP) == null) {
+				LOG.warn("No timestamp in document id {}. Skipped!", document.getId());
+				continue;
+			}
+			toReturn.add(createFromDocument(document));
+		}
+
+		return toReturn;
+	}
+
+	/**
+	 * Execute the query and wait for the result. Identical queries running at the
+	 * same time are executed only once and share the snapshot.
+	 * 
+	 * @param key       The normalized description of the query
+	 * @param query     The query
+	 * @param operation The operation for the metrics, range queries are issued a
+	 *                  second time if they are slow
+	 * @return The snapshot or <code>null</code> if there was an error
+	 */
+	private QuerySnapshot executeQuery(QueryKey key, Query query, Operation operation) {
+		final StampedSnapshot shared = executeStamped(key, query, operation);
+		return shared == null ? null : shared.m_Snapshot;
+	}
+
+	/**
+	 * Execute the query like {@link #executeQuery(QueryKey, Query, Operation)}
+	 * and return the snapshot with the {@link ExpenseCache#stamp(String)} taken
+	 * before the query was issued
+	 * 
+	 * @param key       The normalized description of the query
+	 * @param query     The query
+	 * @param operation The operation for the metrics
+	 * @return The stamped snapshot or <code>null</code> if the read budget is
+	 *         used up
+	 */
+	private StampedSnapshot executeStamped(QueryKey key, Query query, Operation operation) {
+		if (isBudgetExhausted(key.getCollection(), key)) {
+			return null;
+		}
+
+		final long begin = StageTimings.begin();
+		try {
+			return executeShared(key, query, operation);
+		} finally {
+			StageTimings.end(Stage.QUERY, begin);
+		}
+	}
+
+	/**
+	 * Execute the query unless the same query is already running. The stamp of
+	 * the expense cache is taken by the caller executing the query, callers
+	 * sharing the snapshot get the same stamp. The query runs until the latest
+	 * deadline and with the highest priority of the callers sharing it, each
+	 * caller waits until its own deadline.
+	 * 
+	 * @param key       The normalized description of the query
+	 * @param query     The query
+	 * @param operation The operation for the metrics
+	 * @return The snapshot, it is <code>null</code> if there was an error
+	 */
+	private StampedSnapshot executeShared(QueryKey key, Query query, Operation operation) {
+		final long deadline = System.nanoTime() + Deadline.remainingNanos(m_Timeout);
+		return m_SingleFlight.execute(key, deadline, flight -> {
+			final long stamp = m_ExpenseCache.stamp(key.getCollection());
+			final AtomicInteger issued = new AtomicInteger();
+			final Instant start = Instant.now();
+			Duration queryTime = null;
+
+			QuerySnapshot queryResult = null;
+			try {
+				try {
+					queryResult = scheduled(() -> {
+						issued.incrementAndGet();
+						return query.get();
+					}, operation == Operation.RANGE ? getRangeLatency(key) : null, flight::deadline, flight::priority);
+				} catch (InterruptedException e) {
+					LOG.warn("waiting for result interrupted!");
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					LOG.error("could not retrieve result from firestore!", e.getCause());
+				}
+			} finally {
+				queryTime = Duration.between(start, Instant.now());
+			}
+
+			long bytes = -1;
+			if (queryResult != null) {
+				// a query is billed at least one read even without result, a hedged query twice
+				m_Accounting.read(key.getCollection(), issued.get() * Math.max(1, queryResult.size()));
+				bytes = 0;
+				for (DocumentSnapshot document : queryResult.getDocuments()) {
+					bytes += OperationMetrics.estimateSize(document.getData());
+				}
+			}
+			m_Metrics.record(operation, key.getCollection(), key, queryTime.toNanos(),
+					queryResult == null ? 0 : queryResult.size(), bytes);
+
+			if (queryResult != null) {
+				LOG.info("Query {} with {} documents executed in {} ms. Snapshot timestamp: {}", key,
+						Integer.valueOf(queryResult.size()), Long.valueOf(queryTime.toMillis()),
+						queryResult.getReadTime());
+			}
+			return new StampedSnapshot(queryResult, stamp);
+		});
+	}
 }
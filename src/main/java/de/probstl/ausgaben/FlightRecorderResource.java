@@ -0,0 +1,103 @@
+package de.probstl.ausgaben;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import de.probstl.ausgaben.jfr.FlightRecorderService;
+
+/**
+ * Lets the administrators profile the running application with the Flight
+ * Recorder, e.g. <code>POST /admin/jfr/start?duration=PT2M</code> and
+ * <code>GET /admin/jfr/recording</code> afterwards. The calls need a bearer
+ * token of a user in <code>expenses.admin.users</code>, see
+ * {@link WebSecurityConfiguration}.
+ */
+@RestController
+@RequestMapping("/admin/jfr")
+public class FlightRecorderResource {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(FlightRecorderResource.class);
+
+	/** Starts and stops the recordings */
+	@Autowired
+	private FlightRecorderService m_Recorder;
+
+	/**
+	 * Start a recording
+	 * 
+	 * @param duration       The duration, e.g. PT1M, limited by
+	 *                       <code>expenses.jfr.max-duration</code>
+	 * @param authentication The logged in user
+	 * @return The duration of the started recording, 409 if one is running
+	 * @throws IOException if the recording settings could not be read
+	 */
+	@PostMapping(path = "/start")
+	public ResponseEntity<String> start(@RequestParam(name = "duration", defaultValue = "PT1M") String duration,
+			Authentication authentication) throws IOException {
+
+		try {
+			Duration started = m_Recorder.start(Duration.parse(duration));
+			LOG.info("Flight recording started by {}", authentication.getName());
+			return new ResponseEntity<>(started.toString(), HttpStatus.OK);
+		} catch (DateTimeParseException e) {
+			return new ResponseEntity<>("invalid duration " + duration, HttpStatus.BAD_REQUEST);
+		} catch (IllegalStateException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+	}
+
+	/**
+	 * Stop the running recording before its end
+	 * 
+	 * @return 404 if no recording is running
+	 */
+	@PostMapping(path = "/stop")
+	public ResponseEntity<String> stop() {
+
+		return new ResponseEntity<>(m_Recorder.stop() ? HttpStatus.OK : HttpStatus.NOT_FOUND);
+	}
+
+	/**
+	 * Download the current or last recording
+	 * 
+	 * @param response The response receiving the file
+	 * @throws IOException if the recording could not be written
+	 */
+	@GetMapping(path = "/recording")
+	public void download(HttpServletResponse response) throws IOException {
+
+		final Path file = m_Recorder.dump();
+		if (file == null) {
+			response.sendError(HttpStatus.NOT_FOUND.value());
+			return;
+		}
+
+		try {
+			response.setContentType("application/octet-stream");
+			response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"expenses.jfr\"");
+			response.setContentLengthLong(Files.size(file));
+			Files.copy(file, response.getOutputStream());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package de.probstl.ausgaben;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a latency percentile from the most recent calls of an operation.
+ * The percentile is computed again after every <i>size / 8</i> new samples,
+ * so recording is cheap.
+ */
+final class LatencyEstimator {
+
+	/** The recent latencies in nanoseconds, used as ring */
+	private final long[] m_Samples;
+
+	/** The estimated percentile between 0 and 1 */
+	private final double m_Percentile;
+
+	/** Number of recorded samples */
+	private long m_Count;
+
+	/** The last computed estimate, -1 if not enough samples */
+	private long m_Estimate = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param size       Number of recent calls considered
+	 * @param percentile The estimated percentile between 0 and 1
+	 */
+	LatencyEstimator(int size, double percentile) {
+		if (size < 8 || percentile <= 0 || percentile >= 1) {
+			throw new IllegalArgumentException("invalid latency estimator settings");
+		}
+		m_Samples = new long[size];
+		m_Percentile = percentile;
+	}
+
+	/**
+	 * Record the latency of a call
+	 *
+	 * @param nanos The latency in nanoseconds
+	 */
+	synchronized void record(long nanos) {
+		m_Samples[(int) (m_Count % m_Samples.length)] = nanos;
+		m_Count++;
+		if (m_Count >= m_Samples.length / 4 && m_Count % (m_Samples.length / 8) == 0) {
+			long[] sorted = Arrays.copyOf(m_Samples, (int) Math.min(m_Count, m_Samples.length));
+			Arrays.sort(sorted);
+			m_Estimate = sorted[(int) Math.min(sorted.length - 1, Math.floor(m_Percentile * sorted.length))];
+		}
+	}
+
+	/**
+	 * @return The estimated percentile in nanoseconds, -1 if there are not enough
+	 *         samples yet
+	 */
+	synchronized long estimate() {
+		return m_Estimate;
+	}
+}
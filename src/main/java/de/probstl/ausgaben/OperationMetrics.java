@@ -0,0 +1,218 @@
+package de.probstl.ausgaben;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import de.probstl.ausgaben.data.SlowQuery;
+import de.probstl.ausgaben.jfr.FirestoreCallEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Latency, documents and decoded bytes of the Firestore operations per
+ * collection. Slow operations are added to the {@link SlowQueryLog}, all
+ * operations are recorded as {@link FirestoreCallEvent} while the Flight
+ * Recorder runs.
+ */
+final class OperationMetrics {
+
+	/**
+	 * The measured Firestore operations
+	 */
+	enum Operation {
+
+		/** Reading expenses by id */
+		GET,
+
+		/** Reading the expenses of an interval */
+		RANGE,
+
+		/** Reading all expenses of a collection */
+		SCAN,
+
+		/** Reading the amounts of an interval */
+		AMOUNT,
+
+		/** Reading the amounts of an interval by week */
+		WEEK,
+
+		/** Creating an expense */
+		CREATE,
+
+		/** Updating expenses */
+		UPDATE,
+
+		/** Deleting an expense */
+		DELETE;
+
+		/**
+		 * @return The value of the tag
+		 */
+		String getTag() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * The meters of an operation on a collection
+	 */
+	private static final class Meters {
+
+		/** Duration of the operation */
+		private final Timer m_Time;
+
+		/** Documents read or written */
+		private final DistributionSummary m_Documents;
+
+		/** Estimated size of the read documents */
+		private final DistributionSummary m_Bytes;
+
+		/**
+		 * Constructor
+		 *
+		 * @param registry   The registry
+		 * @param operation  The operation
+		 * @param collection The collection
+		 */
+		Meters(MeterRegistry registry, Operation operation, String collection) {
+			m_Time = Timer.builder("firestore.operation").tag("operation", operation.getTag())
+					.tag("collection", collection).publishPercentileHistogram().register(registry);
+			m_Documents = DistributionSummary.builder("firestore.operation.documents")
+					.tag("operation", operation.getTag()).tag("collection", collection).register(registry);
+			m_Bytes = DistributionSummary.builder("firestore.operation.bytes").baseUnit("bytes")
+					.tag("operation", operation.getTag()).tag("collection", collection).register(registry);
+		}
+	}
+
+	/** The registry */
+	private final MeterRegistry m_Registry;
+
+	/** Receives the slow operations */
+	private final SlowQueryLog m_SlowQueryLog;
+
+	/** The meters by operation and collection */
+	private final ConcurrentMap<String, Meters> m_Meters = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param registry     The registry
+	 * @param slowQueryLog Receives the slow operations
+	 */
+	OperationMetrics(MeterRegistry registry, SlowQueryLog slowQueryLog) {
+		m_Registry = registry;
+		m_SlowQueryLog = slowQueryLog;
+	}
+
+	/**
+	 * Record an operation
+	 *
+	 * @param operation  The operation
+	 * @param collection The collection
+	 * @param key        The query, <code>null</code> if the operation was no query
+	 * @param nanos      Duration in nanoseconds
+	 * @param documents  Number of documents read or written
+	 * @param bytes      Estimated size of the read documents, negative for writes
+	 */
+	void record(Operation operation, String collection, QueryKey key, long nanos, int documents, long bytes) {
+		final Meters meters = m_Meters.computeIfAbsent(operation.name() + '/' + collection,
+				x -> new Meters(m_Registry, operation, collection));
+		meters.m_Time.record(nanos, TimeUnit.NANOSECONDS);
+		meters.m_Documents.record(documents);
+		if (bytes >= 0) {
+			meters.m_Bytes.record(bytes);
+		}
+
+		final FirestoreCallEvent event = new FirestoreCallEvent();
+		if (event.isEnabled()) {
+			event.operation = operation.getTag();
+			event.collection = collection;
+			event.documents = documents;
+			event.bytes = bytes;
+			event.callDuration = nanos;
+			event.commit();
+		}
+
+		if (m_SlowQueryLog.isSlow(nanos)) {
+			final List<String> fields = key == null ? Collections.emptyList() : key.getFields();
+			m_SlowQueryLog.add(new SlowQuery(new Date(), operation.getTag(), collection,
+					key == null ? null : key.getBegin(), key == null ? null : key.getEnd(), fields, documents,
+					TimeUnit.NANOSECONDS.toMillis(nanos)));
+		}
+	}
+
+	/**
+	 * Estimate the size of a document by the storage size rules of Firestore:
+	 * field names and strings take their UTF-8 length plus one byte, numbers and
+	 * timestamps eight bytes.
+	 *
+	 * @param data The fields of the document, may be <code>null</code>
+	 * @return The estimated size in bytes
+	 */
+	static long estimateSize(Map<String, Object> data) {
+		long size = 32; // name and overhead of the document
+		if (data != null) {
+			for (Map.Entry<String, Object> entry : data.entrySet()) {
+				size += utf8Length(entry.getKey()) + 1 + estimateValue(entry.getValue());
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param value A field value
+	 * @return The estimated size in bytes
+	 */
+	private static long estimateValue(Object value) {
+		if (value == null || value instanceof Boolean) {
+			return 1;
+		}
+		if (value instanceof String) {
+			return utf8Length((String) value) + 1;
+		}
+		if (value instanceof Map) {
+			long size = 0;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				size += utf8Length(String.valueOf(entry.getKey())) + 1 + estimateValue(entry.getValue());
+			}
+			return size;
+		}
+		if (value instanceof List) {
+			long size = 0;
+			for (Object element : (List<?>) value) {
+				size += estimateValue(element);
+			}
+			return size;
+		}
+		return 8; // numbers, timestamps and references
+	}
+
+	/**
+	 * @param value A string
+	 * @return The length of the string in UTF-8 without encoding it
+	 */
+	static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
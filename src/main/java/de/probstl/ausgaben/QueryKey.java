@@ -0,0 +1,96 @@
+package de.probstl.ausgaben;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Normalized description of a Firestore range query. Two queries with equal
+ * keys read the same documents with the same fields.
+ */
+final class QueryKey {
+
+	/** The collection */
+	private final @Nonnull String m_Collection;
+
+	/** The selected fields sorted by name, empty for all fields */
+	private final @Nonnull List<String> m_Fields;
+
+	/** Begin of the interval in milliseconds or <code>null</code> */
+	private final Long m_Begin;
+
+	/** End of the interval in milliseconds or <code>null</code> */
+	private final Long m_End;
+
+	/**
+	 * Constructor
+	 *
+	 * @param collection The collection
+	 * @param begin      Begin of the interval or <code>null</code> for a full scan
+	 * @param end        End of the interval or <code>null</code> for a full scan
+	 * @param fields     The selected fields, none for all fields
+	 */
+	QueryKey(@Nonnull String collection, Date begin, Date end, String... fields) {
+		String[] sorted = fields.clone();
+		Arrays.sort(sorted);
+		m_Collection = collection;
+		m_Fields = Arrays.asList(sorted);
+		m_Begin = begin == null ? null : Long.valueOf(begin.getTime());
+		m_End = end == null ? null : Long.valueOf(end.getTime());
+	}
+
+	/**
+	 * @return the collection
+	 */
+	@Nonnull
+	String getCollection() {
+		return m_Collection;
+	}
+
+	/**
+	 * @return the selected fields sorted by name, empty for all fields
+	 */
+	@Nonnull
+	List<String> getFields() {
+		return m_Fields;
+	}
+
+	/**
+	 * @return begin of the interval or <code>null</code> for a full scan
+	 */
+	Date getBegin() {
+		return m_Begin == null ? null : new Date(m_Begin.longValue());
+	}
+
+	/**
+	 * @return end of the interval or <code>null</code> for a full scan
+	 */
+	Date getEnd() {
+		return m_End == null ? null : new Date(m_End.longValue());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(m_Collection, m_Fields, m_Begin, m_End);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		QueryKey other = (QueryKey) obj;
+		return m_Collection.equals(other.m_Collection) && m_Fields.equals(other.m_Fields)
+				&& Objects.equals(m_Begin, other.m_Begin) && Objects.equals(m_End, other.m_End);
+	}
+
+	@Override
+	public String toString() {
+		return m_Collection + m_Fields + " [" + (m_Begin == null ? "" : new Date(m_Begin.longValue())) + " => "
+				+ (m_End == null ? "" : new Date(m_End.longValue())) + "]";
+	}
+}
@@ -0,0 +1,103 @@
+package de.probstl.ausgaben;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import de.probstl.ausgaben.data.ExpensesRequest;
+
+/**
+ * Merges the time intervals requested for one page into as few range queries
+ * as possible. Overlapping intervals and intervals with a gap of at most
+ * {@link #MAX_GAP} are read with one query, the result is split by the
+ * {@link FirestoreService} afterwards.
+ */
+final class QueryPlanner {
+
+	/**
+	 * Intervals with at most this gap are merged. The intervals of
+	 * {@link ExpensesRequest} end one minute before the next one begins.
+	 */
+	static final Duration MAX_GAP = Duration.ofMinutes(1);
+
+	/**
+	 * A single range query covering one or more requested intervals
+	 */
+	static final class Group {
+
+		/** Begin of the merged interval */
+		private Date m_Begin;
+
+		/** End of the merged interval */
+		private Date m_End;
+
+		/** Positions of the covered requests in the planned list */
+		private final List<Integer> m_Members = new ArrayList<>();
+
+		/**
+		 * @return the begin of the merged interval
+		 */
+		Date getBegin() {
+			return m_Begin;
+		}
+
+		/**
+		 * @return the end of the merged interval
+		 */
+		Date getEnd() {
+			return m_End;
+		}
+
+		/**
+		 * @return the positions of the covered requests in the planned list
+		 */
+		List<Integer> getMembers() {
+			return Collections.unmodifiableList(m_Members);
+		}
+	}
+
+	/**
+	 * Private constructor to avoid instances
+	 */
+	private QueryPlanner() {
+		// Empty
+	}
+
+	/**
+	 * Plan the range queries for the given intervals
+	 *
+	 * @param requests The requested intervals
+	 * @return The merged range queries ordered by begin date
+	 */
+	static List<Group> plan(List<ExpensesRequest> requests) {
+		final List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < requests.size(); i++) {
+			order.add(Integer.valueOf(i));
+		}
+		order.sort(Comparator.comparing(x -> requests.get(x.intValue()).getBeginDate()));
+
+		final List<Group> toReturn = new ArrayList<>();
+		Group current = null;
+		for (Integer position : order) {
+			final ExpensesRequest request = requests.get(position.intValue());
+
+			if (current != null
+					&& request.getBeginDate().getTime() - current.m_End.getTime() <= MAX_GAP.toMillis()) {
+				if (request.getEndDate().after(current.m_End)) {
+					current.m_End = request.getEndDate();
+				}
+			} else {
+				current = new Group();
+				current.m_Begin = request.getBeginDate();
+				current.m_End = request.getEndDate();
+				toReturn.add(current);
+			}
+			current.m_Members.add(position);
+		}
+
+		return toReturn;
+	}
+}
@@ -0,0 +1,181 @@
+package de.probstl.ausgaben;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.probstl.ausgaben.data.Expense;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking variant of {@link ExpensesCreateResource} that is active with
+ * profile <i>reactive</i>. The body is read with a servlet {@link ReadListener}
+ * once the request is asynchronous and the Firestore write is returned as
+ * {@link Mono}, so no request thread waits for a slow upload or the write.
+ */
+@RestController
+@RequestMapping("/rest")
+@Profile("reactive")
+public class ReactiveExpensesCreateResource {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ReactiveExpensesCreateResource.class);
+
+	/** Maximum size of the body of a single expense */
+	static final int MAX_BODY_SIZE = 64 * 1024;
+
+	/** Key of the interceptor reading the body */
+	private static final String BODY_READER = ReactiveExpensesCreateResource.class.getName() + ".body";
+
+	/** The service for reading and writing data to firestore */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** Checks the expense and creates the responses */
+	@Autowired
+	private ExpenseCreation m_ExpenseCreation;
+
+	/** Reads the expense from the body */
+	@Autowired
+	private ObjectMapper m_ObjectMapper;
+
+	/**
+	 * Create a new expense
+	 *
+	 * @param request        The request with the expense in the body
+	 * @param requestLocale  The locale of the client to parse the amount
+	 * @param authentication The logged in user
+	 * @return Completes with the status after the expense was written
+	 */
+	@PostMapping(path = "/create")
+	public Mono<ResponseEntity<String>> createAusgabe(HttpServletRequest request, Locale requestLocale,
+			Authentication authentication) {
+
+		final CompletableFuture<byte[]> body = new CompletableFuture<>();
+		// the read listener can only be set after the request went asynchronous
+		WebAsyncUtils.getAsyncManager(request).registerDeferredResultInterceptor(BODY_READER,
+				new DeferredResultProcessingInterceptor() {
+					@Override
+					public <T> void preProcess(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+						try {
+							read(webRequest.getNativeRequest(HttpServletRequest.class).getInputStream(), body);
+						} catch (IOException | RuntimeException e) {
+							body.completeExceptionally(e);
+						}
+					}
+				});
+
+		return Mono.fromFuture(body).flatMap(bytes -> {
+			final Expense expense;
+			try {
+				expense = m_ObjectMapper.readValue(bytes, Expense.class);
+			} catch (IOException e) {
+				LOG.warn("Expense of user {} could not be read: {}", authentication.getName(),
+						e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage()
+								: e.getMessage());
+				return Mono.just(new ResponseEntity<String>(HttpStatus.BAD_REQUEST));
+			}
+			return create(expense == null ? new Expense() : expense, requestLocale, authentication);
+		}).onErrorResume(BodyTooLargeException.class,
+				e -> Mono.just(new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE)));
+	}
+
+	/**
+	 * Check and write the expense read from the body
+	 *
+	 * @param expense        The expense
+	 * @param requestLocale  The locale of the client to parse the amount
+	 * @param authentication The logged in user
+	 * @return Completes with the status after the expense was written
+	 */
+	private Mono<ResponseEntity<String>> create(Expense expense, Locale requestLocale,
+			Authentication authentication) {
+
+		ExpenseCreation.Checked checked = m_ExpenseCreation.check(expense, requestLocale, authentication);
+		if (checked.getRejection() != null) {
+			return Mono.just(checked.getRejection());
+		}
+
+		return Mono
+				.fromFuture(
+						m_FirestoreService.createExpenseAsync(expense, checked.getCollection(), checked.isExport()))
+				.map(x -> m_ExpenseCreation.written(true)).onErrorResume(e -> {
+					LOG.error("Error while creating expense", e);
+					return Mono.just(m_ExpenseCreation.written(false));
+				});
+	}
+
+	/**
+	 * Read the body whenever the container has data, no thread waits for the
+	 * client
+	 *
+	 * @param in   The body
+	 * @param body Completed with the body after all data was read
+	 */
+	private static void read(ServletInputStream in, CompletableFuture<byte[]> body) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		in.setReadListener(new ReadListener() {
+
+			@Override
+			public void onDataAvailable() throws IOException {
+				final byte[] chunk = new byte[4096];
+				int read;
+				while (!body.isDone() && in.isReady() && (read = in.read(chunk)) != -1) {
+					buffer.write(chunk, 0, read);
+					if (buffer.size() > MAX_BODY_SIZE) {
+						body.completeExceptionally(new BodyTooLargeException());
+					}
+				}
+			}
+
+			@Override
+			public void onAllDataRead() {
+				body.complete(buffer.toByteArray());
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				body.completeExceptionally(t);
+			}
+		});
+	}
+
+	/**
+	 * The body is larger than {@link ReactiveExpensesCreateResource#MAX_BODY_SIZE}
+	 */
+	private static final class BodyTooLargeException extends IOException {
+
+		/** Serial version */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Constructor
+		 */
+		BodyTooLargeException() {
+			super("body larger than " + MAX_BODY_SIZE + " bytes");
+		}
+	}
+}
@@ -1,36 +1,33 @@
 package de.probstl.ausgaben;
 
+import java.util.List;
+
 import javax.servlet.Filter;
-import javax.servlet.http.HttpServletRequest;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.filter.AbstractRequestLoggingFilter;
+
+import de.probstl.ausgaben.logging.RequestLogFilter;
+import de.probstl.ausgaben.logging.RequestLogWriter;
 
 @Configuration
 public class RequestLoggingConfiguration {
 
+	/**
+	 * Logs a sample of the requests asynchronously
+	 * 
+	 * @param writer     Writes the log in the background
+	 * @param rules      Sample rate and body length by endpoint
+	 * @param sampleRate Sample rate of the other endpoints
+	 * @param maxPayload Logged body length of the other endpoints
+	 * @return The filter
+	 */
 	@Bean
-	public Filter loggingFilter() {
-		return new AbstractRequestLoggingFilter() {
-			private final Logger log = LoggerFactory.getLogger(RequestLoggingConfiguration.class);
-			{
-				setIncludeClientInfo(true);
-				setIncludeQueryString(true);
-				setIncludePayload(true);
-			}
-
-			@Override
-			protected void beforeRequest(HttpServletRequest request, String message) {
-				// not needed
-			}
-
-			@Override
-			protected void afterRequest(HttpServletRequest request, String message) {
-				log.info(message);
-			}
-		};
+	public Filter loggingFilter(RequestLogWriter writer,
+			@Value("${expenses.request-log.endpoints:}") List<String> rules,
+			@Value("${expenses.request-log.sample-rate:1.0}") double sampleRate,
+			@Value("${expenses.request-log.max-payload:50}") int maxPayload) {
+		return new RequestLogFilter(writer, rules, sampleRate, maxPayload);
 	}
 }
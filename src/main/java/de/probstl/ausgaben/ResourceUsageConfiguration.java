@@ -0,0 +1,38 @@
+package de.probstl.ausgaben;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import de.probstl.ausgaben.profiling.ResourceUsageFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Registers the measurement of the allocated bytes and the CPU time of the
+ * requests. The filter runs ahead of the security filter chain, so the
+ * authentication of a request is part of its cost.
+ */
+@Configuration
+public class ResourceUsageConfiguration {
+
+	/** Order of the filter, directly before the security filter chain */
+	public static final int FILTER_ORDER = SecurityProperties.DEFAULT_FILTER_ORDER - 1;
+
+	/**
+	 * Records the allocated bytes and the CPU time of a sample of the requests
+	 *
+	 * @param registry   The registry of the histograms
+	 * @param sampleRate Share of the measured requests
+	 * @return The registration of the filter
+	 */
+	@Bean
+	public FilterRegistrationBean<ResourceUsageFilter> resourceUsageFilter(MeterRegistry registry,
+			@Value("${expenses.resource-usage.sample-rate:0.1}") double sampleRate) {
+		FilterRegistrationBean<ResourceUsageFilter> registration = new FilterRegistrationBean<>(
+				new ResourceUsageFilter(registry, sampleRate));
+		registration.setOrder(FILTER_ORDER);
+		return registration;
+	}
+}
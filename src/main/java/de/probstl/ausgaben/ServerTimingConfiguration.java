@@ -0,0 +1,29 @@
+package de.probstl.ausgaben;
+
+import java.util.List;
+
+import javax.servlet.Filter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import de.probstl.ausgaben.timing.ServerTimingFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+public class ServerTimingConfiguration {
+
+	/**
+	 * Sends the time spent in the stages of a request to the browser
+	 * 
+	 * @param registry The registry of the stage histograms
+	 * @param paths    Ant style patterns of the observed paths
+	 * @return The filter
+	 */
+	@Bean
+	public Filter serverTimingFilter(MeterRegistry registry,
+			@Value("${expenses.server-timing.paths:/view/**}") List<String> paths) {
+		return new ServerTimingFilter(registry, paths);
+	}
+}
@@ -0,0 +1,178 @@
+package de.probstl.ausgaben;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import de.probstl.ausgaben.FirestoreScheduler.Priority;
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * Executes identical concurrent calls only once. The first caller of a key
+ * runs the loader, every caller arriving while it is in flight waits for and
+ * shares its result. Nothing is cached after the call has finished.
+ * <p>
+ * Every caller has a deadline. The shared call may run until the latest
+ * deadline of its callers, a caller stops waiting at its own deadline. The
+ * shared call also gets the highest priority of its callers, an interactive
+ * caller must not wait behind a batch call it joined.
+ *
+ * @param <K> The type of the key identifying identical calls
+ * @param <V> The type of the shared result
+ */
+final class SingleFlight<K, V> {
+
+	/**
+	 * The deadline and the priority of a shared call, both may rise while it is
+	 * running
+	 */
+	interface Call {
+
+		/**
+		 * @return The latest deadline of the callers from {@link System#nanoTime()}
+		 */
+		long deadline();
+
+		/**
+		 * @return The highest priority of the callers
+		 */
+		Priority priority();
+	}
+
+	/**
+	 * A call in flight
+	 *
+	 * @param <V> The type of the result
+	 */
+	private static final class Flight<V> implements Call {
+
+		/** The result of the call */
+		private final CompletableFuture<V> m_Result = new CompletableFuture<>();
+
+		/** The latest deadline of the callers from {@link System#nanoTime()} */
+		private final AtomicLong m_Deadline;
+
+		/** The highest priority of the callers */
+		private final AtomicReference<Priority> m_Priority;
+
+		/**
+		 * Constructor
+		 *
+		 * @param deadline The deadline of the first caller
+		 * @param priority The priority of the first caller
+		 */
+		Flight(long deadline, Priority priority) {
+			m_Deadline = new AtomicLong(deadline);
+			m_Priority = new AtomicReference<>(priority);
+		}
+
+		/**
+		 * Let the call run at least until the deadline and with at least the
+		 * priority of a joining caller
+		 *
+		 * @param deadline The deadline of the caller
+		 * @param priority The priority of the caller
+		 */
+		void join(long deadline, Priority priority) {
+			// compared by difference, nanoTime may overflow
+			m_Deadline.accumulateAndGet(deadline, (a, b) -> b - a > 0 ? b : a);
+			m_Priority.accumulateAndGet(priority, (a, b) -> b.compareTo(a) < 0 ? b : a);
+		}
+
+		@Override
+		public long deadline() {
+			return m_Deadline.get();
+		}
+
+		@Override
+		public Priority priority() {
+			return m_Priority.get();
+		}
+	}
+
+	/** The calls in flight by key */
+	private final Map<K, Flight<V>> m_InFlight = new ConcurrentHashMap<>();
+
+	/** Counts the calls that were executed */
+	private final Counter m_Executed;
+
+	/** Counts the calls that joined a call in flight */
+	private final Counter m_Coalesced;
+
+	/**
+	 * Constructor
+	 *
+	 * @param executed  Counter for executed calls
+	 * @param coalesced Counter for calls sharing the result of another call
+	 */
+	SingleFlight(Counter executed, Counter coalesced) {
+		m_Executed = executed;
+		m_Coalesced = coalesced;
+	}
+
+	/**
+	 * Execute the loader or join an identical call in flight. The priority of the
+	 * caller is the one of the current thread, see
+	 * {@link FirestoreScheduler#current()}.
+	 *
+	 * @param key      The key identifying identical calls
+	 * @param deadline The deadline of the caller from {@link System#nanoTime()}
+	 * @param loader   The call, it gets the latest deadline and the highest
+	 *                 priority of all callers which may rise while the call is
+	 *                 running
+	 * @return The result of the loader. If waiting for another caller was
+	 *         interrupted <code>null</code> is returned with the interrupt flag
+	 *         set, also if the deadline of the caller passed.
+	 */
+	V execute(K key, long deadline, Function<Call, V> loader) {
+		final Flight<V> own = new Flight<>(deadline, FirestoreScheduler.current());
+		final Flight<V> inFlight = m_InFlight.putIfAbsent(key, own);
+
+		if (inFlight != null) {
+			inFlight.join(deadline, own.priority());
+			m_Coalesced.increment();
+			try {
+				return inFlight.m_Result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (TimeoutException e) {
+				return null;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		m_Executed.increment();
+		try {
+			final V result = loader.apply(own);
+			own.m_Result.complete(result);
+			return result;
+		} catch (Throwable e) {
+			// also errors, the callers waiting for the result must not wait forever
+			own.m_Result.completeExceptionally(e);
+			throw e;
+		} finally {
+			m_InFlight.remove(key, own);
+		}
+	}
+
+	/**
+	 * @return number of calls in flight
+	 */
+	int size() {
+		return m_InFlight.size();
+	}
+}
@@ -0,0 +1,100 @@
+package de.probstl.ausgaben;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.data.SlowQuery;
+
+/**
+ * Keeps the most recent Firestore calls that took longer than the threshold.
+ * The log is bounded, the oldest entry is dropped for a new one. Available as
+ * actuator endpoint <i>slowqueries</i>.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryLog {
+
+	/** Calls taking longer are logged */
+	private final long m_ThresholdNanos;
+
+	/** Maximum number of entries */
+	private final int m_Size;
+
+	/** The entries, the newest first */
+	private final Deque<SlowQuery> m_Entries = new ArrayDeque<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param threshold Calls taking longer are logged
+	 * @param size      Maximum number of entries
+	 */
+	public SlowQueryLog(@Value("${expenses.firestore.slow-query.threshold:PT0.5S}") Duration threshold,
+			@Value("${expenses.firestore.slow-query.size:100}") int size) {
+		m_ThresholdNanos = threshold.toNanos();
+		m_Size = Math.max(1, size);
+	}
+
+	/**
+	 * @param nanos Duration of a call in nanoseconds
+	 * @return <code>true</code> if the call is slow
+	 */
+	boolean isSlow(long nanos) {
+		return nanos > m_ThresholdNanos;
+	}
+
+	/**
+	 * Log a slow call
+	 *
+	 * @param entry The call
+	 */
+	void add(SlowQuery entry) {
+		synchronized (m_Entries) {
+			if (m_Entries.size() == m_Size) {
+				m_Entries.removeLast();
+			}
+			m_Entries.addFirst(entry);
+		}
+	}
+
+	/**
+	 * @return The logged calls, the newest first
+	 */
+	@ReadOperation
+	public List<SlowQuery> slowQueries() {
+		synchronized (m_Entries) {
+			return new ArrayList<>(m_Entries);
+		}
+	}
+
+	/**
+	 * Remove all entries, e.g. after an index was added
+	 */
+	@DeleteOperation
+	public void clear() {
+		synchronized (m_Entries) {
+			m_Entries.clear();
+		}
+	}
+
+	/**
+	 * @param collection The collection
+	 * @return The logged calls of the collection, the newest first
+	 */
+	@ReadOperation
+	public List<SlowQuery> slowQueries(@Selector String collection) {
+		final List<SlowQuery> toReturn = slowQueries();
+		toReturn.removeIf(x -> !x.getCollection().equals(collection));
+		return toReturn;
+	}
+}
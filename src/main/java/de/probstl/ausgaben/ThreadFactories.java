@@ -0,0 +1,101 @@
+package de.probstl.ausgaben;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the threads for the blocking work of the application. If
+ * <code>expenses.virtual-threads.enabled</code> is set and the JVM supports
+ * virtual threads (JDK 21 or newer) virtual threads are used, otherwise
+ * platform daemon threads. The virtual thread API is called by reflection so
+ * the application still builds and runs on JDK 11.
+ */
+@Component
+public class ThreadFactories {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ThreadFactories.class);
+
+	/** Use virtual threads if the JVM supports them */
+	private final boolean m_Virtual;
+
+	/**
+	 * Constructor
+	 *
+	 * @param enabled Value of the switch for virtual threads
+	 */
+	public ThreadFactories(@Value("${expenses.virtual-threads.enabled:false}") boolean enabled) {
+		m_Virtual = enabled && isSupported();
+		if (enabled && !m_Virtual) {
+			LOG.warn("Virtual threads requested but not supported by Java {}", System.getProperty("java.version"));
+		}
+		LOG.info("Blocking work runs on {} threads", m_Virtual ? "virtual" : "platform");
+	}
+
+	/**
+	 * @return <code>true</code> if virtual threads are used
+	 */
+	public boolean isVirtual() {
+		return m_Virtual;
+	}
+
+	/**
+	 * Create a factory for named threads
+	 *
+	 * @param prefix The prefix of the thread names
+	 * @return The factory
+	 */
+	public ThreadFactory create(String prefix) {
+		if (m_Virtual) {
+			try {
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+				builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix,
+						Long.valueOf(1));
+				return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("virtual thread factory could not be created", e);
+			}
+		}
+
+		CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix);
+		factory.setDaemon(true);
+		return factory;
+	}
+
+	/**
+	 * Create an executor that starts a new thread for every task. Only meant for
+	 * virtual threads, platform threads must be pooled.
+	 *
+	 * @param prefix The prefix of the thread names
+	 * @return The executor
+	 */
+	public ExecutorService newThreadPerTaskExecutor(String prefix) {
+		try {
+			Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) method.invoke(null, create(prefix));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("thread per task executor could not be created", e);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the JVM supports virtual threads
+	 */
+	private static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package de.probstl.ausgaben;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Lets Tomcat handle the requests on virtual threads if they are enabled, see
+ * {@link ThreadFactories}
+ */
+@Configuration
+public class ThreadingConfiguration {
+
+	/**
+	 * Replace the request thread pool of Tomcat
+	 *
+	 * @param threadFactories Creates the threads of the application
+	 * @return The customizer, does nothing for platform threads
+	 */
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadCustomizer(
+			ThreadFactories threadFactories) {
+		return factory -> {
+			if (threadFactories.isVirtual()) {
+				factory.addProtocolHandlerCustomizers(
+						handler -> handler.setExecutor(threadFactories.newThreadPerTaskExecutor("http-")));
+			}
+		};
+	}
+}
@@ -1,14 +1,52 @@
 package de.probstl.ausgaben;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import de.probstl.ausgaben.accounting.DocumentAccountingInterceptor;
+import de.probstl.ausgaben.admission.AdmissionInterceptor;
+import de.probstl.ausgaben.bulkhead.BulkheadInterceptor;
+import de.probstl.ausgaben.timing.ServerTimingInterceptor;
+
 @Configuration
 @EnableWebMvc
 public class WebConfiguration implements WebMvcConfigurer {
 
+	/** Sets the deadline of the Firestore calls of a request */
+	@Autowired
+	private DeadlineInterceptor m_DeadlineInterceptor;
+
+	/** Rejects requests before they wait for Firestore */
+	@Autowired
+	private AdmissionInterceptor m_AdmissionInterceptor;
+
+	/** Isolates the collections and workload classes */
+	@Autowired
+	private BulkheadInterceptor m_BulkheadInterceptor;
+
+	/** Counts the Firestore documents of the requests */
+	@Autowired
+	private DocumentAccountingInterceptor m_AccountingInterceptor;
+
+	/** Measures the rendering of the templates */
+	@Autowired
+	private ServerTimingInterceptor m_ServerTimingInterceptor;
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		String[] firestorePaths = { "/rest/**", "/home", "/overview", "/view/**", "/search", "/edit/**", "/save/**",
+				"/export/**" };
+		registry.addInterceptor(m_DeadlineInterceptor).addPathPatterns(firestorePaths);
+		registry.addInterceptor(m_AdmissionInterceptor).addPathPatterns(firestorePaths);
+		registry.addInterceptor(m_BulkheadInterceptor).addPathPatterns(firestorePaths);
+		registry.addInterceptor(m_AccountingInterceptor).addPathPatterns(firestorePaths);
+		registry.addInterceptor(m_ServerTimingInterceptor);
+	}
+
 	@Override
 	public void addResourceHandlers(ResourceHandlerRegistry registry) {
 		registry.addResourceHandler("/img/**").addResourceLocations("classpath:/static/img/");
@@ -6,13 +6,22 @@ import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import de.probstl.ausgaben.auth.BearerTokenFilter;
+import de.probstl.ausgaben.auth.TokenService;
 
 /**
  * Configures access to new expenses and overviews
@@ -23,13 +32,68 @@ public class WebSecurityConfiguration {
 
 	private final Logger LOG = LoggerFactory.getLogger(WebSecurityConfiguration.class);
 
+	/** The role of the administrators */
+	public static final String ADMIN = "ADMIN";
+
+	/**
+	 * Prefix of the roles. Authorities without it are the collections of the
+	 * user.
+	 */
+	public static final String ROLE_PREFIX = "ROLE_";
+
+	/** The users getting the role of the administrators */
+	@Value("${expenses.admin.users:}")
+	private String[] m_Admins;
+
+	/**
+	 * REST calls authenticate every request with a bearer token or the password
+	 * and never create a session
+	 */
 	@Bean
+	@Order(1)
+	public SecurityFilterChain restFilterChain(HttpSecurity http, TokenService tokenService) throws Exception {
+		http.antMatcher("/rest/**").addFilterBefore(
+				new BearerTokenFilter(tokenService, userDetailsService(), "/rest/token"),
+				BasicAuthenticationFilter.class);
+		http.csrf().disable().sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
+				.authorizeRequests().anyRequest().authenticated().and().httpBasic();
+		return http.build();
+	}
+
+	/**
+	 * The administration is only for the administrators and only accepts a bearer
+	 * token issued by <code>/rest/token</code>. A browser never sends the token on
+	 * its own, so another site can not start a recording with the session or the
+	 * cached password of an administrator and no CSRF token is needed.
+	 */
+	@Bean
+	@Order(2)
+	public SecurityFilterChain adminFilterChain(HttpSecurity http, TokenService tokenService) throws Exception {
+		http.antMatcher("/admin/**").addFilterBefore(new BearerTokenFilter(tokenService, userDetailsService(), null),
+				BasicAuthenticationFilter.class);
+		http.csrf().disable().sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
+				.exceptionHandling().authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED))
+				.and().authorizeRequests().anyRequest().hasRole(ADMIN);
+		return http.build();
+	}
+
+	/**
+	 * Password or form login for all pages. The actuator endpoints except the
+	 * health are only for the administrators.
+	 */
+	@Bean
+	@Order(3)
 	public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
-		http.csrf().disable().authorizeRequests().anyRequest().authenticated().and().formLogin().loginPage("/login")
-				.permitAll().and().httpBasic();
+		http.csrf().disable().authorizeRequests().antMatchers("/actuator/health", "/actuator/health/**")
+				.authenticated().antMatchers("/actuator/**").hasRole(ADMIN).anyRequest().authenticated().and()
+				.formLogin().loginPage("/login").permitAll().and().httpBasic();
 		return http.build();
 	}
 
+	/**
+	 * The users of the properties file. The users in
+	 * <code>expenses.admin.users</code> also get the role of the administrators.
+	 */
 	@Bean
 	public UserDetailsService userDetailsService() {
 		Properties fromFile = new Properties();
@@ -39,6 +103,12 @@ public class WebSecurityConfiguration {
 			fromFile.put("flo", "{noop}test,enabled,ausgaben");
 			LOG.warn("Properties file not found. Using defaults!");
 		}
+		for (String admin : m_Admins) {
+			String account = fromFile.getProperty(admin.trim());
+			if (account != null) {
+				fromFile.setProperty(admin.trim(), account + "," + ROLE_PREFIX + ADMIN);
+			}
+		}
 		return new InMemoryUserDetailsManager(fromFile);
 	}
 }
@@ -0,0 +1,207 @@
+package de.probstl.ausgaben;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+
+/**
+ * Collects writes arriving within a short window and commits them together
+ * (group commit). A batch is committed when the window of its first write has
+ * elapsed or the maximum batch size is reached. If a batch with several writes
+ * fails, every write is committed again on its own so that one bad write does
+ * not fail the others.
+ *
+ * @param <W> The type of a single write
+ */
+final class WriteCoalescer<W> {
+
+	/**
+	 * Commits a list of writes as one atomic unit
+	 *
+	 * @param <W> The type of a single write
+	 */
+	interface Committer<W> {
+
+		/**
+		 * @param writes The writes of the batch
+		 * @return Completed when the batch is committed
+		 */
+		CompletableFuture<Void> commit(List<W> writes);
+	}
+
+	/**
+	 * A write waiting for its batch
+	 */
+	private final class Pending {
+
+		/** The write */
+		private final W m_Write;
+
+		/** Completed when the write is committed */
+		private final CompletableFuture<Void> m_Future = new CompletableFuture<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param write The write
+		 */
+		Pending(W write) {
+			m_Write = write;
+		}
+	}
+
+	/** Commits the batches */
+	private final Committer<W> m_Committer;
+
+	/** Window of a batch in milliseconds */
+	private final long m_WindowMillis;
+
+	/** Maximum number of writes in a batch */
+	private final int m_MaxBatchSize;
+
+	/** Records the number of writes per committed batch */
+	private final DistributionSummary m_BatchSize;
+
+	/** Closes the window of a batch */
+	private final ScheduledExecutorService m_Timer;
+
+	/** The writes of the open batch, guarded by this */
+	private List<Pending> m_Open = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param committer    Commits the batches
+	 * @param windowMillis Window of a batch in milliseconds
+	 * @param maxBatchSize Maximum number of writes in a batch
+	 * @param batchSize    Records the number of writes per committed batch
+	 */
+	WriteCoalescer(Committer<W> committer, long windowMillis, int maxBatchSize, DistributionSummary batchSize) {
+		m_Committer = committer;
+		m_WindowMillis = windowMillis;
+		m_MaxBatchSize = maxBatchSize;
+		m_BatchSize = batchSize;
+
+		CustomizableThreadFactory factory = new CustomizableThreadFactory("write-coalescer-");
+		factory.setDaemon(true);
+		m_Timer = Executors.newSingleThreadScheduledExecutor(factory);
+	}
+
+	/**
+	 * Add a write to the open batch
+	 *
+	 * @param write The write
+	 * @return Completed when the write is committed, completed exceptionally if it
+	 *         failed
+	 */
+	CompletableFuture<Void> submit(W write) {
+		final Pending pending = new Pending(write);
+		List<Pending> full = null;
+
+		synchronized (this) {
+			m_Open.add(pending);
+			if (m_Open.size() >= m_MaxBatchSize) {
+				full = m_Open;
+				m_Open = new ArrayList<>();
+			} else if (m_Open.size() == 1) {
+				final List<Pending> batch = m_Open;
+				try {
+					m_Timer.schedule(() -> flush(batch), m_WindowMillis, TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException e) {
+					m_Open = new ArrayList<>();
+					full = batch;
+				}
+			}
+		}
+
+		if (full != null) {
+			commit(full);
+		}
+		return pending.m_Future;
+	}
+
+	/**
+	 * Commit the batch when its window has elapsed unless it was committed because
+	 * it was full
+	 *
+	 * @param batch The batch that was open when the window started
+	 */
+	private void flush(List<Pending> batch) {
+		synchronized (this) {
+			if (m_Open != batch) {
+				return;
+			}
+			m_Open = new ArrayList<>();
+		}
+		commit(batch);
+	}
+
+	/**
+	 * Commit the batch and complete the futures of its writes
+	 *
+	 * @param batch The writes
+	 */
+	private void commit(List<Pending> batch) {
+		m_BatchSize.record(batch.size());
+
+		final List<W> writes = new ArrayList<>(batch.size());
+		batch.forEach(x -> writes.add(x.m_Write));
+
+		commitWrites(writes).whenComplete((result, error) -> {
+			if (error == null) {
+				batch.forEach(x -> x.m_Future.complete(null));
+			} else if (batch.size() == 1) {
+				batch.get(0).m_Future.completeExceptionally(error);
+			} else {
+				// find the failing write by committing each write on its own
+				for (Pending pending : batch) {
+					commitWrites(List.of(pending.m_Write)).whenComplete((r, e) -> {
+						if (e == null) {
+							pending.m_Future.complete(null);
+						} else {
+							pending.m_Future.completeExceptionally(e);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hand the writes to the committer
+	 *
+	 * @param writes The writes
+	 * @return Completed when committed, a failure of the committer itself is
+	 *         returned as failed future
+	 */
+	private CompletableFuture<Void> commitWrites(List<W> writes) {
+		try {
+			return m_Committer.commit(writes);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Commit the open batch and stop the timer
+	 */
+	void shutdown() {
+		final List<Pending> open;
+		synchronized (this) {
+			open = m_Open;
+			m_Open = new ArrayList<>();
+		}
+		m_Timer.shutdownNow();
+		if (!open.isEmpty()) {
+			commit(open);
+		}
+	}
+}
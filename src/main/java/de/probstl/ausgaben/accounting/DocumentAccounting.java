@@ -0,0 +1,262 @@
+package de.probstl.ausgaben.accounting;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.TimezoneUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the Firestore documents read and written, which is what Firestore
+ * bills. The counts are exported by collection and endpoint and summed up per
+ * request. With a daily read budget a user whose reads are used up gets cached
+ * or stale data until the next day.
+ */
+@Component
+public class DocumentAccounting {
+
+	/** Endpoint of the work that is not done for a request */
+	static final String BACKGROUND = "background";
+
+	/**
+	 * The documents of one request. Calls completing on another thread count
+	 * their documents with the usage of the request that issued them.
+	 */
+	public static final class RequestUsage {
+
+		/** The logged in user, <code>null</code> if not known */
+		private final String m_User;
+
+		/** The pattern of the endpoint */
+		private final String m_Endpoint;
+
+		/** Documents read */
+		private final AtomicInteger m_Reads = new AtomicInteger();
+
+		/** Documents written */
+		private final AtomicInteger m_Writes = new AtomicInteger();
+
+		/**
+		 * Constructor
+		 *
+		 * @param user     The logged in user
+		 * @param endpoint The pattern of the endpoint
+		 */
+		RequestUsage(String user, String endpoint) {
+			m_User = user;
+			m_Endpoint = endpoint;
+		}
+	}
+
+	/**
+	 * The reads of a user on one day
+	 */
+	private static final class DailyReads {
+
+		/** The day in the home time zone */
+		private final LocalDate m_Day;
+
+		/** Documents read on the day */
+		private final AtomicLong m_Reads = new AtomicLong();
+
+		/**
+		 * Constructor
+		 *
+		 * @param day The day in the home time zone
+		 */
+		DailyReads(LocalDate day) {
+			m_Day = day;
+		}
+	}
+
+	/** The documents of the request of the current thread */
+	private static final ThreadLocal<RequestUsage> CURRENT = new ThreadLocal<>();
+
+	/** The registry of the counts */
+	private final MeterRegistry m_Registry;
+
+	/** Documents a user may read per day, 0 for no limit */
+	private final long m_DailyBudget;
+
+	/** The reads of today by user */
+	private final Map<String, DailyReads> m_Daily = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param registry    The registry of the counts
+	 * @param dailyBudget Documents a user may read per day, 0 for no limit
+	 */
+	public DocumentAccounting(MeterRegistry registry, @Value("${expenses.read-budget.daily:0}") long dailyBudget) {
+		m_Registry = registry;
+		m_DailyBudget = dailyBudget;
+	}
+
+	/**
+	 * Start counting the documents of a request on the current thread
+	 *
+	 * @param user     The logged in user, <code>null</code> if not known
+	 * @param endpoint The pattern of the endpoint
+	 */
+	void begin(String user, String endpoint) {
+		CURRENT.set(new RequestUsage(user, endpoint));
+	}
+
+	/**
+	 * Stop counting on the current thread without recording the request, it
+	 * continues on another thread after an asynchronous result
+	 *
+	 * @return The documents of the request for {@link #resume(RequestUsage)},
+	 *         <code>null</code> if no request is counted
+	 */
+	RequestUsage suspend() {
+		final RequestUsage usage = CURRENT.get();
+		CURRENT.remove();
+		return usage;
+	}
+
+	/**
+	 * Continue counting a suspended request on the current thread
+	 *
+	 * @param usage The documents of the request from {@link #suspend()}
+	 */
+	void resume(RequestUsage usage) {
+		CURRENT.set(usage);
+	}
+
+	/**
+	 * Stop counting on the current thread and record the documents of the
+	 * request
+	 */
+	void finish() {
+		final RequestUsage usage = CURRENT.get();
+		if (usage == null) {
+			return;
+		}
+		CURRENT.remove();
+		m_Registry.summary("request.documents", "type", "read", "endpoint", usage.m_Endpoint)
+				.record(usage.m_Reads.get());
+		m_Registry.summary("request.documents", "type", "write", "endpoint", usage.m_Endpoint)
+				.record(usage.m_Writes.get());
+	}
+
+	/**
+	 * @return The documents of the request of the current thread for counting
+	 *         a call that completes on another thread, <code>null</code> outside
+	 *         of a request
+	 */
+	public RequestUsage current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Count documents read for the current request
+	 *
+	 * @param collection The collection
+	 * @param documents  The number of billed documents
+	 */
+	public void read(String collection, int documents) {
+		read(collection, documents, LocalDate.now(TimezoneUtil.getHome()));
+	}
+
+	/**
+	 * Count documents read for the current request
+	 *
+	 * @param collection The collection
+	 * @param documents  The number of billed documents
+	 * @param today      The current day in the home time zone
+	 */
+	void read(String collection, int documents, LocalDate today) {
+		final RequestUsage usage = CURRENT.get();
+		m_Registry.counter("firestore.documents", "type", "read", "collection", collection, "endpoint",
+				usage == null ? BACKGROUND : usage.m_Endpoint).increment(documents);
+		if (usage == null) {
+			return;
+		}
+		usage.m_Reads.addAndGet(documents);
+		if (usage.m_User != null) {
+			today(usage.m_User, today).m_Reads.addAndGet(documents);
+		}
+	}
+
+	/**
+	 * Count documents written for the current request
+	 *
+	 * @param collection The collection
+	 * @param documents  The number of written documents
+	 */
+	public void written(String collection, int documents) {
+		written(CURRENT.get(), collection, documents);
+	}
+
+	/**
+	 * Count documents written for a request, e.g. when a write completes on
+	 * another thread
+	 *
+	 * @param usage      The request from {@link #current()}, <code>null</code>
+	 *                   for background work
+	 * @param collection The collection
+	 * @param documents  The number of written documents
+	 */
+	public void written(RequestUsage usage, String collection, int documents) {
+		m_Registry.counter("firestore.documents", "type", "write", "collection", collection, "endpoint",
+				usage == null ? BACKGROUND : usage.m_Endpoint).increment(documents);
+		if (usage != null) {
+			usage.m_Writes.addAndGet(documents);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the user of the current request has used up
+	 *         the reads of today. Background work is never limited.
+	 */
+	public boolean isBudgetExhausted() {
+		return isBudgetExhausted(LocalDate.now(TimezoneUtil.getHome()));
+	}
+
+	/**
+	 * @param today The current day in the home time zone
+	 * @return <code>true</code> if the user of the current request has used up
+	 *         the reads of the day
+	 */
+	boolean isBudgetExhausted(LocalDate today) {
+		if (m_DailyBudget <= 0) {
+			return false;
+		}
+		final RequestUsage usage = CURRENT.get();
+		return usage != null && usage.m_User != null && getReadsToday(usage.m_User, today) >= m_DailyBudget;
+	}
+
+	/**
+	 * @param user The user
+	 * @return The documents read by the user today
+	 */
+	long getReadsToday(String user) {
+		return getReadsToday(user, LocalDate.now(TimezoneUtil.getHome()));
+	}
+
+	/**
+	 * @param user  The user
+	 * @param today The current day in the home time zone
+	 * @return The documents read by the user on the day
+	 */
+	long getReadsToday(String user, LocalDate today) {
+		final DailyReads daily = m_Daily.get(user);
+		return daily == null || !daily.m_Day.equals(today) ? 0 : daily.m_Reads.get();
+	}
+
+	/**
+	 * @param user  The user
+	 * @param today The current day in the home time zone
+	 * @return The reads of the user today, a new day starts with no reads
+	 */
+	private DailyReads today(String user, LocalDate today) {
+		return m_Daily.compute(user, (k, v) -> v == null || !v.m_Day.equals(today) ? new DailyReads(today) : v);
+	}
+}
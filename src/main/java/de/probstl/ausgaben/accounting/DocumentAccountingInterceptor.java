@@ -0,0 +1,59 @@
+package de.probstl.ausgaben.accounting;
+
+import java.security.Principal;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Counts the Firestore documents of every request with its user and endpoint,
+ * see {@link DocumentAccounting}. A request with an asynchronous result is
+ * counted until it is dispatched again for writing the result.
+ */
+@Component
+public class DocumentAccountingInterceptor implements AsyncHandlerInterceptor {
+
+	/** Request attribute with the documents of a suspended request */
+	private static final String ATTRIBUTE_USAGE = DocumentAccountingInterceptor.class.getName() + ".usage";
+
+	/** Counts the documents */
+	@Autowired
+	private DocumentAccounting m_Accounting;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			final Object usage = request.getAttribute(ATTRIBUTE_USAGE);
+			if (usage != null) {
+				request.removeAttribute(ATTRIBUTE_USAGE);
+				m_Accounting.resume((DocumentAccounting.RequestUsage) usage);
+			}
+		} else {
+			final Principal principal = request.getUserPrincipal();
+			final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			m_Accounting.begin(principal == null ? null : principal.getName(),
+					pattern == null ? "unknown" : pattern.toString());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) throws Exception {
+		// the thread goes back to the pool, the request is finished after the dispatch of the result
+		request.setAttribute(ATTRIBUTE_USAGE, m_Accounting.suspend());
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+		m_Accounting.finish();
+	}
+}
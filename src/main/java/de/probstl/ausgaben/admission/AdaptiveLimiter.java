@@ -0,0 +1,111 @@
+package de.probstl.ausgaben.admission;
+
+/**
+ * Limits the concurrent requests with additive increase and multiplicative
+ * decrease (AIMD). Every request finished within the latency target raises the
+ * limit by <code>1/limit</code>, so the limit grows by about one per round of
+ * requests. A slow or failed request lowers it by the backoff factor, at most
+ * once per latency target so that one slow round is not punished repeatedly.
+ * When Firestore gets slow the limit shrinks and excess requests are rejected
+ * instead of queueing up.
+ */
+final class AdaptiveLimiter {
+
+	/** Lower bound of the limit */
+	private final int m_MinLimit;
+
+	/** Upper bound of the limit */
+	private final int m_MaxLimit;
+
+	/** Latency above that the limit is lowered in nanoseconds */
+	private final long m_TargetNanos;
+
+	/** Factor applied to the limit after a slow request */
+	private final double m_Backoff;
+
+	/** The current limit */
+	private double m_Limit;
+
+	/** Number of admitted requests that have not finished */
+	private int m_InFlight;
+
+	/** Time of the last decrease from {@link System#nanoTime()} */
+	private long m_LastDecrease;
+
+	/**
+	 * Constructor
+	 *
+	 * @param initialLimit The limit at start
+	 * @param minLimit     Lower bound of the limit
+	 * @param maxLimit     Upper bound of the limit
+	 * @param targetNanos  Latency above that the limit is lowered
+	 * @param backoff      Factor applied to the limit after a slow request
+	 */
+	AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, long targetNanos, double backoff) {
+		if (minLimit < 1 || minLimit > maxLimit || backoff <= 0 || backoff >= 1) {
+			throw new IllegalArgumentException("invalid concurrency limit settings");
+		}
+		m_MinLimit = minLimit;
+		m_MaxLimit = maxLimit;
+		m_TargetNanos = targetNanos;
+		m_Backoff = backoff;
+		m_Limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		m_LastDecrease = System.nanoTime() - targetNanos;
+	}
+
+	/**
+	 * Admit a request if the limit is not reached. Every admitted request must
+	 * be finished with {@link #release(long, boolean, long)}.
+	 *
+	 * @return <code>true</code> if the request is admitted
+	 */
+	synchronized boolean tryAcquire() {
+		if (m_InFlight >= (int) m_Limit) {
+			return false;
+		}
+		m_InFlight++;
+		return true;
+	}
+
+	/**
+	 * Finish an admitted request and adapt the limit
+	 *
+	 * @param latencyNanos The duration of the request
+	 * @param success      <code>false</code> if the request failed
+	 * @param now          The current time from {@link System#nanoTime()}
+	 */
+	synchronized void release(long latencyNanos, boolean success, long now) {
+		m_InFlight--;
+		if (!success || latencyNanos > m_TargetNanos) {
+			if (now - m_LastDecrease >= m_TargetNanos) {
+				m_Limit = Math.max(m_MinLimit, m_Limit * m_Backoff);
+				m_LastDecrease = now;
+			}
+		} else {
+			m_Limit = Math.min(m_MaxLimit, m_Limit + 1 / m_Limit);
+		}
+	}
+
+	/**
+	 * Finish an admitted request that tells nothing about the latency of
+	 * Firestore, e.g. because it was rejected later on. The limit is not
+	 * changed.
+	 */
+	synchronized void cancel() {
+		m_InFlight--;
+	}
+
+	/**
+	 * @return the current limit
+	 */
+	synchronized int getLimit() {
+		return (int) m_Limit;
+	}
+
+	/**
+	 * @return the number of admitted requests that have not finished
+	 */
+	synchronized int getInFlight() {
+		return m_InFlight;
+	}
+}
@@ -0,0 +1,202 @@
+package de.probstl.ausgaben.admission;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import de.probstl.ausgaben.bulkhead.BulkheadInterceptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Admission control in front of the controllers reading or writing Firestore.
+ * A request is rejected with 429 before it waits for Firestore if the user
+ * exceeds the rate limit or the adaptive concurrency limit is reached.
+ * Long running requests like exports and batches are excluded from the
+ * concurrency limit, their duration does not tell how busy Firestore is and
+ * would lower the limit of the interactive requests.
+ */
+@Component
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(AdmissionInterceptor.class);
+
+	/** Request attribute with the start of an admitted request */
+	private static final String ATTRIBUTE_START = AdmissionInterceptor.class.getName() + ".start";
+
+	/** Switch for the admission control */
+	@Value("${expenses.admission.enabled:true}")
+	private boolean m_Enabled;
+
+	/** Burst of requests per user */
+	@Value("${expenses.admission.user.burst:50}")
+	private int m_UserBurst;
+
+	/** Sustained requests per user and second */
+	@Value("${expenses.admission.user.rate:5}")
+	private double m_UserRate;
+
+	/** Concurrency limit at start */
+	@Value("${expenses.admission.limit.initial:20}")
+	private int m_InitialLimit;
+
+	/** Lower bound of the concurrency limit */
+	@Value("${expenses.admission.limit.min:4}")
+	private int m_MinLimit;
+
+	/** Upper bound of the concurrency limit */
+	@Value("${expenses.admission.limit.max:200}")
+	private int m_MaxLimit;
+
+	/** Latency above that the concurrency limit is lowered */
+	@Value("${expenses.admission.limit.latency-target:PT1S}")
+	private Duration m_LatencyTarget;
+
+	/** Ant style patterns of the paths not counted by the concurrency limit */
+	@Value("${expenses.admission.limit.exclude:/export/**,/rest/batch}")
+	private List<String> m_Excluded;
+
+	/** Matches the paths against the excluded patterns */
+	private final AntPathMatcher m_Matcher = new AntPathMatcher();
+
+	/** Registry for the admission metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** The rate limit by user */
+	private final Map<String, TokenBucket> m_Buckets = new ConcurrentHashMap<>();
+
+	/** The concurrency limit shared by all users */
+	private AdaptiveLimiter m_Limiter;
+
+	/** Number of requests rejected by the rate limit */
+	private Counter m_RejectedByUser;
+
+	/** Number of requests rejected by the concurrency limit */
+	private Counter m_RejectedByLimit;
+
+	/**
+	 * Create the limiter and the metrics
+	 */
+	@PostConstruct
+	public void init() {
+		m_Limiter = new AdaptiveLimiter(m_InitialLimit, m_MinLimit, m_MaxLimit, m_LatencyTarget.toNanos(), 0.9);
+		m_RejectedByUser = m_MeterRegistry.counter("admission.rejected", "reason", "user");
+		m_RejectedByLimit = m_MeterRegistry.counter("admission.rejected", "reason", "concurrency");
+		m_MeterRegistry.gauge("admission.limit", m_Limiter, AdaptiveLimiter::getLimit);
+		m_MeterRegistry.gauge("admission.inflight", m_Limiter, AdaptiveLimiter::getInFlight);
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+
+		// a non-blocking request is dispatched again when the result is there
+		if (!m_Enabled || request.getDispatcherType() == DispatcherType.ASYNC
+				|| request.getAttribute(ATTRIBUTE_START) != null) {
+			return true;
+		}
+
+		// the limit is checked first, a rejected request must not cost the user a token
+		final boolean limited = !isExcluded(request);
+		if (limited && !m_Limiter.tryAcquire()) {
+			LOG.warn("Concurrency limit {} reached, rejecting {}", m_Limiter.getLimit(), request.getRequestURI());
+			m_RejectedByLimit.increment();
+			reject(response, 1);
+			return false;
+		}
+
+		final long now = System.nanoTime();
+		Principal principal = request.getUserPrincipal();
+		if (principal != null) {
+			TokenBucket bucket = m_Buckets.computeIfAbsent(principal.getName(),
+					x -> new TokenBucket(m_UserBurst, m_UserRate, now));
+			if (!bucket.tryAcquire(now)) {
+				LOG.warn("Rate limit of user {} exceeded for {}", principal.getName(), request.getRequestURI());
+				m_RejectedByUser.increment();
+				if (limited) {
+					m_Limiter.cancel();
+				}
+				reject(response, bucket.secondsUntilNext());
+				return false;
+			}
+		}
+
+		if (limited) {
+			request.setAttribute(ATTRIBUTE_START, Long.valueOf(now));
+		}
+		return true;
+	}
+
+	/**
+	 * @param request The request
+	 * @return <code>true</code> if the request is not counted by the concurrency
+	 *         limit
+	 */
+	private boolean isExcluded(HttpServletRequest request) {
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		for (String pattern : m_Excluded) {
+			if (m_Matcher.match(pattern, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+
+		Object start = request.getAttribute(ATTRIBUTE_START);
+		if (start == null) {
+			return; // not admitted by this interceptor
+		}
+		request.removeAttribute(ATTRIBUTE_START);
+
+		// a full bulkhead of one collection must not lower the limit of all
+		if (request.getAttribute(BulkheadInterceptor.ATTRIBUTE_REJECTED) != null) {
+			m_Limiter.cancel();
+			return;
+		}
+
+		final long now = System.nanoTime();
+		long latency = now - ((Long) start).longValue();
+		Object wait = request.getAttribute(BulkheadInterceptor.ATTRIBUTE_WAIT);
+		if (wait != null) {
+			latency -= ((Long) wait).longValue(); // queued in the bulkhead, not in Firestore
+		}
+		boolean success = ex == null && response.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value();
+		m_Limiter.release(latency, success, now);
+	}
+
+	/**
+	 * Send the rejection
+	 *
+	 * @param response   The response
+	 * @param retryAfter Seconds the client should wait
+	 * @throws IOException if the response could not be sent
+	 */
+	private static void reject(HttpServletResponse response, long retryAfter) throws IOException {
+		response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+		response.sendError(HttpStatus.TOO_MANY_REQUESTS.value());
+	}
+}
@@ -0,0 +1,58 @@
+package de.probstl.ausgaben.admission;
+
+/**
+ * Rate limit of one user. The bucket holds up to <i>capacity</i> tokens and is
+ * refilled continuously, every admitted request takes one token.
+ */
+final class TokenBucket {
+
+	/** Maximum number of tokens, the allowed burst */
+	private final double m_Capacity;
+
+	/** Refilled tokens per nanosecond */
+	private final double m_RefillPerNano;
+
+	/** Currently available tokens */
+	private double m_Tokens;
+
+	/** Time of the last refill from {@link System#nanoTime()} */
+	private long m_LastRefill;
+
+	/**
+	 * Constructor, the bucket starts full
+	 *
+	 * @param capacity        Maximum number of tokens
+	 * @param refillPerSecond Refilled tokens per second
+	 * @param now             The current time from {@link System#nanoTime()}
+	 */
+	TokenBucket(double capacity, double refillPerSecond, long now) {
+		m_Capacity = capacity;
+		m_RefillPerNano = refillPerSecond / 1_000_000_000d;
+		m_Tokens = capacity;
+		m_LastRefill = now;
+	}
+
+	/**
+	 * Take a token
+	 *
+	 * @param now The current time from {@link System#nanoTime()}
+	 * @return <code>true</code> if a token was available
+	 */
+	synchronized boolean tryAcquire(long now) {
+		m_Tokens = Math.min(m_Capacity, m_Tokens + (now - m_LastRefill) * m_RefillPerNano);
+		m_LastRefill = now;
+		if (m_Tokens < 1) {
+			return false;
+		}
+		m_Tokens--;
+		return true;
+	}
+
+	/**
+	 * @return Seconds until the next token is available, at least 1
+	 */
+	synchronized long secondsUntilNext() {
+		double missing = 1 - m_Tokens;
+		return Math.max(1, (long) Math.ceil(missing / (m_RefillPerNano * 1_000_000_000d)));
+	}
+}
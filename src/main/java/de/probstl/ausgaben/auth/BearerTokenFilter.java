@@ -0,0 +1,120 @@
+package de.probstl.ausgaben.auth;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import de.probstl.ausgaben.WebSecurityConfiguration;
+
+/**
+ * Authenticates the calls of the security filter chain it is added to with a
+ * bearer token issued by {@link TokenService}. Requests without a bearer token
+ * are passed on unchanged, so HTTP Basic keeps working where the chain allows
+ * it. The token endpoint itself only accepts the password, a token can not be
+ * used to extend its own validity. The token only proves the identity of the
+ * user until it expires, the authorities are those of the current account.
+ */
+public class BearerTokenFilter extends OncePerRequestFilter {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(BearerTokenFilter.class);
+
+	/** Prefix of the Authorization header */
+	private static final String BEARER = "Bearer ";
+
+	/** Verifies the tokens */
+	private final TokenService m_TokenService;
+
+	/** Looks up the users, a removed or disabled user is rejected */
+	private final UserDetailsService m_UserDetailsService;
+
+	/** The path issuing tokens relative to the context path */
+	private final String m_TokenPath;
+
+	/**
+	 * Constructor
+	 *
+	 * @param tokenService       Verifies the tokens
+	 * @param userDetailsService Looks up the users
+	 * @param tokenPath          The path issuing tokens relative to the context
+	 *                           path, <code>null</code> if the chain does not
+	 *                           issue tokens
+	 */
+	public BearerTokenFilter(TokenService tokenService, UserDetailsService userDetailsService, String tokenPath) {
+		m_TokenService = tokenService;
+		m_UserDetailsService = userDetailsService;
+		m_TokenPath = tokenPath;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return path.equals(m_TokenPath);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		TokenService.Token token = m_TokenService.verify(header.substring(BEARER.length()).trim());
+		UserDetails details = token == null ? null : loadActive(token.getUser());
+		if (details == null) {
+			LOG.warn("Invalid bearer token for {}", request.getRequestURI());
+			SecurityContextHolder.clearContext();
+			response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+			response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		// the current authorities, a revoked role is effective before the token
+		// expires. The collection comes first, the roles after it.
+		List<GrantedAuthority> authorities = new ArrayList<>(details.getAuthorities());
+		authorities.sort(Comparator.comparing(
+				(GrantedAuthority x) -> Boolean.valueOf(x.getAuthority().startsWith(WebSecurityConfiguration.ROLE_PREFIX))));
+		UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(token.getUser(),
+				null, authorities);
+		SecurityContextHolder.getContext().setAuthentication(authentication);
+		filterChain.doFilter(request, response);
+	}
+
+	/**
+	 * The accounts are held in memory, so the lookup is cheap. It makes removing
+	 * or disabling an account and changing its authorities effective before its
+	 * tokens expire.
+	 *
+	 * @param user The name of the user
+	 * @return The user or <code>null</code> if the user does not exist or is
+	 *         disabled
+	 */
+	private UserDetails loadActive(String user) {
+		try {
+			UserDetails details = m_UserDetailsService.loadUserByUsername(user);
+			return details.isEnabled() && details.isAccountNonLocked() ? details : null;
+		} catch (UsernameNotFoundException e) {
+			return null;
+		}
+	}
+}
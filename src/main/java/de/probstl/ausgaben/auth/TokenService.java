@@ -0,0 +1,224 @@
+package de.probstl.ausgaben.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Issues and verifies signed bearer tokens. A token carries the user, the
+ * authorities (the first one is the collection) and the expiry, signed with
+ * HMAC-SHA256. Verifying it is a single HMAC and avoids the deliberately slow
+ * password hash on every request.
+ */
+@Component
+public class TokenService {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(TokenService.class);
+
+	/** Separates the fields of the payload, user names contain no line breaks */
+	private static final String FIELD_SEPARATOR = "\n";
+
+	/** Separates the authorities, they are comma separated in the accounts too */
+	private static final String AUTHORITY_SEPARATOR = ",";
+
+	/** Encodes payload and signature */
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	/** Decodes payload and signature */
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	/** Minimum length of the key in bytes, the length of the HMAC-SHA256 output */
+	public static final int MIN_SECRET_LENGTH = 32;
+
+	/**
+	 * The verified content of a token
+	 */
+	public static final class Token {
+
+		/** The name of the user */
+		private final String m_User;
+
+		/** The authorities in the order they were issued */
+		private final List<String> m_Authorities;
+
+		/** The end of the validity */
+		private final Instant m_ExpiresAt;
+
+		/**
+		 * Constructor
+		 *
+		 * @param user        The name of the user
+		 * @param authorities The authorities in the order they were issued
+		 * @param expiresAt   The end of the validity
+		 */
+		Token(String user, List<String> authorities, Instant expiresAt) {
+			m_User = user;
+			m_Authorities = Collections.unmodifiableList(authorities);
+			m_ExpiresAt = expiresAt;
+		}
+
+		/**
+		 * @return the name of the user
+		 */
+		public String getUser() {
+			return m_User;
+		}
+
+		/**
+		 * @return the authorities in the order they were issued
+		 */
+		public List<String> getAuthorities() {
+			return m_Authorities;
+		}
+
+		/**
+		 * @return the end of the validity
+		 */
+		public Instant getExpiresAt() {
+			return m_ExpiresAt;
+		}
+	}
+
+	/** The key of the signature */
+	private final byte[] m_Secret;
+
+	/** The validity of a new token */
+	private final Duration m_Ttl;
+
+	/**
+	 * Constructor
+	 *
+	 * @param secret The key of the signature, a random key is used if empty
+	 * @param ttl    The validity of a new token
+	 * @throws IllegalArgumentException if the secret is shorter than the
+	 *                                  {@link #MIN_SECRET_LENGTH}
+	 */
+	public TokenService(@Value("${expenses.token.secret:}") String secret,
+			@Value("${expenses.token.ttl:PT12H}") Duration ttl) {
+		if (secret == null || secret.isEmpty()) {
+			LOG.warn("No token secret configured. Issued tokens are invalid after a restart!");
+			m_Secret = new byte[MIN_SECRET_LENGTH];
+			new SecureRandom().nextBytes(m_Secret);
+		} else {
+			m_Secret = secret.getBytes(StandardCharsets.UTF_8);
+			if (m_Secret.length < MIN_SECRET_LENGTH) {
+				throw new IllegalArgumentException(
+						"expenses.token.secret must have at least " + MIN_SECRET_LENGTH + " bytes");
+			}
+		}
+		m_Ttl = ttl;
+	}
+
+	/**
+	 * @return the validity of a new token
+	 */
+	public Duration getTtl() {
+		return m_Ttl;
+	}
+
+	/**
+	 * Issue a token valid from now on
+	 *
+	 * @param user        The name of the user
+	 * @param authorities The authorities, the first one is the collection
+	 * @return The token
+	 */
+	public String issue(String user, List<String> authorities) {
+		return issue(user, authorities, Instant.now());
+	}
+
+	/**
+	 * Issue a token
+	 *
+	 * @param user        The name of the user
+	 * @param authorities The authorities, the first one is the collection
+	 * @param now         The time of issue
+	 * @return The token
+	 */
+	String issue(String user, List<String> authorities, Instant now) {
+		String payload = user + FIELD_SEPARATOR + String.join(AUTHORITY_SEPARATOR, authorities) + FIELD_SEPARATOR
+				+ now.plus(m_Ttl).getEpochSecond();
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		return ENCODER.encodeToString(bytes) + "." + ENCODER.encodeToString(sign(bytes));
+	}
+
+	/**
+	 * Verify a token
+	 *
+	 * @param token The token
+	 * @return The content or <code>null</code> if the token is invalid or expired
+	 */
+	public Token verify(String token) {
+		return verify(token, Instant.now());
+	}
+
+	/**
+	 * Verify a token
+	 *
+	 * @param token The token
+	 * @param now   The time of the verification
+	 * @return The content or <code>null</code> if the token is invalid or expired
+	 */
+	Token verify(String token, Instant now) {
+		int dot = token.indexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+
+		final byte[] payload;
+		final byte[] signature;
+		try {
+			payload = DECODER.decode(token.substring(0, dot));
+			signature = DECODER.decode(token.substring(dot + 1));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		// constant time comparison, the signature must not leak by timing
+		if (!MessageDigest.isEqual(sign(payload), signature)) {
+			return null;
+		}
+
+		String[] fields = new String(payload, StandardCharsets.UTF_8).split(FIELD_SEPARATOR, -1);
+		if (fields.length != 3) {
+			return null;
+		}
+
+		final Instant expiresAt;
+		try {
+			expiresAt = Instant.ofEpochSecond(Long.parseLong(fields[2]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (!now.isBefore(expiresAt)) {
+			return null;
+		}
+
+		List<String> authorities = fields[1].isEmpty() ? new ArrayList<>()
+				: new ArrayList<>(Arrays.asList(fields[1].split(AUTHORITY_SEPARATOR)));
+		return new Token(fields[0], authorities, expiresAt);
+	}
+
+	/**
+	 * @param payload The payload
+	 * @return The signature of the payload
+	 */
+	private byte[] sign(byte[] payload) {
+		return new HmacUtils(HmacAlgorithms.HMAC_SHA_256, m_Secret).hmac(payload);
+	}
+}
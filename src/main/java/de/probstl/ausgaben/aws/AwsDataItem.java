@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import de.probstl.ausgaben.data.Expense;
 import lombok.Data;
 
 /**
@@ -41,4 +42,28 @@ public class AwsDataItem {
     @JsonProperty("Id")
     private String id;
 
+    /**
+     * Create the item of an expense
+     * 
+     * @param expense The expense
+     * @param id      The id of the item
+     * @return The item
+     */
+    static AwsDataItem from(Expense expense, String id) {
+        AwsDataItem item = new AwsDataItem();
+        item.setId(id);
+        item.setAmount(expense.getAmountDouble());
+        item.setBudget(expense.getBudget());
+        item.setCity(expense.getCity());
+        item.setMessage(expense.getMessage());
+        item.setCash(expense.isCash());
+        item.setShop(expense.getShop());
+
+        Date timestamp = expense.getTimestamp();
+        if (timestamp == null) {
+            timestamp = new Date();
+        }
+        item.setTimestamp(timestamp);
+        return item;
+    }
 }
@@ -1,6 +1,5 @@
 package de.probstl.ausgaben.aws;
 
-import java.util.Date;
 import java.util.UUID;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -14,6 +13,9 @@ import lombok.Data;
 @Data
 public class AwsDataValue {
 
+    /** Name of the DynamoDB Table of the expenses */
+    static final String TABLE_NAME = "Ausgaben";
+
     /** Name of the DynamoDB Table */
     @JsonProperty("TableName")
     private final String tableName;
@@ -28,22 +30,7 @@ public class AwsDataValue {
      * @param expense The expense that is being sent as item
      */
     AwsDataValue(Expense expense) {
-        this.tableName = "Ausgaben";
-
-        UUID id = UUID.randomUUID();
-        this.data = new AwsDataItem();
-        this.data.setId(id.toString());
-        this.data.setAmount(expense.getAmountDouble());
-        this.data.setBudget(expense.getBudget());
-        this.data.setCity(expense.getCity());
-        this.data.setMessage(expense.getMessage());
-        this.data.setCash(expense.isCash());
-        this.data.setShop(expense.getShop());
-
-        Date timestamp = expense.getTimestamp();
-        if (timestamp == null) {
-            timestamp = new Date();
-        }
-        this.data.setTimestamp(timestamp);
+        this.tableName = TABLE_NAME;
+        this.data = AwsDataItem.from(expense, UUID.randomUUID().toString());
     }
 }
@@ -1,15 +1,18 @@
 package de.probstl.ausgaben.aws;
 
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.codec.digest.HmacAlgorithms;
-import org.apache.commons.codec.digest.HmacUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +28,8 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import de.probstl.ausgaben.data.Expense;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import reactor.core.publisher.Mono;
 
 @Service
@@ -34,6 +39,9 @@ public class AwsService {
     /** Logger */
     private static Logger logger = LoggerFactory.getLogger(AwsService.class);
 
+    /** Maximum time to wait for a response */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
     /** The hostname the http request is sent to */
     @Value("${aws.hostname}")
     private String hostname;
@@ -62,10 +70,56 @@ public class AwsService {
     @Value("${aws.canonicalUri}")
     private String canonicalUri;
 
+    /**
+     * The URL part for sending many expenses at once. It has no default, the
+     * endpoint of a single expense does not understand a batch.
+     */
+    @Value("${aws.batchUri:}")
+    private String batchUri;
+
     /** Mapper for creating the JSON */
     @Autowired
     private ObjectMapper jsonMapper;
 
+    /** Builder preconfigured by Spring Boot */
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+
+    /** Registry for the timings of the calls */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The client reused for all calls, it keeps its connections open */
+    private WebClient webClient;
+
+    /** Signs the calls */
+    private AwsSigner signer;
+
+    /** Time for signing a call */
+    private Timer signTimer;
+
+    /** Time for sending a call and receiving the response */
+    private Timer sendTimer;
+
+    /**
+     * Create the client and the signer that are used for all calls
+     */
+    @PostConstruct
+    public void init() {
+        this.webClient = webClientBuilder.clone().filter(logRequest()).filter(logResponse()).baseUrl(this.endpoint)
+                .build();
+        this.signer = new AwsSigner(accessKeyId, secretAccessKey, region, service);
+        this.signTimer = meterRegistry.timer("aws.export.sign");
+        this.sendTimer = meterRegistry.timer("aws.export.send");
+    }
+
+    /**
+     * @return <code>true</code> if the URL part for batches is configured
+     */
+    public boolean isBatchConfigured() {
+        return batchUri != null && !batchUri.isEmpty();
+    }
+
     /**
      * Send the expense to an AWS API Gateway configured
      * 
@@ -74,15 +128,6 @@ public class AwsService {
      */
     public boolean sendExpense(Expense expense) {
 
-        WebClient webClient = WebClient.builder().filter(logRequest()).filter(logResponse()).baseUrl(this.endpoint)
-                .build();
-
-        ZonedDateTime requestDate = ZonedDateTime.now(ZoneId.of("UTC"));
-        String dateStr = DateTimeFormatter.ofPattern("yyyyMMdd").format(requestDate);
-        String dateTimeStr = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").format(requestDate);
-        String credentialScope = dateStr.concat("/").concat(this.region).concat("/").concat(this.service)
-                .concat("/aws4_request");
-
         AwsDataValue value = new AwsDataValue(expense);
         String payload = "";
         try {
@@ -94,51 +139,9 @@ public class AwsService {
 
         logger.info("JSON: {}", payload);
 
-        String payloadHashStr = DigestUtils.sha256Hex(payload);
-
-        // ************* TASK 1: CREATE A CANONICAL REQUEST *************
-        // http://docs.aws.amazon.com/general/latest/gr/sigv4-create-canonical-request.html
-        StringBuilder canonicalRequestStr = new StringBuilder();
-        canonicalRequestStr.append("POST\n"); // HTTPRequestMethod
-        canonicalRequestStr.append(this.canonicalUri).append("\n"); // CanonicalURI
-        canonicalRequestStr.append("\n"); // CanonicalQueryString
-        canonicalRequestStr.append("content-type:application/json\n"); // CanonicalHeaders
-        canonicalRequestStr.append("host:").append(this.hostname).append("\n");
-        canonicalRequestStr.append("x-amz-date:").append(dateTimeStr).append("\n\n");
-        canonicalRequestStr.append("content-type;host;x-amz-date\n"); // SignedHeaders
-        canonicalRequestStr.append(payloadHashStr); // HexEncode(Hash(<emptyString>))
-        String hashedCanonicalRequest = DigestUtils.sha256Hex(canonicalRequestStr.toString());
-
-        // ************* TASK 2: CREATE THE STRING TO SIGN*************
-        // Match the algorithm to the hashing algorithm SHA-256
-        StringBuilder stringToSign = new StringBuilder();
-        stringToSign.append("AWS4-HMAC-SHA256\n");
-        stringToSign.append(dateTimeStr).append("\n");
-        stringToSign.append(credentialScope).append("\n");
-        stringToSign.append(hashedCanonicalRequest);
-
-        // ************* TASK 3: CALCULATE THE SIGNATURE *************
-        // Create the signing key
-        byte[] hmacDate = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, "AWS4" + secretAccessKey).hmac(dateStr);
-        byte[] hmacRegion = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacDate).hmac(this.region);
-        byte[] hmacService = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacRegion).hmac(this.service);
-        byte[] signingKey = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacService).hmac("aws4_request");
-        String signature = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, signingKey).hmacHex(stringToSign.toString());
-
-        // ************* TASK 4: ADD SIGNING INFORMATION TO THE REQUEST *************
-        StringBuilder authorizationStr = new StringBuilder();
-        authorizationStr.append("AWS4-HMAC-SHA256 ");
-        authorizationStr.append("Credential=");
-        authorizationStr.append(accessKeyId).append("/").append(credentialScope).append(", ");
-        authorizationStr.append("SignedHeaders=content-type;host;x-amz-date, ");
-        authorizationStr.append("Signature=").append(signature);
-
         String result = "";
         try {
-            result = webClient.post().uri(this.canonicalUri).accept(MediaType.APPLICATION_JSON)
-                    .contentType(MediaType.APPLICATION_JSON).body(BodyInserters.fromValue(payload))
-                    .header("Authorization", authorizationStr.toString()).header("x-amz-date", dateTimeStr)
-                    .header("host", this.hostname).retrieve().bodyToMono(String.class).block();
+            result = post(this.canonicalUri, payload);
         } catch (Exception e) {
             logger.warn("call failed", e);
         }
@@ -147,6 +150,77 @@ public class AwsService {
         return true;
     }
 
+    /**
+     * Send the expenses with one request in the format of a DynamoDB
+     * BatchWriteItem. The id of an expense is used as id of its item, so sending
+     * an expense again overwrites the item.
+     * 
+     * @param expenses The expenses, at most 25
+     * @throws IllegalStateException if the request failed or not all items were
+     *                               processed
+     */
+    public void sendBatch(List<Expense> expenses) {
+        if (!isBatchConfigured()) {
+            throw new IllegalStateException("aws.batchUri is not configured");
+        }
+
+        List<Map<String, Object>> requests = expenses.stream()
+                .map(x -> Collections.<String, Object>singletonMap("PutRequest",
+                        Collections.singletonMap("Item", AwsDataItem.from(x, x.getId()))))
+                .collect(Collectors.toList());
+        Map<String, Object> body = Collections.singletonMap("RequestItems",
+                Collections.singletonMap(AwsDataValue.TABLE_NAME, requests));
+
+        String payload;
+        try {
+            payload = this.jsonMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("error creating json", e);
+        }
+
+        String result;
+        try {
+            result = post(this.batchUri, payload);
+        } catch (Exception e) {
+            throw new IllegalStateException("call failed: " + e.getMessage(), e);
+        }
+
+        if (result != null && !result.isEmpty()) {
+            try {
+                JsonNode unprocessed = this.jsonMapper.readTree(result).path("UnprocessedItems");
+                if (unprocessed.size() > 0) {
+                    throw new IllegalStateException("items not processed: " + unprocessed);
+                }
+            } catch (JsonProcessingException e) {
+                logger.debug("Response is no JSON: {}", result);
+            }
+        }
+        logger.info("Batch with {} expenses sent", expenses.size());
+    }
+
+    /**
+     * Sign and post the JSON payload
+     * 
+     * @param uri     The path of the request
+     * @param payload The JSON payload
+     * @return The response body
+     */
+    private String post(String uri, String payload) {
+        AwsSigner.Signature signature = signTimer
+                .record(() -> signer.signPost(uri, this.hostname, payload, Instant.now()));
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return webClient.post().uri(uri).accept(MediaType.APPLICATION_JSON)
+                    .contentType(MediaType.APPLICATION_JSON).body(BodyInserters.fromValue(payload))
+                    .header("Authorization", signature.getAuthorization())
+                    .header("x-amz-date", signature.getAmzDate()).header("host", this.hostname).retrieve()
+                    .bodyToMono(String.class).block(TIMEOUT);
+        } finally {
+            sample.stop(sendTimer);
+        }
+    }
+
     public ExchangeFilterFunction logRequest() {
         return ExchangeFilterFunction.ofRequestProcessor(request -> {
             logMethodAndUrl(request);
@@ -0,0 +1,187 @@
+package de.probstl.ausgaben.aws;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+
+/**
+ * Signs requests with AWS Signature Version 4. The signing key only depends on
+ * the day, region and service and is derived once per day.
+ */
+class AwsSigner {
+
+    /** Format of the date in the credential scope */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd")
+            .withZone(ZoneOffset.UTC);
+
+    /** Format of the x-amz-date header */
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    /** The headers included in the signature */
+    private static final String SIGNED_HEADERS = "content-type;host;x-amz-date";
+
+    /**
+     * The signing key of one day
+     */
+    private static final class DailyKey {
+
+        /** The day formatted as yyyyMMdd */
+        private final String date;
+
+        /** The derived key */
+        private final byte[] key;
+
+        /**
+         * Constructor
+         *
+         * @param date The day formatted as yyyyMMdd
+         * @param key  The derived key
+         */
+        DailyKey(String date, byte[] key) {
+            this.date = date;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The headers of a signed request
+     */
+    static final class Signature {
+
+        /** Value of the Authorization header */
+        private final String authorization;
+
+        /** Value of the x-amz-date header */
+        private final String amzDate;
+
+        /**
+         * Constructor
+         *
+         * @param authorization Value of the Authorization header
+         * @param amzDate       Value of the x-amz-date header
+         */
+        Signature(String authorization, String amzDate) {
+            this.authorization = authorization;
+            this.amzDate = amzDate;
+        }
+
+        /**
+         * @return the value of the Authorization header
+         */
+        String getAuthorization() {
+            return authorization;
+        }
+
+        /**
+         * @return the value of the x-amz-date header
+         */
+        String getAmzDate() {
+            return amzDate;
+        }
+    }
+
+    /** The AWS access key id */
+    private final String accessKeyId;
+
+    /** The AWS secret access key */
+    private final String secretAccessKey;
+
+    /** The AWS region */
+    private final String region;
+
+    /** The AWS service type */
+    private final String service;
+
+    /** The signing key of the current day */
+    private volatile DailyKey dailyKey;
+
+    /**
+     * Constructor
+     *
+     * @param accessKeyId     The AWS access key id
+     * @param secretAccessKey The AWS secret access key
+     * @param region          The AWS region
+     * @param service         The AWS service type
+     */
+    AwsSigner(String accessKeyId, String secretAccessKey, String region, String service) {
+        this.accessKeyId = accessKeyId;
+        this.secretAccessKey = secretAccessKey;
+        this.region = region;
+        this.service = service;
+    }
+
+    /**
+     * Sign a JSON POST request
+     *
+     * @param canonicalUri The path of the request
+     * @param hostname     The host header
+     * @param payload      The body
+     * @param now          The time of the request
+     * @return The headers to add to the request
+     */
+    Signature signPost(String canonicalUri, String hostname, String payload, Instant now) {
+        String dateStr = DATE_FORMAT.format(now);
+        String dateTimeStr = DATE_TIME_FORMAT.format(now);
+        String credentialScope = dateStr + "/" + region + "/" + service + "/aws4_request";
+
+        // ************* TASK 1: CREATE A CANONICAL REQUEST *************
+        // http://docs.aws.amazon.com/general/latest/gr/sigv4-create-canonical-request.html
+        StringBuilder canonicalRequestStr = new StringBuilder();
+        canonicalRequestStr.append("POST\n"); // HTTPRequestMethod
+        canonicalRequestStr.append(canonicalUri).append("\n"); // CanonicalURI
+        canonicalRequestStr.append("\n"); // CanonicalQueryString
+        canonicalRequestStr.append("content-type:application/json\n"); // CanonicalHeaders
+        canonicalRequestStr.append("host:").append(hostname).append("\n");
+        canonicalRequestStr.append("x-amz-date:").append(dateTimeStr).append("\n\n");
+        canonicalRequestStr.append(SIGNED_HEADERS).append("\n"); // SignedHeaders
+        canonicalRequestStr.append(DigestUtils.sha256Hex(payload));
+        String hashedCanonicalRequest = DigestUtils.sha256Hex(canonicalRequestStr.toString());
+
+        // ************* TASK 2: CREATE THE STRING TO SIGN*************
+        StringBuilder stringToSign = new StringBuilder();
+        stringToSign.append("AWS4-HMAC-SHA256\n");
+        stringToSign.append(dateTimeStr).append("\n");
+        stringToSign.append(credentialScope).append("\n");
+        stringToSign.append(hashedCanonicalRequest);
+
+        // ************* TASK 3: CALCULATE THE SIGNATURE *************
+        String signature = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, signingKey(dateStr))
+                .hmacHex(stringToSign.toString());
+
+        // ************* TASK 4: ADD SIGNING INFORMATION TO THE REQUEST *************
+        StringBuilder authorizationStr = new StringBuilder();
+        authorizationStr.append("AWS4-HMAC-SHA256 ");
+        authorizationStr.append("Credential=");
+        authorizationStr.append(accessKeyId).append("/").append(credentialScope).append(", ");
+        authorizationStr.append("SignedHeaders=").append(SIGNED_HEADERS).append(", ");
+        authorizationStr.append("Signature=").append(signature);
+
+        return new Signature(authorizationStr.toString(), dateTimeStr);
+    }
+
+    /**
+     * Return the signing key of the day, it is derived on the first call of a day
+     *
+     * @param dateStr The day formatted as yyyyMMdd
+     * @return The signing key
+     */
+    byte[] signingKey(String dateStr) {
+        DailyKey current = dailyKey;
+        if (current != null && current.date.equals(dateStr)) {
+            return current.key;
+        }
+
+        byte[] hmacDate = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, "AWS4" + secretAccessKey).hmac(dateStr);
+        byte[] hmacRegion = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacDate).hmac(region);
+        byte[] hmacService = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacRegion).hmac(service);
+        byte[] signingKey = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacService).hmac("aws4_request");
+
+        dailyKey = new DailyKey(dateStr, signingKey);
+        return signingKey;
+    }
+}
@@ -0,0 +1,192 @@
+package de.probstl.ausgaben.aws;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.ExportOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sends the expenses waiting in the {@link ExportOutbox} to AWS in the
+ * background. Failed batches are tried again with exponential backoff, an
+ * expense that failed too often is moved to the dead letters.
+ */
+@Service
+public class ExportDispatcher {
+
+    /** Logger */
+    private static final Logger logger = LoggerFactory.getLogger(ExportDispatcher.class);
+
+    /** Maximum number of items of a DynamoDB BatchWriteItem */
+    static final int BATCH_SIZE = 25;
+
+    /** Maximum number of batches sent by one dispatch */
+    private static final int MAX_ROUNDS = 40;
+
+    /** The outbox of the expenses */
+    @Autowired
+    private ExportOutbox outbox;
+
+    /** The client sending the batches */
+    @Autowired
+    private AwsService awsService;
+
+    /** Registry for the export metrics */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** The users whose new expenses are exported */
+    @Value("${expenses.export.users:}")
+    private Set<String> users;
+
+    /** Delay before the first retry, doubled with every further attempt */
+    @Value("${expenses.export.backoff:PT30S}")
+    private Duration backoff;
+
+    /** Upper limit of the delay between two attempts */
+    @Value("${expenses.export.max-backoff:PT1H}")
+    private Duration maxBackoff;
+
+    /** Number of attempts before an expense is moved to the dead letters */
+    @Value("${expenses.export.max-attempts:8}")
+    private int maxAttempts;
+
+    /** Spreads the retries of different batches */
+    private final Random random = new Random();
+
+    /** Number of exported expenses */
+    private Counter delivered;
+
+    /** Number of expenses scheduled for another attempt */
+    private Counter retried;
+
+    /** Number of expenses moved to the dead letters */
+    private Counter dead;
+
+    /**
+     * Create the metrics
+     *
+     * @throws IllegalStateException if expenses are exported but the URL part
+     *                               for batches is not configured
+     */
+    @PostConstruct
+    public void init() {
+        if (!users.isEmpty() && !awsService.isBatchConfigured()) {
+            throw new IllegalStateException("aws.batchUri must be configured to export the expenses of " + users);
+        }
+
+        delivered = meterRegistry.counter("aws.export.delivered");
+        retried = meterRegistry.counter("aws.export.retried");
+        dead = meterRegistry.counter("aws.export.dead");
+    }
+
+    /**
+     * @param user The name of the user
+     * @return <code>true</code> if the new expenses of the user are exported
+     */
+    public boolean isExported(String user) {
+        return users.contains(user);
+    }
+
+    /**
+     * Send the due expenses. Runs until the outbox has no more due entries, the
+     * maximum number of batches is sent or the outcome of a batch could not be
+     * recorded. Unrecorded entries are still due and would be sent again at
+     * once.
+     */
+    @Scheduled(fixedDelayString = "${expenses.export.interval:PT30S}")
+    public void dispatch() {
+        if (users.isEmpty()) {
+            return; // nothing is ever written to the outbox
+        }
+
+        List<ExportOutbox.Entry> entries;
+        int rounds = 0;
+        boolean recorded = true;
+        do {
+            entries = outbox.findDue(BATCH_SIZE);
+            if (!entries.isEmpty()) {
+                recorded = send(entries);
+            }
+        } while (recorded && entries.size() == BATCH_SIZE && ++rounds < MAX_ROUNDS
+                && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Send one batch and update the outbox with the outcome
+     *
+     * @param entries The entries of the batch
+     * @return <code>false</code> if the outcome could not be recorded
+     */
+    boolean send(List<ExportOutbox.Entry> entries) {
+        try {
+            awsService.sendBatch(entries.stream().map(ExportOutbox.Entry::getExpense).collect(Collectors.toList()));
+        } catch (IllegalStateException e) {
+            logger.warn("Export of {} expenses failed: {}", entries.size(), e.getMessage());
+            return failed(entries, e.getMessage());
+        }
+
+        delivered.increment(entries.size());
+        return outbox.delivered(entries);
+    }
+
+    /**
+     * Schedule the next attempt or give up
+     *
+     * @param entries The entries of the failed batch
+     * @param error   The reason of the failure
+     * @return <code>false</code> if the outcome could not be recorded
+     */
+    private boolean failed(List<ExportOutbox.Entry> entries, String error) {
+        List<ExportOutbox.Entry> toRetry = new ArrayList<>();
+        List<ExportOutbox.Entry> toGiveUp = new ArrayList<>();
+        for (ExportOutbox.Entry entry : entries) {
+            (entry.getAttempts() + 1 >= maxAttempts ? toGiveUp : toRetry).add(entry);
+        }
+
+        boolean recorded = true;
+        if (!toRetry.isEmpty()) {
+            final Instant now = Instant.now();
+            recorded = outbox.retry(toRetry,
+                    x -> Date.from(now.plus(delay(x.getAttempts() + 1, backoff, maxBackoff, random.nextDouble()))),
+                    error);
+            retried.increment(toRetry.size());
+        }
+        if (!toGiveUp.isEmpty()) {
+            recorded &= outbox.deadLetter(toGiveUp, error);
+            dead.increment(toGiveUp.size());
+        }
+        return recorded;
+    }
+
+    /**
+     * Exponential backoff with jitter
+     *
+     * @param attempts Number of failed attempts, at least 1
+     * @param base     Delay after the first failure
+     * @param max      Upper limit of the delay
+     * @param jitter   Random value between 0 and 1, spreads the delay by +/- 20%
+     * @return The delay before the next attempt
+     */
+    static Duration delay(int attempts, Duration base, Duration max, double jitter) {
+        long factor = 1L << Math.min(attempts - 1, 30);
+        long millis = base.toMillis() > max.toMillis() / factor ? max.toMillis() : base.toMillis() * factor;
+        return Duration.ofMillis((long) (millis * (0.8 + 0.4 * jitter)));
+    }
+}
@@ -27,6 +27,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.probstl.ausgaben.data.Expense;
+import de.probstl.ausgaben.jfr.BudgetClassificationEvent;
 import de.probstl.ausgaben.mail.CityInfo;
 
 @Component
@@ -48,6 +49,9 @@ public class BudgetService {
 	 */
 	public Map<Budget, Set<Expense>> createFromExpenses(Authentication auth, Collection<Expense> expenses) {
 
+		final BudgetClassificationEvent event = new BudgetClassificationEvent();
+		event.begin();
+
 		final Map<Budget, Set<Expense>> toReturn = new TreeMap<>();
 
 		final Collection<Budget> budgets = readDefinition(auth.getName());
@@ -70,6 +74,12 @@ public class BudgetService {
 			toReturn.put(fallback.get(), remaining);
 		}
 
+		if (event.shouldCommit()) {
+			event.user = auth.getName();
+			event.expenses = expenses.size();
+			event.budgets = budgets.size();
+			event.commit();
+		}
 		return toReturn;
 	}
 
@@ -189,13 +199,14 @@ public class BudgetService {
 
 			Matcher matcher = pattern.matcher(expense.getMessage());
 			if (matcher.matches()) {
-				String token = "";
-				if (matcher.groupCount() > 0) {
-					token = matcher.group(1);
+				if (LOG.isDebugEnabled()) {
+					String token = "";
+					if (matcher.groupCount() > 0) {
+						token = matcher.group(1);
+					}
+					LOG.debug("expense {} with message '{}' matches regular expression '{}' with token: '{}'",
+							expense.getId(), expense.getMessage(), pattern.pattern(), token);
 				}
-				String regex = pattern.pattern();
-				LOG.info("expense {} with message '{}' matches regular expression '{}' with token: '{}'",
-						expense.getId(), expense.getMessage(), regex, token);
 				toReturn.add(expense);
 			}
 		}
@@ -0,0 +1,98 @@
+package de.probstl.ausgaben.bulkhead;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the concurrent calls of one workload class in one collection. Calls
+ * above the limit wait in a bounded queue for a limited time, a call that
+ * finds the queue full is rejected at once.
+ */
+public final class Bulkhead {
+
+	/** The permits of the concurrent calls, fair so the queue is FIFO */
+	private final Semaphore m_Permits;
+
+	/** Maximum number of concurrent calls */
+	private final int m_MaxConcurrent;
+
+	/** Maximum number of waiting calls */
+	private final int m_MaxQueue;
+
+	/** Maximum wait for a permit */
+	private final Duration m_MaxWait;
+
+	/** Number of waiting calls */
+	private final AtomicInteger m_Waiting = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxConcurrent Maximum number of concurrent calls
+	 * @param maxQueue      Maximum number of waiting calls
+	 * @param maxWait       Maximum wait for a permit
+	 */
+	Bulkhead(int maxConcurrent, int maxQueue, Duration maxWait) {
+		if (maxConcurrent < 1 || maxQueue < 0) {
+			throw new IllegalArgumentException("invalid bulkhead settings");
+		}
+		m_Permits = new Semaphore(maxConcurrent, true);
+		m_MaxConcurrent = maxConcurrent;
+		m_MaxQueue = maxQueue;
+		m_MaxWait = maxWait;
+	}
+
+	/**
+	 * Enter the bulkhead. Every successful call must be followed by
+	 * {@link #exit()}.
+	 *
+	 * @return <code>false</code> if the queue is full or the wait timed out
+	 */
+	public boolean tryEnter() {
+		try {
+			// unlike tryAcquire() a timed acquire never overtakes the waiting calls
+			if (m_Permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+				return true;
+			}
+			if (m_MaxQueue == 0 || m_MaxWait.isZero()) {
+				return false;
+			}
+
+			if (m_Waiting.incrementAndGet() > m_MaxQueue) {
+				m_Waiting.decrementAndGet();
+				return false;
+			}
+			try {
+				return m_Permits.tryAcquire(m_MaxWait.toNanos(), TimeUnit.NANOSECONDS);
+			} finally {
+				m_Waiting.decrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Leave the bulkhead
+	 */
+	public void exit() {
+		m_Permits.release();
+	}
+
+	/**
+	 * @return the number of running calls
+	 */
+	public int getActive() {
+		return m_MaxConcurrent - m_Permits.availablePermits();
+	}
+
+	/**
+	 * @return the number of waiting calls
+	 */
+	public int getWaiting() {
+		return m_Waiting.get();
+	}
+}
@@ -0,0 +1,123 @@
+package de.probstl.ausgaben.bulkhead;
+
+import java.util.Optional;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import de.probstl.ausgaben.FirestoreScheduler;
+import de.probstl.ausgaben.WebSecurityConfiguration;
+
+/**
+ * Runs every request in the bulkhead of its collection and workload class. A
+ * request that finds its bulkhead full is rejected with 503. The Firestore
+ * calls of the request get the priority of the workload class.
+ */
+@Component
+public class BulkheadInterceptor implements AsyncHandlerInterceptor {
+
+	/** Request attribute with the entered bulkhead */
+	private static final String ATTRIBUTE_BULKHEAD = BulkheadInterceptor.class.getName() + ".bulkhead";
+
+	/**
+	 * Request attribute with the nanoseconds the request waited for its bulkhead,
+	 * set for admitted and rejected requests
+	 */
+	public static final String ATTRIBUTE_WAIT = BulkheadInterceptor.class.getName() + ".wait";
+
+	/** Request attribute set if the request was rejected by a full bulkhead */
+	public static final String ATTRIBUTE_REJECTED = BulkheadInterceptor.class.getName() + ".rejected";
+
+	/** The bulkheads */
+	@Autowired
+	private Bulkheads m_Bulkheads;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+
+		// a non-blocking request is dispatched again when the result is there
+		if (request.getDispatcherType() == DispatcherType.ASYNC || request.getAttribute(ATTRIBUTE_BULKHEAD) != null) {
+			return true;
+		}
+
+		String collection = getCollection();
+		if (collection == null) {
+			return true; // rejected by the controller
+		}
+
+		WorkloadClass workload = classify(request.getRequestURI().substring(request.getContextPath().length()));
+		long start = System.nanoTime();
+		Bulkhead bulkhead = m_Bulkheads.tryEnter(collection, workload);
+		request.setAttribute(ATTRIBUTE_WAIT, Long.valueOf(System.nanoTime() - start));
+		if (bulkhead == null) {
+			request.setAttribute(ATTRIBUTE_REJECTED, Boolean.TRUE);
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+			return false;
+		}
+
+		request.setAttribute(ATTRIBUTE_BULKHEAD, bulkhead);
+		FirestoreScheduler.set(workload.getPriority());
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) throws Exception {
+		FirestoreScheduler.clear(); // the thread goes back to the pool
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+
+		FirestoreScheduler.clear();
+		Object bulkhead = request.getAttribute(ATTRIBUTE_BULKHEAD);
+		if (bulkhead != null) {
+			request.removeAttribute(ATTRIBUTE_BULKHEAD);
+			((Bulkhead) bulkhead).exit();
+		}
+	}
+
+	/**
+	 * @param path The path of the request without context path
+	 * @return The workload class of the request
+	 */
+	static WorkloadClass classify(String path) {
+		if (path.startsWith("/export/")) {
+			return WorkloadClass.EXPORT;
+		}
+		if (path.equals("/rest/batch") || path.equals("/rest/bulk")) {
+			return WorkloadClass.BULK;
+		}
+		if (path.equals("/rest/create")) {
+			return WorkloadClass.INGESTION;
+		}
+		return WorkloadClass.INTERACTIVE;
+	}
+
+	/**
+	 * @return The collection of the logged in user, the first authority that is
+	 *         not a role
+	 */
+	private static String getCollection() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null) {
+			return null;
+		}
+		Optional<? extends GrantedAuthority> authority = authentication.getAuthorities().stream()
+				.filter(x -> !x.getAuthority().startsWith(WebSecurityConfiguration.ROLE_PREFIX)).findFirst();
+		return authority.isPresent() ? authority.get().getAuthority() : null;
+	}
+}
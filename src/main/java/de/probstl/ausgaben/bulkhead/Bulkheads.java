@@ -0,0 +1,148 @@
+package de.probstl.ausgaben.bulkhead;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.FirestoreScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * The bulkheads by collection and workload class. Heavy work of one collection
+ * only fills its own bulkhead and never takes the threads or the Firestore
+ * capacity the interactive requests of other collections need.
+ */
+@Component
+public class Bulkheads {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(Bulkheads.class);
+
+	/**
+	 * Key of a bulkhead
+	 */
+	private static final class Key {
+
+		/** The collection */
+		private final String m_Collection;
+
+		/** The workload class */
+		private final WorkloadClass m_Workload;
+
+		/**
+		 * Constructor
+		 *
+		 * @param collection The collection
+		 * @param workload   The workload class
+		 */
+		Key(String collection, WorkloadClass workload) {
+			m_Collection = collection;
+			m_Workload = workload;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_Collection, m_Workload);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return m_Collection.equals(other.m_Collection) && m_Workload == other.m_Workload;
+		}
+	}
+
+	/** The settings of the workload classes */
+	@Autowired
+	private Environment m_Environment;
+
+	/** Registry for the bulkhead metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** The bulkheads, created on first use */
+	private final Map<Key, Bulkhead> m_Bulkheads = new ConcurrentHashMap<>();
+
+	/**
+	 * Enter the bulkhead of the collection and workload class. A successful call
+	 * must be followed by {@link Bulkhead#exit()}.
+	 *
+	 * @param collection The collection
+	 * @param workload   The workload class
+	 * @return The entered bulkhead or <code>null</code> if it is full
+	 */
+	public Bulkhead tryEnter(@Nonnull String collection, @Nonnull WorkloadClass workload) {
+		Bulkhead bulkhead = m_Bulkheads.computeIfAbsent(new Key(collection, workload), this::create);
+		if (bulkhead.tryEnter()) {
+			return bulkhead;
+		}
+
+		LOG.warn("Bulkhead {} of collection {} is full", workload.getKey(), collection);
+		m_MeterRegistry.counter("bulkhead.rejected", tags(collection, workload)).increment();
+		return null;
+	}
+
+	/**
+	 * Run the task in the bulkhead of the collection and workload class with the
+	 * Firestore priority of the class
+	 *
+	 * @param collection The collection
+	 * @param workload   The workload class
+	 * @param task       The task
+	 * @return <code>false</code> if the bulkhead is full and the task did not run
+	 */
+	public boolean tryRun(@Nonnull String collection, @Nonnull WorkloadClass workload, Runnable task) {
+		Bulkhead bulkhead = tryEnter(collection, workload);
+		if (bulkhead == null) {
+			return false;
+		}
+		try {
+			FirestoreScheduler.runWith(workload.getPriority(), task);
+			return true;
+		} finally {
+			bulkhead.exit();
+		}
+	}
+
+	/**
+	 * Create a bulkhead and its metrics
+	 *
+	 * @param key The key of the bulkhead
+	 * @return The new bulkhead
+	 */
+	private Bulkhead create(Key key) {
+		WorkloadClass workload = key.m_Workload;
+		String prefix = "expenses.bulkhead." + workload.getKey();
+		Bulkhead bulkhead = new Bulkhead(
+				m_Environment.getProperty(prefix + ".max-concurrent", Integer.class, workload.getMaxConcurrent()),
+				m_Environment.getProperty(prefix + ".max-queue", Integer.class, workload.getMaxQueue()),
+				m_Environment.getProperty(prefix + ".max-wait", Duration.class,
+						Duration.ofMillis(workload.getMaxWaitMillis())));
+
+		Tags tags = tags(key.m_Collection, workload);
+		m_MeterRegistry.gauge("bulkhead.active", tags, bulkhead, Bulkhead::getActive);
+		m_MeterRegistry.gauge("bulkhead.queue", tags, bulkhead, Bulkhead::getWaiting);
+		return bulkhead;
+	}
+
+	/**
+	 * @param collection The collection
+	 * @param workload   The workload class
+	 * @return The tags of the metrics of the bulkhead
+	 */
+	private static Tags tags(String collection, WorkloadClass workload) {
+		return Tags.of("collection", collection, "workload", workload.getKey());
+	}
+}
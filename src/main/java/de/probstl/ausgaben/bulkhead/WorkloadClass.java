@@ -0,0 +1,94 @@
+package de.probstl.ausgaben.bulkhead;
+
+import de.probstl.ausgaben.FirestoreScheduler.Priority;
+
+/**
+ * The kinds of work that get a bulkhead of their own in every collection. The
+ * defaults can be changed with
+ * <code>expenses.bulkhead.&lt;key&gt;.max-concurrent</code>,
+ * <code>.max-queue</code> and <code>.max-wait</code>.
+ */
+public enum WorkloadClass {
+
+	/** Pages and small REST calls a user waits for */
+	INTERACTIVE("interactive", 8, 16, 2000, Priority.INTERACTIVE),
+
+	/** Exports of a whole month or year */
+	EXPORT("export", 1, 2, 10000, Priority.BATCH),
+
+	/** New single expenses */
+	INGESTION("ingestion", 4, 16, 5000, Priority.INTERACTIVE),
+
+	/** Batch uploads and bulk edits of many expenses */
+	BULK("bulk", 2, 8, 10000, Priority.BATCH),
+
+	/** Refreshes and prefetches nobody waits for */
+	BACKGROUND("background", 2, 0, 0, Priority.BATCH);
+
+	/** Key of the settings and tag of the metrics */
+	private final String m_Key;
+
+	/** Default of the concurrent calls */
+	private final int m_MaxConcurrent;
+
+	/** Default of the waiting calls */
+	private final int m_MaxQueue;
+
+	/** Default of the maximum wait in milliseconds */
+	private final long m_MaxWaitMillis;
+
+	/** Priority of the Firestore calls */
+	private final Priority m_Priority;
+
+	/**
+	 * Constructor
+	 *
+	 * @param key           Key of the settings and tag of the metrics
+	 * @param maxConcurrent Default of the concurrent calls
+	 * @param maxQueue      Default of the waiting calls
+	 * @param maxWaitMillis Default of the maximum wait in milliseconds
+	 * @param priority      Priority of the Firestore calls
+	 */
+	WorkloadClass(String key, int maxConcurrent, int maxQueue, long maxWaitMillis, Priority priority) {
+		m_Key = key;
+		m_MaxConcurrent = maxConcurrent;
+		m_MaxQueue = maxQueue;
+		m_MaxWaitMillis = maxWaitMillis;
+		m_Priority = priority;
+	}
+
+	/**
+	 * @return the key of the settings and tag of the metrics
+	 */
+	public String getKey() {
+		return m_Key;
+	}
+
+	/**
+	 * @return the priority of the Firestore calls
+	 */
+	public Priority getPriority() {
+		return m_Priority;
+	}
+
+	/**
+	 * @return the default of the concurrent calls
+	 */
+	int getMaxConcurrent() {
+		return m_MaxConcurrent;
+	}
+
+	/**
+	 * @return the default of the waiting calls
+	 */
+	int getMaxQueue() {
+		return m_MaxQueue;
+	}
+
+	/**
+	 * @return the default of the maximum wait in milliseconds
+	 */
+	long getMaxWaitMillis() {
+		return m_MaxWaitMillis;
+	}
+}
@@ -0,0 +1,200 @@
+package de.probstl.ausgaben.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import de.probstl.ausgaben.data.Expense;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of single expenses by collection and id. It is filled by the range
+ * reads so that opening an expense from a list needs no further read. Callers
+ * always get a copy, modifying it does not change the cache.
+ */
+@Component
+public class ExpenseCache {
+
+	/**
+	 * Key of a cached expense
+	 */
+	private static final class Key {
+
+		/** The collection */
+		private final String m_Collection;
+
+		/** The id of the expense */
+		private final String m_Id;
+
+		/**
+		 * Constructor
+		 *
+		 * @param collection The collection
+		 * @param id         The id of the expense
+		 */
+		Key(String collection, String id) {
+			m_Collection = collection;
+			m_Id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_Collection, m_Id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return m_Collection.equals(other.m_Collection) && m_Id.equals(other.m_Id);
+		}
+	}
+
+	/**
+	 * A cached expense
+	 */
+	private static final class Entry {
+
+		/** The expense */
+		private final Expense m_Expense;
+
+		/** Point in time the expense was read */
+		private final Instant m_LoadedAt = Instant.now();
+
+		/**
+		 * Constructor
+		 *
+		 * @param expense The expense
+		 */
+		Entry(Expense expense) {
+			m_Expense = expense.withId(expense.getId());
+		}
+	}
+
+	/** Registry for the cache metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** Entries older than this are read again */
+	@Value("${expenses.entity-cache.ttl:PT10M}")
+	private Duration m_Ttl;
+
+	/** Maximum number of cached expenses */
+	@Value("${expenses.entity-cache.size:2000}")
+	private int m_MaxSize;
+
+	/** The cached expenses in access order */
+	private final Map<Key, Entry> m_Entries = new LinkedHashMap<>(256, 0.75f, true);
+
+	/** Incremented on every modification of a collection */
+	private final Map<String, AtomicLong> m_Generations = new ConcurrentHashMap<>();
+
+	/** Number of reads served from the cache */
+	private Counter m_Hits;
+
+	/** Number of reads that had to go to Firestore */
+	private Counter m_Misses;
+
+	/**
+	 * Create the metrics
+	 */
+	@PostConstruct
+	public void init() {
+		m_Hits = m_MeterRegistry.counter("entity.cache.hit");
+		m_Misses = m_MeterRegistry.counter("entity.cache.miss");
+		m_MeterRegistry.gauge("entity.cache.size", m_Entries, Map::size);
+	}
+
+	/**
+	 * Return a copy of the cached expense
+	 *
+	 * @param collection The collection
+	 * @param id         The id of the expense
+	 * @return The expense or <code>null</code> if it is not cached
+	 */
+	public Expense get(@Nonnull String collection, @Nonnull String id) {
+		final Key key = new Key(collection, id);
+		synchronized (m_Entries) {
+			final Entry entry = m_Entries.get(key);
+			if (entry != null && Duration.between(entry.m_LoadedAt, Instant.now()).compareTo(m_Ttl) <= 0) {
+				m_Hits.increment();
+				return entry.m_Expense.withId(id);
+			}
+			if (entry != null) {
+				m_Entries.remove(key);
+			}
+		}
+		m_Misses.increment();
+		return null;
+	}
+
+	/**
+	 * Return the current modification stamp of the collection. It must be taken
+	 * before a read and handed to {@link #putAll(String, Collection, long)}.
+	 *
+	 * @param collection The collection
+	 * @return The stamp
+	 */
+	public long stamp(@Nonnull String collection) {
+		return generation(collection).get();
+	}
+
+	/**
+	 * Store the read expenses unless the collection was modified after the stamp
+	 * was taken
+	 *
+	 * @param collection The collection
+	 * @param expenses   The read expenses
+	 * @param stamp      The stamp taken before the read
+	 */
+	public void putAll(@Nonnull String collection, Collection<Expense> expenses, long stamp) {
+		synchronized (m_Entries) {
+			if (stamp != stamp(collection)) {
+				return;
+			}
+			for (Expense expense : expenses) {
+				m_Entries.put(new Key(collection, expense.getId()), new Entry(expense));
+			}
+			Iterator<Entry> it = m_Entries.values().iterator();
+			while (m_Entries.size() > m_MaxSize && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop a modified or deleted expense
+	 *
+	 * @param collection The collection
+	 * @param id         The id of the expense
+	 */
+	public void invalidate(@Nonnull String collection, @Nonnull String id) {
+		synchronized (m_Entries) {
+			generation(collection).incrementAndGet();
+			m_Entries.remove(new Key(collection, id));
+		}
+	}
+
+	/**
+	 * @return the modification counter of the collection
+	 */
+	private AtomicLong generation(String collection) {
+		return m_Generations.computeIfAbsent(collection, x -> new AtomicLong());
+	}
+}
@@ -0,0 +1,196 @@
+package de.probstl.ausgaben.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoField;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.bulkhead.Bulkheads;
+import de.probstl.ausgaben.bulkhead.WorkloadClass;
+import de.probstl.ausgaben.data.ExpensesRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Loads the months next to a displayed month into the {@link ReportCache}
+ * because users mostly click through the months one after another. Runs on a
+ * single low priority thread, is limited per user and disabled by default.
+ */
+@Service
+public class MonthPrefetcher {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(MonthPrefetcher.class);
+
+	/** Length of the window for the rate limit */
+	private static final Duration WINDOW = Duration.ofMinutes(1);
+
+	/** Maximum number of waiting prefetches */
+	private static final int QUEUE_SIZE = 16;
+
+	/**
+	 * Requests of a user in the current window
+	 */
+	private static final class Window {
+
+		/** Begin of the window */
+		private final Instant m_Start = Instant.now();
+
+		/** Number of prefetches issued in the window */
+		private int m_Count;
+	}
+
+	/** The cache to fill */
+	@Autowired
+	private ReportCache m_ReportCache;
+
+	/** Keeps the prefetches of a collection apart from its requests */
+	@Autowired
+	private Bulkheads m_Bulkheads;
+
+	/** Registry for the prefetch metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** Switch for the prefetcher */
+	@Value("${expenses.prefetch.enabled:false}")
+	private boolean m_Enabled;
+
+	/** Maximum number of prefetched months per user and minute */
+	@Value("${expenses.prefetch.max-per-minute:10}")
+	private int m_MaxPerMinute;
+
+	/** The current window by user */
+	private final Map<String, Window> m_Windows = new ConcurrentHashMap<>();
+
+	/** Executor with one low priority thread */
+	private final ThreadPoolExecutor m_Executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(QUEUE_SIZE), createThreadFactory());
+
+	/** Number of issued prefetches */
+	private Counter m_Issued;
+
+	/** Number of prefetches dropped by the rate limit or a full queue */
+	private Counter m_Rejected;
+
+	/**
+	 * @return Factory for the daemon threads of the prefetch executor
+	 */
+	private static CustomizableThreadFactory createThreadFactory() {
+		CustomizableThreadFactory factory = new CustomizableThreadFactory("prefetch-");
+		factory.setDaemon(true);
+		factory.setThreadPriority(Thread.MIN_PRIORITY);
+		return factory;
+	}
+
+	/**
+	 * Create the metrics
+	 */
+	@PostConstruct
+	public void init() {
+		m_Issued = m_MeterRegistry.counter("report.prefetch.issued");
+		m_Rejected = m_MeterRegistry.counter("report.prefetch.rejected");
+	}
+
+	/**
+	 * Prefetch the previous and the next month of the displayed month. The next
+	 * month is skipped if it lies in the future.
+	 *
+	 * @param request    The displayed month
+	 * @param collection The collection
+	 * @param user       The user for the rate limit
+	 */
+	public void prefetchAround(ExpensesRequest request, @Nonnull String collection, @Nonnull String user) {
+		if (!m_Enabled || !m_ReportCache.isEnabled()) {
+			return;
+		}
+
+		submit(toRequest(request.getPreviousMonth()), collection, user);
+
+		// the displayed month itself is returned if the next one lies in the future
+		final LocalDateTime nextMonth = request.getNextMonth();
+		if (nextMonth.isAfter(request.getPreviousMonth().plusMonths(1))) {
+			submit(toRequest(nextMonth), collection, user);
+		}
+	}
+
+	/**
+	 * Queue the prefetch of one month
+	 *
+	 * @param request    The month
+	 * @param collection The collection
+	 * @param user       The user for the rate limit
+	 */
+	private void submit(ExpensesRequest request, String collection, String user) {
+		if (!acquire(user)) {
+			m_Rejected.increment();
+			return;
+		}
+
+		try {
+			m_Executor.execute(() -> {
+				try {
+					if (!m_Bulkheads.tryRun(collection, WorkloadClass.BACKGROUND,
+							() -> m_ReportCache.prefetch(request, collection))) {
+						m_Rejected.increment();
+					}
+				} catch (RuntimeException e) {
+					LOG.warn("Prefetch of {} in collection {} failed: {}", request, collection, e.getMessage());
+				}
+			});
+			m_Issued.increment();
+		} catch (RejectedExecutionException e) {
+			m_Rejected.increment();
+		}
+	}
+
+	/**
+	 * Count a prefetch against the limit of the user
+	 *
+	 * @param user The user
+	 * @return <code>true</code> if the limit is not reached yet
+	 */
+	private boolean acquire(String user) {
+		final Instant now = Instant.now();
+		final Window window = m_Windows.compute(user, (k, v) -> {
+			Window current = (v == null || Duration.between(v.m_Start, now).compareTo(WINDOW) > 0) ? new Window() : v;
+			current.m_Count++;
+			return current;
+		});
+		return window.m_Count <= m_MaxPerMinute;
+	}
+
+	/**
+	 * @param month Any point in time of the month
+	 * @return The request for the whole month
+	 */
+	private static ExpensesRequest toRequest(LocalDateTime month) {
+		return ExpensesRequest.forMonth(String.valueOf(month.get(ChronoField.MONTH_OF_YEAR)),
+				String.valueOf(month.get(ChronoField.YEAR)));
+	}
+
+	/**
+	 * Stop the prefetch executor
+	 */
+	@PreDestroy
+	public void shutdown() {
+		m_Executor.shutdownNow();
+	}
+}
@@ -0,0 +1,346 @@
+package de.probstl.ausgaben.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.FirestoreService;
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.data.Expense;
+import de.probstl.ausgaben.data.ExpensesRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Short lived cache of the expenses loaded for a report interval. Entries of a
+ * collection are dropped as soon as one of its expenses is modified. Entries
+ * may also be filled ahead of time by the {@link MonthPrefetcher}. A user who
+ * used up the daily read budget gets outdated entries as well. The expenses are
+ * cached instead of the aggregation by city, because the budgets are assigned
+ * to the aggregation for every user and request. Grouping the cached expenses
+ * is cheap compared to reading them.
+ */
+@Service
+public class ReportCache {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ReportCache.class);
+
+	/**
+	 * Key of a cached interval
+	 */
+	private static final class Key {
+
+		/** The collection */
+		private final String m_Collection;
+
+		/** Begin of the interval */
+		private final long m_Begin;
+
+		/** End of the interval */
+		private final long m_End;
+
+		/**
+		 * Constructor
+		 *
+		 * @param collection The collection
+		 * @param request    The interval
+		 */
+		Key(String collection, ExpensesRequest request) {
+			m_Collection = collection;
+			m_Begin = request.getBeginDate().getTime();
+			m_End = request.getEndDate().getTime();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(m_Collection, Long.valueOf(m_Begin), Long.valueOf(m_End));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return m_Collection.equals(other.m_Collection) && m_Begin == other.m_Begin && m_End == other.m_End;
+		}
+	}
+
+	/**
+	 * A cached interval
+	 */
+	private static final class Entry {
+
+		/** The loaded expenses */
+		private final Collection<Expense> m_Expenses;
+
+		/** Point in time the expenses were loaded */
+		private final Instant m_LoadedAt;
+
+		/** The entry was loaded by the prefetcher */
+		private final boolean m_Prefetched;
+
+		/** The entry was read at least once */
+		private final AtomicBoolean m_Used = new AtomicBoolean();
+
+		/**
+		 * Constructor
+		 *
+		 * @param expenses   The loaded expenses
+		 * @param prefetched Loaded by the prefetcher
+		 * @param loadedAt   Point in time the expenses were loaded
+		 */
+		Entry(Collection<Expense> expenses, boolean prefetched, Instant loadedAt) {
+			m_Expenses = Collections.unmodifiableCollection(expenses);
+			m_LoadedAt = loadedAt;
+			m_Prefetched = prefetched;
+		}
+	}
+
+	/** The service for loading the expenses */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** Registry for the cache metrics */
+	@Autowired
+	private MeterRegistry m_MeterRegistry;
+
+	/** Tells if the user used up the daily read budget */
+	@Autowired
+	private DocumentAccounting m_Accounting;
+
+	/** Switch for the cache, without it every report reads Firestore */
+	@Value("${expenses.report-cache.enabled:true}")
+	private boolean m_Enabled;
+
+	/** Entries older than this are loaded again */
+	@Value("${expenses.report-cache.ttl:PT5M}")
+	private Duration m_Ttl;
+
+	/** Maximum number of cached intervals */
+	@Value("${expenses.report-cache.size:64}")
+	private int m_MaxSize;
+
+	/** The cached intervals in access order */
+	private final Map<Key, Entry> m_Entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Incremented on every modification of a collection */
+	private final Map<String, AtomicLong> m_Generations = new ConcurrentHashMap<>();
+
+	/** Number of reads served from the cache */
+	private Counter m_Hits;
+
+	/** Number of reads that had to be loaded */
+	private Counter m_Misses;
+
+	/** Number of outdated entries served because of the read budget */
+	private Counter m_Stale;
+
+	/** Number of intervals loaded by the prefetcher */
+	private Counter m_Prefetched;
+
+	/** Number of prefetched intervals read by a user */
+	private Counter m_PrefetchUsed;
+
+	/** Number of prefetched intervals dropped without being read */
+	private Counter m_PrefetchWasted;
+
+	/**
+	 * Create the metrics
+	 */
+	@PostConstruct
+	public void init() {
+		m_Hits = m_MeterRegistry.counter("report.cache.hit");
+		m_Misses = m_MeterRegistry.counter("report.cache.miss");
+		m_Stale = m_MeterRegistry.counter("report.cache.stale");
+		m_Prefetched = m_MeterRegistry.counter("report.prefetch.loaded");
+		m_PrefetchUsed = m_MeterRegistry.counter("report.prefetch.used");
+		m_PrefetchWasted = m_MeterRegistry.counter("report.prefetch.wasted");
+		m_MeterRegistry.gauge("report.prefetch.hitrate", this,
+				x -> x.m_Prefetched.count() > 0 ? x.m_PrefetchUsed.count() / x.m_Prefetched.count() : 0.0);
+	}
+
+	/**
+	 * @return <code>true</code> if reports are cached, otherwise there is no use in
+	 *         prefetching them
+	 */
+	public boolean isEnabled() {
+		return m_Enabled;
+	}
+
+	/**
+	 * Return the expenses of the interval from the cache or load them
+	 *
+	 * @param request    The interval
+	 * @param collection The collection
+	 * @return The expenses, never <code>null</code>
+	 */
+	public Collection<Expense> get(ExpensesRequest request, @Nonnull String collection) {
+		return get(request, collection, Instant.now());
+	}
+
+	/**
+	 * @param request    The interval
+	 * @param collection The collection
+	 * @param now        The current point in time
+	 * @return The expenses, never <code>null</code>
+	 */
+	Collection<Expense> get(ExpensesRequest request, @Nonnull String collection, Instant now) {
+		if (!m_Enabled) {
+			return m_FirestoreService.findBetween(request, collection);
+		}
+
+		final Key key = new Key(collection, request);
+
+		final Entry cached = lookup(key, m_Accounting.isBudgetExhausted(), now);
+		if (cached != null) {
+			m_Hits.increment();
+			if (cached.m_Prefetched && cached.m_Used.compareAndSet(false, true)) {
+				m_PrefetchUsed.increment();
+			}
+			return cached.m_Expenses;
+		}
+
+		m_Misses.increment();
+		final Entry loaded = load(key, request, collection, false, now);
+		loaded.m_Used.set(true);
+		return loaded.m_Expenses;
+	}
+
+	/**
+	 * Load the interval into the cache unless it is already cached
+	 *
+	 * @param request    The interval
+	 * @param collection The collection
+	 */
+	public void prefetch(ExpensesRequest request, @Nonnull String collection) {
+		prefetch(request, collection, Instant.now());
+	}
+
+	/**
+	 * @param request    The interval
+	 * @param collection The collection
+	 * @param now        The current point in time
+	 */
+	void prefetch(ExpensesRequest request, @Nonnull String collection, Instant now) {
+		final Key key = new Key(collection, request);
+		if (!m_Enabled || lookup(key, false, now) != null) {
+			return;
+		}
+
+		load(key, request, collection, true, now);
+		m_Prefetched.increment();
+		LOG.debug("Prefetched {} in collection {}", request, collection);
+	}
+
+	/**
+	 * Drop the intervals of the modified collection
+	 *
+	 * @param event The modification of an expense
+	 */
+	@EventListener
+	public void onExpenseChanged(ExpenseChangedEvent event) {
+		generation(event.getCollection()).incrementAndGet();
+		synchronized (m_Entries) {
+			Iterator<Map.Entry<Key, Entry>> it = m_Entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Key, Entry> entry = it.next();
+				if (entry.getKey().m_Collection.equals(event.getCollection())) {
+					evicted(entry.getValue());
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find a valid entry
+	 *
+	 * @param key        The key of the interval
+	 * @param allowStale Return an outdated entry instead of dropping it
+	 * @param now        The current point in time
+	 * @return The entry or <code>null</code>
+	 */
+	private Entry lookup(Key key, boolean allowStale, Instant now) {
+		synchronized (m_Entries) {
+			final Entry entry = m_Entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (Duration.between(entry.m_LoadedAt, now).compareTo(m_Ttl) > 0) {
+				if (allowStale) {
+					m_Stale.increment();
+					return entry;
+				}
+				evicted(m_Entries.remove(key));
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Load the interval and store it unless the collection was modified meanwhile.
+	 *
+	 * @param key        The key of the interval
+	 * @param request    The interval
+	 * @param collection The collection
+	 * @param prefetched Loaded by the prefetcher
+	 * @param now        The current point in time
+	 * @return The loaded entry
+	 */
+	private Entry load(Key key, ExpensesRequest request, String collection, boolean prefetched, Instant now) {
+		final long generation = generation(collection).get();
+		final Entry entry = new Entry(m_FirestoreService.findBetween(request, collection), prefetched, now);
+
+		synchronized (m_Entries) {
+			// an empty result may also be a failed read and is not kept
+			if (!entry.m_Expenses.isEmpty() && generation == generation(collection).get()) {
+				evicted(m_Entries.put(key, entry));
+				Iterator<Entry> it = m_Entries.values().iterator();
+				while (m_Entries.size() > m_MaxSize && it.hasNext()) {
+					evicted(it.next());
+					it.remove();
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Count prefetched entries that are dropped without being read
+	 *
+	 * @param entry The dropped entry or <code>null</code>
+	 */
+	private void evicted(Entry entry) {
+		if (entry != null && entry.m_Prefetched && !entry.m_Used.get()) {
+			m_PrefetchWasted.increment();
+		}
+	}
+
+	/**
+	 * @return the modification counter of the collection
+	 */
+	private AtomicLong generation(String collection) {
+		return m_Generations.computeIfAbsent(collection, x -> new AtomicLong());
+	}
+}
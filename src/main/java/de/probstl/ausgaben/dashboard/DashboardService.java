@@ -0,0 +1,242 @@
+package de.probstl.ausgaben.dashboard;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.FirestoreService;
+import de.probstl.ausgaben.ThreadFactories;
+import de.probstl.ausgaben.TimezoneUtil;
+import de.probstl.ausgaben.bulkhead.Bulkheads;
+import de.probstl.ausgaben.bulkhead.WorkloadClass;
+import de.probstl.ausgaben.data.ExpensesRequest;
+
+/**
+ * Holds the landing page figures of each collection. A cached summary is
+ * always returned immediately, if it is outdated a refresh is started in the
+ * background (stale-while-revalidate). Only the very first request of a
+ * collection has to wait for Firestore.
+ */
+@Service
+public class DashboardService {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(DashboardService.class);
+
+	/** The service for reading the figures */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** A summary older than this is refreshed on the next request */
+	@Value("${expenses.dashboard.max-age:PT1M}")
+	private Duration m_MaxAge;
+
+	/** The cached summary by collection */
+	private final Map<String, DashboardSummary> m_Summaries = new ConcurrentHashMap<>();
+
+	/**
+	 * Collections with a refresh in progress. The value tells if the collection
+	 * has to be refreshed again because it was modified while the refresh was
+	 * reading it.
+	 */
+	private final Map<String, Boolean> m_Refreshing = new ConcurrentHashMap<>();
+
+	/** Keeps the refreshes of a collection apart from its requests */
+	@Autowired
+	private Bulkheads m_Bulkheads;
+
+	/** Creates the threads of the refresh executor */
+	@Autowired
+	private ThreadFactories m_ThreadFactories;
+
+	/** Executor for the background refreshes */
+	private ExecutorService m_Executor;
+
+	/**
+	 * Create the refresh executor
+	 */
+	@PostConstruct
+	public void init() {
+		m_Executor = Executors.newFixedThreadPool(2, m_ThreadFactories.create("dashboard-"));
+	}
+
+	/**
+	 * Return the summary of the collection. A cached summary is returned even if it
+	 * is outdated, in that case a refresh is triggered.
+	 *
+	 * @param collection The collection
+	 * @return The summary, never <code>null</code>
+	 */
+	public DashboardSummary getSummary(@Nonnull String collection) {
+		final DashboardSummary cached = m_Summaries.get(collection);
+		if (cached == null) {
+			// nothing to serve yet
+			try {
+				DashboardSummary summary = compute(collection);
+				m_Summaries.put(collection, summary);
+				return summary;
+			} catch (IllegalStateException e) {
+				LOG.warn(e.getMessage());
+				return DashboardSummary.empty();
+			}
+		}
+
+		if (isStale(cached, Instant.now())) {
+			triggerRefresh(collection);
+		}
+		return cached;
+	}
+
+	/**
+	 * Refresh all known summaries periodically so that even the first request
+	 * after a quiet period gets current figures
+	 */
+	@Scheduled(fixedDelayString = "${expenses.dashboard.refresh-interval:PT5M}",
+			initialDelayString = "${expenses.dashboard.refresh-interval:PT5M}")
+	public void refreshAll() {
+		m_Summaries.keySet().forEach(this::triggerRefresh);
+	}
+
+	/**
+	 * Refresh the summary of the collection after a modification
+	 *
+	 * @param event The modification of an expense
+	 */
+	@EventListener
+	public void onExpenseChanged(ExpenseChangedEvent event) {
+		if (m_Summaries.containsKey(event.getCollection())) {
+			triggerRefresh(event.getCollection());
+		}
+	}
+
+	/**
+	 * Start a background refresh. If one is already running, another one is
+	 * started after it, the running one may have read the collection before the
+	 * modification.
+	 *
+	 * @param collection The collection
+	 */
+	void triggerRefresh(@Nonnull String collection) {
+		if (m_Refreshing.merge(collection, Boolean.FALSE, (running, x) -> Boolean.TRUE).booleanValue()) {
+			return;
+		}
+		submit(collection);
+	}
+
+	/**
+	 * Run the refresh on the executor and start it again if it was triggered in
+	 * the meantime
+	 *
+	 * @param collection The collection
+	 */
+	private void submit(@Nonnull String collection) {
+		try {
+			m_Executor.execute(() -> {
+				try {
+					if (!m_Bulkheads.tryRun(collection, WorkloadClass.BACKGROUND,
+							() -> m_Summaries.put(collection, compute(collection)))) {
+						LOG.info("Refresh of dashboard for collection {} skipped, bulkhead is full", collection);
+					}
+				} catch (RuntimeException e) {
+					LOG.error("Refreshing dashboard of collection " + collection + " failed", e);
+				} finally {
+					if (m_Refreshing.computeIfPresent(collection,
+							(k, again) -> again.booleanValue() ? Boolean.FALSE : null) != null) {
+						submit(collection);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			m_Refreshing.remove(collection);
+			LOG.warn("Refresh of dashboard for collection {} rejected", collection);
+		}
+	}
+
+	/**
+	 * A summary is stale if it is older than the maximum age or was computed in
+	 * another month of the home time zone
+	 *
+	 * @param summary The cached summary
+	 * @param now     The current point in time
+	 * @return <code>true</code> if it must be refreshed
+	 */
+	boolean isStale(DashboardSummary summary, Instant now) {
+		if (Duration.between(summary.getComputedAt(), now).compareTo(m_MaxAge) > 0) {
+			return true;
+		}
+		LocalDate computed = LocalDate.ofInstant(summary.getComputedAt(), TimezoneUtil.getHome());
+		LocalDate today = LocalDate.ofInstant(now, TimezoneUtil.getHome());
+		return computed.getMonth() != today.getMonth() || computed.getYear() != today.getYear();
+	}
+
+	/**
+	 * Read the figures of the collection from Firestore
+	 *
+	 * @param collection The collection
+	 * @return The new summary
+	 * @throws IllegalStateException if Firestore could not be read. The cached
+	 *                               summary is kept in that case, figures of
+	 *                               zero are never cached for a failed read.
+	 */
+	private DashboardSummary compute(@Nonnull String collection) {
+		final Instant start = Instant.now();
+
+		// both months are adjacent and read with one query
+		final List<NavigableMap<Integer, Double>> result = m_FirestoreService.findByWeeks(
+				Arrays.asList(ExpensesRequest.forLastMonth(), ExpensesRequest.forCurrentMonth()), collection);
+		if (result == null || result.contains(null)) {
+			throw new IllegalStateException("figures of collection " + collection + " could not be read");
+		}
+
+		double lastMonth = result.get(0).values().stream().mapToDouble(Double::doubleValue).sum();
+		final NavigableMap<Integer, Double> monthWeeks = result.get(1);
+		double currentMonth = monthWeeks.values().stream().mapToDouble(Double::doubleValue).sum();
+		double percentOfLastMonth = (currentMonth > 0 && lastMonth > 0) ? (currentMonth / lastMonth) * 100.0 : 0.0;
+
+		double currentWeek = 0.0;
+		List<Double> weeksList = new ArrayList<>();
+		final double m = currentMonth;
+		if (!monthWeeks.isEmpty()) {
+			currentWeek = monthWeeks.lastEntry().getValue().doubleValue();
+			weeksList = monthWeeks.values().stream()
+					.mapToDouble(x -> (x.doubleValue() > 0 && m > 0) ? (x.doubleValue() / m) * 100.0 : 0.0).boxed()
+					.collect(Collectors.toList());
+		}
+
+		LOG.info("Dashboard of collection {} computed in {} ms", collection,
+				Long.valueOf(Duration.between(start, Instant.now()).toMillis()));
+
+		return new DashboardSummary(lastMonth, currentMonth, currentWeek, percentOfLastMonth, weeksList, start);
+	}
+
+	/**
+	 * Stop the refresh executor
+	 */
+	@PreDestroy
+	public void shutdown() {
+		m_Executor.shutdownNow();
+	}
+}
@@ -0,0 +1,98 @@
+package de.probstl.ausgaben.dashboard;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The figures shown on the landing page for one collection
+ */
+public class DashboardSummary {
+
+	/** Sum of the last month */
+	private final double m_LastMonth;
+
+	/** Sum of the current month */
+	private final double m_CurrentMonth;
+
+	/** Sum of the current week */
+	private final double m_CurrentWeek;
+
+	/** The current month in percent of the last month */
+	private final double m_PercentOfLastMonth;
+
+	/** Each week of the current month in percent of the current month */
+	private final List<Double> m_WeeksList;
+
+	/** The point in time the figures were read */
+	private final Instant m_ComputedAt;
+
+	/**
+	 * Constructor
+	 *
+	 * @param lastMonth          Sum of the last month
+	 * @param currentMonth       Sum of the current month
+	 * @param currentWeek        Sum of the current week
+	 * @param percentOfLastMonth The current month in percent of the last month
+	 * @param weeksList          The weeks in percent of the current month
+	 * @param computedAt         The point in time the figures were read
+	 */
+	public DashboardSummary(double lastMonth, double currentMonth, double currentWeek, double percentOfLastMonth,
+			List<Double> weeksList, Instant computedAt) {
+		m_LastMonth = lastMonth;
+		m_CurrentMonth = currentMonth;
+		m_CurrentWeek = currentWeek;
+		m_PercentOfLastMonth = percentOfLastMonth;
+		m_WeeksList = Collections.unmodifiableList(weeksList);
+		m_ComputedAt = computedAt;
+	}
+
+	/**
+	 * @return an empty summary for users without collection
+	 */
+	public static DashboardSummary empty() {
+		return new DashboardSummary(0.0, 0.0, 0.0, 0.0, Collections.emptyList(), Instant.now());
+	}
+
+	/**
+	 * @return the sum of the last month
+	 */
+	public double getLastMonth() {
+		return m_LastMonth;
+	}
+
+	/**
+	 * @return the sum of the current month
+	 */
+	public double getCurrentMonth() {
+		return m_CurrentMonth;
+	}
+
+	/**
+	 * @return the sum of the current week
+	 */
+	public double getCurrentWeek() {
+		return m_CurrentWeek;
+	}
+
+	/**
+	 * @return the current month in percent of the last month
+	 */
+	public double getPercentOfLastMonth() {
+		return m_PercentOfLastMonth;
+	}
+
+	/**
+	 * @return the weeks of the current month in percent of the current month
+	 */
+	public List<Double> getWeeksList() {
+		return m_WeeksList;
+	}
+
+	/**
+	 * @return the point in time the figures were read
+	 */
+	public Instant getComputedAt() {
+		return m_ComputedAt;
+	}
+}
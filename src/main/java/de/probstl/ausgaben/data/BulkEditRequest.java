@@ -0,0 +1,27 @@
+package de.probstl.ausgaben.data;
+
+import java.util.List;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Changes applied to a selection of expenses at once. Only the given fields
+ * are modified, a field that is <code>null</code> or empty is kept.
+ */
+@Data
+@NoArgsConstructor
+public class BulkEditRequest {
+
+    /** The ids of the selected expenses */
+    private List<String> ids;
+
+    /** The new budget */
+    private String budget;
+
+    /** The new city */
+    private String city;
+
+    /** The new payment (cash or card) */
+    private String payment;
+}
@@ -0,0 +1,33 @@
+package de.probstl.ausgaben.data;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk operation for a single expense
+ */
+@Data
+public class BulkItemResult {
+
+    /**
+     * The outcome
+     */
+    public enum Status {
+        /** The expense was written */
+        OK,
+        /** No expense with the id exists */
+        NOT_FOUND,
+        /** The expense was rejected before writing */
+        INVALID,
+        /** Writing the expense failed */
+        FAILED
+    }
+
+    /** The id of the expense */
+    private final String id;
+
+    /** The outcome */
+    private final Status status;
+
+    /** Reason of a failure or <code>null</code> */
+    private final String message;
+}
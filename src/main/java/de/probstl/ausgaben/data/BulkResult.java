@@ -0,0 +1,32 @@
+package de.probstl.ausgaben.data;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Result of a bulk operation with the outcome of every single expense
+ */
+@Data
+public class BulkResult {
+
+    /** Number of written expenses */
+    private final int succeeded;
+
+    /** Number of expenses that were not written */
+    private final int failed;
+
+    /** The outcome by expense in the order of the request */
+    private final List<BulkItemResult> items;
+
+    /**
+     * Create the result from the outcome of the single expenses
+     *
+     * @param items The outcome by expense
+     * @return The result
+     */
+    public static BulkResult of(List<BulkItemResult> items) {
+        int succeeded = (int) items.stream().filter(x -> x.getStatus() == BulkItemResult.Status.OK).count();
+        return new BulkResult(succeeded, items.size() - succeeded, items);
+    }
+}
@@ -60,6 +60,25 @@ public class Expense {
 		this("0");
 	}
 
+	/**
+	 * Create a copy of this expense with the given id
+	 *
+	 * @param id The id of the copy
+	 * @return A new expense with the same values as this one
+	 */
+	public Expense withId(@Nonnull String id) {
+		Expense copy = new Expense(id);
+		copy.m_Shop = m_Shop;
+		copy.m_Message = m_Message;
+		copy.m_Amount = m_Amount;
+		copy.m_AmountDouble = m_AmountDouble;
+		copy.m_City = m_City;
+		copy.m_Timestamp = m_Timestamp;
+		copy.m_Payment = m_Payment;
+		copy.m_Budget = m_Budget;
+		return copy;
+	}
+
 	/**
 	 * @return id
 	 */
@@ -0,0 +1,37 @@
+package de.probstl.ausgaben.data;
+
+import java.util.Date;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * A Firestore call that took longer than the threshold of the slow query log
+ */
+@Data
+public class SlowQuery {
+
+    /** Time the call ended */
+    private final Date timestamp;
+
+    /** The operation, e.g. <i>range</i> */
+    private final String operation;
+
+    /** The collection */
+    private final String collection;
+
+    /** Begin of the interval, <code>null</code> if the call was no range query */
+    private final Date begin;
+
+    /** End of the interval, <code>null</code> if the call was no range query */
+    private final Date end;
+
+    /** The selected fields, empty for all fields */
+    private final List<String> fields;
+
+    /** Number of documents read or written */
+    private final int documents;
+
+    /** Duration of the call in milliseconds */
+    private final long millis;
+}
@@ -0,0 +1,19 @@
+package de.probstl.ausgaben.data;
+
+import lombok.Data;
+
+/**
+ * A bearer token issued for the REST calls
+ */
+@Data
+public class TokenResponse {
+
+    /** The token for the Authorization header */
+    private final String token;
+
+    /** Type of the token, always <i>Bearer</i> */
+    private final String tokenType = "Bearer";
+
+    /** Validity of the token in seconds */
+    private final long expiresIn;
+}
@@ -0,0 +1,29 @@
+package de.probstl.ausgaben.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Assigning a batch of expenses to the budgets of a user
+ */
+@Name("de.probstl.ausgaben.BudgetClassification")
+@Label("Budget Classification")
+@Category({ "Ausgaben", "Reports" })
+@Description("Assigning expenses to the budgets of a user")
+public class BudgetClassificationEvent extends Event {
+
+	/** The user whose budgets are used */
+	@Label("User")
+	public String user;
+
+	/** Number of classified expenses */
+	@Label("Expenses")
+	public int expenses;
+
+	/** Number of budgets of the user */
+	@Label("Budgets")
+	public int budgets;
+}
@@ -0,0 +1,42 @@
+package de.probstl.ausgaben.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A finished Firestore operation. The event is committed when the result is
+ * there, the time of the call is in {@link #callDuration}.
+ */
+@Name("de.probstl.ausgaben.FirestoreCall")
+@Label("Firestore Call")
+@Category({ "Ausgaben", "Firestore" })
+@Description("A read or write of Firestore documents")
+public class FirestoreCallEvent extends Event {
+
+	/** The operation, e.g. range */
+	@Label("Operation")
+	public String operation;
+
+	/** The collection */
+	@Label("Collection")
+	public String collection;
+
+	/** Number of documents read or written */
+	@Label("Documents")
+	public int documents;
+
+	/** Estimated size of the read documents, -1 for writes */
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	/** Time of the call */
+	@Label("Call Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	public long callDuration;
+}
@@ -0,0 +1,144 @@
+package de.probstl.ausgaben.jfr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Starts time-boxed Flight Recorder recordings in the running application. At
+ * most one recording exists at a time; it is kept after it stopped until the
+ * next one starts, so it can be downloaded.
+ */
+@Component
+public class FlightRecorderService {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(FlightRecorderService.class);
+
+	/** The events of the application, enabled in every recording */
+	private static final List<Class<? extends Event>> EVENTS = List.of(FirestoreCallEvent.class,
+			BudgetClassificationEvent.class, ReportAggregationEvent.class, TemplateRenderingEvent.class,
+			MailSendingEvent.class);
+
+	/** The longest allowed recording */
+	private final Duration m_MaxDuration;
+
+	/** The JDK settings of the recordings, e.g. <i>default</i> or <i>profile</i> */
+	private final String m_Settings;
+
+	/** The current or last recording, <code>null</code> if there was none */
+	private Recording m_Recording;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxDuration The longest allowed recording
+	 * @param settings    The JDK settings of the recordings
+	 */
+	public FlightRecorderService(@Value("${expenses.jfr.max-duration:PT5M}") Duration maxDuration,
+			@Value("${expenses.jfr.settings:profile}") String settings) {
+		m_MaxDuration = maxDuration;
+		m_Settings = settings;
+	}
+
+	/**
+	 * Start a recording that stops by itself after the duration
+	 *
+	 * @param duration The duration, limited to the allowed maximum
+	 * @return The duration of the started recording
+	 * @throws IllegalStateException if a recording is running
+	 * @throws IOException           if the settings could not be read
+	 */
+	public synchronized Duration start(Duration duration) throws IOException {
+		if (isRunning()) {
+			throw new IllegalStateException("a recording is running");
+		}
+		closeRecording();
+
+		final Duration limited = duration.compareTo(m_MaxDuration) > 0 || duration.isNegative() || duration.isZero()
+				? m_MaxDuration
+				: duration;
+		final Recording recording;
+		try {
+			recording = new Recording(Configuration.getConfiguration(m_Settings));
+		} catch (ParseException e) {
+			throw new IOException("invalid recording settings " + m_Settings, e);
+		}
+		recording.setName("expenses");
+		recording.setToDisk(true);
+		recording.setDuration(limited);
+		EVENTS.forEach(x -> recording.enable(x));
+		recording.start();
+		m_Recording = recording;
+		LOG.info("Flight recording started for {}", limited);
+		return limited;
+	}
+
+	/**
+	 * Stop the running recording
+	 *
+	 * @return <code>false</code> if no recording was running
+	 */
+	public synchronized boolean stop() {
+		if (!isRunning()) {
+			return false;
+		}
+		m_Recording.stop();
+		LOG.info("Flight recording stopped");
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if a recording is running
+	 */
+	public synchronized boolean isRunning() {
+		return m_Recording != null && m_Recording.getState() == RecordingState.RUNNING;
+	}
+
+	/**
+	 * Write the current or last recording to a temporary file
+	 *
+	 * @return The file, to be deleted by the caller, or <code>null</code> if there
+	 *         is no recording
+	 * @throws IOException if the file could not be written
+	 */
+	public synchronized Path dump() throws IOException {
+		if (m_Recording == null || m_Recording.getState() == RecordingState.CLOSED) {
+			return null;
+		}
+		final Path file = Files.createTempFile("expenses-", ".jfr");
+		try {
+			m_Recording.dump(file);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return file;
+	}
+
+	/**
+	 * Release the recording when the application stops
+	 */
+	@PreDestroy
+	public synchronized void closeRecording() {
+		if (m_Recording != null) {
+			m_Recording.close();
+			m_Recording = null;
+		}
+	}
+}
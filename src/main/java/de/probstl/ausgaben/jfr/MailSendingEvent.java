@@ -0,0 +1,25 @@
+package de.probstl.ausgaben.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Rendering and sending a report by mail
+ */
+@Name("de.probstl.ausgaben.MailSending")
+@Label("Mail Sending")
+@Category({ "Ausgaben", "Mail" })
+@Description("Rendering and sending a report by mail")
+public class MailSendingEvent extends Event {
+
+	/** Number of cities in the report */
+	@Label("Cities")
+	public int cities;
+
+	/** Set if the mail server accepted the mail */
+	@Label("Sent")
+	public boolean sent;
+}
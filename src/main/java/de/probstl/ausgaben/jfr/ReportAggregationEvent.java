@@ -0,0 +1,29 @@
+package de.probstl.ausgaben.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Summing up the expenses of a report by city and shop
+ */
+@Name("de.probstl.ausgaben.ReportAggregation")
+@Label("Report Aggregation")
+@Category({ "Ausgaben", "Reports" })
+@Description("Summing up the expenses of a report by city and shop")
+public class ReportAggregationEvent extends Event {
+
+	/** The collection */
+	@Label("Collection")
+	public String collection;
+
+	/** Number of aggregated expenses */
+	@Label("Expenses")
+	public int expenses;
+
+	/** Number of cities in the report */
+	@Label("Cities")
+	public int cities;
+}
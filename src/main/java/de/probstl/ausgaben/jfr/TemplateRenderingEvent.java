@@ -0,0 +1,25 @@
+package de.probstl.ausgaben.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Rendering a Thymeleaf template for a page or a mail
+ */
+@Name("de.probstl.ausgaben.TemplateRendering")
+@Label("Template Rendering")
+@Category({ "Ausgaben", "Web" })
+@Description("Rendering a Thymeleaf template for a page or a mail")
+public class TemplateRenderingEvent extends Event {
+
+	/** The name of the template or view */
+	@Label("Template")
+	public String template;
+
+	/** Number of cities in the rendered report, -1 if not known */
+	@Label("Cities")
+	public int cities = -1;
+}
@@ -0,0 +1,115 @@
+package de.probstl.ausgaben.logging;
+
+/**
+ * A logged request. The event only holds the values, the log line is created
+ * by the background writer and not on the request thread.
+ */
+public final class RequestLogEvent {
+
+	/** The HTTP method */
+	private final String m_Method;
+
+	/** The path of the request */
+	private final String m_Uri;
+
+	/** The query string, may be <code>null</code> */
+	private final String m_Query;
+
+	/** Address of the client */
+	private final String m_Client;
+
+	/** The logged in user, may be <code>null</code> */
+	private final String m_User;
+
+	/** The HTTP status of the response */
+	private final int m_Status;
+
+	/** Duration of the request in milliseconds */
+	private final long m_DurationMillis;
+
+	/** The truncated body, may be <code>null</code> */
+	private final String m_Payload;
+
+	/**
+	 * Constructor
+	 *
+	 * @param method         The HTTP method
+	 * @param uri            The path of the request
+	 * @param query          The query string, may be <code>null</code>
+	 * @param client         Address of the client
+	 * @param user           The logged in user, may be <code>null</code>
+	 * @param status         The HTTP status of the response
+	 * @param durationMillis Duration of the request in milliseconds
+	 * @param payload        The truncated body, may be <code>null</code>
+	 */
+	public RequestLogEvent(String method, String uri, String query, String client, String user, int status,
+			long durationMillis, String payload) {
+		m_Method = method;
+		m_Uri = uri;
+		m_Query = query;
+		m_Client = client;
+		m_User = user;
+		m_Status = status;
+		m_DurationMillis = durationMillis;
+		m_Payload = payload;
+	}
+
+	/**
+	 * @return the event as line of <code>key=value</code> pairs, values with
+	 *         blanks or quotes are quoted
+	 */
+	public String format() {
+		StringBuilder line = new StringBuilder(128);
+		append(line, "method", m_Method);
+		append(line, "uri", m_Uri);
+		append(line, "query", m_Query);
+		append(line, "status", Integer.toString(m_Status));
+		append(line, "duration_ms", Long.toString(m_DurationMillis));
+		append(line, "client", m_Client);
+		append(line, "user", m_User);
+		append(line, "payload", m_Payload);
+		return line.toString();
+	}
+
+	/**
+	 * Append a pair, missing values are skipped
+	 *
+	 * @param line  The line
+	 * @param key   The key
+	 * @param value The value
+	 */
+	private static void append(StringBuilder line, String key, String value) {
+		if (value == null) {
+			return;
+		}
+		if (line.length() > 0) {
+			line.append(' ');
+		}
+		line.append(key).append('=');
+
+		boolean quote = value.isEmpty();
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c <= ' ' || c == '"' || c == '=';
+		}
+		if (!quote) {
+			line.append(value);
+			return;
+		}
+
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				line.append('\\').append(c);
+			} else if (c == '\n') {
+				line.append("\\n");
+			} else if (c == '\r') {
+				line.append("\\r");
+			} else {
+				line.append(c);
+			}
+		}
+		line.append('"');
+	}
+}
@@ -0,0 +1,234 @@
+package de.probstl.ausgaben.logging;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+/**
+ * Samples the requests and hands them to the {@link RequestLogWriter}. The
+ * sample rate and the logged length of the body are configured by endpoint,
+ * e.g. <code>/rest/batch=0.01:0</code> logs one of hundred batch uploads
+ * without body. The body is only buffered for sampled requests.
+ */
+public class RequestLogFilter extends OncePerRequestFilter {
+
+	/**
+	 * Sampling of the requests matching a path pattern
+	 */
+	static final class Rule {
+
+		/** Ant style pattern of the path */
+		private final String m_Pattern;
+
+		/** Share of the logged requests between 0 and 1 */
+		private final double m_SampleRate;
+
+		/** Maximum number of logged bytes of the body, 0 for none */
+		private final int m_MaxPayload;
+
+		/**
+		 * Constructor
+		 *
+		 * @param pattern    Ant style pattern of the path
+		 * @param sampleRate Share of the logged requests between 0 and 1
+		 * @param maxPayload Maximum number of logged bytes of the body
+		 */
+		Rule(String pattern, double sampleRate, int maxPayload) {
+			if (sampleRate < 0 || sampleRate > 1 || maxPayload < 0) {
+				throw new IllegalArgumentException("invalid request log rule for " + pattern);
+			}
+			m_Pattern = pattern;
+			m_SampleRate = sampleRate;
+			m_MaxPayload = maxPayload;
+		}
+
+		/**
+		 * Parse a rule of the form <code>pattern=rate:maxPayload</code>
+		 *
+		 * @param rule The rule
+		 * @return The parsed rule
+		 */
+		static Rule parse(String rule) {
+			int equals = rule.lastIndexOf('=');
+			int colon = rule.lastIndexOf(':');
+			if (equals <= 0 || colon < equals) {
+				throw new IllegalArgumentException("request log rule must be pattern=rate:maxPayload: " + rule);
+			}
+			try {
+				return new Rule(rule.substring(0, equals).trim(),
+						Double.parseDouble(rule.substring(equals + 1, colon).trim()),
+						Integer.parseInt(rule.substring(colon + 1).trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid numbers in request log rule " + rule, e);
+			}
+		}
+
+		/**
+		 * @return Share of the logged requests between 0 and 1
+		 */
+		double getSampleRate() {
+			return m_SampleRate;
+		}
+
+		/**
+		 * @return Maximum number of logged bytes of the body
+		 */
+		int getMaxPayload() {
+			return m_MaxPayload;
+		}
+	}
+
+	/** Matches the paths against the patterns */
+	private final AntPathMatcher m_Matcher = new AntPathMatcher();
+
+	/** Writes the events */
+	private final RequestLogWriter m_Writer;
+
+	/** The rules by endpoint, the first matching one is used */
+	private final List<Rule> m_Rules;
+
+	/** The rule of all other requests */
+	private final Rule m_Default;
+
+	/**
+	 * Constructor
+	 *
+	 * @param writer            Writes the events
+	 * @param rules             The rules by endpoint in the form
+	 *                          <code>pattern=rate:maxPayload</code>
+	 * @param defaultSampleRate Share of the logged other requests
+	 * @param defaultMaxPayload Maximum number of logged bytes of the body of
+	 *                          other requests
+	 */
+	public RequestLogFilter(RequestLogWriter writer, List<String> rules, double defaultSampleRate,
+			int defaultMaxPayload) {
+		m_Writer = writer;
+		List<Rule> parsed = new ArrayList<>();
+		for (String rule : rules) {
+			if (!rule.trim().isEmpty()) {
+				parsed.add(Rule.parse(rule));
+			}
+		}
+		m_Rules = Collections.unmodifiableList(parsed);
+		m_Default = new Rule("/**", defaultSampleRate, defaultMaxPayload);
+	}
+
+	/**
+	 * @param path The path of the request without context path
+	 * @return The first matching rule or the default
+	 */
+	Rule findRule(String path) {
+		for (Rule rule : m_Rules) {
+			if (m_Matcher.match(rule.m_Pattern, path)) {
+				return rule;
+			}
+		}
+		return m_Default;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		Rule rule = findRule(request.getRequestURI().substring(request.getContextPath().length()));
+		if (rule.getSampleRate() < 1 && ThreadLocalRandom.current().nextDouble() >= rule.getSampleRate()) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		final HttpServletRequest logged = rule.getMaxPayload() > 0
+				? new ContentCachingRequestWrapper(request, rule.getMaxPayload())
+				: request;
+		final long start = System.nanoTime();
+		try {
+			filterChain.doFilter(logged, response);
+		} finally {
+			// the user is taken on the request thread, it holds the security context
+			Principal principal = logged.getUserPrincipal();
+			final String user = principal == null ? null : principal.getName();
+			if (logged.isAsyncStarted()) {
+				// the status is known when the non-blocking request completes
+				logged.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						log(logged, response, start, rule, user);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+						// logged on completion
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+						// logged on completion
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+						// not needed
+					}
+				});
+			} else {
+				log(logged, response, start, rule, user);
+			}
+		}
+	}
+
+	/**
+	 * Create the event and hand it to the writer
+	 *
+	 * @param request  The request
+	 * @param response The response
+	 * @param start    Begin of the request from {@link System#nanoTime()}
+	 * @param rule     The rule of the request
+	 * @param user     The logged in user, may be <code>null</code>
+	 */
+	private void log(HttpServletRequest request, HttpServletResponse response, long start, Rule rule, String user) {
+		m_Writer.offer(new RequestLogEvent(request.getMethod(), request.getRequestURI(), request.getQueryString(),
+				request.getRemoteAddr(), user, response.getStatus(),
+				(System.nanoTime() - start) / 1_000_000, getPayload(request, rule.getMaxPayload())));
+	}
+
+	/**
+	 * @param request    The request
+	 * @param maxPayload Maximum number of bytes
+	 * @return The read part of the body or <code>null</code>
+	 */
+	private static String getPayload(HttpServletRequest request, int maxPayload) {
+		if (!(request instanceof ContentCachingRequestWrapper)) {
+			return null;
+		}
+
+		byte[] content = ((ContentCachingRequestWrapper) request).getContentAsByteArray();
+		if (content.length == 0) {
+			return null;
+		}
+
+		Charset charset = StandardCharsets.UTF_8;
+		try {
+			if (request.getCharacterEncoding() != null) {
+				charset = Charset.forName(request.getCharacterEncoding());
+			}
+		} catch (IllegalArgumentException e) {
+			// unknown encoding of the client, the payload is only logged
+		}
+		return new String(content, 0, Math.min(content.length, maxPayload), charset);
+	}
+}
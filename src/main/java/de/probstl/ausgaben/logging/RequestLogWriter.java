@@ -0,0 +1,147 @@
+package de.probstl.ausgaben.logging;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Writes the request log on a background thread. The request threads only add
+ * the events to a bounded lock-free queue. If the queue is full the event is
+ * dropped and counted, a request never waits for the log.
+ */
+@Component
+public class RequestLogWriter {
+
+	/** Logger of the requests */
+	private static final Logger LOG = LoggerFactory.getLogger(RequestLogWriter.class);
+
+	/** Time the writer sleeps if there are no events */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+	/** The waiting events */
+	private final Queue<RequestLogEvent> m_Queue = new ConcurrentLinkedQueue<>();
+
+	/** Number of waiting events, the queue itself has no cheap size */
+	private final AtomicInteger m_Size = new AtomicInteger();
+
+	/** Maximum number of waiting events */
+	private final int m_Capacity;
+
+	/** Number of dropped events */
+	private final Counter m_Dropped;
+
+	/** The background thread */
+	private final Thread m_Writer;
+
+	/** Cleared on shutdown */
+	private volatile boolean m_Running = true;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity Maximum number of waiting events
+	 * @param registry Registry for the queue metrics
+	 */
+	public RequestLogWriter(@Value("${expenses.request-log.queue-size:1024}") int capacity, MeterRegistry registry) {
+		m_Capacity = capacity;
+		m_Dropped = registry.counter("request.log.dropped");
+		registry.gauge("request.log.queue", m_Size);
+
+		m_Writer = new Thread(this::run, "request-log");
+		m_Writer.setDaemon(true);
+		m_Writer.setPriority(Thread.MIN_PRIORITY);
+	}
+
+	/**
+	 * Start the background thread
+	 */
+	@PostConstruct
+	public void start() {
+		m_Writer.start();
+	}
+
+	/**
+	 * Stop the background thread after it wrote the waiting events
+	 */
+	@PreDestroy
+	public void stop() {
+		m_Running = false;
+		LockSupport.unpark(m_Writer);
+		try {
+			m_Writer.join(TimeUnit.SECONDS.toMillis(1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Add an event without waiting
+	 *
+	 * @param event The event
+	 * @return <code>false</code> if the queue is full and the event was dropped
+	 */
+	public boolean offer(RequestLogEvent event) {
+		int size = m_Size.incrementAndGet();
+		if (size > m_Capacity) {
+			m_Size.decrementAndGet();
+			m_Dropped.increment();
+			return false;
+		}
+
+		m_Queue.offer(event);
+		if (size == 1) {
+			LockSupport.unpark(m_Writer); // the writer may be idle
+		}
+		return true;
+	}
+
+	/**
+	 * Write all waiting events
+	 *
+	 * @return Number of written events
+	 */
+	int drain() {
+		int count = 0;
+		RequestLogEvent event;
+		while ((event = m_Queue.poll()) != null) {
+			m_Size.decrementAndGet();
+			if (LOG.isInfoEnabled()) {
+				LOG.info(event.format());
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return Number of dropped events
+	 */
+	double getDropped() {
+		return m_Dropped.count();
+	}
+
+	/**
+	 * Loop of the background thread
+	 */
+	private void run() {
+		while (m_Running) {
+			if (drain() == 0) {
+				LockSupport.parkNanos(this, IDLE_NANOS);
+			}
+		}
+		drain();
+	}
+}
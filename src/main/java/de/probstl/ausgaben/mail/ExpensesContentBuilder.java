@@ -4,6 +4,8 @@ import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import de.probstl.ausgaben.jfr.TemplateRenderingEvent;
+
 /**
  * Builder for creating an email
  */
@@ -37,6 +39,15 @@ public class ExpensesContentBuilder {
 		context.setVariable("sumShops", mailInfo.getSumShops());
 		context.setVariable("sum", mailInfo.getSum());
 		context.setVariable("currency", "€");
-		return templateEngine.process("email", context);
+
+		final TemplateRenderingEvent event = new TemplateRenderingEvent();
+		event.begin();
+		final String content = templateEngine.process("email", context);
+		if (event.shouldCommit()) {
+			event.template = "email";
+			event.cities = mailInfo.getCityList().size();
+			event.commit();
+		}
+		return content;
 	}
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.mail.javamail.MimeMessagePreparator;
 import org.springframework.stereotype.Service;
 
+import de.probstl.ausgaben.jfr.MailSendingEvent;
+
 /**
  * Mail client service for sending expences by mail
  */
@@ -45,11 +47,18 @@ public class ExpensesMailer {
 			messageHelper.setText(content, true);
 		};
 		
+		final MailSendingEvent event = new MailSendingEvent();
+		event.begin();
 		try {
 			m_MailSender.send(messagePreparator);
+			event.sent = true;
 		} catch (MailException e) {
 			// runtime exception; compiler will not force you to handle it
 		}
+		if (event.shouldCommit()) {
+			event.cities = mailInfo.getCityList().size();
+			event.commit();
+		}
 	}
 
 }
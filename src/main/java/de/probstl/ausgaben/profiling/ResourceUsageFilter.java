@@ -0,0 +1,123 @@
+package de.probstl.ausgaben.profiling;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Measures the bytes allocated and the CPU time used by a sample of the
+ * requests and records them by endpoint in the histograms
+ * <i>request.allocated</i> and <i>request.cpu</i>. Only the request thread is
+ * measured; work handed to other threads, e.g. the write coalescer, is not
+ * included. For an asynchronous request only the part up to the release of
+ * the request thread is measured, it is tagged <i>dispatch=partial</i>.
+ * Requests on virtual threads are not measured, the JVM keeps no counters for
+ * them.
+ */
+public class ResourceUsageFilter extends OncePerRequestFilter {
+
+	/** Endpoint of requests without handler */
+	private static final String UNMATCHED = "unmatched";
+
+	/** Dispatch tag of requests handled completely on the request thread */
+	private static final String COMPLETE = "complete";
+
+	/** Dispatch tag of asynchronous requests */
+	private static final String PARTIAL = "partial";
+
+	/**
+	 * The histograms of an endpoint
+	 */
+	private static final class Meters {
+
+		/** Bytes allocated by a request */
+		private final DistributionSummary m_Allocated;
+
+		/** CPU time of a request */
+		private final Timer m_Cpu;
+
+		/**
+		 * Constructor
+		 *
+		 * @param registry The registry
+		 * @param endpoint The pattern of the endpoint
+		 * @param dispatch {@link #COMPLETE} or {@link #PARTIAL}
+		 */
+		Meters(MeterRegistry registry, String endpoint, String dispatch) {
+			m_Allocated = DistributionSummary.builder("request.allocated").baseUnit("bytes").tag("endpoint", endpoint)
+					.tag("dispatch", dispatch).publishPercentileHistogram().register(registry);
+			m_Cpu = Timer.builder("request.cpu").tag("endpoint", endpoint).tag("dispatch", dispatch)
+					.publishPercentileHistogram().register(registry);
+		}
+	}
+
+	/** The registry of the histograms */
+	private final MeterRegistry m_Registry;
+
+	/** Share of the measured requests between 0 and 1 */
+	private final double m_SampleRate;
+
+	/** The histograms of complete requests by endpoint */
+	private final Map<String, Meters> m_Meters = new ConcurrentHashMap<>();
+
+	/** The histograms of asynchronous requests by endpoint */
+	private final Map<String, Meters> m_PartialMeters = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param registry   The registry of the histograms
+	 * @param sampleRate Share of the measured requests between 0 and 1
+	 */
+	public ResourceUsageFilter(MeterRegistry registry, double sampleRate) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("sample rate must be between 0 and 1");
+		}
+		m_Registry = registry;
+		m_SampleRate = sampleRate;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		return !ThreadUsage.isMeasurable() || ThreadLocalRandom.current().nextDouble() >= m_SampleRate;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		final long allocated = ThreadUsage.allocatedBytes();
+		final long cpu = ThreadUsage.cpuNanos();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			final long allocatedAfter = ThreadUsage.allocatedBytes();
+			final long cpuAfter = ThreadUsage.cpuNanos();
+
+			// a counter that is not kept reads -1
+			if (allocated >= 0 && cpu >= 0 && allocatedAfter >= allocated && cpuAfter >= cpu) {
+				final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+				final String endpoint = pattern == null ? UNMATCHED : pattern.toString();
+				final Meters meters = request.isAsyncStarted()
+						? m_PartialMeters.computeIfAbsent(endpoint, x -> new Meters(m_Registry, x, PARTIAL))
+						: m_Meters.computeIfAbsent(endpoint, x -> new Meters(m_Registry, x, COMPLETE));
+				meters.m_Allocated.record(allocatedAfter - allocated);
+				meters.m_Cpu.record(cpuAfter - cpu, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package de.probstl.ausgaben.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Reads the bytes allocated and the CPU time used by the current thread. Both
+ * counters are cheap on HotSpot but not available on every JVM, and not for
+ * virtual threads.
+ */
+final class ThreadUsage {
+
+	/** The extended bean of HotSpot, <code>null</code> if not available */
+	private static final ThreadMXBean BEAN = init();
+
+	/** <code>Thread.isVirtual()</code> of JDK 21, <code>null</code> before */
+	private static final Method IS_VIRTUAL = findIsVirtual();
+
+	/**
+	 * Utility class
+	 */
+	private ThreadUsage() {
+		// static methods only
+	}
+
+	/**
+	 * @return The extended bean if both counters can be read
+	 */
+	private static ThreadMXBean init() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof ThreadMXBean)) {
+			return null;
+		}
+		final ThreadMXBean extended = (ThreadMXBean) bean;
+		if (!extended.isThreadAllocatedMemorySupported() || !extended.isCurrentThreadCpuTimeSupported()) {
+			return null;
+		}
+		if (!extended.isThreadAllocatedMemoryEnabled()) {
+			extended.setThreadAllocatedMemoryEnabled(true);
+		}
+		if (!extended.isThreadCpuTimeEnabled()) {
+			extended.setThreadCpuTimeEnabled(true);
+		}
+		return extended;
+	}
+
+	/**
+	 * @return The method telling virtual threads apart or <code>null</code>
+	 */
+	private static Method findIsVirtual() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the counters can be read
+	 */
+	static boolean isSupported() {
+		return BEAN != null;
+	}
+
+	/**
+	 * @return <code>true</code> if the counters can be read for the current
+	 *         thread, they are not kept for virtual threads
+	 */
+	static boolean isMeasurable() {
+		return isSupported() && !isVirtual(Thread.currentThread());
+	}
+
+	/**
+	 * @param thread The thread
+	 * @return <code>true</code> if it is a virtual thread
+	 */
+	static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return ((Boolean) IS_VIRTUAL.invoke(thread)).booleanValue();
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread so far, negative if not
+	 *         available
+	 */
+	static long allocatedBytes() {
+		return BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return The CPU time of the current thread so far in nanoseconds, negative
+	 *         if not available
+	 */
+	static long cpuNanos() {
+		return BEAN.getCurrentThreadCpuTime();
+	}
+}
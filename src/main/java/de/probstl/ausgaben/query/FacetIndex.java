@@ -0,0 +1,469 @@
+package de.probstl.ausgaben.query;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import de.probstl.ausgaben.ExpenseIndexes;
+import de.probstl.ausgaben.TimezoneUtil;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Column oriented index over the expenses of one collection. Every expense gets
+ * a row number, each value of a facet is a bitmap of the rows having this value
+ * and the amounts are kept as a sorted column for range predicates. A query is
+ * evaluated by intersecting the bitmaps of its criteria.
+ */
+public class FacetIndex implements ExpenseIndexes.Index {
+
+	/** Format of the month criteria */
+	private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+	/** Pattern for the hashtags in the message */
+	private static final Pattern HASHTAG = Pattern.compile("#([\\p{L}\\p{N}]+)");
+
+	/** Rebuild the index when more rows than this are deleted or replaced */
+	private static final int COMPACT_THRESHOLD = 1024;
+
+	/** The expenses by row number */
+	private final List<Expense> m_Rows = new ArrayList<>();
+
+	/** Row number of each expense id */
+	private final Map<String, Integer> m_RowById = new HashMap<>();
+
+	/** Rows that are not deleted or replaced */
+	private final BitSet m_Live = new BitSet();
+
+	/** Dictionary of the shops (lower case) and their id */
+	private final Map<String, Integer> m_ShopIds = new HashMap<>();
+
+	/** Dictionary of the cities (lower case) and their id */
+	private final Map<String, Integer> m_CityIds = new HashMap<>();
+
+	/** Bitmaps by shop id */
+	private final List<BitSet> m_Shops = new ArrayList<>();
+
+	/** Bitmaps by city id */
+	private final List<BitSet> m_Cities = new ArrayList<>();
+
+	/** Bitmaps by payment */
+	private final Map<String, BitSet> m_Payments = new HashMap<>();
+
+	/** Bitmaps by budget (lower case) */
+	private final Map<String, BitSet> m_Budgets = new HashMap<>();
+
+	/** Bitmaps by hashtag (lower case, without hash sign) */
+	private final Map<String, BitSet> m_Tags = new HashMap<>();
+
+	/** Bitmaps by year and month of the timestamp */
+	private final NavigableMap<YearMonth, BitSet> m_Months = new TreeMap<>();
+
+	/** Amounts sorted ascending, built on demand */
+	private double[] m_SortedAmounts = new double[0];
+
+	/** Row numbers in the order of {@link #m_SortedAmounts} */
+	private int[] m_SortedRows = new int[0];
+
+	/** The sorted amount column must be rebuilt */
+	private boolean m_AmountsDirty = true;
+
+	/** Number of rows that are not live anymore */
+	private int m_DeadRows;
+
+	/** Guards all fields */
+	private final ReadWriteLock m_Lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor creating the index from the given expenses
+	 *
+	 * @param expenses The initial content of the index
+	 */
+	public FacetIndex(Collection<Expense> expenses) {
+		for (Expense expense : expenses) {
+			doAdd(expense);
+		}
+	}
+
+	/**
+	 * Add or replace an expense
+	 *
+	 * @param expense The expense
+	 */
+	@Override
+	public void put(@Nonnull Expense expense) {
+		m_Lock.writeLock().lock();
+		try {
+			doRemove(expense.getId());
+			doAdd(expense);
+			compactIfNeeded();
+		} finally {
+			m_Lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove an expense
+	 *
+	 * @param id The id of the expense
+	 */
+	@Override
+	public void remove(@Nonnull String id) {
+		m_Lock.writeLock().lock();
+		try {
+			doRemove(id);
+			compactIfNeeded();
+		} finally {
+			m_Lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the indexed expense with the given id
+	 *
+	 * @param id The id of the expense
+	 * @return The expense or <code>null</code>
+	 */
+	@Override
+	public Expense get(@Nonnull String id) {
+		m_Lock.readLock().lock();
+		try {
+			Integer row = m_RowById.get(id);
+			return row == null ? null : m_Rows.get(row.intValue());
+		} finally {
+			m_Lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Evaluate the query
+	 *
+	 * @param query The filter criteria
+	 * @return Count, sum and the matching expenses
+	 * @throws IllegalArgumentException if a month criterion is not formatted as
+	 *                                  yyyy-MM
+	 */
+	public FacetResult query(FacetQuery query) {
+		final YearMonth from = parseMonth(query.getFrom());
+		final YearMonth to = parseMonth(query.getTo());
+
+		lockWithSortedAmounts();
+		try {
+			final BitSet result = (BitSet) m_Live.clone();
+
+			if (query.getPayment() != null) {
+				and(result, m_Payments.get(query.getPayment().toLowerCase(Locale.GERMAN)));
+			}
+			if (query.getShop() != null) {
+				and(result, lookup(m_ShopIds, m_Shops, query.getShop()));
+			}
+			if (query.getCity() != null) {
+				and(result, lookup(m_CityIds, m_Cities, query.getCity()));
+			}
+			if (query.getBudget() != null) {
+				and(result, m_Budgets.get(query.getBudget().toLowerCase(Locale.GERMAN)));
+			}
+			if (query.getTag() != null) {
+				String tag = query.getTag().startsWith("#") ? query.getTag().substring(1) : query.getTag();
+				and(result, m_Tags.get(tag.toLowerCase(Locale.GERMAN)));
+			}
+			if (from != null || to != null) {
+				and(result, monthRange(from, to));
+			}
+			if (query.getMinAmount() != null || query.getMaxAmount() != null) {
+				and(result, amountRange(query.getMinAmount(), query.getMaxAmount()));
+			}
+
+			double sum = 0.0;
+			final List<Expense> expenses = new ArrayList<>(result.cardinality());
+			for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1)) {
+				Expense expense = m_Rows.get(row);
+				if (expense.getAmountDouble() != null) {
+					sum += expense.getAmountDouble().doubleValue();
+				}
+				expenses.add(expense);
+			}
+
+			expenses.sort(Comparator.comparing(Expense::getTimestamp, Comparator.nullsLast(Comparator.<Date>reverseOrder())));
+			final List<Expense> limited = expenses.size() > query.getLimit()
+					? new ArrayList<>(expenses.subList(0, Math.max(0, query.getLimit())))
+					: expenses;
+
+			return new FacetResult(expenses.size(), sum, limited);
+		} finally {
+			m_Lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Intersect the result with the bitmap. A missing bitmap means no row has the
+	 * value.
+	 *
+	 * @param result The bitmap that is modified
+	 * @param bitmap The bitmap of a criterion or <code>null</code>
+	 */
+	private static void and(BitSet result, BitSet bitmap) {
+		if (bitmap == null) {
+			result.clear();
+		} else {
+			result.and(bitmap);
+		}
+	}
+
+	/**
+	 * Find the bitmap of a dictionary encoded value
+	 *
+	 * @param dictionary The dictionary
+	 * @param bitmaps    The bitmaps by id
+	 * @param value      The value
+	 * @return The bitmap or <code>null</code> if the value is unknown
+	 */
+	private static BitSet lookup(Map<String, Integer> dictionary, List<BitSet> bitmaps, String value) {
+		Integer id = dictionary.get(value.trim().toLowerCase(Locale.GERMAN));
+		return id == null ? null : bitmaps.get(id.intValue());
+	}
+
+	/**
+	 * Union of the bitmaps of all months in the range
+	 *
+	 * @param from First month or <code>null</code>
+	 * @param to   Last month or <code>null</code>
+	 * @return The rows in the range
+	 */
+	private BitSet monthRange(YearMonth from, YearMonth to) {
+		NavigableMap<YearMonth, BitSet> range = m_Months;
+		if (from != null) {
+			range = range.tailMap(from, true);
+		}
+		if (to != null) {
+			range = range.headMap(to, true);
+		}
+
+		final BitSet toReturn = new BitSet();
+		range.values().forEach(toReturn::or);
+		return toReturn;
+	}
+
+	/**
+	 * Find the rows in the amount range by binary search in the sorted column
+	 *
+	 * @param min Minimum amount or <code>null</code>
+	 * @param max Maximum amount or <code>null</code>
+	 * @return The rows in the range
+	 */
+	private BitSet amountRange(Double min, Double max) {
+		int begin = min == null ? 0 : lowerBound(m_SortedAmounts, min.doubleValue());
+		int end = max == null ? m_SortedAmounts.length : upperBound(m_SortedAmounts, max.doubleValue());
+
+		final BitSet toReturn = new BitSet();
+		for (int i = begin; i < end; i++) {
+			toReturn.set(m_SortedRows[i]);
+		}
+		return toReturn;
+	}
+
+	/**
+	 * @return the first index with a value greater or equal the key
+	 */
+	private static int lowerBound(double[] values, double key) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the first index with a value greater than the key
+	 */
+	private static int upperBound(double[] values, double key) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Take the read lock with a sorted amount column matching the current rows.
+	 * The column is rebuilt under the write lock, which is downgraded to the read
+	 * lock so no put or remove (and no compaction renumbering the rows) can run
+	 * between the rebuild and the query.
+	 */
+	private void lockWithSortedAmounts() {
+		m_Lock.readLock().lock();
+		if (!m_AmountsDirty) {
+			return;
+		}
+		m_Lock.readLock().unlock();
+
+		m_Lock.writeLock().lock();
+		try {
+			if (m_AmountsDirty) {
+				final Integer[] rows = m_Live.stream().boxed().toArray(Integer[]::new);
+				Arrays.sort(rows, Comparator.comparingDouble(x -> amountOf(m_Rows.get(x.intValue()))));
+
+				m_SortedRows = new int[rows.length];
+				m_SortedAmounts = new double[rows.length];
+				for (int i = 0; i < rows.length; i++) {
+					m_SortedRows[i] = rows[i].intValue();
+					m_SortedAmounts[i] = amountOf(m_Rows.get(m_SortedRows[i]));
+				}
+				m_AmountsDirty = false;
+			}
+			m_Lock.readLock().lock();
+		} finally {
+			m_Lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the amount of the expense or 0 if there is none
+	 */
+	private static double amountOf(Expense expense) {
+		return expense.getAmountDouble() == null ? 0.0 : expense.getAmountDouble().doubleValue();
+	}
+
+	/**
+	 * Parse the month criterion
+	 *
+	 * @param month Month formatted as yyyy-MM or <code>null</code>
+	 * @return The month or <code>null</code>
+	 */
+	private static YearMonth parseMonth(String month) {
+		if (month == null || month.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return YearMonth.parse(month.trim(), MONTH_FORMAT);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("month must be formatted as yyyy-MM: " + month, e);
+		}
+	}
+
+	/**
+	 * Append the expense as new row. The caller must hold the write lock.
+	 *
+	 * @param expense The expense
+	 */
+	private void doAdd(Expense expense) {
+		final int row = m_Rows.size();
+		m_Rows.add(expense);
+		m_RowById.put(expense.getId(), Integer.valueOf(row));
+		m_Live.set(row);
+
+		set(m_Payments, expense.getPayment(), row);
+		set(m_Budgets, expense.getBudget(), row);
+		setEncoded(m_ShopIds, m_Shops, expense.getShop(), row);
+		setEncoded(m_CityIds, m_Cities, expense.getCity(), row);
+
+		if (expense.getMessage() != null) {
+			Matcher matcher = HASHTAG.matcher(expense.getMessage());
+			while (matcher.find()) {
+				set(m_Tags, matcher.group(1), row);
+			}
+		}
+
+		if (expense.getTimestamp() != null) {
+			YearMonth month = YearMonth.from(expense.getTimestamp().toInstant().atZone(TimezoneUtil.getSystem()));
+			m_Months.computeIfAbsent(month, x -> new BitSet()).set(row);
+		}
+
+		m_AmountsDirty = true;
+	}
+
+	/**
+	 * Mark the row of the expense as deleted. The caller must hold the write lock.
+	 *
+	 * @param id The id of the expense
+	 */
+	private void doRemove(String id) {
+		final Integer row = m_RowById.remove(id);
+		if (row != null) {
+			m_Live.clear(row.intValue());
+			m_DeadRows++;
+			m_AmountsDirty = true;
+		}
+	}
+
+	/**
+	 * Rebuild all bitmaps when too many rows are dead. The caller must hold the
+	 * write lock.
+	 */
+	private void compactIfNeeded() {
+		if (m_DeadRows < COMPACT_THRESHOLD || m_DeadRows < m_Live.cardinality()) {
+			return;
+		}
+
+		final List<Expense> live = new ArrayList<>();
+		m_Live.stream().forEach(x -> live.add(m_Rows.get(x)));
+
+		m_Rows.clear();
+		m_RowById.clear();
+		m_Live.clear();
+		m_ShopIds.clear();
+		m_CityIds.clear();
+		m_Shops.clear();
+		m_Cities.clear();
+		m_Payments.clear();
+		m_Budgets.clear();
+		m_Tags.clear();
+		m_Months.clear();
+		m_DeadRows = 0;
+
+		live.forEach(this::doAdd);
+	}
+
+	/**
+	 * Set the row in the bitmap of the value
+	 */
+	private static void set(Map<String, BitSet> bitmaps, String value, int row) {
+		if (value != null && !value.trim().isEmpty()) {
+			bitmaps.computeIfAbsent(value.trim().toLowerCase(Locale.GERMAN), x -> new BitSet()).set(row);
+		}
+	}
+
+	/**
+	 * Set the row in the bitmap of the dictionary encoded value
+	 */
+	private static void setEncoded(Map<String, Integer> dictionary, List<BitSet> bitmaps, String value, int row) {
+		if (value == null || value.trim().isEmpty()) {
+			return;
+		}
+
+		Integer id = dictionary.computeIfAbsent(value.trim().toLowerCase(Locale.GERMAN), x -> {
+			bitmaps.add(new BitSet());
+			return Integer.valueOf(bitmaps.size() - 1);
+		});
+		bitmaps.get(id.intValue()).set(row);
+	}
+}
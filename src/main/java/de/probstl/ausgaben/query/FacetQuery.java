@@ -0,0 +1,46 @@
+package de.probstl.ausgaben.query;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filter criteria for a structured query. All given criteria must match, a
+ * criterion that is <code>null</code> is ignored.
+ */
+@Data
+@NoArgsConstructor
+public class FacetQuery {
+
+    /** Default number of returned expenses */
+    public static final int DEFAULT_LIMIT = 500;
+
+    /** The payment (cash or card) */
+    private String payment;
+
+    /** The shop, compared case insensitive */
+    private String shop;
+
+    /** The city, compared case insensitive */
+    private String city;
+
+    /** The budget submitted with the expense, compared case insensitive */
+    private String budget;
+
+    /** A hashtag in the message with or without leading hash sign */
+    private String tag;
+
+    /** First month (inclusive) formatted as yyyy-MM */
+    private String from;
+
+    /** Last month (inclusive) formatted as yyyy-MM */
+    private String to;
+
+    /** Minimum amount (inclusive) */
+    private Double minAmount;
+
+    /** Maximum amount (inclusive) */
+    private Double maxAmount;
+
+    /** Maximum number of returned expenses */
+    private int limit = DEFAULT_LIMIT;
+}
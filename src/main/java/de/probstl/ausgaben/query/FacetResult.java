@@ -0,0 +1,22 @@
+package de.probstl.ausgaben.query;
+
+import java.util.List;
+
+import de.probstl.ausgaben.data.Expense;
+import lombok.Data;
+
+/**
+ * Result of a structured query
+ */
+@Data
+public class FacetResult {
+
+    /** Number of all matching expenses */
+    private final int count;
+
+    /** Sum of the amount of all matching expenses */
+    private final double sum;
+
+    /** The matching expenses, newest first and limited by the query */
+    private final List<Expense> expenses;
+}
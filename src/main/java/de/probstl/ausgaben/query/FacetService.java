@@ -0,0 +1,68 @@
+package de.probstl.ausgaben.query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.ExpenseIndexes;
+import de.probstl.ausgaben.FirestoreService;
+
+/**
+ * Structured queries over all expenses of a collection. The index of a
+ * collection is built with one full read on first use and kept current by the
+ * {@link ExpenseChangedEvent}s of the {@link FirestoreService}.
+ */
+@Service
+public class FacetService {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(FacetService.class);
+
+	/** The service for reading the expenses when an index is built */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** The index of each collection */
+	private final ExpenseIndexes<FacetIndex> m_Indexes = new ExpenseIndexes<>("Facet index",
+			x -> m_FirestoreService.findAll(x), FacetIndex::new);
+
+	/**
+	 * Evaluate the query on the expenses of the collection
+	 *
+	 * @param query      The filter criteria
+	 * @param collection The collection
+	 * @return Count, sum and matching expenses
+	 * @throws IllegalArgumentException if the query is invalid
+	 */
+	public FacetResult query(FacetQuery query, @Nonnull String collection) {
+		final FacetIndex index = m_Indexes.get(collection);
+		if (index == null) {
+			return new FacetResult(0, 0.0, Collections.emptyList());
+		}
+
+		final Instant start = Instant.now();
+		final FacetResult toReturn = index.query(query);
+		LOG.info("Query {} in collection {} matched {} expenses in {} ms", query, collection,
+				Integer.valueOf(toReturn.getCount()), Long.valueOf(Duration.between(start, Instant.now()).toMillis()));
+		return toReturn;
+	}
+
+	/**
+	 * Keep the index of the collection current
+	 *
+	 * @param event The modification of an expense
+	 */
+	@EventListener
+	public void onExpenseChanged(ExpenseChangedEvent event) {
+		m_Indexes.onExpenseChanged(event);
+	}
+}
@@ -0,0 +1,71 @@
+package de.probstl.ausgaben.search;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.ExpenseIndexes;
+import de.probstl.ausgaben.FirestoreService;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Full text search over all expenses of a collection. The index of a
+ * collection is built with one full read on first use and kept current by the
+ * {@link ExpenseChangedEvent}s of the {@link FirestoreService}.
+ */
+@Service
+public class ExpenseSearchService {
+
+	/** Logger */
+	private static final Logger LOG = LoggerFactory.getLogger(ExpenseSearchService.class);
+
+	/** The service for reading the expenses when an index is built */
+	@Autowired
+	private FirestoreService m_FirestoreService;
+
+	/** The index of each collection */
+	private final ExpenseIndexes<SearchIndex> m_Indexes = new ExpenseIndexes<>("Search index",
+			x -> m_FirestoreService.findAll(x), SearchIndex::new);
+
+	/**
+	 * Search the expenses of the collection
+	 *
+	 * @param text       The search text entered by the user
+	 * @param collection The collection to search in
+	 * @param limit      Maximum number of results
+	 * @return Matching expenses ranked by relevance. Never <code>null</code>
+	 */
+	public List<Expense> search(String text, @Nonnull String collection, int limit) {
+		final SearchIndex index = m_Indexes.get(collection);
+		if (index == null) {
+			return Collections.emptyList();
+		}
+
+		final Instant start = Instant.now();
+		final List<Expense> toReturn = index.search(text, limit);
+		LOG.info("Search for '{}' in collection {} found {} of {} expenses in {} ms", text, collection,
+				Integer.valueOf(toReturn.size()), Integer.valueOf(index.size()),
+				Long.valueOf(Duration.between(start, Instant.now()).toMillis()));
+		return toReturn;
+	}
+
+	/**
+	 * Keep the index of the collection current
+	 *
+	 * @param event The modification of an expense
+	 */
+	@EventListener
+	public void onExpenseChanged(ExpenseChangedEvent event) {
+		m_Indexes.onExpenseChanged(event);
+	}
+}
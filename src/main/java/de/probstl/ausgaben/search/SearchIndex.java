@@ -0,0 +1,301 @@
+package de.probstl.ausgaben.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import de.probstl.ausgaben.ExpenseIndexes;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Inverted index over the message, shop, city and hashtags of the expenses of
+ * one collection. Terms are kept sorted so that prefix queries are a range
+ * lookup instead of a scan.
+ */
+public class SearchIndex implements ExpenseIndexes.Index {
+
+	/** Weight of a term found in the shop */
+	private static final double WEIGHT_SHOP = 3.0;
+
+	/** Weight of a hashtag in the message */
+	private static final double WEIGHT_TAG = 3.0;
+
+	/** Weight of a term found in the city */
+	private static final double WEIGHT_CITY = 2.0;
+
+	/** Weight of a term found in the message */
+	private static final double WEIGHT_MESSAGE = 1.0;
+
+	/** Factor applied to terms that only match by prefix */
+	private static final double PREFIX_BOOST = 0.5;
+
+	/** Everything except letters, digits and the hash sign separates tokens */
+	private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}#]+");
+
+	/** Term to posting list (document id and weight of the term in the document) */
+	private final NavigableMap<String, Map<String, Double>> m_Postings = new TreeMap<>();
+
+	/** Document id to its terms for removing a document from the postings */
+	private final Map<String, Map<String, Double>> m_Forward = new HashMap<>();
+
+	/** All indexed expenses by id */
+	private final Map<String, Expense> m_Documents = new HashMap<>();
+
+	/** Guards the maps above */
+	private final ReadWriteLock m_Lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Constructor creating the index from the given expenses
+	 *
+	 * @param expenses The initial content of the index
+	 */
+	public SearchIndex(Collection<Expense> expenses) {
+		for (Expense expense : expenses) {
+			doAdd(expense);
+		}
+	}
+
+	/**
+	 * Add or replace an expense in the index
+	 *
+	 * @param expense The expense to index
+	 */
+	@Override
+	public void put(@Nonnull Expense expense) {
+		m_Lock.writeLock().lock();
+		try {
+			doRemove(expense.getId());
+			doAdd(expense);
+		} finally {
+			m_Lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove an expense from the index
+	 *
+	 * @param id The id of the expense
+	 */
+	@Override
+	public void remove(@Nonnull String id) {
+		m_Lock.writeLock().lock();
+		try {
+			doRemove(id);
+		} finally {
+			m_Lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the indexed expense with the given id
+	 *
+	 * @param id The id of the expense
+	 * @return The indexed expense or <code>null</code>
+	 */
+	@Override
+	public Expense get(@Nonnull String id) {
+		m_Lock.readLock().lock();
+		try {
+			return m_Documents.get(id);
+		} finally {
+			m_Lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of indexed expenses
+	 */
+	public int size() {
+		m_Lock.readLock().lock();
+		try {
+			return m_Documents.size();
+		} finally {
+			m_Lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Search the expenses matching all tokens of the given text. Each token
+	 * matches a term exactly or as a prefix. The result is ranked by the weighted
+	 * term frequency and the rarity of the matched terms, newer expenses first on
+	 * equal score.
+	 *
+	 * @param text  The text entered by the user
+	 * @param limit Maximum number of results
+	 * @return Matching expenses, never <code>null</code>
+	 */
+	public List<Expense> search(String text, int limit) {
+		final List<String> tokens = tokenize(text);
+		if (tokens.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		m_Lock.readLock().lock();
+		try {
+			Map<String, Double> scores = null;
+			for (String token : tokens) {
+				final Map<String, Double> tokenScores = scoreToken(token.startsWith("#") ? token.substring(1) : token);
+
+				if (scores == null) {
+					scores = tokenScores;
+				} else {
+					// every token must match
+					scores.keySet().retainAll(tokenScores.keySet());
+					for (Entry<String, Double> entry : scores.entrySet()) {
+						entry.setValue(Double.valueOf(
+								entry.getValue().doubleValue() + tokenScores.get(entry.getKey()).doubleValue()));
+					}
+				}
+
+				if (scores.isEmpty()) {
+					break;
+				}
+			}
+
+			final Comparator<Entry<String, Double>> byScore = Comparator
+					.comparingDouble((Entry<String, Double> x) -> x.getValue().doubleValue()).reversed();
+			final Comparator<Entry<String, Double>> byDate = Comparator
+					.comparing((Entry<String, Double> x) -> m_Documents.get(x.getKey()).getTimestamp(),
+							Comparator.nullsLast(Comparator.<Date>reverseOrder()));
+
+			final List<Expense> toReturn = new ArrayList<>();
+			scores.entrySet().stream().sorted(byScore.thenComparing(byDate)).limit(limit)
+					.forEach(x -> toReturn.add(m_Documents.get(x.getKey())));
+			return toReturn;
+		} finally {
+			m_Lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Score all documents containing a term equal to or starting with the token
+	 *
+	 * @param token The normalized token
+	 * @return Map of the document id and the score for the token
+	 */
+	private Map<String, Double> scoreToken(String token) {
+		final Map<String, Double> toReturn = new HashMap<>();
+		if (token.isEmpty()) {
+			return toReturn;
+		}
+
+		final double documentCount = Math.max(1, m_Documents.size());
+		for (Entry<String, Map<String, Double>> term : m_Postings
+				.subMap(token, true, token + Character.MAX_VALUE, true).entrySet()) {
+
+			final double boost = term.getKey().equals(token) ? 1.0 : PREFIX_BOOST;
+			final double idf = Math.log(1.0 + documentCount / term.getValue().size());
+
+			for (Entry<String, Double> posting : term.getValue().entrySet()) {
+				final double score = posting.getValue().doubleValue() * idf * boost;
+				toReturn.merge(posting.getKey(), Double.valueOf(score), (a, b) -> Double.valueOf(Math.max(a, b)));
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Add the expense to the maps. The caller must hold the write lock.
+	 *
+	 * @param expense The expense
+	 */
+	private void doAdd(Expense expense) {
+		final Map<String, Double> terms = new HashMap<>();
+		addTerms(terms, expense.getShop(), WEIGHT_SHOP);
+		addTerms(terms, expense.getCity(), WEIGHT_CITY);
+
+		for (String token : tokenize(expense.getMessage())) {
+			if (token.startsWith("#")) {
+				if (token.length() > 1) {
+					terms.merge(token.substring(1), Double.valueOf(WEIGHT_TAG), Double::sum);
+				}
+			} else {
+				terms.merge(token, Double.valueOf(WEIGHT_MESSAGE), Double::sum);
+			}
+		}
+
+		if (expense.getBudget() != null && !expense.getBudget().isEmpty()) {
+			addTerms(terms, expense.getBudget(), WEIGHT_TAG);
+		}
+
+		for (Entry<String, Double> term : terms.entrySet()) {
+			m_Postings.computeIfAbsent(term.getKey(), x -> new HashMap<>()).put(expense.getId(), term.getValue());
+		}
+
+		m_Forward.put(expense.getId(), terms);
+		m_Documents.put(expense.getId(), expense);
+	}
+
+	/**
+	 * Remove the expense from the maps. The caller must hold the write lock.
+	 *
+	 * @param id The id of the expense
+	 */
+	private void doRemove(String id) {
+		final Map<String, Double> terms = m_Forward.remove(id);
+		if (terms != null) {
+			for (String term : terms.keySet()) {
+				Map<String, Double> postings = m_Postings.get(term);
+				if (postings != null) {
+					postings.remove(id);
+					if (postings.isEmpty()) {
+						m_Postings.remove(term);
+					}
+				}
+			}
+		}
+		m_Documents.remove(id);
+	}
+
+	/**
+	 * Tokenize the text and add all tokens with the given weight
+	 *
+	 * @param terms  The terms of the document
+	 * @param text   The text of a field
+	 * @param weight The weight of the field
+	 */
+	private static void addTerms(Map<String, Double> terms, String text, double weight) {
+		for (String token : tokenize(text)) {
+			String term = token.startsWith("#") ? token.substring(1) : token;
+			if (!term.isEmpty()) {
+				terms.merge(term, Double.valueOf(weight), Double::sum);
+			}
+		}
+	}
+
+	/**
+	 * Split the text into lower case tokens. A leading hash sign is kept to detect
+	 * hashtags.
+	 *
+	 * @param text The text, may be <code>null</code>
+	 * @return List of tokens, never <code>null</code>
+	 */
+	static List<String> tokenize(String text) {
+		final List<String> toReturn = new ArrayList<>();
+		if (text == null) {
+			return toReturn;
+		}
+
+		for (String token : SEPARATOR.split(text.toLowerCase(Locale.GERMAN))) {
+			// a hash sign is only meaningful at the beginning of a token
+			String cleaned = token.startsWith("#") ? "#" + token.replace("#", "") : token.replace("#", "");
+			if (!cleaned.isEmpty()) {
+				toReturn.add(cleaned);
+			}
+		}
+		return toReturn;
+	}
+}
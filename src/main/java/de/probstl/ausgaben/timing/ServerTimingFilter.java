@@ -0,0 +1,97 @@
+package de.probstl.ausgaben.timing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Measures the stages of the observed requests and sends them to the browser
+ * in the <code>Server-Timing</code> header. The body is buffered until the
+ * template is rendered, so the header can include the rendering. Every stage
+ * is also recorded in the histogram <i>request.stage</i>.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+	/** The name of the header */
+	static final String HEADER = "Server-Timing";
+
+	/** Matches the paths against the patterns */
+	private final AntPathMatcher m_Matcher = new AntPathMatcher();
+
+	/** Ant style patterns of the observed paths */
+	private final List<String> m_Patterns;
+
+	/** Time spent in a stage by request */
+	private final Map<Stage, Timer> m_Timers = new EnumMap<>(Stage.class);
+
+	/**
+	 * Constructor
+	 *
+	 * @param registry The registry of the histograms
+	 * @param patterns Ant style patterns of the observed paths
+	 */
+	public ServerTimingFilter(MeterRegistry registry, List<String> patterns) {
+		List<String> trimmed = new ArrayList<>();
+		for (String pattern : patterns) {
+			if (!pattern.trim().isEmpty()) {
+				trimmed.add(pattern.trim());
+			}
+		}
+		m_Patterns = Collections.unmodifiableList(trimmed);
+		for (Stage stage : Stage.values()) {
+			m_Timers.put(stage, Timer.builder("request.stage").tag("stage", stage.getName())
+					.publishPercentileHistogram().register(registry));
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
+		final String path = request.getRequestURI().substring(request.getContextPath().length());
+		for (String pattern : m_Patterns) {
+			if (m_Matcher.match(pattern, path)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		final long start = System.nanoTime();
+		final ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+		final StageTimings timings = StageTimings.open();
+		try {
+			filterChain.doFilter(request, wrapper);
+		} finally {
+			StageTimings.close();
+		}
+
+		for (Stage stage : Stage.values()) {
+			if (timings.isMeasured(stage)) {
+				m_Timers.get(stage).record(timings.getNanos(stage), TimeUnit.NANOSECONDS);
+			}
+		}
+		if (!response.isCommitted()) {
+			response.setHeader(HEADER, timings.toHeader(System.nanoTime() - start));
+		}
+		wrapper.copyBodyToResponse();
+	}
+}
@@ -0,0 +1,57 @@
+package de.probstl.ausgaben.timing;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import de.probstl.ausgaben.jfr.TemplateRenderingEvent;
+
+/**
+ * Measures the rendering of the template, which happens between the end of
+ * the controller and the completion of the request. The rendering is also
+ * recorded as {@link TemplateRenderingEvent} while the Flight Recorder runs.
+ */
+@Component
+public class ServerTimingInterceptor implements HandlerInterceptor {
+
+	/** Request attribute with the begin of the rendering */
+	private static final String ATTRIBUTE_BEGIN = ServerTimingInterceptor.class.getName() + ".begin";
+
+	/** Request attribute with the started rendering event */
+	private static final String ATTRIBUTE_EVENT = ServerTimingInterceptor.class.getName() + ".event";
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) throws Exception {
+		if (modelAndView == null || !modelAndView.hasView()) {
+			return;
+		}
+		if (StageTimings.isObserved()) {
+			request.setAttribute(ATTRIBUTE_BEGIN, Long.valueOf(StageTimings.begin()));
+		}
+		final TemplateRenderingEvent event = new TemplateRenderingEvent();
+		if (event.isEnabled()) {
+			event.template = modelAndView.getViewName();
+			event.begin();
+			request.setAttribute(ATTRIBUTE_EVENT, event);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+		final Object begin = request.getAttribute(ATTRIBUTE_BEGIN);
+		if (begin != null) {
+			request.removeAttribute(ATTRIBUTE_BEGIN);
+			StageTimings.end(Stage.RENDERING, ((Long) begin).longValue());
+		}
+		final Object event = request.getAttribute(ATTRIBUTE_EVENT);
+		if (event != null) {
+			request.removeAttribute(ATTRIBUTE_EVENT);
+			((TemplateRenderingEvent) event).commit();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package de.probstl.ausgaben.timing;
+
+/**
+ * A stage of a request measured by {@link StageTimings}
+ */
+public enum Stage {
+
+	/** Waiting for Firestore */
+	QUERY("query", "Firestore query"),
+
+	/** Creating expenses from the documents */
+	MAPPING("mapping", "Document mapping"),
+
+	/** Assigning the expenses to the budgets */
+	BUDGET("budget", "Budget classification"),
+
+	/** Summing up the expenses by city and shop */
+	AGGREGATION("aggregation", "Report aggregation"),
+
+	/** Rendering the template */
+	RENDERING("render", "Template rendering");
+
+	/** Name in the Server-Timing header and the metrics */
+	private final String m_Name;
+
+	/** Description in the Server-Timing header */
+	private final String m_Description;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name        Name in the Server-Timing header and the metrics
+	 * @param description Description in the Server-Timing header
+	 */
+	Stage(String name, String description) {
+		m_Name = name;
+		m_Description = description;
+	}
+
+	/**
+	 * @return the name in the Server-Timing header and the metrics
+	 */
+	public String getName() {
+		return m_Name;
+	}
+
+	/**
+	 * @return the description in the Server-Timing header
+	 */
+	public String getDescription() {
+		return m_Description;
+	}
+}
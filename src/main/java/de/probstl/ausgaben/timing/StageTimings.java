@@ -0,0 +1,133 @@
+package de.probstl.ausgaben.timing;
+
+import java.util.Locale;
+
+/**
+ * Accumulates the time spent in the stages of the current request. Measuring
+ * is a no-op outside of requests observed by the {@link ServerTimingFilter}:
+ * 
+ * <pre>
+ * final long begin = StageTimings.begin();
+ * ...
+ * StageTimings.end(Stage.MAPPING, begin);
+ * </pre>
+ */
+public final class StageTimings {
+
+	/** Returned by {@link #begin()} if the request is not observed */
+	private static final long NOT_OBSERVED = Long.MIN_VALUE;
+
+	/** The timings of the request of the current thread */
+	private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+	/** Time spent by stage in nanoseconds */
+	private final long[] m_Nanos = new long[Stage.values().length];
+
+	/** Number of measurements by stage */
+	private final int[] m_Counts = new int[Stage.values().length];
+
+	/**
+	 * Constructor, see {@link #open()}
+	 */
+	StageTimings() {
+		// empty timings
+	}
+
+	/**
+	 * Start observing the request of the current thread
+	 *
+	 * @return The timings of the request
+	 */
+	static StageTimings open() {
+		final StageTimings timings = new StageTimings();
+		CURRENT.set(timings);
+		return timings;
+	}
+
+	/**
+	 * Stop observing the request of the current thread
+	 */
+	static void close() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @return <code>true</code> if the request of the current thread is observed
+	 */
+	static boolean isObserved() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * @return The begin of a stage, to be passed to {@link #end(Stage, long)}
+	 */
+	public static long begin() {
+		return CURRENT.get() == null ? NOT_OBSERVED : System.nanoTime();
+	}
+
+	/**
+	 * Add the time since the begin to the stage
+	 *
+	 * @param stage The stage
+	 * @param begin The result of {@link #begin()}
+	 */
+	public static void end(Stage stage, long begin) {
+		if (begin == NOT_OBSERVED) {
+			return;
+		}
+		final StageTimings timings = CURRENT.get();
+		if (timings != null) {
+			timings.add(stage, System.nanoTime() - begin);
+		}
+	}
+
+	/**
+	 * Add time to a stage
+	 *
+	 * @param stage The stage
+	 * @param nanos The time in nanoseconds
+	 */
+	void add(Stage stage, long nanos) {
+		m_Nanos[stage.ordinal()] += nanos;
+		m_Counts[stage.ordinal()]++;
+	}
+
+	/**
+	 * @param stage The stage
+	 * @return The time spent in the stage in nanoseconds
+	 */
+	long getNanos(Stage stage) {
+		return m_Nanos[stage.ordinal()];
+	}
+
+	/**
+	 * @param stage The stage
+	 * @return <code>true</code> if the stage was measured at least once
+	 */
+	boolean isMeasured(Stage stage) {
+		return m_Counts[stage.ordinal()] > 0;
+	}
+
+	/**
+	 * @param totalNanos Duration of the whole request in nanoseconds
+	 * @return The value of the Server-Timing header
+	 */
+	String toHeader(long totalNanos) {
+		final StringBuilder header = new StringBuilder();
+		for (Stage stage : Stage.values()) {
+			if (isMeasured(stage)) {
+				header.append(stage.getName()).append(";desc=\"").append(stage.getDescription()).append("\";dur=")
+						.append(toMillis(getNanos(stage))).append(", ");
+			}
+		}
+		return header.append("total;dur=").append(toMillis(totalNanos)).toString();
+	}
+
+	/**
+	 * @param nanos A duration in nanoseconds
+	 * @return The duration in milliseconds with one decimal
+	 */
+	private static String toMillis(long nanos) {
+		return String.format(Locale.ROOT, "%.1f", Double.valueOf(nanos / 1e6));
+	}
+}
@@ -0,0 +1,109 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.data.BulkItemResult;
+import de.probstl.ausgaben.data.Expense;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the bounded writes of many new expenses
+ */
+public class TestExpenseBatchWriter {
+
+	/**
+	 * Write five expenses to a closed port, the writes fail without retry
+	 *
+	 * @param export Record the expenses for the export to AWS
+	 * @param paths  Receives the paths of the attempted writes
+	 * @return The outcome of the items
+	 */
+	private static List<BulkItemResult> writeToClosedPort(boolean export, Set<String> paths) throws Exception {
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		final Firestore firestore = FirestoreOptions.newBuilder().setProjectId("test")
+				.setCredentials(NoCredentials.getInstance()).setEmulatorHost("localhost:" + port)
+				.setRetrySettings(RetrySettings.newBuilder().setMaxAttempts(1)
+						.setTotalTimeout(org.threeten.bp.Duration.ofSeconds(5)).build())
+				.build().getService();
+		try {
+			final BulkWriter bulkWriter = firestore.bulkWriter();
+			bulkWriter.addWriteErrorListener(error -> {
+				paths.add(error.getDocumentReference().getPath());
+				return false;
+			});
+
+			final ExpenseBatchWriter writer = new ExpenseBatchWriter("ausgaben", firestore.collection("ausgaben"),
+					bulkWriter, export, event -> {
+						// no listeners
+					}, new DocumentAccounting(new SimpleMeterRegistry(), 0), 2);
+
+			return assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+				for (int i = 0; i < 5; i++) {
+					final Expense expense = new Expense();
+					expense.setShop("Bakery" + i);
+					expense.setAmountDouble(Double.valueOf(i));
+					writer.add(expense);
+				}
+				return writer.finish();
+			});
+		} finally {
+			firestore.close();
+		}
+	}
+
+	/**
+	 * With fewer writes in flight than a batch of the bulk writer holds the queued
+	 * writes are sent instead of waiting forever for a full batch
+	 */
+	@Test
+	public void testLimitBelowBatchSize() throws Exception {
+		final Set<String> paths = new ConcurrentSkipListSet<>();
+		final List<BulkItemResult> results = writeToClosedPort(false, paths);
+
+		assertEquals(5, results.size());
+		for (BulkItemResult result : results) {
+			assertEquals(BulkItemResult.Status.FAILED, result.getStatus());
+			assertTrue(paths.contains("ausgaben/" + result.getId()));
+		}
+		assertEquals(5, paths.size());
+	}
+
+	/**
+	 * The outbox entry of an exported expense is written by the same bulk writer
+	 * with the id of the expense
+	 */
+	@Test
+	public void testExportWritesOutbox() throws Exception {
+		final Set<String> paths = new ConcurrentSkipListSet<>();
+		final List<BulkItemResult> results = writeToClosedPort(true, paths);
+
+		assertEquals(5, results.size());
+		for (BulkItemResult result : results) {
+			assertEquals(BulkItemResult.Status.FAILED, result.getStatus());
+			assertTrue(paths.contains("ausgaben/" + result.getId()));
+			assertTrue(paths.contains(ExportOutbox.COLLECTION + "/" + result.getId()));
+		}
+		assertEquals(10, paths.size());
+	}
+}
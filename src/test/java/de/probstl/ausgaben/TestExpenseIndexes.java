@@ -0,0 +1,150 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Test for building the indexes of the collections and keeping them current
+ */
+public class TestExpenseIndexes {
+
+	/**
+	 * Index keeping the expenses by id
+	 */
+	private static final class MapIndex implements ExpenseIndexes.Index {
+
+		/** The expenses by id */
+		private final Map<String, Expense> m_Expenses = new ConcurrentHashMap<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param expenses The initial content
+		 */
+		MapIndex(Collection<Expense> expenses) {
+			expenses.forEach(this::put);
+		}
+
+		@Override
+		public Expense get(@Nonnull String id) {
+			return m_Expenses.get(id);
+		}
+
+		@Override
+		public void put(@Nonnull Expense expense) {
+			m_Expenses.put(expense.getId(), expense);
+		}
+
+		@Override
+		public void remove(@Nonnull String id) {
+			m_Expenses.remove(id);
+		}
+	}
+
+	/**
+	 * Create an expense for the tests
+	 */
+	private static Expense create(String id, String budget) {
+		Expense expense = new Expense(id);
+		expense.setShop("EDEKA");
+		expense.setBudget(budget);
+		return expense;
+	}
+
+	/**
+	 * Modifications while the collection is read are applied to the new index,
+	 * the budget left untouched by the edit page is kept
+	 */
+	@Test
+	public void testEventsDuringBuild() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch modified = new CountDownLatch(1);
+		ExpenseIndexes<MapIndex> indexes = new ExpenseIndexes<>("Test index", x -> {
+			reading.countDown();
+			try {
+				assertTrue(modified.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Arrays.asList(create("a", null), create("c", "Urlaub"));
+		}, MapIndex::new);
+
+		CompletableFuture<MapIndex> build = CompletableFuture.supplyAsync(() -> indexes.get("ausgaben"));
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+		indexes.onExpenseChanged(
+				new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, "ausgaben", "b", create("b", null)));
+		indexes.onExpenseChanged(new ExpenseChangedEvent(ExpenseChangedEvent.Type.DELETED, "ausgaben", "a", null));
+		indexes.onExpenseChanged(
+				new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, "ausgaben", "c", create("c", null), true));
+		indexes.onExpenseChanged(
+				new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, "other", "d", create("d", null)));
+		modified.countDown();
+
+		MapIndex index = build.get(5, TimeUnit.SECONDS);
+		assertEquals(2, index.m_Expenses.size());
+		assertEquals("b", index.get("b").getId());
+		assertEquals("Urlaub", index.get("c").getBudget());
+		assertSame(index, indexes.get("ausgaben"));
+
+		indexes.onExpenseChanged(
+				new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, "ausgaben", "c", create("c", "Auto")));
+		assertEquals("Auto", index.get("c").getBudget());
+	}
+
+	/**
+	 * Callers arriving while the index is built wait for the same build
+	 */
+	@Test
+	public void testSingleBuild() throws Exception {
+		AtomicInteger reads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExpenseIndexes<MapIndex> indexes = new ExpenseIndexes<>("Test index", x -> {
+			reads.incrementAndGet();
+			try {
+				assertTrue(release.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Arrays.asList(create("a", null));
+		}, MapIndex::new);
+
+		CompletableFuture<MapIndex> first = CompletableFuture.supplyAsync(() -> indexes.get("ausgaben"));
+		CompletableFuture<MapIndex> second = CompletableFuture.supplyAsync(() -> indexes.get("ausgaben"));
+		Thread.sleep(100);
+		release.countDown();
+
+		assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, reads.get());
+	}
+
+	/**
+	 * A collection that could not be read is read again on the next use
+	 */
+	@Test
+	public void testFailedBuild() {
+		AtomicInteger reads = new AtomicInteger();
+		ExpenseIndexes<MapIndex> indexes = new ExpenseIndexes<>("Test index",
+				x -> reads.incrementAndGet() == 1 ? null : Arrays.asList(create("a", null)), MapIndex::new);
+
+		assertNull(indexes.get("ausgaben"));
+		assertEquals("a", indexes.get("ausgaben").get("a").getId());
+		assertEquals(2, reads.get());
+	}
+}
@@ -0,0 +1,177 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.FirestoreScheduler.Priority;
+
+/**
+ * Test for the order of the waiting Firestore calls
+ */
+public class TestFirestoreScheduler {
+
+	/**
+	 * Start a thread waiting for its turn and wait until it is queued
+	 *
+	 * @param scheduler The scheduler
+	 * @param priority  The priority of the call
+	 * @param order     Receives the priority when the call gets its turn
+	 * @return The thread
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	private static Thread startWaiting(FirestoreScheduler scheduler, Priority priority, List<Priority> order)
+			throws InterruptedException {
+		final int before = scheduler.getWaiting(priority);
+		Thread thread = new Thread(() -> FirestoreScheduler.runWith(priority, () -> {
+			try {
+				scheduler.acquire();
+				order.add(priority);
+				scheduler.release();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		thread.start();
+		while (scheduler.getWaiting(priority) == before) {
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	/**
+	 * A later interactive call overtakes a waiting batch call
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testInteractiveFirst() throws InterruptedException {
+		FirestoreScheduler scheduler = new FirestoreScheduler(1, 60000);
+		List<Priority> order = new CopyOnWriteArrayList<>();
+
+		scheduler.acquire();
+		Thread batch = startWaiting(scheduler, Priority.BATCH, order);
+		Thread interactive = startWaiting(scheduler, Priority.INTERACTIVE, order);
+		scheduler.release();
+
+		batch.join(5000);
+		interactive.join(5000);
+		assertEquals(List.of(Priority.INTERACTIVE, Priority.BATCH), order);
+		assertEquals(0, scheduler.getInFlight());
+	}
+
+	/**
+	 * A waiting batch call raised to interactive goes before an interactive call
+	 * that arrived later
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testRaisedBatch() throws InterruptedException {
+		FirestoreScheduler scheduler = new FirestoreScheduler(1, 60000);
+		List<String> order = new CopyOnWriteArrayList<>();
+		AtomicReference<Priority> raised = new AtomicReference<>(Priority.BATCH);
+
+		scheduler.acquire();
+		Thread batch = new Thread(() -> {
+			try {
+				scheduler.acquire(Long.MAX_VALUE, raised::get);
+				order.add("raised");
+				scheduler.release();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		batch.start();
+		while (scheduler.getWaiting(Priority.BATCH) == 0) {
+			Thread.sleep(1);
+		}
+		Thread interactive = new Thread(() -> {
+			try {
+				scheduler.acquire();
+				order.add("interactive");
+				scheduler.release();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		interactive.start();
+		while (scheduler.getWaiting(Priority.INTERACTIVE) == 0) {
+			Thread.sleep(1);
+		}
+
+		raised.set(Priority.INTERACTIVE);
+		scheduler.release();
+
+		batch.join(5000);
+		interactive.join(5000);
+		assertEquals(List.of("raised", "interactive"), order);
+		assertEquals(0, scheduler.getInFlight());
+	}
+
+	/**
+	 * A batch call that waited longer than the aging limit goes first
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testAging() throws InterruptedException {
+		FirestoreScheduler scheduler = new FirestoreScheduler(1, 0);
+		List<Priority> order = new CopyOnWriteArrayList<>();
+
+		scheduler.acquire();
+		Thread batch = startWaiting(scheduler, Priority.BATCH, order);
+		Thread interactive = startWaiting(scheduler, Priority.INTERACTIVE, order);
+		scheduler.release();
+
+		batch.join(5000);
+		interactive.join(5000);
+		assertEquals(List.of(Priority.BATCH, Priority.INTERACTIVE), order);
+	}
+
+	/**
+	 * Calls below the limit do not wait, the priority of a thread is restored
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testNoWaitBelowLimit() throws InterruptedException {
+		FirestoreScheduler scheduler = new FirestoreScheduler(2, 0);
+		scheduler.acquire();
+		scheduler.acquire();
+		assertEquals(2, scheduler.getInFlight());
+		scheduler.release();
+		scheduler.release();
+
+		FirestoreScheduler.runWith(Priority.BATCH, () -> assertEquals(Priority.BATCH, FirestoreScheduler.current()));
+		assertEquals(Priority.INTERACTIVE, FirestoreScheduler.current());
+	}
+
+	/**
+	 * A call that does not get its turn in time leaves the queue, a free slot is
+	 * only taken at once if nobody waits
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testTimeout() throws InterruptedException {
+		FirestoreScheduler scheduler = new FirestoreScheduler(1, 0);
+		assertTrue(scheduler.tryAcquire());
+		assertFalse(scheduler.tryAcquire());
+
+		assertFalse(scheduler.acquire(1000000L));
+		assertEquals(0, scheduler.getWaiting(Priority.INTERACTIVE));
+		assertEquals(1, scheduler.getInFlight());
+
+		scheduler.release();
+		assertTrue(scheduler.acquire(1000000L));
+		scheduler.release();
+		assertEquals(0, scheduler.getInFlight());
+	}
+}
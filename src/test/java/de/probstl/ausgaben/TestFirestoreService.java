@@ -0,0 +1,406 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.accounting.DocumentAccountingInterceptor;
+import de.probstl.ausgaben.cache.ExpenseCache;
+import de.probstl.ausgaben.data.BulkEditRequest;
+import de.probstl.ausgaben.data.BulkItemResult;
+import de.probstl.ausgaben.data.BulkResult;
+import de.probstl.ausgaben.data.Expense;
+import de.probstl.ausgaben.data.ExpensesRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the Firestore service against a mocked Firestore
+ */
+public class TestFirestoreService {
+
+	/** The collection of the test */
+	private static final String COLLECTION = "ausgaben";
+
+	/** The registry of the service metrics */
+	private SimpleMeterRegistry m_Registry;
+
+	/** The mocked Firestore */
+	private Firestore m_Firestore;
+
+	/** The mocked collection, it is also the query */
+	private CollectionReference m_Collection;
+
+	/** The expense cache of the service */
+	private ExpenseCache m_Cache;
+
+	/** Counts the documents, a user may read 2 documents a day */
+	private DocumentAccounting m_Accounting;
+
+	/** Starts and finishes the counting of a request */
+	private DocumentAccountingInterceptor m_Interceptor;
+
+	/** The service under test */
+	private FirestoreService m_Service;
+
+	/**
+	 * Create the service with mocked Firestore
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_Registry = new SimpleMeterRegistry();
+		m_Firestore = mock(Firestore.class);
+		m_Collection = mock(CollectionReference.class);
+		when(m_Firestore.collection(anyString())).thenReturn(m_Collection);
+		when(m_Collection.whereGreaterThanOrEqualTo(anyString(), any())).thenReturn(m_Collection);
+		when(m_Collection.whereLessThanOrEqualTo(anyString(), any())).thenReturn(m_Collection);
+		when(m_Collection.orderBy(anyString())).thenReturn(m_Collection);
+		when(m_Collection.document(anyString())).thenAnswer(x -> documentOf(x.getArgument(0)));
+		when(m_Collection.document()).thenAnswer(x -> documentOf("new"));
+
+		m_Cache = new ExpenseCache();
+		ReflectionTestUtils.setField(m_Cache, "m_MeterRegistry", m_Registry);
+		ReflectionTestUtils.setField(m_Cache, "m_Ttl", Duration.ofMinutes(10));
+		ReflectionTestUtils.setField(m_Cache, "m_MaxSize", Integer.valueOf(100));
+		m_Cache.init();
+
+		m_Service = new FirestoreService() {
+			@Override
+			protected Firestore getFirestoreService() {
+				return m_Firestore;
+			}
+		};
+		final ApplicationEventPublisher publisher = x -> {
+			// the events are not observed
+		};
+		ReflectionTestUtils.setField(m_Service, "m_EventPublisher", publisher);
+		ReflectionTestUtils.setField(m_Service, "m_MeterRegistry", m_Registry);
+		ReflectionTestUtils.setField(m_Service, "m_ExpenseCache", m_Cache);
+		ReflectionTestUtils.setField(m_Service, "m_SlowQueryLog", new SlowQueryLog(Duration.ofSeconds(10), 10));
+		m_Accounting = new DocumentAccounting(m_Registry, 2);
+		m_Interceptor = new DocumentAccountingInterceptor();
+		ReflectionTestUtils.setField(m_Interceptor, "m_Accounting", m_Accounting);
+		ReflectionTestUtils.setField(m_Service, "m_Accounting", m_Accounting);
+		ReflectionTestUtils.setField(m_Service, "m_MaxBatchInFlight", Integer.valueOf(50));
+		ReflectionTestUtils.setField(m_Service, "m_WriteWindowMillis", Long.valueOf(5));
+		ReflectionTestUtils.setField(m_Service, "m_MaxWriteBatchSize", Integer.valueOf(100));
+		ReflectionTestUtils.setField(m_Service, "m_MaxInFlight", Integer.valueOf(8));
+		ReflectionTestUtils.setField(m_Service, "m_BatchAging", Duration.ofSeconds(2));
+		ReflectionTestUtils.setField(m_Service, "m_Timeout", Duration.ofSeconds(5));
+		ReflectionTestUtils.setField(m_Service, "m_HedgeEnabled", Boolean.FALSE);
+		ReflectionTestUtils.setField(m_Service, "m_HedgePercentile", Double.valueOf(0.95));
+		m_Service.init();
+	}
+
+	/**
+	 * Finish a started request and stop the write coalescer
+	 */
+	@AfterEach
+	public void tearDown() throws Exception {
+		m_Interceptor.afterCompletion(new MockHttpServletRequest(), new MockHttpServletResponse(), null, null);
+		m_Service.shutdown();
+	}
+
+	/**
+	 * Create a reference to a document
+	 *
+	 * @param id The id of the document
+	 * @return The reference
+	 */
+	private static DocumentReference documentOf(String id) {
+		final DocumentReference reference = mock(DocumentReference.class);
+		when(reference.getId()).thenReturn(id);
+		return reference;
+	}
+
+	/**
+	 * Start counting the documents of a request of the user flo
+	 *
+	 * @param endpoint The pattern of the endpoint
+	 */
+	private void beginRequest(String endpoint) throws Exception {
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", endpoint);
+		request.setUserPrincipal(() -> "flo");
+		request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, endpoint);
+		m_Interceptor.preHandle(request, new MockHttpServletResponse(), null);
+	}
+
+	/**
+	 * Cache an expense
+	 *
+	 * @param id The id of the expense
+	 */
+	private void cache(String id) {
+		final Expense expense = new Expense(id);
+		expense.setTimestamp(new Date());
+		m_Cache.putAll(COLLECTION, Collections.singletonList(expense), m_Cache.stamp(COLLECTION));
+	}
+
+	/**
+	 * @param collection The collection
+	 * @return The written documents counted for the collection
+	 */
+	private double writtenTo(String collection) {
+		final Counter counter = m_Registry.find("firestore.documents").tag("type", "write")
+				.tag("collection", collection).counter();
+		return counter == null ? 0 : counter.count();
+	}
+
+	/**
+	 * Create a snapshot with one expense
+	 *
+	 * @param id The id of the expense
+	 * @return The snapshot
+	 */
+	private static QuerySnapshot snapshotOf(String id) {
+		final QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+		when(document.getId()).thenReturn(id);
+		when(document.getString("shop")).thenReturn("Bakery");
+		when(document.getDouble("amount")).thenReturn(Double.valueOf(2.5));
+		when(document.getDate("timestamp")).thenReturn(new Date());
+
+		final List<QueryDocumentSnapshot> documents = Collections.singletonList(document);
+		final QuerySnapshot snapshot = mock(QuerySnapshot.class);
+		when(snapshot.getDocuments()).thenReturn(documents);
+		when(snapshot.size()).thenReturn(Integer.valueOf(1));
+		when(snapshot.isEmpty()).thenReturn(Boolean.FALSE);
+		when(snapshot.getReadTime()).thenReturn(Timestamp.now());
+		return snapshot;
+	}
+
+	/**
+	 * Wait until the counter of the registry reached the count
+	 *
+	 * @param name  The name of the counter
+	 * @param count The expected count
+	 */
+	private void awaitCount(String name, double count) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (m_Registry.counter(name).count() < count && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(count, m_Registry.counter(name).count());
+	}
+
+	/**
+	 * An expense modified while a range query is running is not cached from the
+	 * query, also not by a caller that joined the query after the modification
+	 */
+	@Test
+	public void testInvalidateDuringSharedQuery() throws Exception {
+		final SettableApiFuture<QuerySnapshot> result = SettableApiFuture.create();
+		when(m_Collection.get()).thenReturn(result);
+		final ExpensesRequest request = ExpensesRequest.forMonth("3", "2024");
+
+		final CompletableFuture<Collection<Expense>> leader = CompletableFuture
+				.supplyAsync(() -> m_Service.findBetween(request, COLLECTION));
+		awaitCount("firestore.query.executed", 1);
+
+		m_Cache.invalidate(COLLECTION, "a");
+
+		final CompletableFuture<Collection<Expense>> follower = CompletableFuture
+				.supplyAsync(() -> m_Service.findBetween(request, COLLECTION));
+		awaitCount("firestore.query.coalesced", 1);
+
+		result.set(snapshotOf("a"));
+		assertEquals(1, leader.get(5, TimeUnit.SECONDS).size());
+		assertEquals(1, follower.get(5, TimeUnit.SECONDS).size());
+		assertNull(m_Cache.get(COLLECTION, "a"));
+	}
+
+	/**
+	 * Without a concurrent modification the expenses of a range query are cached
+	 */
+	@Test
+	public void testRangeQueryFillsCache() {
+		final SettableApiFuture<QuerySnapshot> result = SettableApiFuture.create();
+		result.set(snapshotOf("a"));
+		when(m_Collection.get()).thenReturn(result);
+
+		final List<Expense> found = new ArrayList<>(
+				m_Service.findBetween(ExpensesRequest.forMonth("3", "2024"), COLLECTION));
+		assertEquals("a", found.get(0).getId());
+		assertNotNull(m_Cache.get(COLLECTION, "a"));
+	}
+
+	/**
+	 * Range queries of different spans are estimated apart, a day does not hedge
+	 * after the latency of a year
+	 */
+	@Test
+	public void testRangeLatencyBySpan() {
+		final QueryKey day = new QueryKey(COLLECTION, new Date(0), new Date(TimeUnit.DAYS.toMillis(1)));
+		final QueryKey month = new QueryKey(COLLECTION, new Date(0), new Date(TimeUnit.DAYS.toMillis(31)));
+		final QueryKey otherMonth = new QueryKey(COLLECTION, new Date(TimeUnit.DAYS.toMillis(31)),
+				new Date(TimeUnit.DAYS.toMillis(61)));
+		final QueryKey year = new QueryKey(COLLECTION, new Date(0), new Date(TimeUnit.DAYS.toMillis(365)));
+
+		assertEquals(1, FirestoreService.spanClass(day));
+		assertEquals(5, FirestoreService.spanClass(month));
+		assertEquals(9, FirestoreService.spanClass(year));
+		assertEquals(64, FirestoreService.spanClass(new QueryKey(COLLECTION, null, null)));
+
+		assertSame(m_Service.getRangeLatency(month), m_Service.getRangeLatency(otherMonth));
+		assertNotSame(m_Service.getRangeLatency(month), m_Service.getRangeLatency(year));
+		assertNotSame(m_Service.getRangeLatency(day), m_Service.getRangeLatency(month));
+	}
+
+	/**
+	 * With the read budget used up the cached expenses are still returned, the
+	 * other ones are not read
+	 */
+	@Test
+	public void testBudgetServesCachedExpenses() throws Exception {
+		cache("a");
+		beginRequest("/rest/bulk");
+		m_Accounting.read(COLLECTION, 2);
+
+		final Map<String, Expense> found = m_Service.getExpenses(Arrays.asList("a", "b"), COLLECTION);
+		assertEquals(Collections.singleton("a"), found.keySet());
+		assertNull(m_Service.getExpense("b", COLLECTION));
+		verify(m_Firestore, never()).getAll(any(DocumentReference[].class));
+		assertEquals(2.0, m_Registry.counter("firestore.read.budget.rejected").count());
+	}
+
+	/**
+	 * A bulk edit with the read budget used up updates the cached expenses and
+	 * fails the unread ones instead of reporting them as not found
+	 */
+	@Test
+	public void testBudgetFailsUnreadBulkItems() throws Exception {
+		final WriteBatch batch = mock(WriteBatch.class);
+		when(m_Firestore.batch()).thenReturn(batch);
+		when(batch.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+
+		cache("a");
+		beginRequest("/rest/bulk");
+		m_Accounting.read(COLLECTION, 2);
+
+		final BulkEditRequest request = new BulkEditRequest();
+		request.setIds(Arrays.asList("a", "b"));
+		request.setCity("Berlin");
+		final BulkResult result = m_Service.updateExpenses(request, COLLECTION);
+
+		assertEquals(BulkItemResult.Status.OK, result.getItems().get(0).getStatus());
+		assertEquals(BulkItemResult.Status.FAILED, result.getItems().get(1).getStatus());
+		assertEquals(1.0, writtenTo(COLLECTION));
+	}
+
+	/**
+	 * A failed batch is written again expense by expense, only the expense that
+	 * cannot be updated fails
+	 */
+	@Test
+	public void testBulkRetriesFailedBatchByItem() throws Exception {
+		final WriteBatch batch = mock(WriteBatch.class);
+		final WriteBatch single = mock(WriteBatch.class);
+		final WriteBatch missing = mock(WriteBatch.class);
+		when(m_Firestore.batch()).thenReturn(batch, single, missing, single);
+		when(batch.commit()).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("no document b")));
+		when(single.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+		when(missing.commit()).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("no document b")));
+
+		cache("a");
+		cache("b");
+		cache("c");
+
+		final BulkEditRequest request = new BulkEditRequest();
+		request.setIds(Arrays.asList("a", "b", "c"));
+		request.setCity("Berlin");
+		final BulkResult result = m_Service.updateExpenses(request, COLLECTION);
+
+		assertEquals(BulkItemResult.Status.OK, result.getItems().get(0).getStatus());
+		assertEquals(BulkItemResult.Status.FAILED, result.getItems().get(1).getStatus());
+		assertEquals("no document b", result.getItems().get(1).getMessage());
+		assertEquals(BulkItemResult.Status.OK, result.getItems().get(2).getStatus());
+		assertEquals(2, result.getSucceeded());
+		assertEquals(2.0, writtenTo(COLLECTION));
+	}
+
+	/**
+	 * An id must be given for every selected expense
+	 */
+	@Test
+	public void testBulkNullId() {
+		final BulkEditRequest request = new BulkEditRequest();
+		request.setIds(Arrays.asList("a", null));
+		request.setCity("Berlin");
+		assertThrows(IllegalArgumentException.class, () -> m_Service.updateExpenses(request, COLLECTION));
+	}
+
+	/**
+	 * A new expense and its outbox entry are counted in their collections once
+	 * the write succeeded
+	 */
+	@Test
+	public void testCreateCountsSuccessfulWrites() throws Exception {
+		final WriteBatch batch = mock(WriteBatch.class);
+		when(m_Firestore.batch()).thenReturn(batch);
+		when(batch.commit()).thenReturn(ApiFutures.immediateFuture(Collections.emptyList()));
+
+		beginRequest("/rest/create");
+		m_Service.createExpenseAsync(new Expense(), COLLECTION, true).get(5, TimeUnit.SECONDS);
+
+		// the batch is committed on another thread, the writes still count for the request
+		assertEquals(1.0, m_Registry.counter("firestore.documents", "type", "write", "collection", COLLECTION,
+				"endpoint", "/rest/create").count());
+		assertEquals(1.0, m_Registry.counter("firestore.documents", "type", "write", "collection",
+				ExportOutbox.COLLECTION, "endpoint", "/rest/create").count());
+	}
+
+	/**
+	 * A failed write is not counted
+	 */
+	@Test
+	public void testCreateFailureNotCounted() throws Exception {
+		final WriteBatch batch = mock(WriteBatch.class);
+		when(m_Firestore.batch()).thenReturn(batch);
+		when(batch.commit()).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+
+		beginRequest("/rest/create");
+		assertThrows(ExecutionException.class,
+				() -> m_Service.createExpenseAsync(new Expense(), COLLECTION, false).get(5, TimeUnit.SECONDS));
+		assertEquals(0.0, writtenTo(COLLECTION));
+	}
+}
@@ -0,0 +1,203 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import javax.servlet.Filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import de.probstl.ausgaben.auth.TokenService;
+import de.probstl.ausgaben.jfr.FlightRecorderService;
+
+/**
+ * Test for starting, stopping and downloading a recording behind the security
+ * filters
+ */
+@SpringJUnitWebConfig(TestFlightRecorderResource.Config.class)
+@TestPropertySource(properties = "expenses.admin.users=flo")
+public class TestFlightRecorderResource {
+
+	/**
+	 * The security configuration with the resource and a mocked recorder
+	 */
+	@Configuration
+	@EnableWebMvc
+	@Import({ WebSecurityConfiguration.class, FlightRecorderResource.class })
+	static class Config {
+
+		/**
+		 * @return The token service with a fixed secret
+		 */
+		@Bean
+		TokenService tokenService() {
+			return new TokenService("secret-of-the-tests-with-32-bytes", Duration.ofHours(1));
+		}
+
+		/**
+		 * @return The mocked recorder
+		 */
+		@Bean
+		FlightRecorderService flightRecorderService() {
+			return mock(FlightRecorderService.class);
+		}
+	}
+
+	/** The context of the test */
+	@Autowired
+	private WebApplicationContext m_Context;
+
+	/** Issues the tokens of the test */
+	@Autowired
+	private TokenService m_TokenService;
+
+	/** The mocked recorder */
+	@Autowired
+	private FlightRecorderService m_Recorder;
+
+	/** The web application with the security filters */
+	private MockMvc m_MockMvc;
+
+	/**
+	 * Create the web application with the security filters and the user eve, who
+	 * is no administrator
+	 */
+	@BeforeEach
+	public void setUp() {
+		reset(m_Recorder);
+		UserDetailsManager users = (UserDetailsManager) m_Context.getBean(UserDetailsService.class);
+		if (!users.userExists("eve")) {
+			users.createUser(User.withUsername("eve").password("{noop}test").authorities("ausgaben").build());
+		}
+		m_MockMvc = MockMvcBuilders.webAppContextSetup(m_Context)
+				.addFilters(m_Context.getBean("springSecurityFilterChain", Filter.class)).build();
+	}
+
+	/**
+	 * @param user The user
+	 * @return The header with a token of the user
+	 */
+	private String bearer(String user) {
+		return "Bearer " + m_TokenService.issue(user, Arrays.asList("ausgaben"));
+	}
+
+	/**
+	 * @param request The request
+	 * @return The result
+	 */
+	private MvcResult perform(RequestBuilder request) throws Exception {
+		return m_MockMvc.perform(request).andReturn();
+	}
+
+	/**
+	 * Users who are no administrators and the password are rejected before the
+	 * recorder is used
+	 */
+	@Test
+	public void testForbidden() throws Exception {
+		assertEquals(403, perform(post("/admin/jfr/start").header(HttpHeaders.AUTHORIZATION, bearer("eve")))
+				.getResponse().getStatus());
+		assertEquals(403, perform(post("/admin/jfr/stop").header(HttpHeaders.AUTHORIZATION, bearer("eve")))
+				.getResponse().getStatus());
+		assertEquals(403,
+				perform(get("/admin/jfr/recording").header(HttpHeaders.AUTHORIZATION, bearer("eve")))
+						.getResponse().getStatus());
+		assertEquals(401, perform(post("/admin/jfr/start").header(HttpHeaders.AUTHORIZATION, "Basic ZmxvOnRlc3Q="))
+				.getResponse().getStatus());
+		assertEquals(401, perform(post("/admin/jfr/start")).getResponse().getStatus());
+
+		verify(m_Recorder, never()).start(any());
+		verify(m_Recorder, never()).stop();
+		verify(m_Recorder, never()).dump();
+	}
+
+	/**
+	 * An administrator starts a recording, a running one is a conflict
+	 */
+	@Test
+	public void testStart() throws Exception {
+		when(m_Recorder.start(Duration.ofMinutes(2))).thenReturn(Duration.ofMinutes(2))
+				.thenThrow(new IllegalStateException("running"));
+		String admin = bearer("flo");
+
+		MvcResult result = perform(
+				post("/admin/jfr/start").param("duration", "PT2M").header(HttpHeaders.AUTHORIZATION, admin));
+		assertEquals(200, result.getResponse().getStatus());
+		assertEquals("PT2M", result.getResponse().getContentAsString());
+		assertNull(result.getRequest().getSession(false));
+
+		assertEquals(409, perform(post("/admin/jfr/start").param("duration", "PT2M")
+				.header(HttpHeaders.AUTHORIZATION, admin)).getResponse().getStatus());
+		assertEquals(400, perform(post("/admin/jfr/start").param("duration", "two")
+				.header(HttpHeaders.AUTHORIZATION, admin)).getResponse().getStatus());
+	}
+
+	/**
+	 * An administrator stops the running recording
+	 */
+	@Test
+	public void testStop() throws Exception {
+		when(m_Recorder.stop()).thenReturn(Boolean.TRUE, Boolean.FALSE);
+		String admin = bearer("flo");
+
+		assertEquals(200, perform(post("/admin/jfr/stop").header(HttpHeaders.AUTHORIZATION, admin)).getResponse()
+				.getStatus());
+		assertEquals(404, perform(post("/admin/jfr/stop").header(HttpHeaders.AUTHORIZATION, admin)).getResponse()
+				.getStatus());
+	}
+
+	/**
+	 * An administrator downloads the recording, the dumped file is removed
+	 * afterwards
+	 */
+	@Test
+	public void testDownload() throws Exception {
+		Path file = Files.createTempFile("expenses", ".jfr");
+		Files.write(file, "recording".getBytes(StandardCharsets.UTF_8));
+		when(m_Recorder.dump()).thenReturn(file, (Path) null);
+		String admin = bearer("flo");
+
+		MvcResult result = perform(get("/admin/jfr/recording").header(HttpHeaders.AUTHORIZATION, admin));
+		assertEquals(200, result.getResponse().getStatus());
+		assertEquals("attachment; filename=\"expenses.jfr\"",
+				result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION));
+		assertArrayEquals("recording".getBytes(StandardCharsets.UTF_8), result.getResponse().getContentAsByteArray());
+		assertFalse(Files.exists(file));
+
+		assertEquals(404, perform(get("/admin/jfr/recording").header(HttpHeaders.AUTHORIZATION, admin))
+				.getResponse().getStatus());
+	}
+}
@@ -0,0 +1,43 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the estimation of the latency percentile
+ */
+public class TestLatencyEstimator {
+
+	/**
+	 * No estimate before a quarter of the samples is recorded
+	 */
+	@Test
+	public void testNotEnoughSamples() {
+		LatencyEstimator estimator = new LatencyEstimator(64, 0.9);
+		for (int i = 0; i < 15; i++) {
+			estimator.record(100);
+		}
+		assertEquals(-1, estimator.estimate());
+
+		estimator.record(100);
+		assertEquals(100, estimator.estimate());
+	}
+
+	/**
+	 * The percentile follows the most recent samples
+	 */
+	@Test
+	public void testPercentile() {
+		LatencyEstimator estimator = new LatencyEstimator(80, 0.9);
+		for (int i = 1; i <= 80; i++) {
+			estimator.record(i);
+		}
+		assertEquals(73, estimator.estimate());
+
+		for (int i = 0; i < 80; i++) {
+			estimator.record(5);
+		}
+		assertEquals(5, estimator.estimate());
+	}
+}
@@ -0,0 +1,47 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.data.ExpensesRequest;
+
+/**
+ * Test for merging the intervals of a page into range queries
+ */
+public class TestQueryPlanner {
+
+	/**
+	 * Last and current month are adjacent and read with one query
+	 */
+	@Test
+	public void testAdjacentMonths() {
+		ExpensesRequest lastMonth = ExpensesRequest.forLastMonth();
+		ExpensesRequest currentMonth = ExpensesRequest.forCurrentMonth();
+
+		List<QueryPlanner.Group> plan = QueryPlanner.plan(Arrays.asList(lastMonth, currentMonth));
+		assertEquals(1, plan.size());
+		assertEquals(lastMonth.getBeginDate(), plan.get(0).getBegin());
+		assertEquals(currentMonth.getEndDate(), plan.get(0).getEnd());
+		assertEquals(Arrays.asList(Integer.valueOf(0), Integer.valueOf(1)), plan.get(0).getMembers());
+	}
+
+	/**
+	 * Overlapping intervals are merged, distant intervals are read separately
+	 */
+	@Test
+	public void testOverlapAndGap() {
+		ExpensesRequest march = ExpensesRequest.forMonth("3", "2022");
+		ExpensesRequest january = ExpensesRequest.forMonth("1", "2022");
+		ExpensesRequest januaryAgain = ExpensesRequest.forMonth("1", "2022");
+
+		List<QueryPlanner.Group> plan = QueryPlanner.plan(Arrays.asList(march, january, januaryAgain));
+		assertEquals(2, plan.size());
+		assertEquals(january.getBeginDate(), plan.get(0).getBegin());
+		assertEquals(Arrays.asList(Integer.valueOf(1), Integer.valueOf(2)), plan.get(0).getMembers());
+		assertEquals(Arrays.asList(Integer.valueOf(0)), plan.get(1).getMembers());
+	}
+}
@@ -0,0 +1,221 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.validation.Validation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.probstl.ausgaben.aws.ExportDispatcher;
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Test for the non-blocking <code>/rest/create</code>
+ */
+public class TestReactiveExpensesCreateResource {
+
+	/**
+	 * A request whose body is only handed out to a read listener, like a
+	 * container does for asynchronous requests
+	 */
+	private static final class ListenerRequest extends MockHttpServletRequest {
+
+		/** The body */
+		private final ByteArrayInputStream m_Body;
+
+		/** The read listener was set */
+		private boolean m_Listening;
+
+		/**
+		 * Constructor
+		 *
+		 * @param servletContext The servlet context
+		 * @param body           The body
+		 */
+		ListenerRequest(ServletContext servletContext, byte[] body) {
+			super(servletContext, "POST", "/rest/create");
+			m_Body = new ByteArrayInputStream(body);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			return new ServletInputStream() {
+
+				@Override
+				public boolean isFinished() {
+					return m_Body.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return m_Listening;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					assertTrue(isAsyncStarted(), "read listener set before the request is asynchronous");
+					m_Listening = true;
+					try {
+						readListener.onDataAvailable();
+						readListener.onAllDataRead();
+					} catch (Exception e) {
+						readListener.onError(e);
+					}
+				}
+
+				@Override
+				public int read() {
+					if (!m_Listening) {
+						throw new IllegalStateException("blocking read of the body");
+					}
+					return m_Body.read();
+				}
+			};
+		}
+	}
+
+	/** The user of the tests */
+	private static final Authentication USER = new UsernamePasswordAuthenticationToken("flo", "test",
+			Arrays.asList(new SimpleGrantedAuthority("ausgaben")));
+
+	/** The mocked Firestore service */
+	private FirestoreService m_FirestoreService;
+
+	/** The resource under test */
+	private MockMvc m_MockMvc;
+
+	/**
+	 * Create the resource with the real checks and a mocked Firestore service
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_FirestoreService = mock(FirestoreService.class);
+		when(m_FirestoreService.extractCollection(any())).thenCallRealMethod();
+
+		ExpenseValidator validator = new ExpenseValidator();
+		ReflectionTestUtils.setField(validator, "m_Validator",
+				Validation.buildDefaultValidatorFactory().getValidator());
+
+		ExpenseCreation creation = new ExpenseCreation();
+		ReflectionTestUtils.setField(creation, "m_FirestoreService", m_FirestoreService);
+		ReflectionTestUtils.setField(creation, "m_ExportDispatcher", mock(ExportDispatcher.class));
+		ReflectionTestUtils.setField(creation, "m_ExpenseValidator", validator);
+
+		ReactiveExpensesCreateResource resource = new ReactiveExpensesCreateResource();
+		ReflectionTestUtils.setField(resource, "m_FirestoreService", m_FirestoreService);
+		ReflectionTestUtils.setField(resource, "m_ExpenseCreation", creation);
+		ReflectionTestUtils.setField(resource, "m_ObjectMapper", new ObjectMapper());
+
+		m_MockMvc = MockMvcBuilders.standaloneSetup(resource).build();
+	}
+
+	/**
+	 * @param body           The body
+	 * @param authentication The logged in user
+	 * @return The request creating an expense
+	 */
+	private static RequestBuilder create(String body, Authentication authentication) {
+		return servletContext -> {
+			MockHttpServletRequest request = new ListenerRequest(servletContext,
+					body.getBytes(StandardCharsets.UTF_8));
+			request.setAsyncSupported(true);
+			request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			request.addPreferredLocale(Locale.GERMANY);
+			request.setUserPrincipal(authentication);
+			return request;
+		};
+	}
+
+	/**
+	 * Send the request and wait for the asynchronous result
+	 *
+	 * @param body           The body
+	 * @param authentication The logged in user
+	 * @return The status of the response
+	 */
+	private int post(String body, Authentication authentication) throws Exception {
+		MvcResult result = m_MockMvc.perform(create(body, authentication)).andReturn();
+		assertTrue(result.getRequest().isAsyncStarted());
+		return m_MockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getStatus();
+	}
+
+	/**
+	 * A valid expense is read without blocking and written
+	 */
+	@Test
+	public void testCreate() throws Exception {
+		when(m_FirestoreService.createExpenseAsync(any(), anyString(), anyBoolean()))
+				.thenAnswer(x -> CompletableFuture.completedFuture(x.getArgument(0)));
+
+		assertEquals(200, post("{\"shop\":\"Bakery\",\"message\":\"Bread\",\"amount\":\"2,50\"}", USER));
+
+		ArgumentCaptor<Expense> written = ArgumentCaptor.forClass(Expense.class);
+		verify(m_FirestoreService).createExpenseAsync(written.capture(), eq("ausgaben"), eq(false));
+		assertEquals("Bakery", written.getValue().getShop());
+		assertEquals(2.5, written.getValue().getAmountDouble().doubleValue());
+	}
+
+	/**
+	 * A failed write is answered with an error
+	 */
+	@Test
+	public void testWriteFailed() throws Exception {
+		CompletableFuture<Expense> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new IllegalStateException("unavailable"));
+		when(m_FirestoreService.createExpenseAsync(any(), anyString(), anyBoolean())).thenReturn(failed);
+
+		assertEquals(500, post("{\"shop\":\"Bakery\",\"message\":\"Bread\",\"amount\":\"2,50\"}", USER));
+	}
+
+	/**
+	 * Invalid bodies are rejected like the blocking variant does and nothing is
+	 * written
+	 */
+	@Test
+	public void testRejected() throws Exception {
+		assertEquals(400, post("{\"shop\":", USER));
+		assertEquals(400, post("{\"message\":\"Bread\",\"amount\":\"2,50\"}", USER));
+		assertEquals(500, post("{\"shop\":\"Bakery\",\"message\":\"Bread\",\"amount\":\"zwei\"}", USER));
+		assertEquals(403, post("{\"shop\":\"Bakery\",\"message\":\"Bread\",\"amount\":\"2,50\"}",
+				new UsernamePasswordAuthenticationToken("eve", "test", Arrays.asList())));
+
+		char[] large = new char[ReactiveExpensesCreateResource.MAX_BODY_SIZE];
+		Arrays.fill(large, 'x');
+		assertEquals(413, post("{\"shop\":\"" + new String(large) + "\"}", USER));
+
+		verify(m_FirestoreService, never()).createExpenseAsync(any(), anyString(), anyBoolean());
+	}
+}
@@ -0,0 +1,297 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.FirestoreScheduler.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for sharing the result of identical calls
+ */
+public class TestSingleFlight {
+
+	/** The counters of the calls */
+	private SimpleMeterRegistry m_Registry;
+
+	/** The calls under test */
+	private SingleFlight<String, String> m_SingleFlight;
+
+	/**
+	 * Create the single flight with counters
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_Registry = new SimpleMeterRegistry();
+		m_SingleFlight = new SingleFlight<>(m_Registry.counter("executed"), m_Registry.counter("coalesced"));
+	}
+
+	/**
+	 * @param millis Milliseconds from now
+	 * @return The deadline from {@link System#nanoTime()}
+	 */
+	private static long deadlineIn(long millis) {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Wait until the call of the key is in flight
+	 */
+	private void awaitInFlight() throws InterruptedException {
+		while (m_SingleFlight.size() == 0) {
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * A caller joining with a later deadline extends the deadline of the running
+	 * call
+	 */
+	@Test
+	public void testFollowerExtendsDeadline() throws Exception {
+		final CountDownLatch joined = new CountDownLatch(1);
+		final long leaderDeadline = deadlineIn(100);
+		final long followerDeadline = deadlineIn(10_000);
+
+		CompletableFuture<Long> leader = CompletableFuture.supplyAsync(() -> {
+			final long[] seen = new long[1];
+			m_SingleFlight.execute("key", leaderDeadline, deadline -> {
+				try {
+					joined.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				seen[0] = deadline.deadline();
+				return "result";
+			});
+			return Long.valueOf(seen[0]);
+		});
+		awaitInFlight();
+
+		CompletableFuture<String> follower = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", followerDeadline, deadline -> "own"));
+		while (m_Registry.counter("coalesced").count() == 0) {
+			Thread.sleep(1);
+		}
+		joined.countDown();
+
+		assertEquals(followerDeadline, leader.get(5, TimeUnit.SECONDS).longValue());
+		assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(0, m_SingleFlight.size());
+	}
+
+	/**
+	 * An interactive caller joining a batch call raises its priority, a batch
+	 * caller does not lower it again
+	 */
+	@Test
+	public void testFollowerRaisesPriority() throws Exception {
+		final CountDownLatch joined = new CountDownLatch(1);
+		final List<Priority> seen = new ArrayList<>();
+
+		CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> FirestoreScheduler
+				.callWith(Priority.BATCH, () -> m_SingleFlight.execute("key", deadlineIn(10_000), call -> {
+					seen.add(call.priority());
+					try {
+						joined.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					seen.add(call.priority());
+					return "result";
+				})));
+		awaitInFlight();
+
+		CompletableFuture<String> interactive = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), call -> "own"));
+		CompletableFuture<String> batch = CompletableFuture.supplyAsync(() -> FirestoreScheduler
+				.callWith(Priority.BATCH, () -> m_SingleFlight.execute("key", deadlineIn(10_000), call -> "own")));
+		while (m_Registry.counter("coalesced").count() < 2) {
+			Thread.sleep(1);
+		}
+		joined.countDown();
+
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals("result", interactive.get(5, TimeUnit.SECONDS));
+		assertEquals("result", batch.get(5, TimeUnit.SECONDS));
+		assertEquals(List.of(Priority.BATCH, Priority.INTERACTIVE), seen);
+	}
+
+	/**
+	 * A caller stops waiting at its own deadline while the shared call goes on
+	 */
+	@Test
+	public void testFollowerOwnDeadline() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+
+		CompletableFuture<String> leader = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), deadline -> {
+					try {
+						done.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return "result";
+				}));
+		awaitInFlight();
+
+		final long start = System.nanoTime();
+		assertNull(m_SingleFlight.execute("key", deadlineIn(50), deadline -> "own"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertFalse(leader.isDone());
+
+		done.countDown();
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * An earlier deadline of a follower does not shorten the running call
+	 */
+	@Test
+	public void testEarlierFollowerKeepsDeadline() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final long leaderDeadline = deadlineIn(10_000);
+
+		CompletableFuture<Long> leader = CompletableFuture.supplyAsync(() -> {
+			final long[] seen = new long[1];
+			m_SingleFlight.execute("key", leaderDeadline, deadline -> {
+				try {
+					done.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				seen[0] = deadline.deadline();
+				return "result";
+			});
+			return Long.valueOf(seen[0]);
+		});
+		awaitInFlight();
+
+		assertNull(m_SingleFlight.execute("key", deadlineIn(10), deadline -> "own"));
+		done.countDown();
+		assertEquals(leaderDeadline, leader.get(5, TimeUnit.SECONDS).longValue());
+	}
+
+	/**
+	 * Callers arriving while the call is in flight share its result, the loader
+	 * runs once
+	 */
+	@Test
+	public void testCoalescing() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+
+		List<CompletableFuture<String>> callers = new ArrayList<>();
+		callers.add(CompletableFuture.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> {
+			loads.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "result";
+		})));
+		awaitInFlight();
+
+		for (int i = 0; i < 3; i++) {
+			callers.add(CompletableFuture.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> {
+				loads.incrementAndGet();
+				return "own";
+			})));
+		}
+		while (m_Registry.counter("coalesced").count() < 3) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		for (CompletableFuture<String> caller : callers) {
+			assertEquals("result", caller.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, loads.get());
+		assertEquals(1, m_Registry.counter("executed").count());
+		assertEquals(0, m_SingleFlight.size());
+	}
+
+	/**
+	 * The failure of the call reaches every caller, the next call runs again
+	 */
+	@Test
+	public void testExceptionPropagated() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<String> leader = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IllegalStateException("unavailable");
+				}));
+		awaitInFlight();
+
+		CompletableFuture<String> follower = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> "own"));
+		while (m_Registry.counter("coalesced").count() == 0) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		ExecutionException leaderFailure = assertThrows(ExecutionException.class,
+				() -> leader.get(5, TimeUnit.SECONDS));
+		assertEquals("unavailable", leaderFailure.getCause().getMessage());
+		ExecutionException followerFailure = assertThrows(ExecutionException.class,
+				() -> follower.get(5, TimeUnit.SECONDS));
+		assertEquals("unavailable", followerFailure.getCause().getMessage());
+
+		assertEquals(0, m_SingleFlight.size());
+		assertEquals("again", m_SingleFlight.execute("key", deadlineIn(10_000), x -> "again"));
+	}
+
+	/**
+	 * An error of the loader also releases the waiting callers and removes the
+	 * call
+	 */
+	@Test
+	public void testErrorCleanup() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<String> leader = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new AssertionError("broken");
+				}));
+		awaitInFlight();
+
+		CompletableFuture<String> follower = CompletableFuture
+				.supplyAsync(() -> m_SingleFlight.execute("key", deadlineIn(10_000), x -> "own"));
+		while (m_Registry.counter("coalesced").count() == 0) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+		ExecutionException followerFailure = assertThrows(ExecutionException.class,
+				() -> follower.get(5, TimeUnit.SECONDS));
+		assertTrue(followerFailure.getCause() instanceof AssertionError);
+		assertEquals(0, m_SingleFlight.size());
+	}
+}
@@ -0,0 +1,59 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.data.SlowQuery;
+
+/**
+ * Test for the bounded log of slow Firestore calls
+ */
+public class TestSlowQueryLog {
+
+	/**
+	 * @param collection The collection
+	 * @param millis     The duration
+	 * @return A logged call
+	 */
+	private static SlowQuery entry(String collection, long millis) {
+		return new SlowQuery(new Date(), "range", collection, null, null, Collections.emptyList(), 1, millis);
+	}
+
+	/**
+	 * Only calls above the threshold are slow
+	 */
+	@Test
+	public void testThreshold() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ofMillis(500), 10);
+		assertFalse(log.isSlow(Duration.ofMillis(500).toNanos()));
+		assertTrue(log.isSlow(Duration.ofMillis(501).toNanos()));
+	}
+
+	/**
+	 * The oldest entry is dropped when the log is full, the newest comes first
+	 */
+	@Test
+	public void testBounded() {
+		SlowQueryLog log = new SlowQueryLog(Duration.ofMillis(500), 2);
+		log.add(entry("a", 1));
+		log.add(entry("b", 2));
+		log.add(entry("a", 3));
+
+		List<SlowQuery> entries = log.slowQueries();
+		assertEquals(2, entries.size());
+		assertEquals(3, entries.get(0).getMillis());
+		assertEquals(2, entries.get(1).getMillis());
+		assertEquals(1, log.slowQueries("a").size());
+
+		log.clear();
+		assertTrue(log.slowQueries().isEmpty());
+	}
+}
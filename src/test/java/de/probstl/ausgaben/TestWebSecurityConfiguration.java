@@ -0,0 +1,138 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.time.Duration;
+
+import javax.servlet.Filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import de.probstl.ausgaben.auth.TokenService;
+
+/**
+ * Test for the access to the actuator endpoints
+ */
+@SpringJUnitWebConfig(TestWebSecurityConfiguration.Config.class)
+@TestPropertySource(properties = "expenses.admin.users=eve")
+public class TestWebSecurityConfiguration {
+
+	/**
+	 * The security configuration with stand-ins for the actuator endpoints
+	 */
+	@Configuration
+	@EnableWebMvc
+	@Import(WebSecurityConfiguration.class)
+	static class Config {
+
+		/**
+		 * @return The token service with a fixed secret
+		 */
+		@Bean
+		TokenService tokenService() {
+			return new TokenService("secret-of-the-tests-with-32-bytes", Duration.ofHours(1));
+		}
+
+		/**
+		 * @return The actuator endpoints
+		 */
+		@Bean
+		Actuator actuator() {
+			return new Actuator();
+		}
+	}
+
+	/**
+	 * Stand-ins for the actuator endpoints
+	 */
+	@RestController
+	static class Actuator {
+
+		/**
+		 * @return The health
+		 */
+		@GetMapping("/actuator/health")
+		String health() {
+			return "UP";
+		}
+
+		/**
+		 * @return The metrics
+		 */
+		@GetMapping("/actuator/metrics")
+		String metrics() {
+			return "metrics";
+		}
+	}
+
+	/** The context of the test */
+	@Autowired
+	private WebApplicationContext m_Context;
+
+	/** The web application with the security filters */
+	private MockMvc m_MockMvc;
+
+	/**
+	 * Create the web application with the security filters
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_MockMvc = MockMvcBuilders.webAppContextSetup(m_Context)
+				.addFilters(m_Context.getBean("springSecurityFilterChain", Filter.class)).build();
+	}
+
+	/**
+	 * @param path The path
+	 * @return The status of the call by the user flo, who is no administrator
+	 */
+	private int call(String path) throws Exception {
+		return m_MockMvc.perform(get(path).header(HttpHeaders.AUTHORIZATION, "Basic ZmxvOnRlc3Q=")).andReturn()
+				.getResponse().getStatus();
+	}
+
+	/**
+	 * Every user sees the health, the other endpoints are only for the
+	 * administrators
+	 */
+	@Test
+	public void testActuator() throws Exception {
+		assertEquals(200, call("/actuator/health"));
+		assertEquals(403, call("/actuator/metrics"));
+	}
+
+	/**
+	 * An administrator gets the role, the collection is still the first
+	 * authority that is not a role
+	 */
+	@Test
+	public void testAdminRole() {
+		WebSecurityConfiguration configuration = new WebSecurityConfiguration();
+		ReflectionTestUtils.setField(configuration, "m_Admins", new String[] { "flo" });
+		UserDetails user = configuration.userDetailsService().loadUserByUsername("flo");
+		assertTrue(AuthorityUtils.authorityListToSet(user.getAuthorities()).contains("ROLE_ADMIN"));
+
+		String collection = new FirestoreService().extractCollection(
+				new UsernamePasswordAuthenticationToken(user.getUsername(), null, user.getAuthorities()));
+		assertEquals("ausgaben", collection);
+	}
+}
@@ -0,0 +1,94 @@
+package de.probstl.ausgaben;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for committing concurrent writes together
+ */
+public class TestWriteCoalescer {
+
+	/**
+	 * Writes arriving within the window are committed with one batch
+	 */
+	@Test
+	public void testWindow() throws Exception {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final DistributionSummary summary = new SimpleMeterRegistry().summary("batch");
+		final WriteCoalescer<String> coalescer = new WriteCoalescer<>(x -> {
+			batches.add(x);
+			return CompletableFuture.completedFuture(null);
+		}, 200, 100, summary);
+
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			futures.add(coalescer.submit("write" + i));
+		}
+		for (CompletableFuture<Void> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+
+		assertEquals(1, batches.size());
+		assertEquals(5, batches.get(0).size());
+		assertEquals(1, summary.count());
+		coalescer.shutdown();
+	}
+
+	/**
+	 * A full batch is committed without waiting for the window
+	 */
+	@Test
+	public void testMaxBatchSize() throws Exception {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final WriteCoalescer<String> coalescer = new WriteCoalescer<>(x -> {
+			batches.add(x);
+			return CompletableFuture.completedFuture(null);
+		}, 60_000, 3, new SimpleMeterRegistry().summary("batch"));
+
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			futures.add(coalescer.submit("write" + i));
+		}
+		for (CompletableFuture<Void> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+
+		assertEquals(2, batches.size());
+		assertEquals(3, batches.get(0).size());
+		assertEquals(3, batches.get(1).size());
+		coalescer.shutdown();
+	}
+
+	/**
+	 * A failing write does not fail the other writes of its batch
+	 */
+	@Test
+	public void testFailureIsolated() throws Exception {
+		final WriteCoalescer<String> coalescer = new WriteCoalescer<>(x -> {
+			if (x.contains("bad")) {
+				return CompletableFuture.failedFuture(new IllegalStateException("bad write"));
+			}
+			return CompletableFuture.completedFuture(null);
+		}, 100, 100, new SimpleMeterRegistry().summary("batch"));
+
+		final CompletableFuture<Void> good = coalescer.submit("good");
+		final CompletableFuture<Void> bad = coalescer.submit("bad");
+
+		good.get(5, TimeUnit.SECONDS);
+		ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+		assertEquals("bad write", e.getCause().getMessage());
+		coalescer.shutdown();
+	}
+}
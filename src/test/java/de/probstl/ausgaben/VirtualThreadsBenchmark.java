@@ -0,0 +1,412 @@
+package de.probstl.ausgaben;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firestore.v1.Document;
+import com.google.firestore.v1.Value;
+
+/**
+ * Benchmark of <code>/view</code> and <code>/rest/create</code> on platform
+ * and virtual threads, see <code>docs/virtual-threads.md</code>. This is no
+ * unit test, it is started by hand in two JVMs:
+ * <ul>
+ * <li><code>server &lt;virtual&gt;</code> runs the application with a stubbed
+ * Firestore answering after a fixed latency without blocking a thread, like
+ * the real client does</li>
+ * <li><code>load &lt;view|create&gt; &lt;warm-up s&gt; &lt;s&gt; &lt;C&gt;...</code>
+ * sends the requests with C concurrent connections and prints requests per
+ * second, the 99th percentile and the live threads of the server</li>
+ * </ul>
+ */
+public final class VirtualThreadsBenchmark {
+
+	/** Latency of a range query of the stub */
+	private static final long READ_MILLIS = 50;
+
+	/** Latency of a commit of the stub */
+	private static final long COMMIT_MILLIS = 30;
+
+	/** Number of expenses in the month of the range query */
+	private static final int EXPENSES_PER_MONTH = 60;
+
+	/** Base URL of the application */
+	private static final String BASE_URL = "http://localhost:8080/money";
+
+	/** The password of the user of the default accounts */
+	private static final String BASIC = "Basic "
+			+ Base64.getEncoder().encodeToString("flo:test".getBytes(StandardCharsets.UTF_8));
+
+	/** Body of the created expense */
+	private static final byte[] CREATE_BODY = "{\"shop\":\"bench\",\"message\":\"bench\",\"amount\":\"1,00\",\"city\":\"bench\"}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * The Firestore service of the application with a stubbed Firestore
+	 */
+	public static class StubFirestoreService extends FirestoreService {
+
+		/** The stub */
+		private final Firestore m_Stub = createStub();
+
+		@Override
+		protected Firestore getFirestoreService() {
+			return m_Stub;
+		}
+	}
+
+	/**
+	 * Constructor
+	 */
+	private VirtualThreadsBenchmark() {
+		// only the main method
+	}
+
+	/**
+	 * @param args <code>server &lt;virtual&gt;</code> or
+	 *             <code>load &lt;view|create&gt; &lt;warm-up s&gt; &lt;s&gt; &lt;C&gt;...</code>
+	 */
+	public static void main(String[] args) throws Exception {
+		if ("server".equals(args[0])) {
+			runServer(Boolean.parseBoolean(args[1]));
+		} else {
+			int[] concurrency = Arrays.stream(args, 4, args.length).mapToInt(Integer::parseInt).toArray();
+			runLoad(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), concurrency);
+		}
+	}
+
+	/**
+	 * Start the application with the stubbed Firestore. The limits of the
+	 * application are lifted so that only the threads limit the concurrency.
+	 *
+	 * @param virtual Run the blocking work on virtual threads
+	 */
+	private static void runServer(boolean virtual) {
+		SpringApplication application = new SpringApplication(ExpensesApplication.class);
+		application.addInitializers(context -> {
+			// the configurations of the tests are found by the component scan
+			context.getBeanFactory().registerSingleton("benchmarkExcludeFilter", new TypeExcludeFilter() {
+				@Override
+				public boolean match(MetadataReader reader, MetadataReaderFactory factory) throws IOException {
+					return reader.getResource().getURL().getPath().contains("/test-classes/");
+				}
+			});
+			context.addBeanFactoryPostProcessor((BeanFactoryPostProcessor) factory -> factory
+					.getBeanDefinition("firestoreService").setBeanClassName(StubFirestoreService.class.getName()));
+		});
+		application.run("--expenses.virtual-threads.enabled=" + virtual, "--awsAccessKeyId=bench",
+				"--awsSecretAccessKey=bench", "--expenses.admin.users=flo", "--expenses.report-cache.enabled=false",
+				"--expenses.admission.enabled=false", "--expenses.bulkhead.interactive.max-concurrent=2000",
+				"--expenses.bulkhead.interactive.max-queue=2000", "--expenses.bulkhead.ingestion.max-concurrent=2000",
+				"--expenses.bulkhead.ingestion.max-queue=2000", "--expenses.firestore.max-in-flight=2000",
+				"--expenses.request-log.sample-rate=0", "--logging.level.root=WARN");
+	}
+
+	/**
+	 * @return The stubbed Firestore
+	 */
+	private static Firestore createStub() {
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(x -> {
+			Thread thread = new Thread(x, "firestore-stub");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		final Firestore context = FirestoreOptions.newBuilder().setProjectId("bench")
+				.setCredentials(NoCredentials.getInstance()).build().getService();
+		final List<QueryDocumentSnapshot> documents = new ArrayList<>();
+		for (int i = 0; i < EXPENSES_PER_MONTH; i++) {
+			documents.add(createDocument(context, i));
+		}
+		final QuerySnapshot snapshot = stub(QuerySnapshot.class);
+		when(Boolean.valueOf(snapshot.isEmpty())).thenReturn(Boolean.FALSE);
+		when(Integer.valueOf(snapshot.size())).thenReturn(Integer.valueOf(documents.size()));
+		when(snapshot.getDocuments()).thenReturn(documents);
+
+		final Query query = stub(Query.class);
+		when(query.whereLessThanOrEqualTo(anyString(), any())).thenReturn(query);
+		when(query.orderBy(anyString())).thenReturn(query);
+		when(query.get()).thenAnswer(x -> later(timer, snapshot, READ_MILLIS));
+
+		final DocumentReference document = stub(DocumentReference.class);
+		when(document.getId()).thenAnswer(x -> UUID.randomUUID().toString());
+
+		final CollectionReference collection = stub(CollectionReference.class);
+		when(collection.whereGreaterThanOrEqualTo(anyString(), any())).thenReturn(query);
+		when(collection.document()).thenReturn(document);
+
+		final WriteBatch batch = stub(WriteBatch.class);
+		when(batch.set(any(DocumentReference.class), anyMap())).thenReturn(batch);
+		when(batch.commit()).thenAnswer(x -> later(timer, Collections.<WriteResult>emptyList(), COMMIT_MILLIS));
+
+		final Firestore firestore = stub(Firestore.class);
+		when(firestore.collection(anyString())).thenReturn(collection);
+		when(firestore.batch()).thenReturn(batch);
+		return firestore;
+	}
+
+	/**
+	 * Create a snapshot like the client does when it decodes a query result.
+	 * Snapshots mocked with Mockito would cost more than the application itself.
+	 *
+	 * @param context The offline client the snapshot belongs to
+	 * @param i       Number of the expense
+	 * @return An expense of March 2023
+	 */
+	private static QueryDocumentSnapshot createDocument(Firestore context, int i) {
+		final com.google.protobuf.Timestamp time = com.google.protobuf.Timestamp.newBuilder()
+				.setSeconds(LocalDateTime.of(2023, 3, 1 + i % 28, 12, 0).toEpochSecond(ZoneOffset.UTC)).build();
+		final Document document = Document.newBuilder()
+				.setName("projects/bench/databases/(default)/documents/ausgaben/expense-" + i)
+				.putFields("shop", Value.newBuilder().setStringValue("Shop " + (i % 12)).build())
+				.putFields("city", Value.newBuilder().setStringValue(i % 3 == 0 ? "München" : "Landshut").build())
+				.putFields("message", Value.newBuilder().setStringValue("Einkauf #bench").build())
+				.putFields("payment", Value.newBuilder().setStringValue(i % 2 == 0 ? "cash" : "card").build())
+				.putFields("amount", Value.newBuilder().setDoubleValue(5.0 + i).build())
+				.putFields("timestamp", Value.newBuilder().setTimestampValue(time).build()).setCreateTime(time)
+				.setUpdateTime(time).build();
+
+		try {
+			// package private, the client creates the snapshots itself
+			Method fromDocument = QueryDocumentSnapshot.class.getDeclaredMethod("fromDocument",
+					Class.forName("com.google.cloud.firestore.FirestoreRpcContext"), Timestamp.class, Document.class);
+			fromDocument.setAccessible(true);
+			return (QueryDocumentSnapshot) fromDocument.invoke(null, context, Timestamp.now(), document);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Snapshot not created", e);
+		}
+	}
+
+	/**
+	 * @param <T>  The type of the mock
+	 * @param type The class to mock
+	 * @return A mock that does not record its invocations
+	 */
+	private static <T> T stub(Class<T> type) {
+		return mock(type, withSettings().stubOnly());
+	}
+
+	/**
+	 * @param <T>    The type of the result
+	 * @param timer  Completes the future
+	 * @param value  The result
+	 * @param millis The latency
+	 * @return Future completed with the value after the latency
+	 */
+	private static <T> ApiFuture<T> later(ScheduledExecutorService timer, T value, long millis) {
+		final SettableApiFuture<T> toReturn = SettableApiFuture.create();
+		timer.schedule(() -> toReturn.set(value), millis, TimeUnit.MILLISECONDS);
+		return toReturn;
+	}
+
+	/**
+	 * Warm up with the first concurrency and measure every concurrency
+	 *
+	 * @param endpoint    <code>view</code> or <code>create</code>
+	 * @param warmUp      Duration of the warm-up in seconds
+	 * @param seconds     Duration of each measurement in seconds
+	 * @param concurrency The numbers of concurrent connections
+	 */
+	private static void runLoad(String endpoint, int warmUp, int seconds, int[] concurrency) throws Exception {
+		System.setProperty("http.maxConnections", "2000");
+		final boolean create = "create".equals(endpoint);
+		final URL url = new URL(BASE_URL + (create ? "/rest/create" : "/view/3/2023"));
+
+		final String[] credentials = login(create);
+		measure(url, create, credentials, concurrency[0], warmUp);
+		System.out.println("endpoint C req/s p99-ms errors threads");
+		for (int c : concurrency) {
+			long[] result = measure(url, create, credentials, c, seconds);
+			System.out.println(String.format("%s %d %.0f %d %d %s", endpoint, Integer.valueOf(c),
+					Double.valueOf(result[0] / (double) seconds), Long.valueOf(result[1]), Long.valueOf(result[2]),
+					fetch(new URL(BASE_URL + "/actuator/metrics/jvm.threads.live"))));
+		}
+	}
+
+	/**
+	 * Check the password once like the clients do. Checking it on every request
+	 * would measure BCrypt instead of the threads.
+	 *
+	 * @param create Send a new expense
+	 * @return The name and value of the header sent with the requests, the bearer
+	 *         token for the REST calls and the session for the pages
+	 */
+	private static String[] login(boolean create) throws IOException {
+		if (create) {
+			HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URL + "/rest/token").openConnection();
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Authorization", BASIC);
+			String body = read(connection);
+			int start = body.indexOf(':', body.indexOf("\"token\"")) + 2;
+			return new String[] { "Authorization", "Bearer " + body.substring(start, body.indexOf('"', start)) };
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URL + "/view/currentWeek").openConnection();
+		connection.setInstanceFollowRedirects(false);
+		connection.setRequestProperty("Authorization", BASIC);
+		String cookie = connection.getHeaderField("Set-Cookie");
+		read(connection);
+		return new String[] { "Cookie", cookie.substring(0, cookie.indexOf(';')) };
+	}
+
+	/**
+	 * Send requests with the concurrent connections, each sends its next request
+	 * when the response arrived
+	 *
+	 * @param url         The called URL
+	 * @param create      Send a new expense
+	 * @param credentials Name and value of the header authenticating the user
+	 * @param concurrency Number of concurrent connections
+	 * @param seconds     Duration in seconds
+	 * @return Successful requests, 99th percentile in milliseconds, failed
+	 *         requests
+	 */
+	private static long[] measure(URL url, boolean create, String[] credentials, int concurrency, int seconds) throws Exception {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+		final long[] errors = new long[concurrency];
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < concurrency; i++) {
+			final int worker = i;
+			Thread thread = new Thread(() -> {
+				long[] own = new long[1024];
+				int count = 0;
+				// spread the first requests
+				sleep(ThreadLocalRandom.current().nextInt(100));
+				while (running.get()) {
+					long start = System.nanoTime();
+					if (send(url, create, credentials)) {
+						if (count == own.length) {
+							own = Arrays.copyOf(own, own.length * 2);
+						}
+						own[count++] = System.nanoTime() - start;
+					} else {
+						errors[worker]++;
+					}
+				}
+				latencies.add(Arrays.copyOf(own, count));
+			}, "load-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		final long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+		final long p99 = all.length == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(all[(int) (all.length * 0.99)]);
+		return new long[] { all.length, p99, Arrays.stream(errors).sum() };
+	}
+
+	/**
+	 * @param url    The called URL
+	 * @param create      Send a new expense
+	 * @param credentials Name and value of the header authenticating the user
+	 * @return <code>true</code> if the status is 200
+	 */
+	private static boolean send(URL url, boolean create, String[] credentials) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setRequestProperty(credentials[0], credentials[1]);
+			if (create) {
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(CREATE_BODY);
+				}
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					in.readAllBytes();
+				}
+			}
+			return status == 200;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param url The called URL
+	 * @return The body of the response
+	 */
+	private static String fetch(URL url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestProperty("Authorization", BASIC);
+		String body = read(connection);
+		int value = body.indexOf("\"value\":");
+		return value < 0 ? body : body.substring(value + 8, body.indexOf('}', value));
+	}
+
+	/**
+	 * @param connection The connection
+	 * @return The body of the response
+	 */
+	private static String read(HttpURLConnection connection) throws IOException {
+		try (InputStream in = connection.getInputStream(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+			in.transferTo(out);
+			return out.toString(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @param millis Time to sleep
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package de.probstl.ausgaben.accounting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+
+import javax.servlet.DispatcherType;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the counting of the documents and the daily read budget
+ */
+public class TestDocumentAccounting {
+
+	/**
+	 * The reads of a request are summed up by endpoint and counted for the user
+	 */
+	@Test
+	public void testRequest() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		DocumentAccounting accounting = new DocumentAccounting(registry, 0);
+
+		accounting.begin("flo", "/view/{month}/{year}");
+		accounting.read("ausgaben", 30);
+		accounting.read("ausgaben", 1);
+		accounting.written("ausgaben", 2);
+		accounting.finish();
+
+		assertEquals(31, accounting.getReadsToday("flo"));
+		assertEquals(31.0, registry.summary("request.documents", "type", "read", "endpoint", "/view/{month}/{year}")
+				.totalAmount());
+		assertEquals(2.0, registry.counter("firestore.documents", "type", "write", "collection", "ausgaben",
+				"endpoint", "/view/{month}/{year}").count());
+
+		// nothing is charged to a user outside of a request
+		accounting.read("ausgaben", 5);
+		assertEquals(31, accounting.getReadsToday("flo"));
+		assertEquals(5.0, registry.counter("firestore.documents", "type", "read", "collection", "ausgaben",
+				"endpoint", DocumentAccounting.BACKGROUND).count());
+	}
+
+	/**
+	 * Only the user who used up the budget is limited, background work never
+	 */
+	@Test
+	public void testBudget() {
+		DocumentAccounting accounting = new DocumentAccounting(new SimpleMeterRegistry(), 10);
+
+		accounting.begin("flo", "/home");
+		accounting.read("ausgaben", 9);
+		assertFalse(accounting.isBudgetExhausted());
+		accounting.read("ausgaben", 1);
+		assertTrue(accounting.isBudgetExhausted());
+		accounting.finish();
+
+		assertFalse(accounting.isBudgetExhausted());
+		accounting.begin("other", "/home");
+		assertFalse(accounting.isBudgetExhausted());
+		accounting.finish();
+	}
+
+	/**
+	 * The reads of a user start again on the next day
+	 */
+	@Test
+	public void testDayRollover() {
+		DocumentAccounting accounting = new DocumentAccounting(new SimpleMeterRegistry(), 10);
+		LocalDate today = LocalDate.of(2024, 3, 31);
+		LocalDate tomorrow = today.plusDays(1);
+
+		accounting.begin("flo", "/home");
+		accounting.read("ausgaben", 10, today);
+		assertTrue(accounting.isBudgetExhausted(today));
+		assertFalse(accounting.isBudgetExhausted(tomorrow));
+
+		accounting.read("ausgaben", 3, tomorrow);
+		assertEquals(3, accounting.getReadsToday("flo", tomorrow));
+		assertEquals(0, accounting.getReadsToday("flo", today));
+		accounting.finish();
+	}
+
+	/**
+	 * A request with an asynchronous result is recorded once with the documents
+	 * counted before and after the result
+	 */
+	@Test
+	public void testAsyncRequest() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		DocumentAccounting accounting = new DocumentAccounting(registry, 0);
+		DocumentAccountingInterceptor interceptor = new DocumentAccountingInterceptor();
+		ReflectionTestUtils.setField(interceptor, "m_Accounting", accounting);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/create");
+		request.setUserPrincipal(() -> "flo");
+		request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/rest/create");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		interceptor.preHandle(request, response, null);
+		DocumentAccounting.RequestUsage usage = accounting.current();
+		interceptor.afterConcurrentHandlingStarted(request, response, null);
+		assertNull(accounting.current());
+
+		// the write completes on another thread
+		accounting.written(usage, "ausgaben", 2);
+
+		request.setDispatcherType(DispatcherType.ASYNC);
+		interceptor.preHandle(request, response, null);
+		accounting.read("ausgaben", 1);
+		interceptor.afterCompletion(request, response, null, null);
+
+		DistributionSummary writes = registry.summary("request.documents", "type", "write", "endpoint",
+				"/rest/create");
+		assertEquals(1, writes.count());
+		assertEquals(2.0, writes.totalAmount());
+		assertEquals(1.0, registry.summary("request.documents", "type", "read", "endpoint", "/rest/create")
+				.totalAmount());
+		assertEquals(1, accounting.getReadsToday("flo"));
+	}
+}
@@ -0,0 +1,74 @@
+package de.probstl.ausgaben.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the adaptive concurrency limit
+ */
+public class TestAdaptiveLimiter {
+
+	/** Latency target of the tests */
+	private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Requests above the limit are rejected until one finishes
+	 */
+	@Test
+	public void testLimit() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, TARGET, 0.5);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+
+		limiter.release(TARGET / 2, true, System.nanoTime());
+		assertEquals(1, limiter.getInFlight());
+		assertTrue(limiter.tryAcquire());
+	}
+
+	/**
+	 * Fast requests raise the limit, slow ones lower it at most once per target
+	 */
+	@Test
+	public void testAdapt() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 10, TARGET, 0.5);
+		long now = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limiter.tryAcquire());
+			limiter.release(TARGET / 2, true, now);
+		}
+		assertEquals(5, limiter.getLimit());
+
+		limiter.tryAcquire();
+		limiter.release(TARGET * 2, true, now);
+		assertEquals(2, limiter.getLimit());
+
+		limiter.tryAcquire();
+		limiter.release(TARGET * 2, false, now);
+		assertEquals(2, limiter.getLimit());
+
+		limiter.tryAcquire();
+		limiter.release(TARGET * 2, false, now + TARGET);
+		assertEquals(1, limiter.getLimit());
+	}
+
+	/**
+	 * A cancelled request frees its slot without changing the limit
+	 */
+	@Test
+	public void testCancel() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, TARGET, 0.5);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+
+		limiter.cancel();
+		assertEquals(1, limiter.getInFlight());
+		assertEquals(2, limiter.getLimit());
+		assertTrue(limiter.tryAcquire());
+	}
+}
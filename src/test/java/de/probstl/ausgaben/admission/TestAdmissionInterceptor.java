@@ -0,0 +1,133 @@
+package de.probstl.ausgaben.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the order of the rate and the concurrency limit
+ */
+public class TestAdmissionInterceptor {
+
+	/** The interceptor under test */
+	private AdmissionInterceptor m_Interceptor;
+
+	/** The registry of the admission metrics */
+	private SimpleMeterRegistry m_Registry;
+
+	/**
+	 * Create the interceptor with a concurrency limit of 1 and a burst of 2
+	 * requests per user
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_Registry = new SimpleMeterRegistry();
+		m_Interceptor = new AdmissionInterceptor();
+		ReflectionTestUtils.setField(m_Interceptor, "m_Enabled", Boolean.TRUE);
+		ReflectionTestUtils.setField(m_Interceptor, "m_UserBurst", Integer.valueOf(2));
+		ReflectionTestUtils.setField(m_Interceptor, "m_UserRate", Double.valueOf(0.001));
+		ReflectionTestUtils.setField(m_Interceptor, "m_InitialLimit", Integer.valueOf(1));
+		ReflectionTestUtils.setField(m_Interceptor, "m_MinLimit", Integer.valueOf(1));
+		ReflectionTestUtils.setField(m_Interceptor, "m_MaxLimit", Integer.valueOf(1));
+		ReflectionTestUtils.setField(m_Interceptor, "m_LatencyTarget", Duration.ofSeconds(1));
+		ReflectionTestUtils.setField(m_Interceptor, "m_Excluded", Arrays.asList("/export/**", "/rest/batch"));
+		ReflectionTestUtils.setField(m_Interceptor, "m_MeterRegistry", m_Registry);
+		m_Interceptor.init();
+	}
+
+	/**
+	 * @param path The path within the application
+	 * @return A request of the user flo
+	 */
+	private static MockHttpServletRequest request(String path) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/money" + path);
+		request.setContextPath("/money");
+		request.setUserPrincipal(() -> "flo");
+		return request;
+	}
+
+	/**
+	 * @param reason The reason of the rejection
+	 * @return Number of rejected requests
+	 */
+	private double rejected(String reason) {
+		return m_Registry.counter("admission.rejected", "reason", reason).count();
+	}
+
+	/**
+	 * A request rejected by the concurrency limit does not use a token of the
+	 * user
+	 */
+	@Test
+	public void testLimitBeforeRate() throws Exception {
+		MockHttpServletRequest first = request("/rest/query");
+		MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+		assertTrue(m_Interceptor.preHandle(first, firstResponse, null));
+
+		for (int i = 0; i < 5; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			assertFalse(m_Interceptor.preHandle(request("/rest/query"), response, null));
+			assertEquals(429, response.getStatus());
+		}
+		assertEquals(5, rejected("concurrency"));
+
+		m_Interceptor.afterCompletion(first, firstResponse, null, null);
+		assertTrue(m_Interceptor.preHandle(request("/rest/query"), new MockHttpServletResponse(), null));
+		assertEquals(0, rejected("user"));
+	}
+
+	/**
+	 * A request rejected by the rate limit gives its slot of the concurrency
+	 * limit back
+	 */
+	@Test
+	public void testRateRefundsLimit() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			MockHttpServletRequest request = request("/rest/query");
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			assertTrue(m_Interceptor.preHandle(request, response, null));
+			m_Interceptor.afterCompletion(request, response, null, null);
+		}
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertFalse(m_Interceptor.preHandle(request("/rest/query"), response, null));
+		assertEquals(429, response.getStatus());
+		assertEquals(1, rejected("user"));
+
+		MockHttpServletRequest other = request("/rest/query");
+		other.setUserPrincipal(() -> "eve");
+		assertTrue(m_Interceptor.preHandle(other, new MockHttpServletResponse(), null));
+	}
+
+	/**
+	 * Exports and batches are not counted by the concurrency limit and their
+	 * duration does not change it
+	 */
+	@Test
+	public void testExcluded() throws Exception {
+		MockHttpServletRequest export = request("/export/run");
+		MockHttpServletResponse exportResponse = new MockHttpServletResponse();
+		assertTrue(m_Interceptor.preHandle(export, exportResponse, null));
+		assertTrue(m_Interceptor.preHandle(request("/rest/batch"), new MockHttpServletResponse(), null));
+
+		MockHttpServletRequest query = request("/rest/query");
+		query.setUserPrincipal(() -> "eve");
+		assertTrue(m_Interceptor.preHandle(query, new MockHttpServletResponse(), null));
+		assertEquals(0, rejected("concurrency"));
+
+		m_Interceptor.afterCompletion(export, exportResponse, null, null);
+		assertFalse(m_Interceptor.preHandle(request("/rest/query"), new MockHttpServletResponse(), null));
+		assertEquals(1, rejected("concurrency"));
+	}
+}
@@ -0,0 +1,44 @@
+package de.probstl.ausgaben.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the rate limit of a user
+ */
+public class TestTokenBucket {
+
+	/**
+	 * The burst is admitted, further requests wait for the refill
+	 */
+	@Test
+	public void testBurstAndRefill() {
+		TokenBucket bucket = new TokenBucket(3, 2, 0);
+		assertTrue(bucket.tryAcquire(0));
+		assertTrue(bucket.tryAcquire(0));
+		assertTrue(bucket.tryAcquire(0));
+		assertFalse(bucket.tryAcquire(0));
+		assertEquals(1, bucket.secondsUntilNext());
+
+		long halfSecond = TimeUnit.MILLISECONDS.toNanos(500);
+		assertTrue(bucket.tryAcquire(halfSecond));
+		assertFalse(bucket.tryAcquire(halfSecond));
+	}
+
+	/**
+	 * The refill does not exceed the capacity
+	 */
+	@Test
+	public void testCapacity() {
+		TokenBucket bucket = new TokenBucket(2, 10, 0);
+		long later = TimeUnit.MINUTES.toNanos(1);
+		assertTrue(bucket.tryAcquire(later));
+		assertTrue(bucket.tryAcquire(later));
+		assertFalse(bucket.tryAcquire(later));
+	}
+}
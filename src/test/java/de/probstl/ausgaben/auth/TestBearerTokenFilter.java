@@ -0,0 +1,194 @@
+package de.probstl.ausgaben.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import javax.servlet.Filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import de.probstl.ausgaben.WebSecurityConfiguration;
+
+/**
+ * Test for the bearer token in the security filter chain of the REST calls
+ */
+@SpringJUnitWebConfig(TestBearerTokenFilter.Config.class)
+public class TestBearerTokenFilter {
+
+	/**
+	 * The security configuration with a REST call returning the user
+	 */
+	@Configuration
+	@EnableWebMvc
+	@Import(WebSecurityConfiguration.class)
+	static class Config {
+
+		/**
+		 * @return The token service with a fixed secret
+		 */
+		@Bean
+		TokenService tokenService() {
+			return new TokenService("secret-of-the-tests-with-32-bytes", Duration.ofHours(1));
+		}
+
+		/**
+		 * @return The REST call
+		 */
+		@Bean
+		WhoAmI whoAmI() {
+			return new WhoAmI();
+		}
+	}
+
+	/**
+	 * REST call returning the authenticated user
+	 */
+	@RestController
+	static class WhoAmI {
+
+		/**
+		 * @param principal The authenticated user
+		 * @return The name of the user
+		 */
+		@GetMapping("/rest/whoami")
+		String whoAmI(Principal principal) {
+			return principal.getName();
+		}
+
+		/**
+		 * @param authentication The authenticated administrator
+		 * @return The authorities in their order
+		 */
+		@GetMapping("/admin/authorities")
+		String authorities(Authentication authentication) {
+			return authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority)
+					.collect(Collectors.joining(","));
+		}
+	}
+
+	/** The context of the test */
+	@Autowired
+	private WebApplicationContext m_Context;
+
+	/** Issues the tokens of the test */
+	@Autowired
+	private TokenService m_TokenService;
+
+	/** The web application with the security filters */
+	private MockMvc m_MockMvc;
+
+	/**
+	 * Create the web application with the security filters
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_MockMvc = MockMvcBuilders.webAppContextSetup(m_Context)
+				.addFilters(m_Context.getBean("springSecurityFilterChain", Filter.class)).build();
+	}
+
+	/**
+	 * Call the REST call with a token
+	 *
+	 * @param token The token
+	 * @return The result
+	 */
+	private MvcResult call(String token) throws Exception {
+		return m_MockMvc.perform(get("/rest/whoami").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+				.andReturn();
+	}
+
+	/**
+	 * A valid token authenticates the user without creating a session
+	 */
+	@Test
+	public void testValid() throws Exception {
+		MvcResult result = call(m_TokenService.issue("flo", Arrays.asList("ausgaben")));
+		assertEquals(200, result.getResponse().getStatus());
+		assertEquals("flo", result.getResponse().getContentAsString());
+		assertNull(result.getRequest().getSession(false));
+	}
+
+	/**
+	 * An expired token is rejected
+	 */
+	@Test
+	public void testExpired() throws Exception {
+		String token = m_TokenService.issue("flo", Arrays.asList("ausgaben"),
+				Instant.now().minus(Duration.ofHours(2)));
+		MvcResult result = call(token);
+		assertEquals(401, result.getResponse().getStatus());
+		assertNull(result.getRequest().getSession(false));
+	}
+
+	/**
+	 * A token with a changed payload is rejected
+	 */
+	@Test
+	public void testTampered() throws Exception {
+		String token = m_TokenService.issue("flo", Arrays.asList("ausgaben"));
+		String other = m_TokenService.issue("eve", Arrays.asList("ausgaben"));
+		MvcResult result = call(other.substring(0, other.indexOf('.')) + token.substring(token.indexOf('.')));
+		assertEquals(401, result.getResponse().getStatus());
+	}
+
+	/**
+	 * The password also works for REST calls and creates no session either
+	 */
+	@Test
+	public void testBasicStateless() throws Exception {
+		MvcResult result = m_MockMvc
+				.perform(get("/rest/whoami").header(HttpHeaders.AUTHORIZATION, "Basic ZmxvOnRlc3Q=")).andReturn();
+		assertEquals(200, result.getResponse().getStatus());
+		assertNull(result.getRequest().getSession(false));
+	}
+
+	/**
+	 * The authorities are those of the current account, a revoked administrator
+	 * is rejected although the token still carries the role
+	 */
+	@Test
+	public void testRevokedAdmin() throws Exception {
+		UserDetailsManager users = (UserDetailsManager) m_Context.getBean(UserDetailsService.class);
+		users.createUser(User.withUsername("eve").password("{noop}test").authorities("ausgaben", "ROLE_ADMIN").build());
+		try {
+			String token = m_TokenService.issue("eve", Arrays.asList("ausgaben", "ROLE_ADMIN"));
+			MvcResult result = m_MockMvc
+					.perform(get("/admin/authorities").header(HttpHeaders.AUTHORIZATION, "Bearer " + token)).andReturn();
+			assertEquals(200, result.getResponse().getStatus());
+			assertEquals("ausgaben,ROLE_ADMIN", result.getResponse().getContentAsString());
+
+			users.updateUser(User.withUsername("eve").password("{noop}test").authorities("ausgaben").build());
+			result = m_MockMvc.perform(get("/admin/authorities").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+					.andReturn();
+			assertEquals(403, result.getResponse().getStatus());
+		} finally {
+			users.deleteUser("eve");
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package de.probstl.ausgaben.auth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for issuing and verifying the bearer tokens
+ */
+public class TestTokenService {
+
+	/** Time of issue */
+	private static final Instant NOW = Instant.parse("2023-03-01T10:00:00Z");
+
+	/** The service under test */
+	private final TokenService m_Service = new TokenService("secret-of-the-tests-with-32-bytes", Duration.ofHours(1));
+
+	/**
+	 * A valid token returns user and authorities in the issued order
+	 */
+	@Test
+	public void testRoundTrip() {
+		String token = m_Service.issue("flo", Arrays.asList("enabled", "ausgaben"), NOW);
+
+		TokenService.Token verified = m_Service.verify(token, NOW.plusSeconds(60));
+		assertNotNull(verified);
+		assertEquals("flo", verified.getUser());
+		assertEquals(Arrays.asList("enabled", "ausgaben"), verified.getAuthorities());
+		assertEquals(NOW.plus(Duration.ofHours(1)), verified.getExpiresAt());
+	}
+
+	/**
+	 * An expired token is rejected
+	 */
+	@Test
+	public void testExpired() {
+		String token = m_Service.issue("flo", Arrays.asList("ausgaben"), NOW);
+		assertNull(m_Service.verify(token, NOW.plus(Duration.ofHours(1))));
+	}
+
+	/**
+	 * A changed payload or a token of another secret is rejected
+	 */
+	@Test
+	public void testTampered() {
+		String token = m_Service.issue("flo", Arrays.asList("ausgaben"), NOW);
+		String other = m_Service.issue("eve", Arrays.asList("ausgaben"), NOW);
+		String forged = other.substring(0, other.indexOf('.')) + token.substring(token.indexOf('.'));
+		assertNull(m_Service.verify(forged, NOW));
+
+		TokenService otherSecret = new TokenService("other-secret-of-the-tests-32-bytes", Duration.ofHours(1));
+		assertNull(otherSecret.verify(token, NOW));
+	}
+
+	/**
+	 * Malformed tokens are rejected without exception
+	 */
+	@Test
+	public void testMalformed() {
+		assertNull(m_Service.verify("", NOW));
+		assertNull(m_Service.verify("abc", NOW));
+		assertNull(m_Service.verify("a.b.c", NOW));
+		assertNull(m_Service.verify("!!!.???", NOW));
+	}
+
+	/**
+	 * A configured secret shorter than the signature is refused at startup
+	 */
+	@Test
+	public void testShortSecret() {
+		assertThrows(IllegalArgumentException.class, () -> new TokenService("secret", Duration.ofHours(1)));
+	}
+}
@@ -0,0 +1,58 @@
+package de.probstl.ausgaben.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the AWS Signature Version 4
+ */
+public class TestAwsSigner {
+
+    /** Secret of the example in the AWS documentation */
+    private static final String SECRET = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+
+    /**
+     * The signing key matches the example of the AWS documentation
+     */
+    @Test
+    public void testSigningKey() {
+        AwsSigner signer = new AwsSigner("AKIDEXAMPLE", SECRET, "us-east-1", "iam");
+        assertEquals("f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+                Hex.encodeHexString(signer.signingKey("20120215")));
+    }
+
+    /**
+     * The signing key is derived once per day
+     */
+    @Test
+    public void testKeyCachedPerDay() {
+        AwsSigner signer = new AwsSigner("AKIDEXAMPLE", SECRET, "us-east-1", "iam");
+        byte[] first = signer.signingKey("20120215");
+        assertSame(first, signer.signingKey("20120215"));
+
+        byte[] nextDay = signer.signingKey("20120216");
+        assertNotEquals(Hex.encodeHexString(first), Hex.encodeHexString(nextDay));
+    }
+
+    /**
+     * The headers contain the credential scope and the request time
+     */
+    @Test
+    public void testSignPost() {
+        AwsSigner signer = new AwsSigner("AKIDEXAMPLE", SECRET, "eu-central-1", "execute-api");
+        AwsSigner.Signature signature = signer.signPost("/prod/expenses", "example.com", "{}",
+                Instant.parse("2023-03-01T10:15:30Z"));
+
+        assertEquals("20230301T101530Z", signature.getAmzDate());
+        assertTrue(signature.getAuthorization().startsWith(
+                "AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20230301/eu-central-1/execute-api/aws4_request, "
+                        + "SignedHeaders=content-type;host;x-amz-date, Signature="));
+    }
+}
@@ -0,0 +1,300 @@
+package de.probstl.ausgaben.aws;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import de.probstl.ausgaben.ExportOutbox;
+import de.probstl.ausgaben.data.Expense;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the backoff of the export and for sending the outbox to a local
+ * HTTP server
+ */
+public class TestExportDispatcher {
+
+    /** Delay after the first failure */
+    private static final Duration BASE = Duration.ofSeconds(30);
+
+    /** Upper limit of the delay */
+    private static final Duration MAX = Duration.ofHours(1);
+
+    /** Number of attempts before an expense is moved to the dead letters */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** The local server standing in for AWS */
+    private HttpServer server;
+
+    /** Status code of the server's responses */
+    private volatile int status;
+
+    /** Body of the server's responses */
+    private volatile String response;
+
+    /** The bodies received by the server */
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    /** The mocked outbox */
+    private ExportOutbox outbox;
+
+    /** The registry of the export metrics */
+    private SimpleMeterRegistry registry;
+
+    /** The client sending to the local server */
+    private AwsService awsService;
+
+    /** The dispatcher under test */
+    private ExportDispatcher dispatcher;
+
+    /**
+     * Start the local server and create the dispatcher sending to it
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        status = 200;
+        response = "{}";
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/batch", exchange -> {
+            received.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        awsService = new AwsService();
+        ReflectionTestUtils.setField(awsService, "hostname", "localhost");
+        ReflectionTestUtils.setField(awsService, "endpoint", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(awsService, "region", "eu-central-1");
+        ReflectionTestUtils.setField(awsService, "service", "execute-api");
+        ReflectionTestUtils.setField(awsService, "secretAccessKey", "secret");
+        ReflectionTestUtils.setField(awsService, "accessKeyId", "key");
+        ReflectionTestUtils.setField(awsService, "canonicalUri", "/single");
+        ReflectionTestUtils.setField(awsService, "batchUri", "/batch");
+        ReflectionTestUtils.setField(awsService, "jsonMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(awsService, "webClientBuilder", WebClient.builder());
+        ReflectionTestUtils.setField(awsService, "meterRegistry", registry);
+        awsService.init();
+
+        outbox = mock(ExportOutbox.class);
+        when(outbox.delivered(anyCollection())).thenReturn(true);
+        when(outbox.retry(anyCollection(), any(), anyString())).thenReturn(true);
+        when(outbox.deadLetter(anyCollection(), anyString())).thenReturn(true);
+
+        dispatcher = new ExportDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "outbox", outbox);
+        ReflectionTestUtils.setField(dispatcher, "awsService", awsService);
+        ReflectionTestUtils.setField(dispatcher, "meterRegistry", registry);
+        ReflectionTestUtils.setField(dispatcher, "users", Collections.singleton("flo"));
+        ReflectionTestUtils.setField(dispatcher, "backoff", BASE);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoff", MAX);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", Integer.valueOf(MAX_ATTEMPTS));
+        dispatcher.init();
+    }
+
+    /**
+     * Stop the local server
+     */
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * @param count    Number of entries
+     * @param attempts Number of failed attempts of every entry
+     * @return Entries waiting for the export
+     */
+    private static List<ExportOutbox.Entry> entries(int count, int attempts) {
+        List<ExportOutbox.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Expense expense = new Expense("expense-" + i);
+            expense.setShop("Bakery");
+            expense.setMessage("Bread");
+            expense.setAmount("2,50");
+            expense.setAmountDouble(Double.valueOf(2.5));
+            expense.setTimestamp(new Date());
+            entries.add(new ExportOutbox.Entry("ausgaben", expense, attempts));
+        }
+        return entries;
+    }
+
+    /**
+     * @param name The name of the counter
+     * @return The count
+     */
+    private double count(String name) {
+        return registry.get(name).counter().count();
+    }
+
+    /**
+     * The delay doubles with every attempt
+     */
+    @Test
+    public void testExponential() {
+        assertEquals(Duration.ofSeconds(30), ExportDispatcher.delay(1, BASE, MAX, 0.5));
+        assertEquals(Duration.ofSeconds(60), ExportDispatcher.delay(2, BASE, MAX, 0.5));
+        assertEquals(Duration.ofSeconds(240), ExportDispatcher.delay(4, BASE, MAX, 0.5));
+    }
+
+    /**
+     * The delay does not exceed the upper limit, also not for many attempts
+     */
+    @Test
+    public void testLimited() {
+        assertEquals(MAX, ExportDispatcher.delay(8, BASE, MAX, 0.5));
+        assertEquals(MAX, ExportDispatcher.delay(100, BASE, MAX, 0.5));
+    }
+
+    /**
+     * The jitter spreads the delay by 20%
+     */
+    @Test
+    public void testJitter() {
+        assertEquals(Duration.ofSeconds(24), ExportDispatcher.delay(1, BASE, MAX, 0));
+        assertEquals(Duration.ofSeconds(36), ExportDispatcher.delay(1, BASE, MAX, 1));
+    }
+
+    /**
+     * A sent batch is removed from the outbox
+     */
+    @Test
+    public void testDelivered() {
+        List<ExportOutbox.Entry> entries = entries(2, 0);
+        when(outbox.findDue(anyInt())).thenReturn(entries);
+
+        dispatcher.dispatch();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"PutRequest\""));
+        assertTrue(received.get(0).contains("expense-1"));
+        verify(outbox).delivered(entries);
+        verify(outbox, never()).retry(anyCollection(), any(), anyString());
+        assertEquals(2, count("aws.export.delivered"));
+    }
+
+    /**
+     * A failed batch is tried again after the backoff, also if AWS did not
+     * process all items
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRetry() {
+        List<ExportOutbox.Entry> entries = entries(2, 1);
+        when(outbox.findDue(anyInt())).thenReturn(entries);
+        status = 500;
+
+        final Instant before = Instant.now();
+        dispatcher.dispatch();
+
+        ArgumentCaptor<Function<ExportOutbox.Entry, Date>> nextAttempt = ArgumentCaptor.forClass(Function.class);
+        verify(outbox).retry(eq(entries), nextAttempt.capture(), anyString());
+        final Duration delay = Duration.between(before, nextAttempt.getValue().apply(entries.get(0)).toInstant());
+        // second failure, twice the base delay with a jitter of 20%
+        assertTrue(delay.compareTo(Duration.ofSeconds(48)) >= 0, "delay " + delay);
+        assertTrue(delay.compareTo(Duration.ofSeconds(73)) <= 0, "delay " + delay);
+        verify(outbox, never()).delivered(anyCollection());
+        assertEquals(2, count("aws.export.retried"));
+
+        status = 200;
+        response = "{\"UnprocessedItems\":{\"expenses\":[{\"PutRequest\":{}}]}}";
+        dispatcher.dispatch();
+        verify(outbox, times(2)).retry(eq(entries), any(), anyString());
+        verify(outbox, never()).delivered(anyCollection());
+    }
+
+    /**
+     * An expense failing too often is moved to the dead letters
+     */
+    @Test
+    public void testDeadLetter() {
+        List<ExportOutbox.Entry> entries = entries(1, MAX_ATTEMPTS - 1);
+        when(outbox.findDue(anyInt())).thenReturn(entries);
+        status = 503;
+
+        dispatcher.dispatch();
+
+        verify(outbox).deadLetter(eq(entries), anyString());
+        verify(outbox, never()).retry(anyCollection(), any(), anyString());
+        assertEquals(1, count("aws.export.dead"));
+    }
+
+    /**
+     * If the next attempt cannot be recorded the entries are still due, the
+     * round stops instead of sending them again at once
+     */
+    @Test
+    public void testStopWhenNotRecorded() {
+        when(outbox.findDue(anyInt())).thenReturn(entries(ExportDispatcher.BATCH_SIZE, 0));
+        when(outbox.retry(anyCollection(), any(), anyString())).thenReturn(false);
+        status = 500;
+
+        dispatcher.dispatch();
+
+        assertEquals(1, received.size());
+    }
+
+    /**
+     * Full batches are sent until the outbox has no more due entries
+     */
+    @Test
+    public void testRounds() {
+        when(outbox.findDue(anyInt())).thenReturn(entries(ExportDispatcher.BATCH_SIZE, 0),
+                entries(ExportDispatcher.BATCH_SIZE, 0), entries(3, 0));
+
+        dispatcher.dispatch();
+
+        assertEquals(3, received.size());
+        verify(outbox, times(3)).delivered(anyCollection());
+    }
+
+    /**
+     * Exporting without the URL of the batches fails at startup
+     */
+    @Test
+    public void testBatchUriRequired() {
+        ReflectionTestUtils.setField(awsService, "batchUri", "");
+        assertThrows(IllegalStateException.class, dispatcher::init);
+
+        ReflectionTestUtils.setField(dispatcher, "users", Collections.<String>emptySet());
+        dispatcher.init();
+    }
+}
@@ -0,0 +1,114 @@
+package de.probstl.ausgaben.bulkhead;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the limits of a bulkhead
+ */
+public class TestBulkhead {
+
+	/**
+	 * Without queue a full bulkhead rejects at once
+	 */
+	@Test
+	public void testRejectWithoutQueue() {
+		Bulkhead bulkhead = new Bulkhead(2, 0, Duration.ofSeconds(1));
+		assertTrue(bulkhead.tryEnter());
+		assertTrue(bulkhead.tryEnter());
+		assertFalse(bulkhead.tryEnter());
+		assertEquals(2, bulkhead.getActive());
+
+		bulkhead.exit();
+		assertTrue(bulkhead.tryEnter());
+	}
+
+	/**
+	 * A waiting call gets the permit of a finished one, a call finding the
+	 * queue full is rejected
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testQueue() throws InterruptedException {
+		Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(10));
+		assertTrue(bulkhead.tryEnter());
+
+		AtomicBoolean entered = new AtomicBoolean();
+		CountDownLatch done = new CountDownLatch(1);
+		Thread waiting = new Thread(() -> {
+			entered.set(bulkhead.tryEnter());
+			done.countDown();
+		});
+		waiting.start();
+		while (bulkhead.getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+
+		assertFalse(bulkhead.tryEnter());
+
+		bulkhead.exit();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(entered.get());
+		assertEquals(0, bulkhead.getWaiting());
+	}
+
+	/**
+	 * A released permit goes to the waiting call, not to a call arriving at the
+	 * same time
+	 *
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	@Test
+	public void testFair() throws InterruptedException {
+		Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(10));
+		assertTrue(bulkhead.tryEnter());
+
+		CountDownLatch done = new CountDownLatch(1);
+		Thread waiting = new Thread(() -> {
+			bulkhead.tryEnter();
+			done.countDown();
+		});
+		waiting.start();
+		while (bulkhead.getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(50); // parked in the semaphore
+
+		bulkhead.exit();
+		assertFalse(bulkhead.tryEnter());
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Uploads and edits of many expenses are bulk work, a single new expense is
+	 * not
+	 */
+	@Test
+	public void testClassify() {
+		assertEquals(WorkloadClass.BULK, BulkheadInterceptor.classify("/rest/batch"));
+		assertEquals(WorkloadClass.BULK, BulkheadInterceptor.classify("/rest/bulk"));
+		assertEquals(WorkloadClass.INGESTION, BulkheadInterceptor.classify("/rest/create"));
+		assertEquals(WorkloadClass.EXPORT, BulkheadInterceptor.classify("/export/03/2024"));
+		assertEquals(WorkloadClass.INTERACTIVE, BulkheadInterceptor.classify("/rest/query"));
+	}
+
+	/**
+	 * The wait is limited
+	 */
+	@Test
+	public void testTimeout() {
+		Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofMillis(10));
+		assertTrue(bulkhead.tryEnter());
+		assertFalse(bulkhead.tryEnter());
+		assertEquals(0, bulkhead.getWaiting());
+	}
+}
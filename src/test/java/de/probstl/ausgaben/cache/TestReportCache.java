@@ -0,0 +1,143 @@
+package de.probstl.ausgaben.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.FirestoreService;
+import de.probstl.ausgaben.accounting.DocumentAccounting;
+import de.probstl.ausgaben.data.Expense;
+import de.probstl.ausgaben.data.ExpensesRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the expiry, the invalidation and the prefetch metrics of the report
+ * cache
+ */
+public class TestReportCache {
+
+	/** Entries older than this are loaded again */
+	private static final Duration TTL = Duration.ofMinutes(5);
+
+	/** The month of the tests */
+	private static final ExpensesRequest MARCH = ExpensesRequest.forMonth("3", "2024");
+
+	/** Start of the tests */
+	private static final Instant NOW = Instant.parse("2024-03-15T12:00:00Z");
+
+	/** The mocked Firestore service */
+	private FirestoreService m_FirestoreService;
+
+	/** The registry of the cache metrics */
+	private SimpleMeterRegistry m_Registry;
+
+	/** The cache under test */
+	private ReportCache m_Cache;
+
+	/**
+	 * Create the cache reading from a mocked Firestore service
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_FirestoreService = mock(FirestoreService.class);
+		when(m_FirestoreService.findBetween(any(), anyString())).thenReturn(Arrays.asList(new Expense("a")));
+		m_Registry = new SimpleMeterRegistry();
+
+		m_Cache = new ReportCache();
+		ReflectionTestUtils.setField(m_Cache, "m_FirestoreService", m_FirestoreService);
+		ReflectionTestUtils.setField(m_Cache, "m_MeterRegistry", m_Registry);
+		ReflectionTestUtils.setField(m_Cache, "m_Accounting", mock(DocumentAccounting.class));
+		ReflectionTestUtils.setField(m_Cache, "m_Enabled", Boolean.TRUE);
+		ReflectionTestUtils.setField(m_Cache, "m_Ttl", TTL);
+		ReflectionTestUtils.setField(m_Cache, "m_MaxSize", Integer.valueOf(64));
+		m_Cache.init();
+	}
+
+	/**
+	 * @param name The name of the counter
+	 * @return The count
+	 */
+	private double count(String name) {
+		return m_Registry.get(name).counter().count();
+	}
+
+	/**
+	 * An entry is used until it expires
+	 */
+	@Test
+	public void testTtl() {
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "ausgaben", NOW.plus(TTL));
+		verify(m_FirestoreService, times(1)).findBetween(any(), anyString());
+
+		m_Cache.get(MARCH, "ausgaben", NOW.plus(TTL).plusSeconds(1));
+		verify(m_FirestoreService, times(2)).findBetween(any(), anyString());
+		assertEquals(1, count("report.cache.hit"));
+		assertEquals(2, count("report.cache.miss"));
+	}
+
+	/**
+	 * A modified expense drops the entries of its collection only
+	 */
+	@Test
+	public void testInvalidation() {
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "other", NOW);
+
+		m_Cache.onExpenseChanged(new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, "ausgaben", "a", null));
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "other", NOW);
+
+		verify(m_FirestoreService, times(2)).findBetween(MARCH, "ausgaben");
+		verify(m_FirestoreService, times(1)).findBetween(MARCH, "other");
+	}
+
+	/**
+	 * A prefetched entry counts as used when it is read and as wasted when it is
+	 * dropped without being read
+	 */
+	@Test
+	public void testPrefetchUsedAndWasted() {
+		ExpensesRequest april = ExpensesRequest.forMonth("4", "2024");
+		m_Cache.prefetch(MARCH, "ausgaben", NOW);
+		m_Cache.prefetch(april, "ausgaben", NOW);
+		m_Cache.prefetch(april, "ausgaben", NOW);
+		assertEquals(2, count("report.prefetch.loaded"));
+
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		assertEquals(1, count("report.prefetch.used"));
+
+		m_Cache.onExpenseChanged(new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, "ausgaben", "b", null));
+		assertEquals(1, count("report.prefetch.wasted"));
+		assertEquals(0.5, m_Registry.get("report.prefetch.hitrate").gauge().value());
+		verify(m_FirestoreService, times(2)).findBetween(any(), anyString());
+	}
+
+	/**
+	 * Without the cache every report reads Firestore and nothing is prefetched
+	 */
+	@Test
+	public void testDisabled() {
+		ReflectionTestUtils.setField(m_Cache, "m_Enabled", Boolean.FALSE);
+		m_Cache.prefetch(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "ausgaben", NOW);
+		m_Cache.get(MARCH, "ausgaben", NOW);
+
+		verify(m_FirestoreService, times(2)).findBetween(any(), anyString());
+		assertEquals(0, count("report.prefetch.loaded"));
+	}
+}
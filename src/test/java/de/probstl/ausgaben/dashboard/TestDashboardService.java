@@ -0,0 +1,151 @@
+package de.probstl.ausgaben.dashboard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.probstl.ausgaben.ExpenseChangedEvent;
+import de.probstl.ausgaben.FirestoreService;
+import de.probstl.ausgaben.ThreadFactories;
+import de.probstl.ausgaben.bulkhead.Bulkheads;
+import de.probstl.ausgaben.bulkhead.WorkloadClass;
+
+/**
+ * Test for the refreshes of the landing page figures
+ */
+public class TestDashboardService {
+
+	/** The mocked Firestore service */
+	private FirestoreService m_FirestoreService;
+
+	/** The service under test */
+	private DashboardService m_Service;
+
+	/**
+	 * Create the service with a mocked Firestore service and a bulkhead always
+	 * running the refresh
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_FirestoreService = mock(FirestoreService.class);
+		Bulkheads bulkheads = mock(Bulkheads.class);
+		when(Boolean.valueOf(bulkheads.tryRun(anyString(), eq(WorkloadClass.BACKGROUND), any()))).thenAnswer(x -> {
+			x.<Runnable>getArgument(2).run();
+			return Boolean.TRUE;
+		});
+
+		m_Service = new DashboardService();
+		ReflectionTestUtils.setField(m_Service, "m_FirestoreService", m_FirestoreService);
+		ReflectionTestUtils.setField(m_Service, "m_Bulkheads", bulkheads);
+		ReflectionTestUtils.setField(m_Service, "m_ThreadFactories", new ThreadFactories(false));
+		ReflectionTestUtils.setField(m_Service, "m_MaxAge", Duration.ofHours(1));
+		m_Service.init();
+	}
+
+	/**
+	 * Stop the refresh executor
+	 */
+	@AfterEach
+	public void tearDown() {
+		m_Service.shutdown();
+	}
+
+	/**
+	 * @param lastMonth    Sum of the last month
+	 * @param currentMonth Sum of the current month
+	 * @return The weeks of both months as read from Firestore
+	 */
+	private static List<NavigableMap<Integer, Double>> weeks(double lastMonth, double currentMonth) {
+		NavigableMap<Integer, Double> last = new TreeMap<>();
+		last.put(Integer.valueOf(9), Double.valueOf(lastMonth));
+		NavigableMap<Integer, Double> current = new TreeMap<>();
+		current.put(Integer.valueOf(13), Double.valueOf(currentMonth));
+		return Arrays.asList(last, current);
+	}
+
+	/**
+	 * A failed read is not cached, neither as figures of zero on the first
+	 * request nor over the figures of a failed refresh
+	 */
+	@Test
+	public void testFailureNotCached() {
+		when(m_FirestoreService.findByWeeks(anyList(), eq("ausgaben"))).thenReturn(null, weeks(10, 5),
+				Collections.singletonList(null));
+
+		assertEquals(0.0, m_Service.getSummary("ausgaben").getCurrentMonth());
+		DashboardSummary summary = m_Service.getSummary("ausgaben");
+		assertEquals(5.0, summary.getCurrentMonth());
+
+		m_Service.triggerRefresh("ausgaben");
+		verify(m_FirestoreService, timeout(5000).times(3)).findByWeeks(anyList(), eq("ausgaben"));
+		assertSame(summary, m_Service.getSummary("ausgaben"));
+	}
+
+	/**
+	 * A modification while a refresh is reading starts another refresh after it
+	 */
+	@Test
+	public void testRefreshAgainAfterRunning() throws Exception {
+		when(m_FirestoreService.findByWeeks(anyList(), eq("ausgaben"))).thenReturn(weeks(10, 5));
+		m_Service.getSummary("ausgaben");
+
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch modified = new CountDownLatch(1);
+		when(m_FirestoreService.findByWeeks(anyList(), eq("ausgaben"))).thenAnswer(x -> {
+			reading.countDown();
+			assertTrue(modified.await(5, TimeUnit.SECONDS));
+			return weeks(10, 5);
+		}).thenReturn(weeks(10, 7));
+
+		m_Service.triggerRefresh("ausgaben");
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+		m_Service.onExpenseChanged(new ExpenseChangedEvent(ExpenseChangedEvent.Type.CREATED, "ausgaben", "a", null));
+		m_Service.onExpenseChanged(new ExpenseChangedEvent(ExpenseChangedEvent.Type.UPDATED, "ausgaben", "a", null));
+		modified.countDown();
+
+		verify(m_FirestoreService, timeout(5000).times(3)).findByWeeks(anyList(), eq("ausgaben"));
+		for (int i = 0; i < 50 && m_Service.getSummary("ausgaben").getCurrentMonth() != 7.0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(7.0, m_Service.getSummary("ausgaben").getCurrentMonth());
+		Thread.sleep(200);
+		verify(m_FirestoreService, times(3)).findByWeeks(anyList(), eq("ausgaben"));
+	}
+
+	/**
+	 * The month changes at midnight of the home time zone, not of the server
+	 */
+	@Test
+	public void testStaleInHomeMonth() {
+		// 23:50 on the 31st of March in Berlin, still March in UTC at 00:10 in Berlin
+		DashboardSummary summary = new DashboardSummary(0, 0, 0, 0, Collections.emptyList(),
+				Instant.parse("2024-03-31T21:50:00Z"));
+		assertFalse(m_Service.isStale(summary, Instant.parse("2024-03-31T21:55:00Z")));
+		assertTrue(m_Service.isStale(summary, Instant.parse("2024-03-31T22:10:00Z")));
+	}
+}
@@ -0,0 +1,65 @@
+package de.probstl.ausgaben.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Test for the on-demand recordings
+ */
+public class TestFlightRecorderService {
+
+	/**
+	 * A recording is limited, exclusive and contains the events of the
+	 * application
+	 *
+	 * @throws IOException if the recording failed
+	 */
+	@Test
+	public void testRecording() throws IOException {
+		FlightRecorderService service = new FlightRecorderService(Duration.ofMinutes(1), "default");
+		try {
+			assertNull(service.dump());
+			assertFalse(service.stop());
+
+			assertEquals(Duration.ofMinutes(1), service.start(Duration.ofHours(1)));
+			assertTrue(service.isRunning());
+			assertThrows(IllegalStateException.class, () -> service.start(Duration.ofSeconds(10)));
+
+			MailSendingEvent event = new MailSendingEvent();
+			event.begin();
+			event.cities = 3;
+			event.sent = true;
+			event.commit();
+
+			assertTrue(service.stop());
+			Path file = service.dump();
+			try {
+				boolean found = false;
+				for (RecordedEvent recorded : RecordingFile.readAllEvents(file)) {
+					if (recorded.getEventType().getName().equals("de.probstl.ausgaben.MailSending")) {
+						assertEquals(3, recorded.getInt("cities"));
+						found = true;
+					}
+				}
+				assertTrue(found);
+			} finally {
+				Files.delete(file);
+			}
+		} finally {
+			service.closeRecording();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package de.probstl.ausgaben.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the asynchronous request log
+ */
+public class TestRequestLogWriter {
+
+	/**
+	 * @return An event of a create request
+	 */
+	private static RequestLogEvent createEvent() {
+		return new RequestLogEvent("POST", "/money/rest/create", null, "127.0.0.1", "flo", 200, 12,
+				"{\"shop\": \"EDEKA\"}");
+	}
+
+	/**
+	 * Events are dropped and counted if the queue is full
+	 */
+	@Test
+	public void testDropWhenFull() {
+		RequestLogWriter writer = new RequestLogWriter(2, new SimpleMeterRegistry());
+
+		assertTrue(writer.offer(createEvent()));
+		assertTrue(writer.offer(createEvent()));
+		assertFalse(writer.offer(createEvent()));
+		assertEquals(1.0, writer.getDropped(), 0.0);
+
+		assertEquals(2, writer.drain());
+		assertTrue(writer.offer(createEvent()));
+		assertEquals(1, writer.drain());
+	}
+
+	/**
+	 * The event is written as key value pairs, missing values are skipped
+	 */
+	@Test
+	public void testFormat() {
+		assertEquals("method=POST uri=/money/rest/create status=200 duration_ms=12 client=127.0.0.1 user=flo "
+				+ "payload=\"{\\\"shop\\\": \\\"EDEKA\\\"}\"", createEvent().format());
+	}
+}
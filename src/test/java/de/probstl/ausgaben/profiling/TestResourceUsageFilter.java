@@ -0,0 +1,103 @@
+package de.probstl.ausgaben.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the measurement of the requests by endpoint
+ */
+public class TestResourceUsageFilter {
+
+	/**
+	 * Endpoints with a path variable
+	 */
+	@RestController
+	static class Endpoints {
+
+		/**
+		 * @param month The month
+		 * @return The month
+		 */
+		@GetMapping("/view/{month}")
+		String view(@PathVariable String month) {
+			return month;
+		}
+
+		/**
+		 * @param month The month
+		 * @return The month computed after the request thread was released
+		 */
+		@GetMapping("/async/{month}")
+		Callable<String> async(@PathVariable String month) {
+			return () -> month;
+		}
+	}
+
+	/** The registry of the histograms */
+	private SimpleMeterRegistry m_Registry;
+
+	/** The endpoints behind the filter */
+	private MockMvc m_MockMvc;
+
+	/**
+	 * Measure every request
+	 */
+	@BeforeEach
+	public void setUp() {
+		m_Registry = new SimpleMeterRegistry();
+		m_MockMvc = MockMvcBuilders.standaloneSetup(new Endpoints())
+				.addFilters(new ResourceUsageFilter(m_Registry, 1.0)).build();
+	}
+
+	/**
+	 * @param endpoint The endpoint tag
+	 * @param dispatch The dispatch tag
+	 * @return Number of requests recorded with the tags
+	 */
+	private long count(String endpoint, String dispatch) {
+		return m_Registry.get("request.cpu").tag("endpoint", endpoint).tag("dispatch", dispatch).timer().count();
+	}
+
+	/**
+	 * The endpoint tag is the pattern, not the path with the month
+	 */
+	@Test
+	public void testEndpointFromPattern() throws Exception {
+		m_MockMvc.perform(get("/view/03")).andReturn();
+		m_MockMvc.perform(get("/view/04")).andReturn();
+		m_MockMvc.perform(get("/unknown")).andReturn();
+
+		assertEquals(2, count("/view/{month}", "complete"));
+		assertEquals(2, m_Registry.get("request.allocated").tag("endpoint", "/view/{month}").summary().count());
+		assertEquals(1, count("unmatched", "complete"));
+		assertNull(m_Registry.find("request.cpu").tag("endpoint", "/view/03").timer());
+	}
+
+	/**
+	 * Only the part of an asynchronous request on the request thread is
+	 * measured, it is marked as partial
+	 */
+	@Test
+	public void testAsyncPartial() throws Exception {
+		MvcResult result = m_MockMvc.perform(get("/async/03")).andReturn();
+		m_MockMvc.perform(asyncDispatch(result)).andReturn();
+
+		assertEquals(1, count("/async/{month}", "partial"));
+		assertNull(m_Registry.find("request.cpu").tag("dispatch", "complete").timer());
+	}
+}
@@ -0,0 +1,35 @@
+package de.probstl.ausgaben.profiling;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for reading the counters of the current thread
+ */
+public class TestThreadUsage {
+
+	/**
+	 * An allocation of the current thread is counted
+	 */
+	@Test
+	public void testAllocation() {
+		assertTrue(ThreadUsage.isSupported());
+
+		long before = ThreadUsage.allocatedBytes();
+		byte[] allocated = new byte[1 << 20];
+		long after = ThreadUsage.allocatedBytes();
+		assertTrue(after - before >= allocated.length, "allocation not counted");
+		assertTrue(ThreadUsage.cpuNanos() > 0);
+	}
+
+	/**
+	 * A platform thread is measured
+	 */
+	@Test
+	public void testPlatformThread() {
+		assertFalse(ThreadUsage.isVirtual(Thread.currentThread()));
+		assertTrue(ThreadUsage.isMeasurable());
+	}
+}
@@ -0,0 +1,143 @@
+package de.probstl.ausgaben.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Test for the bitmap index of the structured queries
+ */
+public class TestFacetIndex {
+
+	/**
+	 * Create an expense for the tests
+	 */
+	private static Expense create(String id, String shop, String city, String payment, double amount, int year,
+			int month, String message) {
+		Expense expense = new Expense(id);
+		expense.setShop(shop);
+		expense.setCity(city);
+		expense.setPayment(payment);
+		expense.setAmountDouble(Double.valueOf(amount));
+		expense.setMessage(message);
+		expense.setTimestamp(Date.from(LocalDateTime.of(year, month, 15, 12, 0).toInstant(ZoneOffset.UTC)));
+		return expense;
+	}
+
+	/**
+	 * Create an index with some expenses
+	 */
+	private static FacetIndex createIndex() {
+		Collection<Expense> expenses = new ArrayList<>();
+		expenses.add(create("1", "EDEKA", "Landshut", "card", 75.20, 2023, 8, "Grillen #urlaub"));
+		expenses.add(create("2", "EDEKA", "Landshut", "cash", 80.00, 2023, 8, "Einkauf #urlaub"));
+		expenses.add(create("3", "EDEKA", "Landshut", "card", 20.00, 2023, 8, "Getränke #urlaub"));
+		expenses.add(create("4", "edeka", "Landshut", "card", 55.00, 2022, 8, "Einkauf #urlaub"));
+		expenses.add(create("5", "Aldi", "Landshut", "card", 99.00, 2023, 9, "Einkauf #urlaub"));
+		return new FacetIndex(expenses);
+	}
+
+	/**
+	 * Combination of all facets and the amount range
+	 */
+	@Test
+	public void testCombination() {
+		FacetQuery query = new FacetQuery();
+		query.setPayment("card");
+		query.setMinAmount(Double.valueOf(50.0));
+		query.setShop("EDEKA");
+		query.setCity("landshut");
+		query.setTag("#urlaub");
+		query.setFrom("2023-01");
+		query.setTo("2023-12");
+
+		FacetResult result = createIndex().query(query);
+		assertEquals(1, result.getCount());
+		assertEquals(75.20, result.getSum(), 0.001);
+		assertEquals("1", result.getExpenses().get(0).getId());
+	}
+
+	/**
+	 * Amount range bounds are inclusive
+	 */
+	@Test
+	public void testAmountRange() {
+		FacetQuery query = new FacetQuery();
+		query.setMinAmount(Double.valueOf(55.0));
+		query.setMaxAmount(Double.valueOf(80.0));
+
+		FacetResult result = createIndex().query(query);
+		assertEquals(3, result.getCount());
+		assertEquals(210.20, result.getSum(), 0.001);
+	}
+
+	/**
+	 * Unknown values match nothing, updates and deletes are visible
+	 */
+	@Test
+	public void testUpdate() {
+		FacetIndex index = createIndex();
+
+		FacetQuery query = new FacetQuery();
+		query.setShop("Betz");
+		assertTrue(index.query(query).getExpenses().isEmpty());
+
+		index.put(create("5", "Betz", "Landshut", "card", 3.50, 2023, 9, "Brezen"));
+		assertEquals(1, index.query(query).getCount());
+
+		query.setShop("Aldi");
+		assertEquals(0, index.query(query).getCount());
+
+		index.remove("1");
+		assertEquals(4, index.query(new FacetQuery()).getCount());
+	}
+
+	/**
+	 * Queries of an amount range running while expenses are replaced and the
+	 * index is compacted see the rows of the rebuilt amount column only
+	 */
+	@Test
+	public void testAmountRangeWhileCompacting() throws Exception {
+		Collection<Expense> expenses = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			expenses.add(create(String.valueOf(i), "EDEKA", "Landshut", "card", i, 2023, 8, null));
+		}
+		FacetIndex index = new FacetIndex(expenses);
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(() -> {
+			for (int i = 0; running.get(); i = (i + 1) % 10) {
+				index.put(create(String.valueOf(i), "EDEKA", "Landshut", "card", i, 2023, 8, null));
+			}
+		});
+		writer.start();
+
+		FacetQuery query = new FacetQuery();
+		query.setMinAmount(Double.valueOf(3.0));
+		query.setMaxAmount(Double.valueOf(5.0));
+		try {
+			for (int i = 0; i < 20000; i++) {
+				FacetResult result = index.query(query);
+				assertEquals(3, result.getCount());
+				assertEquals(12.0, result.getSum(), 0.001);
+				for (Expense expense : result.getExpenses()) {
+					double amount = expense.getAmountDouble().doubleValue();
+					assertTrue(amount >= 3.0 && amount <= 5.0, expense.getId());
+				}
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+}
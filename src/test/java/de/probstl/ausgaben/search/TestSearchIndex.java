@@ -0,0 +1,89 @@
+package de.probstl.ausgaben.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.probstl.ausgaben.data.Expense;
+
+/**
+ * Test for the full text search index
+ */
+public class TestSearchIndex {
+
+	/**
+	 * Create an expense for the tests
+	 */
+	private static Expense create(String id, String shop, String city, String message) {
+		Expense expense = new Expense(id);
+		expense.setShop(shop);
+		expense.setCity(city);
+		expense.setMessage(message);
+		expense.setAmountDouble(Double.valueOf(1.0));
+		return expense;
+	}
+
+	/**
+	 * Create an index with some expenses
+	 */
+	private static SearchIndex createIndex() {
+		Collection<Expense> expenses = new ArrayList<>();
+		expenses.add(create("1", "EDEKA Rinner", "Landshut", "Wasser, Cola #lebensmittel"));
+		expenses.add(create("2", "Betz", "Landshut", "Brezen"));
+		expenses.add(create("3", "Tankstelle", "München", "Tanken für die Fahrt zu EDEKA"));
+		return new SearchIndex(expenses);
+	}
+
+	/**
+	 * Shop matches are ranked before message matches
+	 */
+	@Test
+	public void testRanking() {
+		List<Expense> result = createIndex().search("edeka", 10);
+		assertEquals(2, result.size());
+		assertEquals("1", result.get(0).getId());
+		assertEquals("3", result.get(1).getId());
+	}
+
+	/**
+	 * Tokens match by prefix and all tokens must match
+	 */
+	@Test
+	public void testPrefix() {
+		SearchIndex index = createIndex();
+		assertEquals(1, index.search("brez", 10).size());
+		assertEquals(2, index.search("lands", 10).size());
+		assertEquals(1, index.search("lands bre", 10).size());
+		assertTrue(index.search("lands tank", 10).isEmpty());
+	}
+
+	/**
+	 * Hashtags are found with and without the hash sign
+	 */
+	@Test
+	public void testHashtag() {
+		SearchIndex index = createIndex();
+		assertEquals("1", index.search("#lebensmittel", 10).get(0).getId());
+		assertEquals("1", index.search("lebensm", 10).get(0).getId());
+	}
+
+	/**
+	 * Updated and removed expenses are reflected in the index
+	 */
+	@Test
+	public void testUpdate() {
+		SearchIndex index = createIndex();
+		index.put(create("2", "Wackerl", "Landshut", "Semmeln"));
+		assertTrue(index.search("betz", 10).isEmpty());
+		assertEquals(1, index.search("wackerl", 10).size());
+
+		index.remove("2");
+		assertTrue(index.search("wackerl", 10).isEmpty());
+		assertEquals(2, index.size());
+	}
+}
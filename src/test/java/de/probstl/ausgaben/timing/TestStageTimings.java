@@ -0,0 +1,47 @@
+package de.probstl.ausgaben.timing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for the accumulation of the stage timings
+ */
+public class TestStageTimings {
+
+	/**
+	 * Measuring outside of an observed request does nothing
+	 */
+	@Test
+	public void testNotObserved() {
+		long begin = StageTimings.begin();
+		StageTimings timings = StageTimings.open();
+		try {
+			StageTimings.end(Stage.QUERY, begin);
+			assertFalse(timings.isMeasured(Stage.QUERY));
+
+			StageTimings.end(Stage.MAPPING, StageTimings.begin());
+			assertTrue(timings.isMeasured(Stage.MAPPING));
+		} finally {
+			StageTimings.close();
+		}
+		assertFalse(StageTimings.isObserved());
+	}
+
+	/**
+	 * The stages are summed up and only measured ones are in the header
+	 */
+	@Test
+	public void testHeader() {
+		StageTimings timings = new StageTimings();
+		timings.add(Stage.QUERY, 10_000_000L);
+		timings.add(Stage.QUERY, 2_500_000L);
+		timings.add(Stage.RENDERING, 1_040_000L);
+
+		assertEquals(12_500_000L, timings.getNanos(Stage.QUERY));
+		assertEquals("query;desc=\"Firestore query\";dur=12.5, render;desc=\"Template rendering\";dur=1.0, "
+				+ "total;dur=20.0", timings.toHeader(20_000_000L));
+	}
+}